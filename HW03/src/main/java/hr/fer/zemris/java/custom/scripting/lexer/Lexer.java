@@ -1,29 +1,61 @@
 package hr.fer.zemris.java.custom.scripting.lexer;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
 import java.util.Objects;
 
+import hr.fer.zemris.java.custom.scripting.elems.Element;
 import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
 import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
-import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
-import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
 import hr.fer.zemris.java.custom.scripting.elems.ElementString;
-import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
 
 /**
- * 
+ *
  * {@code Lexer} represents lexical analysis,i.e. the process of converting a
  * sequence of characters into a sequence of tokens. Text contains sequences of
  * words, tags, numbers, variables, functions, operators. Token of type EOF is
  * generated as last one in processing.
- * 
+ * <p>
+ * Text is read incrementally into a buffer of fixed size, which grows only if
+ * a single token does not fit in it, so text given with
+ * {@link #fromReader(Reader)} or {@link #fromBuffer(CharBuffer)} is never
+ * copied whole. Tokens are views into the buffer given by their offset and
+ * length, and value of the token is created only when it is requested.
+ * Characters a token refers to are never overwritten, so the value of the
+ * token can be requested at any time.
+ *
  * @author Filip Karacic
- * 
+ *
  */
 public class Lexer {
 	/**
-	 * Input text.
+	 * Initial size of the buffer.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Reader of the text or <code>null</code> if the whole text is in the
+	 * buffer.
+	 */
+	private Reader reader;
+	/**
+	 * Buffer with the read text.
 	 */
 	private char[] data;
+	/**
+	 * Number of valid characters in the buffer.
+	 */
+	private int limit;
+	/**
+	 * Offset in the text of the first character of the buffer.
+	 */
+	private int bufferOffset;
+	/**
+	 * Flag that shows whether the whole text has been read.
+	 */
+	private boolean eof;
 	/**
 	 * Current token.
 	 */
@@ -32,6 +64,10 @@ public class Lexer {
 	 * Index of the first unprocessed sign.
 	 */
 	private int currentIndex;
+	/**
+	 * Index of the first sign of the token being extracted.
+	 */
+	private int tokenStart;
 	/**
 	 * State of the lexer. The default state is UNKOWN.
 	 */
@@ -40,23 +76,84 @@ public class Lexer {
 	/**
 	 * Initialize newly created object representing a lexer performing a lexical
 	 * analysis.
-	 * 
+	 *
 	 * @param text
 	 *            text to be analysed lexically
 	 * @throws NullPointerException
 	 *             if {@code text} is {@code null}.
 	 */
 	public Lexer(String text) {
-		Objects.requireNonNull(text);
+		this(reader(CharBuffer.wrap(Objects.requireNonNull(text))), null, 0, 0);
+	}
 
-		currentIndex = 0;
+	/**
+	 * Initialize newly created lexer which reads the text either from the given
+	 * reader or, if the reader is <code>null</code>, from the given part of the
+	 * given array.
+	 *
+	 * @param reader
+	 *            reader of the text or <code>null</code>
+	 * @param data
+	 *            array with the whole text if there is no reader
+	 * @param start
+	 *            index of the first character of the text in the array
+	 * @param limit
+	 *            index after the last character of the text in the array
+	 */
+	private Lexer(Reader reader, char[] data, int start, int limit) {
 		state = LexerState.DOCUMENT_TEXT;
-		data = text.toCharArray();
+
+		if (reader == null) {
+			this.data = data;
+			this.currentIndex = start;
+			this.limit = limit;
+			this.bufferOffset = -start;
+			this.eof = true;
+		} else {
+			this.reader = reader;
+			this.data = new char[BUFFER_SIZE];
+		}
+	}
+
+	/**
+	 * Returns lexer which reads the text from the given reader as it is
+	 * analysed. Reader is not closed.
+	 *
+	 * @param reader
+	 *            reader of the text to be analysed lexically
+	 * @return lexer of the text
+	 * @throws NullPointerException
+	 *             if {@code reader} is {@code null}.
+	 */
+	public static Lexer fromReader(Reader reader) {
+		return new Lexer(Objects.requireNonNull(reader), null, 0, 0);
+	}
+
+	/**
+	 * Returns lexer which analyses remaining characters of the given buffer, such
+	 * as a decoded memory-mapped file. Position of the buffer is not changed.
+	 * Characters of the buffer with an accessible array are not copied, so they
+	 * must not be changed while the tokens are used.
+	 *
+	 * @param buffer
+	 *            buffer with the text to be analysed lexically
+	 * @return lexer of the text
+	 * @throws NullPointerException
+	 *             if {@code buffer} is {@code null}.
+	 */
+	public static Lexer fromBuffer(CharBuffer buffer) {
+		Objects.requireNonNull(buffer);
+
+		if (buffer.hasArray())
+			return new Lexer(null, buffer.array(), buffer.arrayOffset() + buffer.position(),
+					buffer.arrayOffset() + buffer.limit());
+
+		return new Lexer(reader(buffer.duplicate()), null, 0, 0);
 	}
 
 	/**
 	 * Sets state of the lexer to the given value.
-	 * 
+	 *
 	 * @param state
 	 *            new state of lexer
 	 * @throws NullPointerException
@@ -69,7 +166,7 @@ public class Lexer {
 
 	/**
 	 * Returns current token.
-	 * 
+	 *
 	 * @return current token.
 	 */
 	public Token getToken() {
@@ -80,19 +177,23 @@ public class Lexer {
 	 *
 	 * Returns the next token after lexical analysis. Returns token of type EOF if
 	 * end of input is reached.
-	 * 
+	 *
 	 * @return next token after lexical analysis
 	 * @throws LexerException
 	 *             If lexically invalid input is given or method is called after the
 	 *             end of file.
+	 * @throws UncheckedIOException
+	 *             if error while reading the text occurs
 	 */
 	public Token nextToken() {
 		if (token != null && token.getType() == TokenType.EOF) {
 			throw new LexerException("Cannot get next token. No more text to process.");
 		}
 
-		if (currentIndex >= data.length) {
-			return token = new Token(TokenType.EOF, null);
+		tokenStart = currentIndex;
+
+		if (!available(1)) {
+			return token = view(TokenType.EOF, currentIndex, false);
 		}
 
 		if (isTagStart()) {
@@ -104,16 +205,21 @@ public class Lexer {
 		}
 
 		skipBlanks();
+		tokenStart = currentIndex;
+
+		if (!available(1)) {
+			return token = view(TokenType.EOF, currentIndex, false);
+		}
 
 		if (isTagStart()) {
 			currentIndex += 2;
-			return token = new Token(TokenType.TAGSTART, new ElementString("{$"));
+			return token = constant(TokenType.TAGSTART, new ElementString("{$"));
 		}
 
 		if (isTagEnd()) {
 			currentIndex += 2;
 			setState(LexerState.DOCUMENT_TEXT);
-			return token = new Token(TokenType.TAGEND, new ElementString("$}"));
+			return token = constant(TokenType.TAGEND, new ElementString("$}"));
 		}
 
 		if (Character.isLetter(data[currentIndex])) {
@@ -122,8 +228,8 @@ public class Lexer {
 		}
 
 		if (data[currentIndex] == '=') {
-
-			return token = new Token(TokenType.VARIABLE, new ElementVariable(Character.toString(data[currentIndex++])));
+			currentIndex++;
+			return token = view(TokenType.VARIABLE, tokenStart, false);
 		}
 
 		if (Character.isDigit(data[currentIndex])) {
@@ -153,119 +259,134 @@ public class Lexer {
 		}
 	}
 
+	/**
+	 * Extracts token representing string. Token is the view of the text between
+	 * the quotes.
+	 */
 	private void extractString() {
-		StringBuilder string = new StringBuilder();
+		boolean escaped = false;
+		boolean closed = false;
 
 		currentIndex++;
-		while (currentIndex < data.length) {
+		while (available(1)) {
 			if (data[currentIndex] == '\\') {
-				if (data[currentIndex + 1] == '\\' || data[currentIndex + 1] == '\"') {
-					currentIndex++;
-					string.append(data[currentIndex++]);
-				} else {
+				if (!available(2) || !stringEscape(data[currentIndex + 1]))
 					throw new LexerException("Invalid escaping in string. '\\\\' and '\\\"' are the only allowed.");
-				}
+
+				escaped = true;
+				currentIndex += 2;
 			} else if (data[currentIndex] == '\"') {
-				currentIndex++;
+				closed = true;
 				break;
 			} else {
-				string.append(data[currentIndex++]);
+				currentIndex++;
 			}
 		}
 
-		token = new Token(TokenType.STRING, new ElementString(string.toString()));
-		
+		token = view(TokenType.STRING, tokenStart + 1, escaped);
+
+		if (closed) {
+			currentIndex++;
+		}
 	}
 
-	private void extractFunction() {
-		StringBuilder function = new StringBuilder();
+	/**
+	 * Returns {@code true} if the given character may follow '\' in the string.
+	 *
+	 * @param c
+	 *            character after '\'
+	 * @return {@code true} if the escaping is valid
+	 */
+	private static boolean stringEscape(char c) {
+		return c == '\\' || c == '\"';
+	}
 
-		function.append(data[currentIndex++]);
+	/**
+	 * Extracts token representing function.
+	 */
+	private void extractFunction() {
+		currentIndex++;
 
-		while (currentIndex < data.length) {
+		while (available(1)) {
 			if (isBlank() || data[currentIndex] == '$')
 				break;
 
-			function.append(data[currentIndex++]);
+			currentIndex++;
 		}
 
-		if (!validName(function.toString().substring(1)))
-			throw new LexerException("Invalid function name! Was: " + function.toString());
+		if (!validName(tokenStart + 1, currentIndex))
+			throw new LexerException("Invalid function name! Was: " + tokenText());
+
+		token = view(TokenType.FUNCTION, tokenStart, false);
 
-		token = new Token(TokenType.FUNCTION, new ElementFunction(function.toString()));
-		
 	}
 
+	/**
+	 * Extracts operator or number token if after '-' there are some numbers.
+	 */
 	private void extractOperatorOrNumber() {
-		if (data[currentIndex] == '-' && Character.isDigit(data[currentIndex + 1])) {
-			StringBuilder number = new StringBuilder();
-			number.append(data[currentIndex++]);
+		if (data[currentIndex] == '-' && available(2) && Character.isDigit(data[currentIndex + 1])) {
+			currentIndex++;
 
-			while (currentIndex < data.length) {
+			while (available(1)) {
 				if (Character.isDigit(data[currentIndex]) || data[currentIndex] == '.') {
-					number.append(data[currentIndex++]);
+					currentIndex++;
 				} else
 					break;
 			}
 
-			try {
-				token = numberToken(number.toString());
-			} catch (LexerException e) {
-				throw new LexerException(e.getMessage(), e);
-			}
+			token = numberToken();
 
 		} else {
-			token = new Token(TokenType.OPERATOR,
-					new ElementOperator(Character.toString(data[currentIndex++])));
+			currentIndex++;
+			token = view(TokenType.OPERATOR, tokenStart, false);
 		}
-		
+
 	}
 
+	/**
+	 * Extracts token representing digit.
+	 */
 	private void extractDigit() {
-		StringBuilder number = new StringBuilder();
-
-		while (currentIndex < data.length) {
+		while (available(1)) {
 			if (data[currentIndex] == '.' || Character.isDigit(data[currentIndex])) {
-				number.append(data[currentIndex++]);
+				currentIndex++;
 			} else
 				break;
 		}
 
-		try {
-			token = numberToken(number.toString());
-		} catch (LexerException e) {
-			throw new LexerException(e.getMessage(), e);
-		}
-		
+		token = numberToken();
+
 	}
 
+	/**
+	 * Extracts token representing variable.
+	 */
 	private void extractVariable() {
-		StringBuilder name = new StringBuilder();
-
-		while (currentIndex < data.length) {
+		while (available(1)) {
 			if (isBlank() || data[currentIndex] == '$' || data[currentIndex] == '\"')
 				break;
-			name.append(data[currentIndex++]);
+			currentIndex++;
 		}
 
-		if (!validName(name.toString()))
-			throw new LexerException("Invalid variable name. Was: " + name.toString());
+		if (!validName(tokenStart, currentIndex))
+			throw new LexerException("Invalid variable name. Was: " + tokenText());
 
-		token = new Token(TokenType.VARIABLE, new ElementVariable(name.toString()));
+		token = view(TokenType.VARIABLE, tokenStart, false);
 	}
 
 	/**
 	 * Creates a token of type TEXT. Lexer works in a DOCUMENT_TEXT state.
-	 * 
-	 * 
+	 *
+	 *
 	 * @return token of type TEXT
 	 * @throws LexerException
 	 *             if text is not valid
 	 */
 	private Token extractText() {
-		StringBuilder text = new StringBuilder();
+		boolean escaped = false;
 
-		while (currentIndex < data.length) {
+		while (available(1)) {
 			if (isTagStart()) {
 				setState(LexerState.TAG);
 				break;
@@ -276,30 +397,28 @@ public class Lexer {
 					throw new LexerException(
 							"Invalid escaping in document text. '\\\\' and '\\{' are the only allowed.");
 
-				currentIndex++;
-				text.append(data[currentIndex++]);
+				escaped = true;
+				currentIndex += 2;
 			} else {
-				text.append(data[currentIndex++]);
+				currentIndex++;
 			}
 		}
 
-		return new Token(TokenType.TEXT, new ElementString(text.toString()));
+		return view(TokenType.TEXT, tokenStart, escaped);
 	}
 
 	/**
 	 * Returns {@code true} if text has valid escaping.
-	 * 
+	 *
 	 * @return {@code true} if text has valid escaping
 	 */
 	private boolean textValid() {
-		int i = currentIndex + 1;
-
-		return i < data.length && (data[i] == '\\' || data[i] == '{');
+		return available(2) && (data[currentIndex + 1] == '\\' || data[currentIndex + 1] == '{');
 	}
 
 	/**
 	 * Returns {@code true} if character is one of the allowed operators.
-	 * 
+	 *
 	 * @return {@code true} if character is one of the allowed operators
 	 */
 	private boolean isOperator() {
@@ -317,7 +436,7 @@ public class Lexer {
 
 	/**
 	 * Returns {@code true} if current character is a blank.
-	 * 
+	 *
 	 * @return {@code true} if current character is a blank
 	 */
 	private boolean isBlank() {
@@ -334,43 +453,41 @@ public class Lexer {
 
 	/**
 	 * Returns {@code true} if sequence is tag start (i.e. '{$').
-	 * 
+	 *
 	 * @return {@code true} if sequence is tag start
 	 */
 	private boolean isTagStart() {
-		int i = currentIndex;
-
-		return i + 1 < data.length && data[i] == '{' && data[++i] == '$';
+		return available(2) && data[currentIndex] == '{' && data[currentIndex + 1] == '$';
 	}
 
 	/**
 	 * Returns {@code true} if sequence is tag end (i.e. '$}').
-	 * 
+	 *
 	 * @return {@code true} if sequence is tag end
 	 */
 	private boolean isTagEnd() {
-		int i = currentIndex;
-
-		return i + 1 < data.length && data[i] == '$' && data[++i] == '}';
+		return available(2) && data[currentIndex] == '$' && data[currentIndex + 1] == '}';
 	}
 
 	/**
-	 * Returns {@code true} if {@code name} is valid name by the rules of this
-	 * lexer.
-	 * 
-	 * @param name
-	 *            name to be tested
-	 * @return {@code true} if {@code name} is valid name
+	 * Returns {@code true} if characters of the buffer from the given start to
+	 * the given end form a valid name by the rules of this lexer.
+	 *
+	 * @param start
+	 *            index of the first character of the name
+	 * @param end
+	 *            index after the last character of the name
+	 * @return {@code true} if the name is valid
 	 */
-	private boolean validName(String name) {
-		if (name == null || name.isEmpty())
+	private boolean validName(int start, int end) {
+		if (start >= end)
 			return false;
 
-		if (!Character.isLetter(name.charAt(0)))
+		if (!Character.isLetter(data[start]))
 			return false;
 
-		for (int i = 1, h = name.length(); i < h; i++) {
-			if (name.charAt(i) != '_' && !Character.isDigit(name.charAt(i)) && !Character.isLetter(name.charAt(i)))
+		for (int i = start + 1; i < end; i++) {
+			if (data[i] != '_' && !Character.isDigit(data[i]) && !Character.isLetter(data[i]))
 				return false;
 		}
 
@@ -379,10 +496,10 @@ public class Lexer {
 
 	/**
 	 * Skips all of the blanks in the tag between two tokens.
-	 * 
+	 *
 	 */
 	private void skipBlanks() {
-		while (currentIndex < data.length) {
+		while (available(1)) {
 			switch (data[currentIndex]) {
 			case ' ':
 			case '\n':
@@ -397,32 +514,145 @@ public class Lexer {
 	}
 
 	/**
-	 * Returns token represented by {@code number}.
-	 * 
-	 * @param number
-	 *            number to be tokenized
-	 * @return token represented by {@code number}
-	 * 
-	 * @throws NullPointerException
-	 *             if {@code number} is {@code null}
+	 * Returns token of the number from the start of the current token to the
+	 * current index.
+	 *
+	 * @return token of the number
+	 *
 	 * @throws LexerException
-	 *             if {@code number} is not valid number
+	 *             if the characters are not a valid number
 	 */
-	private Token numberToken(String number) {
-		Objects.requireNonNull(number);
+	private Token numberToken() {
+		String number = tokenText();
 
 		if (number.contains(".")) {
 			try {
-				return token = new Token(TokenType.NUMBER, new ElementConstantDouble(Double.parseDouble(number)));
+				return constant(TokenType.NUMBER, new ElementConstantDouble(Double.parseDouble(number)));
 			} catch (NumberFormatException e) {
 				throw new LexerException("Invalid decimal number. Was: " + number);
 			}
 		} else {
 			try {
-				return token = new Token(TokenType.NUMBER, new ElementConstantInteger(Integer.parseInt(number)));
+				return constant(TokenType.NUMBER, new ElementConstantInteger(Integer.parseInt(number)));
 			} catch (NumberFormatException e) {
 				throw new LexerException("Invalid integer. Was: " + number);
 			}
 		}
 	}
+
+	/**
+	 * Returns characters from the start of the current token to the current
+	 * index.
+	 *
+	 * @return text of the current token
+	 */
+	private String tokenText() {
+		return new String(data, tokenStart, currentIndex - tokenStart);
+	}
+
+	/**
+	 * Returns token whose value is created from the characters from the given
+	 * index to the current index when it is requested.
+	 *
+	 * @param type
+	 *            type of the token
+	 * @param start
+	 *            index of the first character of the token
+	 * @param escaped
+	 *            <code>true</code> if the characters contain escapes
+	 * @return created token
+	 */
+	private Token view(TokenType type, int start, boolean escaped) {
+		return new Token(type, null, data, start, currentIndex - start, bufferOffset + start, escaped);
+	}
+
+	/**
+	 * Returns token with the given value whose characters are from the start of
+	 * the current token to the current index.
+	 *
+	 * @param type
+	 *            type of the token
+	 * @param value
+	 *            value of the token
+	 * @return created token
+	 */
+	private Token constant(TokenType type, Element value) {
+		return new Token(type, value, data, tokenStart, currentIndex - tokenStart, bufferOffset + tokenStart, false);
+	}
+
+	/**
+	 * Returns {@code true} if at least the given number of characters from the
+	 * current index is available, reading more of the text if needed.
+	 *
+	 * @param count
+	 *            number of characters
+	 * @return {@code true} if the characters are available
+	 * @throws UncheckedIOException
+	 *             if error while reading the text occurs
+	 */
+	private boolean available(int count) {
+		while (limit - currentIndex < count && !eof) {
+			fill();
+		}
+
+		return limit - currentIndex >= count;
+	}
+
+	/**
+	 * Reads more of the text into the buffer. If the buffer is full, characters
+	 * of the current token are copied to a new buffer and the old one is left
+	 * unchanged for the tokens referring to it.
+	 *
+	 * @throws UncheckedIOException
+	 *             if error while reading the text occurs
+	 */
+	private void fill() {
+		if (limit == data.length) {
+			int kept = limit - tokenStart;
+			char[] buffer = new char[Math.max(BUFFER_SIZE, 2 * kept)];
+			System.arraycopy(data, tokenStart, buffer, 0, kept);
+
+			data = buffer;
+			bufferOffset += tokenStart;
+			currentIndex -= tokenStart;
+			limit = kept;
+			tokenStart = 0;
+		}
+
+		try {
+			int r = reader.read(data, limit, data.length - limit);
+			if (r == -1) {
+				eof = true;
+			} else {
+				limit += r;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Reading the text failed.", e);
+		}
+	}
+
+	/**
+	 * Returns reader of the remaining characters of the given buffer.
+	 *
+	 * @param buffer
+	 *            buffer to be read
+	 * @return reader of the buffer
+	 */
+	private static Reader reader(CharBuffer buffer) {
+		return new Reader() {
+			@Override
+			public int read(char[] cbuf, int off, int len) {
+				if (!buffer.hasRemaining())
+					return -1;
+
+				int r = Math.min(len, buffer.remaining());
+				buffer.get(cbuf, off, r);
+				return r;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
 }
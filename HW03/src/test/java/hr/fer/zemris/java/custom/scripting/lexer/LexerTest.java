@@ -1,5 +1,10 @@
 package hr.fer.zemris.java.custom.scripting.lexer;
 
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 import org.junit.Assert;
 
@@ -103,5 +108,76 @@ public class LexerTest {
 		
 		Assert.assertEquals(TokenType.EOF, lexer.nextToken().getType());
 	}
+
+	@Test
+	public void testTokenIsViewOfText() {
+		Lexer lexer = new Lexer("ab \\{ {$= \"x\\\"y\" @f $}");
+
+		Token text = lexer.nextToken();
+		Assert.assertEquals(0, text.getOffset());
+		Assert.assertEquals(6, text.getLength());
+		Assert.assertEquals("ab \\{ ", text.getText().toString());
+		Assert.assertEquals("ab { ", text.getValue().asText());
+
+		lexer.nextToken();
+		lexer.nextToken();
+		Token string = lexer.nextToken();
+		Assert.assertEquals(TokenType.STRING, string.getType());
+		Assert.assertEquals(11, string.getOffset());
+		Assert.assertEquals("x\\\"y", string.getText().toString());
+		Assert.assertEquals("x\"y", string.getValue().asText());
+	}
+
+	@Test
+	public void testReaderInput() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			sb.append("text \\{ ").append(i).append(" {$= i \"s\\\"\" @sin 1.5 -2 + $}");
+		}
+		String text = sb.toString();
+
+		List<Token> expected = tokens(new Lexer(text));
+		List<Token> actual = tokens(Lexer.fromReader(new StringReader(text)));
+
+		// values are requested only after all of the text has been read
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Token token = actual.get(i);
+			Assert.assertEquals(expected.get(i).getType(), token.getType());
+			Assert.assertEquals(asText(expected.get(i)), asText(token));
+			Assert.assertEquals(text.substring(token.getOffset(), token.getOffset() + token.getLength()),
+					token.getText().toString());
+		}
+	}
+
+	@Test
+	public void testBufferInput() {
+		CharBuffer buffer = CharBuffer.wrap("xx{$= i $}yy".toCharArray(), 2, 8);
+		Lexer lexer = Lexer.fromBuffer(buffer);
+
+		Assert.assertEquals(TokenType.TAGSTART, lexer.nextToken().getType());
+		Assert.assertEquals(0, lexer.getToken().getOffset());
+		Assert.assertEquals("=", lexer.nextToken().getValue().asText());
+		Token variable = lexer.nextToken();
+		Assert.assertEquals("i", variable.getValue().asText());
+		Assert.assertEquals(4, variable.getOffset());
+		Assert.assertEquals(TokenType.TAGEND, lexer.nextToken().getType());
+		Assert.assertEquals(TokenType.EOF, lexer.nextToken().getType());
+		Assert.assertEquals(2, buffer.position());
+	}
+
+	private static List<Token> tokens(Lexer lexer) {
+		List<Token> tokens = new ArrayList<>();
+
+		while (lexer.nextToken().getType() != TokenType.EOF) {
+			tokens.add(lexer.getToken());
+		}
+
+		return tokens;
+	}
+
+	private static String asText(Token token) {
+		return token.getValue() == null ? null : token.getValue().asText();
+	}
 }
 
@@ -2,8 +2,14 @@ package hr.fer.zemris.java.custom.scripting.elems;
 
 import java.util.Objects;
 
+import hr.fer.zemris.java.custom.scripting.functions.Function;
+import hr.fer.zemris.java.custom.scripting.functions.FunctionRegistry;
+
 /**
  * {@code ElementFunction} is used for representation of function expressions.
+ * Function with the name of the element is resolved in the
+ * {@link FunctionRegistry} when the element is created, or when it is first
+ * requested if it was not registered then.
  * 
  * @author Filip Karacic
  *
@@ -13,6 +19,10 @@ public class ElementFunction extends Element {
 	 * Name of this function.
 	 */
 	private String name;
+	/**
+	 * Resolved function or <code>null</code> if it is not resolved yet.
+	 */
+	private volatile Function function;
 
 	/**
 	 * Initializing newly created object representing function expression.
@@ -22,6 +32,7 @@ public class ElementFunction extends Element {
 	 */
 	public ElementFunction(String name) {
 		this.name = Objects.requireNonNull(name);
+		this.function = FunctionRegistry.get(name);
 	}
 
 	/**
@@ -42,4 +53,21 @@ public class ElementFunction extends Element {
 	public String getName() {
 		return name;
 	}
+
+	/**
+	 * Returns function with the name of this element or <code>null</code> if
+	 * there is no such function.
+	 * 
+	 * @return function of this element or <code>null</code>
+	 */
+	public Function getFunction() {
+		Function function = this.function;
+
+		if (function == null) {
+			function = FunctionRegistry.get(name);
+			this.function = function;
+		}
+
+		return function;
+	}
 }
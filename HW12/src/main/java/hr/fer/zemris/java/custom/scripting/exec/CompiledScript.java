@@ -0,0 +1,108 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents base class of the scripts generated by the
+ * {@link SmartScriptCompiler}. Texts and string constants of the script are
+ * not part of the generated source, they are given to the constructor and
+ * referred to by index instead. Each of them is encoded in UTF-8 once, so the
+ * script whose context uses that encoding writes them without encoding them
+ * again.
+ * <p>
+ * Members of this class are public or protected because generated classes are
+ * loaded by their own class loaders.
+ * 
+ * @author Filip Karacic
+ *
+ */
+public abstract class CompiledScript implements IExecutableScript {
+
+	/**
+	 * Texts and string constants of the script.
+	 */
+	protected final String[] constants;
+	/**
+	 * Constants encoded in UTF-8.
+	 */
+	private final byte[][] encoded;
+
+	/**
+	 * Initializes newly created script.
+	 * 
+	 * @param constants
+	 *            texts and string constants of the script
+	 * 
+	 * @throws NullPointerException
+	 *             if the given array is <code>null</code>
+	 */
+	protected CompiledScript(String[] constants) {
+		this.constants = Objects.requireNonNull(constants);
+
+		encoded = new byte[constants.length][];
+		for (int i = 0; i < constants.length; i++) {
+			encoded[i] = constants[i].getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	@Override
+	public void execute(RequestContext requestContext) {
+		Objects.requireNonNull(requestContext);
+
+		try {
+			run(requestContext);
+		} catch (IOException e) {
+			throw new IllegalStateException("Writing output of the script failed.", e);
+		}
+	}
+
+	/**
+	 * Executes the script writing its output to the given context.
+	 * 
+	 * @param requestContext
+	 *            context of the web server
+	 * 
+	 * @throws IOException
+	 *             if error while writing occurs
+	 */
+	protected abstract void run(RequestContext requestContext) throws IOException;
+
+	/**
+	 * Writes the constant with the given index to the given context.
+	 * 
+	 * @param requestContext
+	 *            context of the web server
+	 * @param index
+	 *            index of the constant
+	 * 
+	 * @throws IOException
+	 *             if error while writing occurs
+	 */
+	protected final void text(RequestContext requestContext, int index) throws IOException {
+		if (StandardCharsets.UTF_8.equals(requestContext.getCharset())) {
+			requestContext.write(encoded[index]);
+		} else {
+			requestContext.write(constants[index]);
+		}
+	}
+
+	/**
+	 * Writes the given value left on the stack of the echo tag to the given
+	 * context.
+	 * 
+	 * @param requestContext
+	 *            context of the web server
+	 * @param value
+	 *            value to be written
+	 * 
+	 * @throws IOException
+	 *             if error while writing occurs
+	 */
+	protected static void echo(RequestContext requestContext, Object value) throws IOException {
+		requestContext.write(value.toString());
+	}
+}
@@ -0,0 +1,22 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents smart script ready to be executed, either by interpreting its
+ * parsed tree with the {@link SmartScriptEngine} or as a class generated by the
+ * {@link SmartScriptCompiler}. Script keeps no state between executions, so one
+ * script can be executed for many requests at once.
+ * 
+ * @author Filip Karacic
+ *
+ */
+public interface IExecutableScript {
+	/**
+	 * Executes the script writing its output to the given context.
+	 * 
+	 * @param requestContext
+	 *            context of the web server
+	 */
+	public void execute(RequestContext requestContext);
+}
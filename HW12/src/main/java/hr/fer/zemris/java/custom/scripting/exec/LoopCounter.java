@@ -0,0 +1,134 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+/**
+ * Represents counter of the 'FOR' loop. Start, end and step of the loop are
+ * parsed once when the loop starts and the counter counts with a primitive
+ * {@code int} if both start and step are integers, or with a primitive
+ * {@code double} otherwise, so the loop uses the same memory regardless of the
+ * number of iterations. Loop exposes the value of the counter to its body
+ * through the {@link ValueWrapper} of the loop variable.
+ * <p>
+ * The first value is the start as it is given, so the loop with an integer
+ * start and a decimal step starts with an integer and continues with doubles.
+ *
+ * @author Filip Karacic
+ *
+ */
+class LoopCounter {
+
+	/**
+	 * Step used if the loop does not give one.
+	 */
+	static final String DEFAULT_STEP = "1";
+
+	/**
+	 * Flag that shows whether the variable counts with integers.
+	 */
+	private final boolean integer;
+	/**
+	 * Flag that shows whether the end is an integer.
+	 */
+	private final boolean integerEnd;
+	/**
+	 * Current value if the variable counts with integers.
+	 */
+	private int intValue;
+	/**
+	 * Step if the variable counts with integers.
+	 */
+	private final int intStep;
+	/**
+	 * End if it is an integer.
+	 */
+	private final int intEnd;
+	/**
+	 * Current value if the variable counts with doubles.
+	 */
+	private double doubleValue;
+	/**
+	 * Step if the variable counts with doubles.
+	 */
+	private final double doubleStep;
+	/**
+	 * End as a double.
+	 */
+	private final double doubleEnd;
+	/**
+	 * Start value until the step is added for the first time, <code>null</code>
+	 * afterwards.
+	 */
+	private Object startValue;
+
+	/**
+	 * Initializes newly created counter with the start value.
+	 *
+	 * @param start
+	 *            text of the start value
+	 * @param end
+	 *            text of the end value
+	 * @param step
+	 *            text of the step
+	 *
+	 * @throws IllegalArgumentException
+	 *             if any of the given texts is not an integer or double number
+	 */
+	public LoopCounter(String start, String end, String step) {
+		Object first = ValueWrapper.setOperand(start);
+		Object last = ValueWrapper.setOperand(end);
+		Object increment = ValueWrapper.setOperand(step);
+
+		if (first == null || last == null || increment == null)
+			throw new IllegalArgumentException("Invalid type of operands.");
+
+		integer = first instanceof Integer && increment instanceof Integer;
+		integerEnd = last instanceof Integer;
+
+		intValue = integer ? (Integer) first : 0;
+		intStep = integer ? (Integer) increment : 0;
+		intEnd = integerEnd ? (Integer) last : 0;
+		doubleValue = ((Number) first).doubleValue();
+		doubleStep = ((Number) increment).doubleValue();
+		doubleEnd = ((Number) last).doubleValue();
+		startValue = first;
+	}
+
+	/**
+	 * Returns <code>true</code> if the current value is not greater than the
+	 * end, i.e. if the body of the loop should be executed.
+	 *
+	 * @return <code>true</code> if the loop should continue
+	 */
+	public boolean inRange() {
+		if (!integer)
+			return Double.compare(doubleValue, doubleEnd) <= 0;
+
+		return integerEnd ? intValue <= intEnd : Double.compare(intValue, doubleEnd) <= 0;
+	}
+
+	/**
+	 * Adds the step to the current value.
+	 */
+	public void next() {
+		startValue = null;
+
+		if (integer) {
+			intValue += intStep;
+		} else {
+			doubleValue += doubleStep;
+		}
+	}
+
+	/**
+	 * Returns current value of the counter.
+	 *
+	 * @return current value
+	 */
+	public Object getValue() {
+		if (startValue != null)
+			return startValue;
+		if (integer)
+			return Integer.valueOf(intValue);
+
+		return Double.valueOf(doubleValue);
+	}
+}
@@ -0,0 +1,718 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.functions.Function;
+import hr.fer.zemris.java.custom.scripting.functions.FunctionRegistry;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents compiler which turns the parsed tree of the smart script into a
+ * generated class, so the script is executed without visiting the tree. Output
+ * of the compiled script is the same as the output of the
+ * {@link SmartScriptEngine}:
+ * <ul>
+ * <li>texts are written as constants encoded once,</li>
+ * <li>loops count with primitive variables the same way as the
+ * {@link LoopCounter},</li>
+ * <li>stack of each echo tag is resolved while compiling, so operators and
+ * functions are invoked directly with their arguments.</li>
+ * </ul>
+ * Source of the class is compiled with the system Java compiler. If there is
+ * no compiler, or the script uses a construct whose outcome is decided only
+ * while interpreting it, such as an unknown function, a function registered by
+ * the application or a variable outside of its loop, script is not compiled
+ * and should be interpreted instead.
+ * 
+ * @author Filip Karacic
+ *
+ */
+public class SmartScriptCompiler {
+
+	/**
+	 * Name of the generated class.
+	 */
+	private static final String CLASS_NAME = "SmartScript";
+	/**
+	 * Lock held while compiling, since the file manager is shared.
+	 */
+	private static final Object LOCK = new Object();
+	/**
+	 * Manager of the files of the system compiler, created with the first
+	 * compilation.
+	 */
+	private static StandardJavaFileManager fileManager;
+
+	/**
+	 * Compiles the given parsed tree into the script.
+	 * 
+	 * @param document
+	 *            parsed tree of the script
+	 * @return compiled script
+	 * 
+	 * @throws SmartScriptCompilerException
+	 *             if the script can not be compiled
+	 * @throws NullPointerException
+	 *             if the given tree is <code>null</code>
+	 */
+	public static IExecutableScript compile(DocumentNode document) {
+		Objects.requireNonNull(document);
+
+		CodeGenerator generator = new CodeGenerator();
+		document.accept(generator);
+
+		String[] constants = generator.constants.toArray(new String[0]);
+		Class<? extends CompiledScript> scriptClass = compile(generator.getSource());
+
+		try {
+			return scriptClass.getConstructor(String[].class).newInstance((Object) constants);
+		} catch (ReflectiveOperationException e) {
+			throw new SmartScriptCompilerException("Compiled script can not be created.", e);
+		}
+	}
+
+	/**
+	 * Compiles the given source of the script class and loads the class.
+	 * 
+	 * @param source
+	 *            source of the class
+	 * @return loaded class
+	 * 
+	 * @throws SmartScriptCompilerException
+	 *             if the compiler is not available or the source does not
+	 *             compile
+	 */
+	private static Class<? extends CompiledScript> compile(String source) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null)
+			throw new SmartScriptCompilerException("Java compiler is not available.");
+
+		JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME + ".java"),
+				Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+
+		List<String> options = Arrays.asList("-classpath", classPath(), "-proc:none", "-g:none", "-nowarn");
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		Map<String, byte[]> classes = new HashMap<>();
+
+		synchronized (LOCK) {
+			if (fileManager == null) {
+				fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+			}
+
+			JavaFileManager memory = new MemoryFileManager(fileManager, classes);
+			boolean success = compiler.getTask(null, memory, diagnostics, options, null, Arrays.asList(sourceFile))
+					.call();
+
+			if (!success) {
+				StringBuilder message = new StringBuilder("Generated script does not compile:");
+				for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+					if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+						message.append(' ').append(diagnostic.getMessage(null));
+					}
+				}
+
+				throw new SmartScriptCompilerException(message.toString());
+			}
+		}
+
+		try {
+			return new ScriptClassLoader(classes).loadClass(CLASS_NAME).asSubclass(CompiledScript.class);
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new SmartScriptCompilerException("Compiled script can not be loaded.", e);
+		}
+	}
+
+	/**
+	 * Returns class path for compiling the scripts, which contains the class
+	 * path of the application and the locations of the classes the scripts
+	 * use.
+	 * 
+	 * @return class path
+	 */
+	private static String classPath() {
+		Set<String> entries = new LinkedHashSet<>();
+		entries.add(System.getProperty("java.class.path"));
+
+		for (Class<?> used : Arrays.asList(CompiledScript.class, RequestContext.class)) {
+			CodeSource source = used.getProtectionDomain().getCodeSource();
+			if (source == null)
+				continue;
+
+			try {
+				entries.add(Paths.get(source.getLocation().toURI()).toString());
+			} catch (URISyntaxException | IllegalArgumentException e) {
+			}
+		}
+
+		return String.join(File.pathSeparator, entries);
+	}
+
+	/**
+	 * Represents generator of the source of the script class. Generator visits
+	 * the tree of the script once and emits statements of the method executing
+	 * it.
+	 *
+	 */
+	private static class CodeGenerator implements INodeVisitor {
+
+		/**
+		 * Texts and string constants of the script.
+		 */
+		private List<String> constants = new ArrayList<>();
+		/**
+		 * Indexes of the constants.
+		 */
+		private Map<String, Integer> constantIndexes = new HashMap<>();
+		/**
+		 * Variables of the loops enclosing the current node, innermost first.
+		 */
+		private Deque<LoopVariable> variables = new ArrayDeque<>();
+		/**
+		 * Body of the method executing the script.
+		 */
+		private StringBuilder body = new StringBuilder();
+		/**
+		 * Number of the generated local variables.
+		 */
+		private int locals;
+		/**
+		 * Indentation of the current statement.
+		 */
+		private int indent = 2;
+
+		@Override
+		public void visitDocumentNode(DocumentNode node) {
+			for (int i = 0, h = node.numberOfChildren(); i < h; i++) {
+				node.getChild(i).accept(this);
+			}
+
+			statement("text(context, " + constant("\r\n") + ");");
+		}
+
+		@Override
+		public void visitTextNode(TextNode node) {
+			statement("text(context, " + constant(node.getText()) + ");");
+		}
+
+		@Override
+		public void visitForLoopNode(ForLoopNode node) {
+			String name = node.getVariable().asText();
+			Element stepExpression = node.getStepExpression();
+
+			Object start = ValueWrapper.setOperand(node.getStartExpression().asText());
+			Object end = ValueWrapper.setOperand(node.getEndExpression().asText());
+			Object step = ValueWrapper
+					.setOperand(stepExpression == null ? LoopCounter.DEFAULT_STEP : stepExpression.asText());
+
+			if (start == null || end == null || step == null || !isFinite(start) || !isFinite(end) || !isFinite(step))
+				throw new SmartScriptCompilerException("Loop of the variable " + name + " has invalid bounds.");
+
+			String local = "v" + locals++;
+			LoopVariable variable;
+			String doubleCondition = "Double.compare(" + local + ", " + doubleLiteral(end) + ") <= 0";
+
+			if (start instanceof Integer && step instanceof Integer) {
+				variable = new LoopVariable(name, "Integer.valueOf(" + local + ")");
+				statement("for (int " + local + " = " + start + "; "
+						+ (end instanceof Integer ? local + " <= " + end : doubleCondition) + "; " + local + " += "
+						+ step + ") {");
+			} else if (start instanceof Integer) {
+				// the first value keeps the type of the start
+				String first = "f" + locals++;
+				variable = new LoopVariable(name,
+						"(" + first + " ? (Object) Integer.valueOf(" + start + ") : Double.valueOf(" + local + "))");
+				statement("boolean " + first + " = true;");
+				statement("for (double " + local + " = " + doubleLiteral(start) + "; " + doubleCondition + "; "
+						+ local + " += " + doubleLiteral(step) + ", " + first + " = false) {");
+			} else {
+				variable = new LoopVariable(name, "Double.valueOf(" + local + ")");
+				statement("for (double " + local + " = " + doubleLiteral(start) + "; " + doubleCondition + "; "
+						+ local + " += " + doubleLiteral(step) + ") {");
+			}
+
+			variables.push(variable);
+			indent++;
+
+			for (int i = 0, h = node.numberOfChildren(); i < h; i++) {
+				node.getChild(i).accept(this);
+			}
+
+			indent--;
+			variables.pop();
+			statement("}");
+		}
+
+		@Override
+		public void visitEchoNode(EchoNode node) {
+			Deque<Operand> stack = new ArrayDeque<>();
+
+			for (int i = 0, h = node.numberOfElements(); i < h; i++) {
+				Element element = node.getElement(i);
+
+				if (element instanceof ElementString || element instanceof ElementConstantDouble
+						|| element instanceof ElementConstantInteger) {
+					int index = constant(element.asText());
+					stack.push(new Operand("constants[" + index + "]", index));
+				} else if (element instanceof ElementVariable) {
+					stack.push(new Operand(variable(element.asText()).expression, -1));
+				} else if (element instanceof ElementOperator) {
+					operator(((ElementOperator) element).getSymbol(), stack);
+				} else if (element instanceof ElementFunction) {
+					function((ElementFunction) element, stack);
+				} else {
+					throw new SmartScriptCompilerException("Unsupported element: " + element.asText());
+				}
+			}
+
+			for (Iterator<Operand> iterator = stack.descendingIterator(); iterator.hasNext();) {
+				Operand operand = iterator.next();
+
+				if (operand.constant != -1) {
+					statement("text(context, " + operand.constant + ");");
+				} else {
+					statement("echo(context, " + operand.expression + ");");
+				}
+			}
+		}
+
+		/**
+		 * Emits the operation with the given symbol on the operands from the top
+		 * of the given stack. Operand on the top of the stack is the first one.
+		 * Missing operands are ignored as they are by the engine.
+		 * 
+		 * @param symbol
+		 *            symbol of the operator
+		 * @param stack
+		 *            stack of the operands
+		 */
+		private void operator(String symbol, Deque<Operand> stack) {
+			String type;
+			switch (symbol) {
+			case "+":
+				type = "ADD";
+				break;
+			case "-":
+				type = "SUB";
+				break;
+			case "*":
+				type = "MUL";
+				break;
+			case "/":
+				type = "DIV";
+				break;
+			default:
+				throw new SmartScriptCompilerException("Unsupported operator: " + symbol);
+			}
+
+			if (stack.size() < 2) {
+				stack.poll();
+				return;
+			}
+
+			Operand operand1 = stack.pop();
+			Operand operand2 = stack.pop();
+			stack.push(result("ValueWrapper.perform(" + operand1.expression + ", " + operand2.expression
+					+ ", OperationTypes." + type + ")"));
+		}
+
+		/**
+		 * Emits invocation of the given function with the arguments from the top
+		 * of the given stack. Only the built-in functions are invoked directly,
+		 * since the arguments of other registered functions are not known.
+		 * 
+		 * @param element
+		 *            element of the function
+		 * @param stack
+		 *            stack of the operands
+		 */
+		private void function(ElementFunction element, Deque<Operand> stack) {
+			String name = element.getName();
+			Function function = element.getFunction();
+
+			if (function == null)
+				throw new SmartScriptCompilerException("Unknown function: " + name);
+			if (!FunctionRegistry.isBuiltIn(name, function))
+				throw new SmartScriptCompilerException("Function " + name + " is not built in.");
+
+			switch (name) {
+			case "@sin":
+				stack.push(result("SinFunction.sin(" + pop(stack, name) + ")"));
+				break;
+			case "@decfmt": {
+				String format = pop(stack, name);
+				stack.push(result("DecfmtFunction.decfmt(" + pop(stack, name) + ", " + format + ")"));
+				break;
+			}
+			case "@dup":
+				if (stack.isEmpty())
+					throw new SmartScriptCompilerException("Function " + name + " has no argument.");
+				stack.push(stack.peek());
+				break;
+			case "@swap": {
+				if (stack.size() < 2)
+					throw new SmartScriptCompilerException("Function " + name + " has no argument.");
+				Operand operand1 = stack.pop();
+				Operand operand2 = stack.pop();
+				stack.push(operand1);
+				stack.push(operand2);
+				break;
+			}
+			case "@setMimeType":
+				statement("SetMimeTypeFunction.setMimeType(context, " + pop(stack, name) + ");");
+				break;
+			case "@paramGet":
+				getter("ParamGetFunction.paramGet", name, stack);
+				break;
+			case "@pparamGet":
+				getter("PparamgetFunction.pparamGet", name, stack);
+				break;
+			case "@tparamGet":
+				getter("TparamGetFunction.tparamGet", name, stack);
+				break;
+			case "@pparamSet":
+				setter("PparamSetFunction.pparamSet", name, stack);
+				break;
+			case "@tparamSet":
+				setter("TparamSetFunction.tparamSet", name, stack);
+				break;
+			case "@pparamDel":
+				statement("PparamDelFunction.pparamDel(context, " + pop(stack, name) + ");");
+				break;
+			case "@tparamDel":
+				statement("TparamDelFunction.tparamDel(context, " + pop(stack, name) + ");");
+				break;
+			default:
+				throw new SmartScriptCompilerException("Unknown function: " + name);
+			}
+		}
+
+		/**
+		 * Emits invocation of the function getting parameter.
+		 * 
+		 * @param method
+		 *            method of the function
+		 * @param name
+		 *            name of the function
+		 * @param stack
+		 *            stack of the operands
+		 */
+		private void getter(String method, String name, Deque<Operand> stack) {
+			String defValue = pop(stack, name);
+			String parameter = pop(stack, name);
+
+			stack.push(result(method + "(context, " + parameter + ", " + defValue + ")"));
+		}
+
+		/**
+		 * Emits invocation of the function setting parameter.
+		 * 
+		 * @param method
+		 *            method of the function
+		 * @param name
+		 *            name of the function
+		 * @param stack
+		 *            stack of the operands
+		 */
+		private void setter(String method, String name, Deque<Operand> stack) {
+			String parameter = pop(stack, name);
+			String value = pop(stack, name);
+
+			statement(method + "(context, " + value + ", " + parameter + ");");
+		}
+
+		/**
+		 * Removes the operand from the top of the given stack and returns its
+		 * expression.
+		 * 
+		 * @param stack
+		 *            stack of the operands
+		 * @param name
+		 *            name of the function whose argument the operand is
+		 * @return expression of the operand
+		 * 
+		 * @throws SmartScriptCompilerException
+		 *             if the stack is empty
+		 */
+		private String pop(Deque<Operand> stack, String name) {
+			if (stack.isEmpty())
+				throw new SmartScriptCompilerException("Function " + name + " has no argument.");
+
+			return stack.pop().expression;
+		}
+
+		/**
+		 * Emits local variable holding the value of the given expression and
+		 * returns it as the operand, so the expression is evaluated only once.
+		 * 
+		 * @param expression
+		 *            expression of the value
+		 * @return operand of the local variable
+		 */
+		private Operand result(String expression) {
+			String local = "t" + locals++;
+			statement("Object " + local + " = " + expression + ";");
+
+			return new Operand(local, -1);
+		}
+
+		/**
+		 * Returns variable of the enclosing loop with the given name.
+		 * 
+		 * @param name
+		 *            name of the variable
+		 * @return variable of the enclosing loop
+		 * 
+		 * @throws SmartScriptCompilerException
+		 *             if no enclosing loop has such variable
+		 */
+		private LoopVariable variable(String name) {
+			for (LoopVariable variable : variables) {
+				if (variable.name.equals(name))
+					return variable;
+			}
+
+			throw new SmartScriptCompilerException("Variable " + name + " is used outside of its loop.");
+		}
+
+		/**
+		 * Returns index of the given constant, adding it if it is new.
+		 * 
+		 * @param value
+		 *            value of the constant
+		 * @return index of the constant
+		 */
+		private int constant(String value) {
+			return constantIndexes.computeIfAbsent(value, v -> {
+				constants.add(v);
+				return constants.size() - 1;
+			});
+		}
+
+		/**
+		 * Appends the given statement to the body of the method.
+		 * 
+		 * @param statement
+		 *            statement to be appended
+		 */
+		private void statement(String statement) {
+			for (int i = 0; i < indent; i++) {
+				body.append('\t');
+			}
+
+			body.append(statement).append('\n');
+		}
+
+		/**
+		 * Returns source of the class of the script.
+		 * 
+		 * @return source of the class
+		 */
+		public String getSource() {
+			return "import java.io.IOException;\n\n" + "import hr.fer.zemris.java.custom.scripting.exec.*;\n"
+					+ "import hr.fer.zemris.java.custom.scripting.functions.*;\n"
+					+ "import hr.fer.zemris.java.webserver.RequestContext;\n\n" + "public final class " + CLASS_NAME
+					+ " extends CompiledScript {\n\n" + "\tpublic " + CLASS_NAME
+					+ "(String[] constants) {\n\t\tsuper(constants);\n\t}\n\n" + "\t@Override\n"
+					+ "\tprotected void run(RequestContext context) throws IOException {\n" + body + "\t}\n}\n";
+		}
+
+		/**
+		 * Returns <code>true</code> if the given number is finite.
+		 * 
+		 * @param number
+		 *            number to be checked
+		 * @return <code>true</code> if the number is finite
+		 */
+		private static boolean isFinite(Object number) {
+			return Double.isFinite(((Number) number).doubleValue());
+		}
+
+		/**
+		 * Returns literal of the given number as a double.
+		 * 
+		 * @param number
+		 *            number to be written
+		 * @return literal of the number
+		 */
+		private static String doubleLiteral(Object number) {
+			return Double.toString(((Number) number).doubleValue());
+		}
+	}
+
+	/**
+	 * Represents variable of the loop.
+	 *
+	 */
+	private static class LoopVariable {
+		/**
+		 * Name of the variable in the script.
+		 */
+		private final String name;
+		/**
+		 * Expression of the value of the variable in the generated source.
+		 */
+		private final String expression;
+
+		/**
+		 * Initializes newly created variable.
+		 * 
+		 * @param name
+		 *            name of the variable in the script
+		 * @param expression
+		 *            expression of the value of the variable
+		 */
+		public LoopVariable(String name, String expression) {
+			this.name = name;
+			this.expression = expression;
+		}
+	}
+
+	/**
+	 * Represents value on the stack of the echo tag while compiling it.
+	 *
+	 */
+	private static class Operand {
+		/**
+		 * Expression of the value in the generated source.
+		 */
+		private final String expression;
+		/**
+		 * Index of the constant or -1 if the value is not a constant.
+		 */
+		private final int constant;
+
+		/**
+		 * Initializes newly created operand.
+		 * 
+		 * @param expression
+		 *            expression of the value
+		 * @param constant
+		 *            index of the constant or -1
+		 */
+		public Operand(String expression, int constant) {
+			this.expression = expression;
+			this.constant = constant;
+		}
+	}
+
+	/**
+	 * Represents file manager which keeps the compiled classes in memory.
+	 *
+	 */
+	private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+		/**
+		 * Compiled classes mapped by name.
+		 */
+		private final Map<String, byte[]> classes;
+
+		/**
+		 * Initializes newly created file manager.
+		 * 
+		 * @param fileManager
+		 *            manager of the files of the compiler
+		 * @param classes
+		 *            map to which the compiled classes are put
+		 */
+		public MemoryFileManager(StandardJavaFileManager fileManager, Map<String, byte[]> classes) {
+			super(fileManager);
+			this.classes = classes;
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind,
+				FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("memory:///" + className.replace('.', '/') + kind.extension),
+					kind) {
+				@Override
+				public OutputStream openOutputStream() {
+					return new ByteArrayOutputStream() {
+						@Override
+						public void close() {
+							classes.put(className, toByteArray());
+						}
+					};
+				}
+			};
+		}
+	}
+
+	/**
+	 * Represents class loader of the classes of one compiled script.
+	 *
+	 */
+	private static class ScriptClassLoader extends ClassLoader {
+
+		/**
+		 * Compiled classes mapped by name.
+		 */
+		private final Map<String, byte[]> classes;
+
+		/**
+		 * Initializes newly created class loader.
+		 * 
+		 * @param classes
+		 *            compiled classes mapped by name
+		 */
+		public ScriptClassLoader(Map<String, byte[]> classes) {
+			super(CompiledScript.class.getClassLoader());
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+			if (bytes == null)
+				throw new ClassNotFoundException(name);
+
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
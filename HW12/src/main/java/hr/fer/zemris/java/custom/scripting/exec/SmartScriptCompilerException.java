@@ -0,0 +1,41 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+/**
+ * Thrown if the smart script can not be compiled.
+ * 
+ * @author Filip Karacic
+ *
+ */
+public class SmartScriptCompilerException extends RuntimeException {
+
+	/**
+	 * Serial version.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a {@code SmartScriptCompilerException} with the specified
+	 * detail message.
+	 *
+	 * @param message
+	 *            the detail message
+	 */
+	public SmartScriptCompilerException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Constructs a {@code SmartScriptCompilerException} with the specified
+	 * detailed message and the specified cause.
+	 * 
+	 * @param message
+	 *            the detail message
+	 * @param cause
+	 *            the cause (which is saved for later retrieval. (A {@code null}
+	 *            value is permitted, and indicates that the cause is nonexistent
+	 *            or unknown).
+	 */
+	public SmartScriptCompilerException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -3,7 +3,6 @@ package hr.fer.zemris.java.custom.scripting.exec;
 import java.io.IOException;
 import java.util.EmptyStackException;
 import java.util.Objects;
-import java.util.Stack;
 
 import hr.fer.zemris.java.custom.scripting.elems.Element;
 import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
@@ -12,19 +11,8 @@ import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
 import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
 import hr.fer.zemris.java.custom.scripting.elems.ElementString;
 import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
-import hr.fer.zemris.java.custom.scripting.functions.DecfmtFunction;
-import hr.fer.zemris.java.custom.scripting.functions.DupFunction;
 import hr.fer.zemris.java.custom.scripting.functions.Function;
-import hr.fer.zemris.java.custom.scripting.functions.ParamGetFunction;
-import hr.fer.zemris.java.custom.scripting.functions.PparamDelFunction;
-import hr.fer.zemris.java.custom.scripting.functions.PparamSetFunction;
-import hr.fer.zemris.java.custom.scripting.functions.PparamgetFunction;
-import hr.fer.zemris.java.custom.scripting.functions.SetMimeTypeFunction;
-import hr.fer.zemris.java.custom.scripting.functions.SinFunction;
-import hr.fer.zemris.java.custom.scripting.functions.SwapFunction;
-import hr.fer.zemris.java.custom.scripting.functions.TparamDelFunction;
-import hr.fer.zemris.java.custom.scripting.functions.TparamGetFunction;
-import hr.fer.zemris.java.custom.scripting.functions.TparamSetFunction;
+import hr.fer.zemris.java.custom.scripting.functions.OperandStack;
 import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
 import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
 import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
@@ -54,6 +42,10 @@ public class SmartScriptEngine {
 	 * Multistack for this engine.
 	 */
 	private ObjectMultistack multistack = new ObjectMultistack();
+	/**
+	 * Stack of the operands reused for every echo tag.
+	 */
+	private OperandStack stack = new OperandStack();
 
 	/**
 	 * Constructor for initialization of the newly created {@code SmartScriptEngine}
@@ -88,7 +80,7 @@ public class SmartScriptEngine {
 		@Override
 		public void visitTextNode(TextNode node) {
 			try {
-				requestContext.write(Objects.requireNonNull(node).getText());
+				requestContext.write(Objects.requireNonNull(node).getBytes(requestContext.getCharset()));
 			} catch (IOException e) {
 				throw new IllegalStateException("Writing text from the text node failed.", e);
 			}
@@ -98,120 +90,79 @@ public class SmartScriptEngine {
 		public void visitForLoopNode(ForLoopNode node) {
 
 			String name = node.getVariable().asText();
-			multistack.push(name, new ValueWrapper(node.getStartExpression().asText()));
+			Element step = node.getStepExpression();
 
-			ValueWrapper end = new ValueWrapper(node.getEndExpression().asText());
-			String step = node.getStepExpression().asText();
+			LoopCounter counter = new LoopCounter(node.getStartExpression().asText(),
+					node.getEndExpression().asText(), step == null ? LoopCounter.DEFAULT_STEP : step.asText());
 
-			int size = node.numberOfChildren();
+			// variable is pushed once for the whole loop and set to the counter in place
+			ValueWrapper variable = new ValueWrapper(null);
+			multistack.push(name, variable);
 
-			while (true) {
-				ValueWrapper value = multistack.peek(name);
+			try {
+				int size = node.numberOfChildren();
 
-				if (value.numCompare(end.getValue()) > 0) {
-					break;
-				}
+				for (; counter.inRange(); counter.next()) {
+					variable.setValue(counter.getValue());
 
-				for (int i = 0; i < size; i++) {
-					node.getChild(i).accept(this);
+					for (int i = 0; i < size; i++) {
+						node.getChild(i).accept(this);
+					}
 				}
-
-				value.add(step);
-				multistack.push(name, value);
-
+			} finally {
+				multistack.pop(name);
 			}
-
-			multistack.pop(name);
 		}
 
 		@Override
 		public void visitEchoNode(EchoNode node) {
-			Stack<Object> stack = new Stack<>();
+			stack.clear();
 
-			Element[] elements = node.getElements();
+			for (int i = 0, h = node.numberOfElements(); i < h; i++) {
+				Element element = node.getElement(i);
 
-			for (int i = 0; i < elements.length; i++) {
-				if (elements[i] instanceof ElementString || elements[i] instanceof ElementConstantDouble
-						|| elements[i] instanceof ElementConstantInteger) {
+				if (element instanceof ElementString || element instanceof ElementConstantDouble
+						|| element instanceof ElementConstantInteger) {
 
-					stack.push(elements[i].asText());
-				} else if (elements[i] instanceof ElementVariable) {
-					ValueWrapper value = multistack.peek(elements[i].asText());
+					stack.push(element.asText());
+				} else if (element instanceof ElementVariable) {
+					ValueWrapper value = multistack.peek(element.asText());
 					stack.push(value.getValue());
-				} else if (elements[i] instanceof ElementOperator) {
+				} else if (element instanceof ElementOperator) {
 					try {
 						ValueWrapper value1 = new ValueWrapper(stack.pop());
 						ValueWrapper value2 = new ValueWrapper(stack.pop());
 
-						ValueWrapper result = performOperation(value1, value2, (ElementOperator) elements[i]);
+						ValueWrapper result = performOperation(value1, value2, (ElementOperator) element);
 
 						stack.push(result.getValue());
 					} catch (EmptyStackException e) {
 
 					}
-				} else if (elements[i] instanceof ElementFunction) {
-					Function function = createFunction((ElementFunction) elements[i], stack);
+				} else if (element instanceof ElementFunction) {
+					Function function = ((ElementFunction) element).getFunction();
 
 					if (function == null)
 						throw new IllegalArgumentException("Invalid function.");
 
-					function.execute();
+					function.execute(stack, requestContext);
 				}
 			}
 
-			writeReversedStack(stack);
+			writeStack();
 
 		}
 
-		private void writeReversedStack(Stack<Object> stack) {
-			Stack<Object> help = new Stack<>();
-
-			while (!stack.isEmpty()) {
-				help.push(stack.pop());
-			}
-
-			while (!help.isEmpty()) {
+		private void writeStack() {
+			for (int i = 0, h = stack.size(); i < h; i++) {
 				try {
-					requestContext.write(help.pop().toString());
+					requestContext.write(stack.get(i).toString());
 				} catch (IOException e) {
 					throw new IllegalStateException("Writing text from the text node failed.", e);
 				}
 			}
 		}
 
-		private Function createFunction(ElementFunction elementFunction, Stack<Object> stack) {
-			String name = elementFunction.getName();
-
-			switch (name) {
-			case "@sin":
-				return new SinFunction(stack);
-			case "@decfmt":
-				return new DecfmtFunction(stack);
-			case "@dup":
-				return new DupFunction(stack);
-			case "@swap":
-				return new SwapFunction(stack);
-			case "@setMimeType":
-				return new SetMimeTypeFunction(stack, requestContext);
-			case "@paramGet":
-				return new ParamGetFunction(stack, requestContext);
-			case "@pparamGet":
-				return new PparamgetFunction(stack, requestContext);
-			case "@pparamSet":
-				return new PparamSetFunction(stack, requestContext);
-			case "@pparamDel":
-				return new PparamDelFunction(stack, requestContext);
-			case "@tparamGet":
-				return new TparamGetFunction(stack, requestContext);
-			case "@tparamSet":
-				return new TparamSetFunction(stack, requestContext);
-			case "@tparamDel":
-				return new TparamDelFunction(stack, requestContext);
-			default:
-				return null;
-			}
-		}
-
 		private ValueWrapper performOperation(ValueWrapper value1, ValueWrapper value2, ElementOperator element) {
 			String operation = element.getSymbol();
 
@@ -47,12 +47,7 @@ public class ValueWrapper {
 	 *             {@code Double}, or {code String}
 	 **/
 	public void add(Object incValue) {
-		Object result = calculate(value, incValue, OperationTypes.ADD);
-
-		if (result == null)
-			throw new IllegalArgumentException("Invalid type of operands.");
-
-		value = result;
+		value = perform(value, incValue, OperationTypes.ADD);
 	}
 
 	/**
@@ -67,12 +62,7 @@ public class ValueWrapper {
 	 *             {@code Double}, or {code String}
 	 */
 	public void subtract(Object decValue) {
-		Object result = calculate(value, decValue, OperationTypes.SUB);
-
-		if (result == null)
-			throw new IllegalArgumentException("Invalid type of operands.");
-
-		value = result;
+		value = perform(value, decValue, OperationTypes.SUB);
 	}
 
 	/**
@@ -87,12 +77,7 @@ public class ValueWrapper {
 	 *             {@code Double}, or {code String}
 	 */
 	public void multiply(Object mulValue) {
-		Object result = calculate(value, mulValue, OperationTypes.MUL);
-
-		if (result == null)
-			throw new IllegalArgumentException("Invalid type of operands.");
-
-		value = result;
+		value = perform(value, mulValue, OperationTypes.MUL);
 	}
 
 	/**
@@ -109,12 +94,7 @@ public class ValueWrapper {
 	 *             if dividing by zero is requested (i.e. if the given value is 0)
 	 */
 	public void divide(Object divValue) {
-		Object result = calculate(value, divValue, OperationTypes.DIV);
-
-		if (result == null)
-			throw new IllegalArgumentException("Invalid type of operands.");
-
-		value = result;
+		value = perform(value, divValue, OperationTypes.DIV);
 	}
 
 	/**
@@ -135,12 +115,35 @@ public class ValueWrapper {
 	 *             {@code Double}, or {code String}
 	 */
 	public int numCompare(Object withValue) {
-		Object result = calculate(value, withValue, OperationTypes.COMP);
+		return ((Integer) perform(value, withValue, OperationTypes.COMP)).intValue();
+	}
+
+	/**
+	 * Performs the operation defined with the {@code type} on the given values
+	 * without wrapping them. Result of the comparison is an {@code Integer}.
+	 * 
+	 * @param value1
+	 *            the first value
+	 * @param value2
+	 *            the second value
+	 * @param type
+	 *            type of the operation
+	 * @return result of the operation
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if any of the two values is not valid (i.e. if they are not
+	 *             <code>null</code> or instances of {@code Integer},
+	 *             {@code Double}, or {@code String}
+	 * @throws ArithmeticException
+	 *             if dividing by zero is requested
+	 */
+	public static Object perform(Object value1, Object value2, OperationTypes type) {
+		Object result = calculate(value1, value2, type);
 
 		if (result == null)
 			throw new IllegalArgumentException("Invalid type of operands.");
 
-		return ((Integer) result).intValue();
+		return result;
 	}
 
 	/**
@@ -154,7 +157,7 @@ public class ValueWrapper {
 	 *            type of the operation
 	 * @return result of the operation as an {@code Object} object
 	 */
-	private Object calculate(Object value1, Object value2, OperationTypes type) {
+	private static Object calculate(Object value1, Object value2, OperationTypes type) {
 		Object operand1 = setOperand(value1);
 		Object operand2 = setOperand(value2);
 
@@ -186,7 +189,7 @@ public class ValueWrapper {
 	 * @return object representing double or integer number as {@code Object}
 	 *         object.
 	 */
-	private Object setOperand(Object value) {
+	static Object setOperand(Object value) {
 		if (value == null)
 			return Integer.valueOf(0);
 
@@ -221,11 +224,11 @@ public class ValueWrapper {
 	 *            the second operand
 	 * @return result of the operation
 	 */
-	private Object add(Object operand1, Object operand2) {
+	private static Object add(Object operand1, Object operand2) {
 		if (operand1.getClass() == Integer.class && operand2.getClass() == Integer.class) {
-			return value = Integer.valueOf((Integer) operand1 + (Integer) operand2);
+			return Integer.valueOf((Integer) operand1 + (Integer) operand2);
 		} else {
-			return value = Double.valueOf(((Number) operand1).doubleValue() + ((Number) operand2).doubleValue());
+			return Double.valueOf(((Number) operand1).doubleValue() + ((Number) operand2).doubleValue());
 		}
 	}
 
@@ -238,11 +241,11 @@ public class ValueWrapper {
 	 *            the second operand
 	 * @return result of the operation
 	 */
-	private Object subtract(Object operand1, Object operand2) {
+	private static Object subtract(Object operand1, Object operand2) {
 		if (operand1.getClass() == Integer.class && operand2.getClass() == Integer.class) {
-			return value = Integer.valueOf((Integer) operand1 - (Integer) operand2);
+			return Integer.valueOf((Integer) operand1 - (Integer) operand2);
 		} else {
-			return value = Double.valueOf(((Number) operand1).doubleValue() - ((Number) operand2).doubleValue());
+			return Double.valueOf(((Number) operand1).doubleValue() - ((Number) operand2).doubleValue());
 		}
 	}
 
@@ -255,11 +258,11 @@ public class ValueWrapper {
 	 *            the second operand
 	 * @return result of the operation
 	 */
-	private Object multiply(Object operand1, Object operand2) {
+	private static Object multiply(Object operand1, Object operand2) {
 		if (operand1.getClass() == Integer.class && operand2.getClass() == Integer.class) {
-			return value = Integer.valueOf((Integer) operand1 * (Integer) operand2);
+			return Integer.valueOf((Integer) operand1 * (Integer) operand2);
 		} else {
-			return value = Double.valueOf(((Number) operand1).doubleValue() * ((Number) operand2).doubleValue());
+			return Double.valueOf(((Number) operand1).doubleValue() * ((Number) operand2).doubleValue());
 		}
 	}
 
@@ -275,14 +278,14 @@ public class ValueWrapper {
 	 * @throws ArithmeticException
 	 *             if the zero division is requested
 	 */
-	private Object divide(Object operand1, Object operand2) {
+	private static Object divide(Object operand1, Object operand2) {
 		if (((Number) operand2).doubleValue() == 0)
 			throw new ArithmeticException("Zero division is not supported.");
 
 		if (operand1.getClass() == Integer.class && operand2.getClass() == Integer.class) {
-			return value = Integer.valueOf((Integer) operand1 / (Integer) operand2);
+			return Integer.valueOf((Integer) operand1 / (Integer) operand2);
 		} else {
-			return value = Double.valueOf(((Number) operand1).doubleValue() / ((Number) operand2).doubleValue());
+			return Double.valueOf(((Number) operand1).doubleValue() / ((Number) operand2).doubleValue());
 		}
 	}
 
@@ -297,7 +300,7 @@ public class ValueWrapper {
 	 *         the first operand is greater than the second, value less than 0
 	 *         otherwise
 	 */
-	private Object compare(Object operand1, Object operand2) {
+	private static Object compare(Object operand1, Object operand2) {
 		if (operand1.getClass() == Integer.class && operand2.getClass() == Integer.class) {
 			return Integer.compare((Integer) operand1, (Integer) operand2);
 		} else {
@@ -1,9 +1,9 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
 import java.text.DecimalFormat;
-import java.util.Stack;
 
 import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Represent decfmt function, i.e. decimal formatter function. Arguments are
@@ -14,26 +14,35 @@ import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
  */
 public class DecfmtFunction extends Function {
 
-	/**
-	 * Initializes newly created decfmt function.
-	 * 
-	 * @param stack stack with the arguments
-	 */
-	public DecfmtFunction(Stack<Object> stack) {
-		super(stack);
-	}
-
 	@Override
-	public void execute() {
-		String format = (String) stack.pop();
+	public void execute(OperandStack stack, RequestContext requestContext) {
+		Object format = stack.pop();
 		Object x = stack.pop();
 
-		String xx = new ValueWrapper(x).toString();
+		stack.push(decfmt(x, format));
+	}
 
-		DecimalFormat decimalFormat = new DecimalFormat(format);
+	/**
+	 * Returns the given value formatted with the given decimal format.
+	 * 
+	 * @param x
+	 *            value to be formatted
+	 * @param format
+	 *            pattern of the {@link DecimalFormat}
+	 * @return formatted value
+	 * 
+	 * @throws ClassCastException
+	 *             if the format is not a string
+	 * @throws IllegalArgumentException
+	 *             if the value is not a number
+	 */
+	public static Object decfmt(Object x, Object format) {
+		String pattern = (String) format;
+		String xx = new ValueWrapper(x).toString();
 
-		stack.push(decimalFormat.format(Double.parseDouble(xx)));
+		DecimalFormat decimalFormat = new DecimalFormat(pattern);
 
+		return decimalFormat.format(Double.parseDouble(xx));
 	}
 
 }
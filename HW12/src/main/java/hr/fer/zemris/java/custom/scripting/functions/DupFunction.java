@@ -1,6 +1,6 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Stack;
+import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Represents function that duplicates last value put on the stack so that copy
@@ -11,18 +11,8 @@ import java.util.Stack;
  */
 public class DupFunction extends Function {
 
-	/**
-	 * Initializes newly created dup function.
-	 * 
-	 * @param stack
-	 *            stack with the argument
-	 */
-	public DupFunction(Stack<Object> stack) {
-		super(stack);
-	}
-
 	@Override
-	public void execute() {
+	public void execute(OperandStack stack, RequestContext requestContext) {
 		Object value = stack.peek();
 
 		stack.push(value);
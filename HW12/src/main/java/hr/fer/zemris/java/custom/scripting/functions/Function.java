@@ -1,12 +1,14 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Objects;
-import java.util.Stack;
+import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Represents abstract echo tag function that works with the stack. Functions
  * derived from this class performs specific action. Arguments are reached from
  * the stack.
+ * <p>
+ * Function keeps no state, so one instance registered in the
+ * {@link FunctionRegistry} is shared by all scripts and threads.
  * 
  * @author Filip Karacic
  *
@@ -14,23 +16,13 @@ import java.util.Stack;
 public abstract class Function {
 
 	/**
-	 * Stack used for reaching arguments.
-	 */
-	Stack<Object> stack;
-
-	/**
-	 * Initializes newly created object.
+	 * Performs action for this function. Stack is used for retrieving arguments and
+	 * returning the result.
 	 * 
 	 * @param stack
 	 *            stack with arguments
+	 * @param requestContext
+	 *            context of the web server
 	 */
-	public Function(Stack<Object> stack) {
-		this.stack = Objects.requireNonNull(stack);
-	}
-
-	/**
-	 * Performs action for this function. Stack is used for retrieving arguments and
-	 * returning the result.
-	 */
-	public abstract void execute();
+	public abstract void execute(OperandStack stack, RequestContext requestContext);
 }
@@ -0,0 +1,102 @@
+package hr.fer.zemris.java.custom.scripting.functions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents registry of the echo tag functions by their names, such as
+ * <code>@sin</code>. Registry initially contains the built-in functions and
+ * other functions can be registered, or the built-in ones replaced, under any
+ * name starting with '@'. Name of the function in the script is resolved once
+ * for the parsed document, so functions should be registered before the
+ * scripts using them are parsed.
+ * 
+ * @author Filip Karacic
+ *
+ */
+public final class FunctionRegistry {
+
+	/**
+	 * Built-in functions by their names.
+	 */
+	private static final Map<String, Function> BUILT_IN = new HashMap<>();
+
+	static {
+		BUILT_IN.put("@sin", new SinFunction());
+		BUILT_IN.put("@decfmt", new DecfmtFunction());
+		BUILT_IN.put("@dup", new DupFunction());
+		BUILT_IN.put("@swap", new SwapFunction());
+		BUILT_IN.put("@setMimeType", new SetMimeTypeFunction());
+		BUILT_IN.put("@paramGet", new ParamGetFunction());
+		BUILT_IN.put("@pparamGet", new PparamgetFunction());
+		BUILT_IN.put("@pparamSet", new PparamSetFunction());
+		BUILT_IN.put("@pparamDel", new PparamDelFunction());
+		BUILT_IN.put("@tparamGet", new TparamGetFunction());
+		BUILT_IN.put("@tparamSet", new TparamSetFunction());
+		BUILT_IN.put("@tparamDel", new TparamDelFunction());
+	}
+
+	/**
+	 * Registered functions by their names.
+	 */
+	private static final Map<String, Function> FUNCTIONS = new ConcurrentHashMap<>(BUILT_IN);
+
+	/**
+	 * Constructor is private since registry has only static methods.
+	 */
+	private FunctionRegistry() {
+	}
+
+	/**
+	 * Registers the given function under the given name, replacing the function
+	 * previously registered under that name.
+	 * 
+	 * @param name
+	 *            name of the function starting with '@'
+	 * @param function
+	 *            function to be registered, which must not keep any state
+	 * 
+	 * @throws NullPointerException
+	 *             if the name or the function is <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             if the name does not start with '@' or has no other
+	 *             characters
+	 */
+	public static void register(String name, Function function) {
+		Objects.requireNonNull(name, "Name of the function cannot be null.");
+		Objects.requireNonNull(function, "Function cannot be null.");
+
+		if (name.length() < 2 || name.charAt(0) != '@')
+			throw new IllegalArgumentException("Name of the function must start with '@'. Was: " + name);
+
+		FUNCTIONS.put(name, function);
+	}
+
+	/**
+	 * Returns function registered under the given name or <code>null</code> if
+	 * there is no such function.
+	 * 
+	 * @param name
+	 *            name of the function
+	 * @return registered function or <code>null</code>
+	 */
+	public static Function get(String name) {
+		return FUNCTIONS.get(name);
+	}
+
+	/**
+	 * Returns <code>true</code> if the given function is the built-in function
+	 * with the given name.
+	 * 
+	 * @param name
+	 *            name of the function
+	 * @param function
+	 *            function to be checked
+	 * @return <code>true</code> if the function is built in under that name
+	 */
+	public static boolean isBuiltIn(String name, Function function) {
+		return function != null && BUILT_IN.get(name) == function;
+	}
+}
@@ -0,0 +1,120 @@
+package hr.fer.zemris.java.custom.scripting.functions;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * Represents stack of the operands of the echo tag. Stack is backed by an
+ * array which grows as needed and is not synchronized, so it is meant to be
+ * used by one thread and reused for every echo tag after being cleared.
+ * 
+ * @author Filip Karacic
+ *
+ */
+public class OperandStack {
+
+	/**
+	 * Initial capacity of the stack.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Elements of the stack, the first one on the bottom.
+	 */
+	private Object[] elements = new Object[INITIAL_CAPACITY];
+	/**
+	 * Number of elements on the stack.
+	 */
+	private int size;
+
+	/**
+	 * Pushes the given value on the top of the stack.
+	 * 
+	 * @param value
+	 *            value to be pushed
+	 */
+	public void push(Object value) {
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, 2 * size);
+		}
+
+		elements[size++] = value;
+	}
+
+	/**
+	 * Removes the value from the top of the stack and returns it.
+	 * 
+	 * @return value from the top of the stack
+	 * 
+	 * @throws EmptyStackException
+	 *             if the stack is empty
+	 */
+	public Object pop() {
+		if (size == 0)
+			throw new EmptyStackException();
+
+		Object value = elements[--size];
+		elements[size] = null;
+
+		return value;
+	}
+
+	/**
+	 * Returns the value from the top of the stack without removing it.
+	 * 
+	 * @return value from the top of the stack
+	 * 
+	 * @throws EmptyStackException
+	 *             if the stack is empty
+	 */
+	public Object peek() {
+		if (size == 0)
+			throw new EmptyStackException();
+
+		return elements[size - 1];
+	}
+
+	/**
+	 * Returns the value at the given position counted from the bottom of the
+	 * stack.
+	 * 
+	 * @param index
+	 *            position of the value
+	 * @return value at the given position
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             if the position is not on the stack
+	 */
+	public Object get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + " is not on the stack of size " + size + ".");
+
+		return elements[index];
+	}
+
+	/**
+	 * Returns number of values on the stack.
+	 * 
+	 * @return number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns <code>true</code> if there are no values on the stack.
+	 * 
+	 * @return <code>true</code> if the stack is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all values from the stack.
+	 */
+	public void clear() {
+		Arrays.fill(elements, 0, size, null);
+		size = 0;
+	}
+}
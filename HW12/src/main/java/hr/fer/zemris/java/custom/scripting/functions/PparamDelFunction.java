@@ -1,7 +1,5 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Stack;
-
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
@@ -11,31 +9,25 @@ import hr.fer.zemris.java.webserver.RequestContext;
  *
  */
 public class PparamDelFunction extends Function {
-	/**
-	 * Context of the web server.
-	 */
-	private RequestContext requestContext;
+
+	@Override
+	public void execute(OperandStack stack, RequestContext requestContext) {
+		pparamDel(requestContext, stack.pop());
+	}
 
 	/**
-	 * Constructor for the function of deleting the persistent parameter within the
-	 * given name.
+	 * Removes the persistent parameter with the given name.
 	 * 
-	 * @param stack
-	 *            stack with the arguments
 	 * @param requestContext
 	 *            context of the web server
+	 * @param name
+	 *            name of the parameter
+	 * 
+	 * @throws ClassCastException
+	 *             if the name is not a string
 	 */
-	public PparamDelFunction(Stack<Object> stack, RequestContext requestContext) {
-		super(stack);
-		
-		this.requestContext = requestContext;
-	}
-
-	@Override
-	public void execute() {
-		String name = (String) stack.pop();
-		
-		requestContext.removePersistentParameter(name);
+	public static void pparamDel(RequestContext requestContext, Object name) {
+		requestContext.removePersistentParameter((String) name);
 	}
 
 }
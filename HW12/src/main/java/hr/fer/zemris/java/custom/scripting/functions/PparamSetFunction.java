@@ -1,7 +1,5 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Stack;
-
 import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
 import hr.fer.zemris.java.webserver.RequestContext;
 
@@ -14,29 +12,33 @@ import hr.fer.zemris.java.webserver.RequestContext;
  */
 public class PparamSetFunction extends Function {
 
-	/**
-	 * Context of the web server.
-	 */
-	private RequestContext requestContext;
+	@Override
+	public void execute(OperandStack stack, RequestContext requestContext) {
+		Object name = stack.pop();
+		Object value = stack.pop();
+
+		pparamSet(requestContext, value, name);
+	}
 
 	/**
-	 * Initializes newly created persistent parameter setting function.
+	 * Sets the persistent parameter with the given name to the given value.
 	 * 
-	 * @param stack stack with the arguments
-	 * @param requestContext context of the web server
+	 * @param requestContext
+	 *            context of the web server
+	 * @param value
+	 *            value of the parameter
+	 * @param name
+	 *            name of the parameter
+	 * 
+	 * @throws ClassCastException
+	 *             if the name is not a string
+	 * @throws IllegalArgumentException
+	 *             if the value is not a number
 	 */
-	public PparamSetFunction(Stack<Object> stack, RequestContext requestContext) {
-		super(stack);
-
-		this.requestContext = requestContext;
-	}
-
-	@Override
-	public void execute() {
-		String name = (String) stack.pop();
-		String value = new ValueWrapper(stack.pop()).toString();
+	public static void pparamSet(RequestContext requestContext, Object value, Object name) {
+		String key = (String) name;
 
-		requestContext.setPersistentParameter(name, value);
+		requestContext.setPersistentParameter(key, new ValueWrapper(value).toString());
 	}
 
 }
@@ -1,7 +1,5 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Stack;
-
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
@@ -12,33 +10,34 @@ import hr.fer.zemris.java.webserver.RequestContext;
  *
  */
 public class PparamgetFunction extends Function {
+
+	@Override
+	public void execute(OperandStack stack, RequestContext requestContext) {
+		Object defValue = stack.pop();
+		Object name = stack.pop();
+
+		stack.push(pparamGet(requestContext, name, defValue));
+	}
+
 	/**
-	 * Context of the web server.
-	 */
-	private RequestContext requestContext;
-	
-	/**
-	 * Initializes newly created persistent parameter reaching function.
+	 * Returns value of the persistent parameter with the given name or the given default
+	 * value if there is no such parameter.
 	 * 
-	 * @param stack
-	 *            stack with the arguments
 	 * @param requestContext
 	 *            context of the web server
+	 * @param name
+	 *            name of the parameter
+	 * @param defValue
+	 *            default value
+	 * @return value of the parameter or the default value
+	 * 
+	 * @throws ClassCastException
+	 *             if the name or the default value is not a string
 	 */
-	public PparamgetFunction(Stack<Object> stack, RequestContext requestContext) {
-		super(stack);
-		
-		this.requestContext = requestContext;
-	}
+	public static Object pparamGet(RequestContext requestContext, Object name, Object defValue) {
+		String value = requestContext.getPersistentParameter((String) name);
 
-	@Override
-	public void execute() {
-		String defValue = (String) stack.pop();
-		String name = (String) stack.pop();
-		
-		String value = requestContext.getPersistentParameter(name);
-		
-		stack.push(value == null ? defValue : value);
+		return value == null ? (String) defValue : value;
 	}
 
 }
@@ -1,7 +1,5 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Stack;
-
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
@@ -13,28 +11,24 @@ import hr.fer.zemris.java.webserver.RequestContext;
  */
 public class SetMimeTypeFunction extends Function {
 
-	/**
-	 * Context of the web server.
-	 */
-	private RequestContext requestContext;
+	@Override
+	public void execute(OperandStack stack, RequestContext requestContext) {
+		setMimeType(requestContext, stack.pop());
+	}
 
 	/**
-	 * Initializes newly created set mime type function object.
+	 * Sets mime type of the response to the given value.
+	 * 
+	 * @param requestContext
+	 *            context of the web server
+	 * @param mime
+	 *            mime type
 	 * 
-	 * @param stack stack with the argument
-	 * @param requestContext context of the web server
+	 * @throws ClassCastException
+	 *             if the mime type is not a string
 	 */
-	public SetMimeTypeFunction(Stack<Object> stack, RequestContext requestContext) {
-		super(stack);
-
-		this.requestContext = requestContext;
-	}
-
-	@Override
-	public void execute() {
-		String mime = (String) stack.pop();
-
-		requestContext.setMimeType(mime);
+	public static void setMimeType(RequestContext requestContext, Object mime) {
+		requestContext.setMimeType((String) mime);
 	}
 
 }
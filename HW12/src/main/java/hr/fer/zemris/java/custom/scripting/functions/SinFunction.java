@@ -1,8 +1,7 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Stack;
-
 import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Represents sine function. Argument is interpreted in degrees.
@@ -12,22 +11,27 @@ import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
  */
 public class SinFunction extends Function {
 
+	@Override
+	public void execute(OperandStack stack, RequestContext requestContext) {
+		stack.push(sin(stack.pop()));
+	}
+
 	/**
-	 * Initializes newly created sine function object.
+	 * Returns sine of the given value in degrees.
+	 * 
+	 * @param x
+	 *            value in degrees
+	 * @return sine of the value
 	 * 
-	 * @param stack stack with the argument
+	 * @throws IllegalArgumentException
+	 *             if the value is not a number
 	 */
-	public SinFunction(Stack<Object> stack) {
-		super(stack);
-	}
-
-	@Override
-	public void execute() {
-		ValueWrapper value = new ValueWrapper(stack.pop());
+	public static Object sin(Object x) {
+		ValueWrapper value = new ValueWrapper(x);
 		double degrees = Double.parseDouble(value.toString());
 		double radians = degrees * Math.PI / 180;
 		double result = Math.sin(radians);
-		
-		stack.push(new ValueWrapper(result).getValue());
+
+		return new ValueWrapper(result).getValue();
 	}
 }
@@ -1,6 +1,6 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Stack;
+import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Represents function used for swapping top two objects on the stack so that
@@ -11,18 +11,8 @@ import java.util.Stack;
  */
 public class SwapFunction extends Function {
 
-	/**
-	 * Initializes newly created swap function.
-	 * 
-	 * @param stack
-	 *            stack with arguments
-	 */
-	public SwapFunction(Stack<Object> stack) {
-		super(stack);
-	}
-
 	@Override
-	public void execute() {
+	public void execute(OperandStack stack, RequestContext requestContext) {
 		Object value1 = stack.pop();
 		Object value2 = stack.pop();
 
@@ -1,6 +1,5 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Stack;
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
@@ -11,30 +10,24 @@ import hr.fer.zemris.java.webserver.RequestContext;
  */
 public class TparamDelFunction extends Function {
 
-	/**
-	 * Context of the web server.
-	 */
-	private RequestContext requestContext;
+	@Override
+	public void execute(OperandStack stack, RequestContext requestContext) {
+		tparamDel(requestContext, stack.pop());
+	}
 
 	/**
-	 * Constructor for the function of deleting the temporary parameter within the
-	 * given name.
+	 * Removes the temporary parameter with the given name.
 	 * 
-	 * @param stack
-	 *            stack with the arguments
 	 * @param requestContext
 	 *            context of the web server
+	 * @param name
+	 *            name of the parameter
+	 * 
+	 * @throws ClassCastException
+	 *             if the name is not a string
 	 */
-	public TparamDelFunction(Stack<Object> stack, RequestContext requestContext) {
-		super(stack);
-
-		this.requestContext = requestContext;
-	}
-
-	@Override
-	public void execute() {
-		String name = (String) stack.pop();
-		requestContext.removeTemporaryParameter(name);
+	public static void tparamDel(RequestContext requestContext, Object name) {
+		requestContext.removeTemporaryParameter((String) name);
 	}
 
 }
@@ -1,7 +1,5 @@
 package hr.fer.zemris.java.custom.scripting.functions;
 
-import java.util.Stack;
-
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
@@ -13,33 +11,33 @@ import hr.fer.zemris.java.webserver.RequestContext;
  */
 public class TparamGetFunction extends Function {
 
-	/**
-	 * Context of the web server.
-	 */
-	private RequestContext requestContext;
+	@Override
+	public void execute(OperandStack stack, RequestContext requestContext) {
+		Object defValue = stack.pop();
+		Object name = stack.pop();
+
+		stack.push(tparamGet(requestContext, name, defValue));
+	}
 
 	/**
-	 * Initializes newly created temporary parameter reaching function.
+	 * Returns value of the temporary parameter with the given name or the given default
+	 * value if there is no such parameter.
 	 * 
-	 * @param stack
-	 *            stack with the arguments
 	 * @param requestContext
 	 *            context of the web server
+	 * @param name
+	 *            name of the parameter
+	 * @param defValue
+	 *            default value
+	 * @return value of the parameter or the default value
+	 * 
+	 * @throws ClassCastException
+	 *             if the name or the default value is not a string
 	 */
-	public TparamGetFunction(Stack<Object> stack, RequestContext requestContext) {
-		super(stack);
-
-		this.requestContext = requestContext;
-	}
-
-	@Override
-	public void execute() {
-		String defValue = (String) stack.pop();
-		String name = (String) stack.pop();
-
-		String value = requestContext.getTemporaryParameter(name);
+	public static Object tparamGet(RequestContext requestContext, Object name, Object defValue) {
+		String value = requestContext.getTemporaryParameter((String) name);
 
-		stack.push(value == null ? defValue : value);
+		return value == null ? (String) defValue : value;
 	}
 
 }
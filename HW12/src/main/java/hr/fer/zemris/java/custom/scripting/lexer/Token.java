@@ -1,8 +1,13 @@
 package hr.fer.zemris.java.custom.scripting.lexer;
 
+import java.nio.CharBuffer;
 import java.util.Objects;
 
 import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
 import hr.fer.zemris.java.custom.scripting.lexer.TokenType;
 
 /**
@@ -10,7 +15,11 @@ import hr.fer.zemris.java.custom.scripting.lexer.TokenType;
  * lexical token or simply token is a string with an assigned and thus
  * identified meaning. It is structured as a pair consisting of a token name and
  * an optional token value.
- * 
+ * <p>
+ * Token created by the {@link Lexer} is a view of the characters of the text
+ * it was created from, given by their offset and length. Value of such token
+ * is created from the characters when it is first requested.
+ *
  * @author Filip Karacic
  *
  */
@@ -24,36 +33,173 @@ public class Token {
 	 * value of this token representing an expression.
 	 */
 	private Element value;
+	/**
+	 * Characters this token is a view of or <code>null</code> if the token is
+	 * not a view.
+	 */
+	private char[] source;
+	/**
+	 * Index of the first character of this token in the source.
+	 */
+	private int start;
+	/**
+	 * Number of characters of this token.
+	 */
+	private int length;
+	/**
+	 * Offset of the first character of this token in the text.
+	 */
+	private int offset;
+	/**
+	 * Flag that shows whether the characters contain escapes.
+	 */
+	private boolean escaped;
 
 	/**
 	 * Initializes newly created object representing a token.
-	 * 
+	 *
 	 * @param type
 	 *            type of this token
 	 * @param value
 	 *            value of this token
 	 */
 	public Token(TokenType type, Element value) {
+		this(type, value, null, 0, 0, -1, false);
+	}
+
+	/**
+	 * Initializes newly created token which is a view of the given characters.
+	 *
+	 * @param type
+	 *            type of this token
+	 * @param value
+	 *            value of this token or <code>null</code> if it is created from
+	 *            the characters
+	 * @param source
+	 *            characters this token is a view of
+	 * @param start
+	 *            index of the first character of this token in the source
+	 * @param length
+	 *            number of characters of this token
+	 * @param offset
+	 *            offset of the first character of this token in the text
+	 * @param escaped
+	 *            <code>true</code> if the characters contain escapes
+	 */
+	Token(TokenType type, Element value, char[] source, int start, int length, int offset, boolean escaped) {
 		this.type = Objects.requireNonNull(type);
 		this.value = value;
+		this.source = source;
+		this.start = start;
+		this.length = length;
+		this.offset = offset;
+		this.escaped = escaped;
 	}
 
 	/**
 	 * Returns value of this token.
-	 * 
+	 *
 	 * @return value of this token
 	 */
 	public Element getValue() {
+		if (value == null && source != null) {
+			value = createValue();
+		}
+
 		return value;
 	}
 
 	/**
 	 * Returns type of this token.
-	 * 
+	 *
 	 * @return type of this token
 	 */
 	public TokenType getType() {
 		return type;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Returns offset of the first character of this token in the text or -1 if
+	 * the token was not created by the lexer. Offset of the string is the
+	 * offset of the first character after the opening quote.
+	 *
+	 * @return offset of this token or -1
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns number of characters of this token in the text. Quotes of the
+	 * string are not counted.
+	 *
+	 * @return number of characters of this token
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns read-only view of the characters of this token as they are in the
+	 * text, with the escapes, or <code>null</code> if the token was not created
+	 * by the lexer.
+	 *
+	 * @return characters of this token or <code>null</code>
+	 */
+	public CharSequence getText() {
+		if (source == null)
+			return null;
+
+		return CharBuffer.wrap(source, start, length).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Creates value of this token from its characters.
+	 *
+	 * @return value of this token
+	 */
+	private Element createValue() {
+		switch (type) {
+		case TEXT:
+		case STRING:
+			return new ElementString(escaped ? unescape() : new String(source, start, length));
+		case VARIABLE:
+			return new ElementVariable(new String(source, start, length));
+		case FUNCTION:
+			return new ElementFunction(new String(source, start, length));
+		case OPERATOR:
+			return new ElementOperator(new String(source, start, length));
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Returns characters of this token with the escapes replaced by the
+	 * characters they stand for. Escapes are checked by the lexer.
+	 *
+	 * @return characters without the escapes
+	 */
+	private String unescape() {
+		StringBuilder sb = new StringBuilder(length);
+
+		for (int i = start, end = start + length; i < end; i++) {
+			char c = source[i];
+
+			if (c == '\\') {
+				c = source[++i];
+
+				if (type == TokenType.STRING && c == 'r') {
+					c = '\r';
+				} else if (type == TokenType.STRING && c == 'n') {
+					c = '\n';
+				}
+			}
+
+			sb.append(c);
+		}
+
+		return sb.toString();
+	}
+
+}
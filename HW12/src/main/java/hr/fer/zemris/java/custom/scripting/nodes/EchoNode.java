@@ -33,12 +33,35 @@ public class EchoNode extends Node {
 	}
 
 	/**
-	 * Returns elements of this node.
+	 * Returns copy of the elements of this node.
 	 * 
 	 * @return all of the elements of this node
 	 */
 	public Element[] getElements() {
-		return elements;
+		return Arrays.copyOf(elements, elements.length);
+	}
+
+	/**
+	 * Returns number of elements of this node.
+	 * 
+	 * @return number of elements of this node
+	 */
+	public int numberOfElements() {
+		return elements.length;
+	}
+
+	/**
+	 * Returns element at the specified index.
+	 * 
+	 * @param index
+	 *            index of the element
+	 * @return the element at the specified index
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in [0, size-1]
+	 */
+	public Element getElement(int index) {
+		return elements[index];
 	}
 	
 	public void accept(INodeVisitor visitor) {
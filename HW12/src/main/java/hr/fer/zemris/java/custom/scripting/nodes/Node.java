@@ -1,6 +1,7 @@
 package hr.fer.zemris.java.custom.scripting.nodes;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -15,6 +16,10 @@ public abstract class Node {
 	 * Children of this node.
 	 */
 	List<Node> children;
+	/**
+	 * Indicator whether this node can still be changed.
+	 */
+	private boolean unmodifiable;
 
 	/**
 	 * Initialize newly created object representing a node of document.
@@ -31,6 +36,9 @@ public abstract class Node {
 	public void addChildNode(Node child) {
 		Objects.requireNonNull(child);
 
+		if (unmodifiable)
+			throw new UnsupportedOperationException("Node is unmodifiable.");
+
 		if (children == null) {
 			children = new ArrayList<>();
 		}
@@ -67,6 +75,25 @@ public abstract class Node {
 		return (Node) children.get(index);
 	}
 
+	/**
+	 * Makes this node and all of its descendants unmodifiable, so that the tree
+	 * can be safely shared between threads.
+	 */
+	public void makeUnmodifiable() {
+		if (unmodifiable)
+			return;
+
+		if (children != null) {
+			children = Collections.unmodifiableList(new ArrayList<>(children));
+
+			for (Node child : children) {
+				child.makeUnmodifiable();
+			}
+		}
+
+		unmodifiable = true;
+	}
+
 	/**
 	 * Represents function of accepting node and performing specific action.
 	 * 
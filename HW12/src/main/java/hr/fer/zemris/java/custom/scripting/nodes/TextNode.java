@@ -1,5 +1,6 @@
 package hr.fer.zemris.java.custom.scripting.nodes;
 
+import java.nio.charset.Charset;
 import java.util.Objects;
 
 /**
@@ -14,6 +15,11 @@ public class TextNode extends Node {
 	 * Textual data of this node.
 	 */
 	private String text;
+	/**
+	 * Text encoded with the charset it was last requested with, or
+	 * <code>null</code> if it has not been requested.
+	 */
+	private volatile EncodedText encoded;
 
 	/**
 	  * Initialize newly created {@code TextNode} object so that it
@@ -33,8 +39,56 @@ public class TextNode extends Node {
 	public String getText() {
 		return text;
 	}
+
+	/**
+	 * Returns textual data of this node encoded with the given charset. Encoded
+	 * bytes are kept, so text of the parsed document which is executed many
+	 * times is encoded only once as long as the same charset is requested.
+	 * Returned array is shared and must not be modified.
+	 * 
+	 * @param charset
+	 *            charset used for encoding
+	 * @return encoded textual data
+	 */
+	public byte[] getBytes(Charset charset) {
+		EncodedText encoded = this.encoded;
+
+		if (encoded == null || !encoded.charset.equals(charset)) {
+			encoded = new EncodedText(charset, text.getBytes(charset));
+			this.encoded = encoded;
+		}
+
+		return encoded.bytes;
+	}
 	
 	public void accept(INodeVisitor visitor) {
 		visitor.visitTextNode(this);
 	}
+
+	/**
+	 * Represents text encoded with the charset.
+	 */
+	private static class EncodedText {
+		/**
+		 * Charset used for encoding.
+		 */
+		private final Charset charset;
+		/**
+		 * Encoded text.
+		 */
+		private final byte[] bytes;
+
+		/**
+		 * Initializes newly created encoded text.
+		 * 
+		 * @param charset
+		 *            charset used for encoding
+		 * @param bytes
+		 *            encoded text
+		 */
+		public EncodedText(Charset charset, byte[] bytes) {
+			this.charset = charset;
+			this.bytes = bytes;
+		}
+	}
 }
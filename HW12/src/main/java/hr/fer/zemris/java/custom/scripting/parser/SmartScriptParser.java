@@ -1,5 +1,7 @@
 package hr.fer.zemris.java.custom.scripting.parser;
 
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.EmptyStackException;
 import java.util.List;
@@ -69,13 +71,43 @@ public class SmartScriptParser {
 	 *             if {@code text} is {@code null}
 	 */
 	public SmartScriptParser(String text) {
-		Objects.requireNonNull(text);
+		this(new Lexer(Objects.requireNonNull(text)));
+	}
 
-		lexer = new Lexer(text);
+	/**
+	 * Initializes newly created parser of the text analysed by the given lexer.
+	 * 
+	 * @param lexer
+	 *            lexer of the text to be parsed
+	 * @throws SmartScriptParserException
+	 *             if invalid text was given for parsing.
+	 */
+	private SmartScriptParser(Lexer lexer) {
+		this.lexer = lexer;
 		stack = new Stack<>();
 
 		stack.push(new DocumentNode());
 		parse();
+
+		getDocumentNode().makeUnmodifiable();
+	}
+
+	/**
+	 * Returns parser of the text read from the given reader. Text is read as it
+	 * is parsed, so it is never held in memory whole. Reader is not closed.
+	 * 
+	 * @param reader
+	 *            reader of the text to be parsed
+	 * @return parser of the text
+	 * @throws SmartScriptParserException
+	 *             if invalid text was given for parsing.
+	 * @throws UncheckedIOException
+	 *             if error while reading the text occurs
+	 * @throws NullPointerException
+	 *             if {@code reader} is {@code null}
+	 */
+	public static SmartScriptParser fromReader(Reader reader) {
+		return new SmartScriptParser(Lexer.fromReader(Objects.requireNonNull(reader)));
 	}
 
 	/**
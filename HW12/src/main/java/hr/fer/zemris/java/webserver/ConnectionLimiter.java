@@ -0,0 +1,86 @@
+package hr.fer.zemris.java.webserver;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents limit of the number of connections which one client address can
+ * have open at once. Only addresses with open connections are remembered.
+ *
+ * @author Filip Karacic
+ *
+ */
+class ConnectionLimiter {
+
+	/**
+	 * Maximal number of open connections per address, not positive if there is
+	 * no limit.
+	 */
+	private final int maxPerClient;
+	/**
+	 * Numbers of open connections mapped by the client address.
+	 */
+	private final Map<InetAddress, Integer> connections = new ConcurrentHashMap<>();
+
+	/**
+	 * Initializes newly created limiter.
+	 *
+	 * @param maxPerClient
+	 *            maximal number of open connections per address, not positive if
+	 *            there is no limit
+	 */
+	public ConnectionLimiter(int maxPerClient) {
+		this.maxPerClient = maxPerClient;
+	}
+
+	/**
+	 * Counts new connection of the given address if the address has not reached
+	 * the limit. Every counted connection must be released with
+	 * {@link #release(InetAddress)} once it is closed.
+	 *
+	 * @param address
+	 *            address of the client
+	 * @return <code>true</code> if the connection is counted,
+	 *         <code>false</code> if the address has reached the limit
+	 */
+	public boolean tryAcquire(InetAddress address) {
+		if (maxPerClient <= 0 || address == null)
+			return true;
+
+		boolean[] acquired = new boolean[1];
+		connections.compute(address, (key, count) -> {
+			int current = count == null ? 0 : count;
+			if (current >= maxPerClient)
+				return count;
+
+			acquired[0] = true;
+			return current + 1;
+		});
+
+		return acquired[0];
+	}
+
+	/**
+	 * Releases connection of the given address counted with
+	 * {@link #tryAcquire(InetAddress)}.
+	 *
+	 * @param address
+	 *            address of the client
+	 */
+	public void release(InetAddress address) {
+		if (maxPerClient <= 0 || address == null)
+			return;
+
+		connections.computeIfPresent(address, (key, count) -> count <= 1 ? null : count - 1);
+	}
+
+	/**
+	 * Returns number of addresses with open connections.
+	 *
+	 * @return number of addresses with open connections
+	 */
+	public int size() {
+		return connections.size();
+	}
+}
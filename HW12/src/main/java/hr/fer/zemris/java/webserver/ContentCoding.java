@@ -0,0 +1,216 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Represents content coding with which the body of the response can be
+ * compressed. Coding is chosen according to the 'Accept-Encoding' header line
+ * of the request and only bodies of the textual types are compressed.
+ *
+ * @author Filip Karacic
+ *
+ */
+public enum ContentCoding {
+	/**
+	 * Coding of the gzip file format.
+	 */
+	GZIP("gzip"),
+	/**
+	 * Coding of the zlib format.
+	 */
+	DEFLATE("deflate");
+
+	/**
+	 * Name of the coding in the header.
+	 */
+	private final String name;
+
+	/**
+	 * Initializes newly created coding.
+	 *
+	 * @param name
+	 *            name of the coding in the header
+	 */
+	private ContentCoding(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns name of the coding in the header.
+	 *
+	 * @return name of the coding
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns stream which compresses bytes written to it with this coding and
+	 * writes them to the given stream. Flushing the returned stream flushes the
+	 * compressed bytes written so far. Closing it finishes the compressed data
+	 * and closes the given stream.
+	 *
+	 * @param os
+	 *            stream to which the compressed bytes are written
+	 * @param level
+	 *            compression level, from 0 to 9 or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}
+	 * @return stream which compresses the bytes
+	 *
+	 * @throws IOException
+	 *             if error while writing the beginning of the compressed data
+	 *             occurs
+	 */
+	public OutputStream wrap(OutputStream os, int level) throws IOException {
+		if (this == GZIP)
+			return new LeveledGZIPOutputStream(os, level);
+
+		return new DeflaterOutputStream(os, new Deflater(level), true) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					// deflater given to the stream is not ended by it
+					def.end();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Compresses the given bytes with this coding.
+	 *
+	 * @param data
+	 *            bytes to be compressed
+	 * @param offset
+	 *            position of the first byte
+	 * @param len
+	 *            number of bytes
+	 * @param level
+	 *            compression level, from 0 to 9 or
+	 *            {@link Deflater#DEFAULT_COMPRESSION}
+	 * @return compressed bytes
+	 */
+	public byte[] encode(byte[] data, int offset, int len, int level) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(len / 2 + 64);
+
+		try (OutputStream os = wrap(bos, level)) {
+			os.write(data, offset, len);
+		} catch (IOException e) {
+			// writing to the memory does not fail
+			throw new UncheckedIOException(e);
+		}
+
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Returns coding preferred by the client according to the given value of the
+	 * 'Accept-Encoding' header line or <code>null</code> if the client does not
+	 * accept any of the codings. Codings are ordered by their quality values and
+	 * gzip is preferred if they are equal.
+	 *
+	 * @param acceptEncoding
+	 *            value of the 'Accept-Encoding' header line, can be
+	 *            <code>null</code>
+	 * @return preferred coding or <code>null</code>
+	 */
+	public static ContentCoding negotiate(String acceptEncoding) {
+		if (acceptEncoding == null)
+			return null;
+
+		double[] quality = { -1, -1 };
+		double any = -1;
+
+		for (String element : acceptEncoding.split(",")) {
+			String[] parts = element.split(";");
+			String name = parts[0].trim().toLowerCase(Locale.ROOT);
+			double q = 1;
+
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim();
+				if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+					try {
+						q = Double.parseDouble(parameter.substring(2));
+					} catch (NumberFormatException e) {
+						q = 0;
+					}
+				}
+			}
+
+			if (name.equals("*")) {
+				any = q;
+			} else if (name.equals("gzip") || name.equals("x-gzip")) {
+				quality[GZIP.ordinal()] = q;
+			} else if (name.equals("deflate")) {
+				quality[DEFLATE.ordinal()] = q;
+			}
+		}
+
+		ContentCoding preferred = null;
+		double best = 0;
+		for (ContentCoding coding : values()) {
+			double q = quality[coding.ordinal()] == -1 ? any : quality[coding.ordinal()];
+
+			if (q > best) {
+				best = q;
+				preferred = coding;
+			}
+		}
+
+		return preferred;
+	}
+
+	/**
+	 * Returns <code>true</code> if bodies of the given type are worth
+	 * compressing. Those are the textual types, such as HTML, CSS, JavaScript,
+	 * JSON and XML.
+	 *
+	 * @param mimeType
+	 *            type of the body, can be <code>null</code>
+	 * @return <code>true</code> if bodies of the given type are compressed
+	 */
+	public static boolean isCompressible(String mimeType) {
+		if (mimeType == null)
+			return false;
+
+		int semicolon = mimeType.indexOf(';');
+		String type = (semicolon == -1 ? mimeType : mimeType.substring(0, semicolon)).trim()
+				.toLowerCase(Locale.ROOT);
+
+		return type.startsWith("text/") || type.endsWith("+xml") || type.endsWith("+json")
+				|| type.equals("application/javascript") || type.equals("application/json")
+				|| type.equals("application/xml");
+	}
+
+	/**
+	 * Represents gzip stream with the given compression level.
+	 *
+	 */
+	private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+		/**
+		 * Initializes newly created stream.
+		 *
+		 * @param os
+		 *            stream to which the compressed bytes are written
+		 * @param level
+		 *            compression level
+		 *
+		 * @throws IOException
+		 *             if error while writing the gzip header occurs
+		 */
+		public LeveledGZIPOutputStream(OutputStream os, int level) throws IOException {
+			super(os, true);
+			def.setLevel(level);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Represents one part of the 'multipart/form-data' request body, either a form
+ * field or an uploaded file. Content of the part read with
+ * {@link RequestContext#nextPart()} is streamed from the connection and can be
+ * read only once, before the next part is requested. Content of the part read
+ * with {@link RequestContext#getParts()} is kept in memory if it is small and
+ * in a temporary file otherwise, and can be read any number of times until the
+ * request is served.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class FormPart {
+
+	/**
+	 * Name of the form field.
+	 */
+	private final String name;
+	/**
+	 * Name of the uploaded file or <code>null</code> if the part is not a file.
+	 */
+	private final String fileName;
+	/**
+	 * Type of the content or <code>null</code> if it is not given.
+	 */
+	private final String contentType;
+	/**
+	 * Stream of the content from the connection or <code>null</code> if the
+	 * content is stored.
+	 */
+	private final InputStream stream;
+	/**
+	 * Content kept in memory or <code>null</code> if it is not in memory.
+	 */
+	private final byte[] data;
+	/**
+	 * Temporary file with the content or <code>null</code> if it is not in the
+	 * file.
+	 */
+	private final Path file;
+	/**
+	 * Size of the content in bytes or -1 if it is not known.
+	 */
+	private final long size;
+
+	/**
+	 * Initializes newly created part whose content is streamed from the
+	 * connection.
+	 *
+	 * @param name
+	 *            name of the form field
+	 * @param fileName
+	 *            name of the uploaded file or <code>null</code>
+	 * @param contentType
+	 *            type of the content or <code>null</code>
+	 * @param stream
+	 *            stream of the content
+	 */
+	FormPart(String name, String fileName, String contentType, InputStream stream) {
+		this(name, fileName, contentType, stream, null, null, -1);
+	}
+
+	/**
+	 * Initializes newly created part whose content is stored either in memory
+	 * or in the temporary file.
+	 *
+	 * @param part
+	 *            streamed part whose content is stored
+	 * @param data
+	 *            content in memory or <code>null</code>
+	 * @param file
+	 *            temporary file with the content or <code>null</code>
+	 * @param size
+	 *            size of the content in bytes
+	 */
+	FormPart(FormPart part, byte[] data, Path file, long size) {
+		this(part.name, part.fileName, part.contentType, null, data, file, size);
+	}
+
+	/**
+	 * Initializes newly created part.
+	 *
+	 * @param name
+	 *            name of the form field
+	 * @param fileName
+	 *            name of the uploaded file or <code>null</code>
+	 * @param contentType
+	 *            type of the content or <code>null</code>
+	 * @param stream
+	 *            stream of the content or <code>null</code>
+	 * @param data
+	 *            content in memory or <code>null</code>
+	 * @param file
+	 *            temporary file with the content or <code>null</code>
+	 * @param size
+	 *            size of the content in bytes or -1
+	 */
+	private FormPart(String name, String fileName, String contentType, InputStream stream, byte[] data, Path file,
+			long size) {
+		this.name = name;
+		this.fileName = fileName;
+		this.contentType = contentType;
+		this.stream = stream;
+		this.data = data;
+		this.file = file;
+		this.size = size;
+	}
+
+	/**
+	 * Returns name of the form field.
+	 *
+	 * @return name of the form field
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns name of the uploaded file as given by the client or
+	 * <code>null</code> if the part is not a file.
+	 *
+	 * @return name of the uploaded file or <code>null</code>
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Returns <code>true</code> if the part is an uploaded file.
+	 *
+	 * @return <code>true</code> if the part is an uploaded file
+	 */
+	public boolean isFile() {
+		return fileName != null;
+	}
+
+	/**
+	 * Returns type of the content or <code>null</code> if it is not given.
+	 *
+	 * @return type of the content or <code>null</code>
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns size of the content in bytes or -1 if the content is streamed.
+	 *
+	 * @return size of the content or -1
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns <code>true</code> if the content is kept in memory.
+	 *
+	 * @return <code>true</code> if the content is in memory
+	 */
+	public boolean isInMemory() {
+		return data != null;
+	}
+
+	/**
+	 * Returns stream of the content. Streamed content ends with the part and
+	 * the same stream is returned every time.
+	 *
+	 * @return stream of the content
+	 *
+	 * @throws IOException
+	 *             if error while opening the temporary file occurs
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (stream != null)
+			return stream;
+		if (data != null)
+			return new ByteArrayInputStream(data);
+
+		return Files.newInputStream(file);
+	}
+
+	/**
+	 * Returns content decoded with the given charset. Whole content is read
+	 * into memory, so this should be used only for the form fields.
+	 *
+	 * @param charset
+	 *            charset of the content
+	 * @return decoded content
+	 *
+	 * @throws IOException
+	 *             if error while reading occurs
+	 */
+	public String getString(Charset charset) throws IOException {
+		if (data != null)
+			return new String(data, charset);
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (InputStream is = getInputStream()) {
+			is.transferTo(bos);
+		}
+
+		return new String(bos.toByteArray(), charset);
+	}
+
+	/**
+	 * Deletes the temporary file with the content if there is one.
+	 */
+	void delete() {
+		if (file == null)
+			return;
+
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+		}
+	}
+}
@@ -0,0 +1,752 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Represents parser of the request headers received over one connection. Bytes
+ * are read from the stream in bulk into the buffer which is reused for all of
+ * the requests of the connection. Header is not converted into strings; only
+ * positions of the method, path, query, version and names and values of the
+ * header lines within the buffer are remembered, and strings are created only
+ * for the parts which are asked for.
+ * <p>
+ * Bytes read after the end of the header, such as the next pipelined request,
+ * stay in the buffer for the next call to {@link #parse(InputStream)}. They are
+ * moved to the beginning of the buffer only when the rest of the buffer could
+ * not hold the header of the maximal size, which is not accepted if longer.
+ * Body of the request is read with the stream returned by
+ * {@link #body(InputStream, long)}, which takes the buffered bytes first.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class HttpRequestParser {
+
+	/**
+	 * Represents outcome of parsing one request header.
+	 *
+	 */
+	public enum Status {
+		/**
+		 * Complete header has been parsed.
+		 */
+		COMPLETE,
+		/**
+		 * Connection has been closed or has timed out before the header started.
+		 */
+		CLOSED,
+		/**
+		 * Request line is not made of the method, path and version.
+		 */
+		MALFORMED,
+		/**
+		 * Header is longer than the maximal size.
+		 */
+		TOO_LARGE
+	}
+
+	/**
+	 * Initial number of header lines for which positions are kept.
+	 */
+	private static final int INITIAL_LINES = 16;
+
+	/**
+	 * Maximal size of the header in bytes.
+	 */
+	private final int maxHeaderSize;
+	/**
+	 * Buffer with the received bytes.
+	 */
+	private byte[] buffer;
+	/**
+	 * Position of the first byte after the last parsed header.
+	 */
+	private int start;
+	/**
+	 * Number of valid bytes in the buffer.
+	 */
+	private int limit;
+
+	/**
+	 * Start and end of the method.
+	 */
+	private int methodStart, methodEnd;
+	/**
+	 * Start and end of the path.
+	 */
+	private int pathStart, pathEnd;
+	/**
+	 * Start and end of the query, both -1 if there is no query.
+	 */
+	private int queryStart, queryEnd;
+	/**
+	 * Start and end of the version.
+	 */
+	private int versionStart, versionEnd;
+	/**
+	 * Number of the header lines, not counting the request line.
+	 */
+	private int lines;
+	/**
+	 * Starts and ends of the names and values of the header lines, four
+	 * positions per line.
+	 */
+	private int[] positions = new int[INITIAL_LINES * 4];
+
+	/**
+	 * Initializes newly created parser.
+	 *
+	 * @param maxHeaderSize
+	 *            maximal size of the header in bytes
+	 * @param preread
+	 *            bytes of the connection already read from the socket
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the given size is not positive
+	 */
+	public HttpRequestParser(int maxHeaderSize, byte[] preread) {
+		if (maxHeaderSize < 1)
+			throw new IllegalArgumentException("Maximal header size must be positive. Was: " + maxHeaderSize);
+
+		this.maxHeaderSize = maxHeaderSize;
+		this.buffer = new byte[Math.max(2 * maxHeaderSize, preread.length)];
+		System.arraycopy(preread, 0, buffer, 0, preread.length);
+		this.limit = preread.length;
+	}
+
+	/**
+	 * Reads and parses the next request header from the given stream.
+	 *
+	 * @param is
+	 *            input stream of the connection
+	 * @return outcome of parsing
+	 *
+	 * @throws IOException
+	 *             if error while reading after the header started occurs
+	 */
+	public Status parse(InputStream is) throws IOException {
+		if (start + maxHeaderSize > buffer.length) {
+			compact();
+		}
+		lines = 0;
+
+		int headerStart = start;
+		int headerLimit = Math.min(buffer.length, headerStart + maxHeaderSize);
+		int end = -1;
+		int scanned = headerStart;
+		int state = 0;
+		while (true) {
+			// same state machine recognizes the end of the header in the nio front end
+			for (; scanned < limit; scanned++) {
+				byte b = buffer[scanned];
+
+				switch (state) {
+				case 0: if (b == 13) { state = 1;} else if (b == 10) { state = 4; }
+						break;
+				case 1: if (b == 10) {state = 2;} else { state = 0; }
+						break;
+				case 2: if (b == 13) {state = 3;} else {state = 0;}
+						break;
+				case 3: if (b == 10) { end = scanned + 1; } else {state = 0;}
+						break;
+				case 4: if (b == 10) { end = scanned + 1;} else { state = 0;}
+						break;
+				}
+
+				if (end != -1)
+					break;
+			}
+
+			if (end != -1)
+				break;
+
+			if (limit >= headerLimit)
+				return Status.TOO_LARGE;
+
+			int r;
+			try {
+				r = is.read(buffer, limit, buffer.length - limit);
+			} catch (SocketTimeoutException e) {
+				if (limit == headerStart)
+					return Status.CLOSED;
+				throw e;
+			}
+
+			if (r == -1) {
+				if (limit == headerStart)
+					return Status.CLOSED;
+				throw new IOException("Connection closed inside the header.");
+			}
+			limit += r;
+		}
+
+		if (end - headerStart > maxHeaderSize)
+			return Status.TOO_LARGE;
+
+		start = end;
+		return tokenize(headerStart, end) ? Status.COMPLETE : Status.MALFORMED;
+	}
+
+	/**
+	 * Returns number of bytes read after the end of the last parsed header.
+	 *
+	 * @return number of buffered bytes
+	 */
+	public int buffered() {
+		return limit - start;
+	}
+
+	/**
+	 * Returns stream of the body of the last parsed request with the given
+	 * length. Bytes already read into the buffer are returned first and the
+	 * rest is read from the given stream, never past the end of the body, so
+	 * the next request stays unread. Body must be read or discarded before the
+	 * next header is parsed.
+	 *
+	 * @param is
+	 *            input stream of the connection
+	 * @param length
+	 *            length of the body in bytes
+	 * @return stream of the body
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the given length is negative
+	 */
+	BodyStream body(InputStream is, long length) {
+		if (length < 0)
+			throw new IllegalArgumentException("Length of the body must not be negative. Was: " + length);
+
+		return new BodyStream(is, length);
+	}
+
+	/**
+	 * Moves bytes following the last parsed header to the beginning of the
+	 * buffer.
+	 */
+	private void compact() {
+		if (start == 0)
+			return;
+
+		System.arraycopy(buffer, start, buffer, 0, limit - start);
+		limit -= start;
+		start = 0;
+	}
+
+	/**
+	 * Remembers positions of the parts of the header between the given
+	 * positions.
+	 *
+	 * @param headerStart
+	 *            position of the first byte of the header
+	 * @param end
+	 *            position after the last byte of the header
+	 * @return <code>true</code> if the request line is valid
+	 */
+	private boolean tokenize(int headerStart, int end) {
+		int lineEnd = lineEnd(headerStart, end);
+		int eol = trimCr(headerStart, lineEnd);
+
+		// request line is made of exactly three parts separated by single spaces
+		int first = indexOf(headerStart, eol, (byte) ' ');
+		int second = first == -1 ? -1 : indexOf(first + 1, eol, (byte) ' ');
+		if (first <= headerStart || second == -1 || second == first + 1 || second + 1 == eol
+				|| indexOf(second + 1, eol, (byte) ' ') != -1)
+			return false;
+
+		methodStart = headerStart;
+		methodEnd = first;
+		pathStart = first + 1;
+		versionStart = second + 1;
+		versionEnd = eol;
+
+		int question = indexOf(pathStart, second, (byte) '?');
+		if (question == -1) {
+			pathEnd = second;
+			queryStart = queryEnd = -1;
+		} else {
+			pathEnd = question;
+			queryStart = question + 1;
+			queryEnd = second;
+		}
+
+		int lineStart = lineEnd + 1;
+		while (lineStart < end) {
+			lineEnd = lineEnd(lineStart, end);
+			eol = trimCr(lineStart, lineEnd);
+			if (eol == lineStart)
+				break;
+
+			byte c = buffer[lineStart];
+			if ((c == 9 || c == 32) && lines > 0) {
+				// folded line continues value of the previous line
+				int previous = (lines - 1) * 4;
+				Arrays.fill(buffer, positions[previous + 3], lineStart, (byte) ' ');
+				positions[previous + 3] = trimEnd(lineStart, eol);
+			} else {
+				addLine(lineStart, eol);
+			}
+
+			lineStart = lineEnd + 1;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Remembers name and value of the header line with the given bounds. Line
+	 * without the colon has the empty value.
+	 *
+	 * @param lineStart
+	 *            start of the line
+	 * @param eol
+	 *            end of the line
+	 */
+	private void addLine(int lineStart, int eol) {
+		if (positions.length == lines * 4) {
+			positions = Arrays.copyOf(positions, positions.length * 2);
+		}
+
+		int colon = indexOf(lineStart, eol, (byte) ':');
+		int nameEnd = colon == -1 ? eol : colon;
+		int valueStart = colon == -1 ? eol : colon + 1;
+		int valueEnd = eol;
+
+		while (valueStart < valueEnd && isWhitespace(buffer[valueStart])) {
+			valueStart++;
+		}
+		while (valueEnd > valueStart && isWhitespace(buffer[valueEnd - 1])) {
+			valueEnd--;
+		}
+
+		int index = lines * 4;
+		positions[index] = lineStart;
+		positions[index + 1] = nameEnd;
+		positions[index + 2] = valueStart;
+		positions[index + 3] = valueEnd;
+		lines++;
+	}
+
+	/**
+	 * Returns <code>true</code> if the method of the request equals the given
+	 * one, ignoring case.
+	 *
+	 * @param method
+	 *            method in upper case
+	 * @return <code>true</code> if the method equals the given one
+	 */
+	public boolean isMethod(String method) {
+		return equalsIgnoreCase(methodStart, methodEnd, method);
+	}
+
+	/**
+	 * Returns <code>true</code> if the version of the request equals the given
+	 * one, ignoring case.
+	 *
+	 * @param version
+	 *            version in upper case
+	 * @return <code>true</code> if the version equals the given one
+	 */
+	public boolean isVersion(String version) {
+		return equalsIgnoreCase(versionStart, versionEnd, version);
+	}
+
+	/**
+	 * Returns requested path without the query.
+	 *
+	 * @return requested path
+	 */
+	public String getPath() {
+		return string(pathStart, pathEnd);
+	}
+
+	/**
+	 * Puts parameters of the query into the given map. Parameter without the
+	 * equals sign is put with the <code>null</code> value, while parameters
+	 * with the empty name or more than one equals sign are skipped.
+	 *
+	 * @param params
+	 *            map of the parameters
+	 */
+	public void parseParameters(Map<String, String> params) {
+		if (queryStart == -1)
+			return;
+
+		int parameterStart = queryStart;
+		while (parameterStart <= queryEnd) {
+			int parameterEnd = indexOf(parameterStart, queryEnd, (byte) '&');
+			if (parameterEnd == -1) {
+				parameterEnd = queryEnd;
+			}
+
+			int equals = indexOf(parameterStart, parameterEnd, (byte) '=');
+			if (equals == -1) {
+				if (parameterEnd > parameterStart) {
+					params.put(string(parameterStart, parameterEnd), null);
+				}
+			} else if (equals > parameterStart && indexOf(equals + 1, parameterEnd, (byte) '=') == -1) {
+				params.put(string(parameterStart, equals), string(equals + 1, parameterEnd));
+			}
+
+			parameterStart = parameterEnd + 1;
+		}
+	}
+
+	/**
+	 * Returns number of the header lines, not counting the request line.
+	 *
+	 * @return number of the header lines
+	 */
+	public int getHeaderCount() {
+		return lines;
+	}
+
+	/**
+	 * Returns <code>true</code> if the header line with the given index has the
+	 * given name, ignoring case.
+	 *
+	 * @param index
+	 *            index of the header line
+	 * @param name
+	 *            name of the header line
+	 * @return <code>true</code> if the line has the given name
+	 */
+	public boolean isHeader(int index, String name) {
+		return equalsIgnoreCase(positions[index * 4], positions[index * 4 + 1], name);
+	}
+
+	/**
+	 * Returns value of the header line with the given index.
+	 *
+	 * @param index
+	 *            index of the header line
+	 * @return value of the header line
+	 */
+	public String getHeaderValue(int index) {
+		return string(positions[index * 4 + 2], positions[index * 4 + 3]);
+	}
+
+	/**
+	 * Returns value of the first header line with the given name or
+	 * <code>null</code> if there is no such line.
+	 *
+	 * @param name
+	 *            name of the header line
+	 * @return value of the header line or <code>null</code>
+	 */
+	public String getHeader(String name) {
+		for (int i = 0; i < lines; i++) {
+			if (isHeader(i, name))
+				return getHeaderValue(i);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns <code>true</code> if the comma separated value of any header line
+	 * with the given name contains the given token, ignoring case.
+	 *
+	 * @param name
+	 *            name of the header line
+	 * @param token
+	 *            token which is searched for
+	 * @return <code>true</code> if the token is found
+	 */
+	public boolean hasToken(String name, String token) {
+		for (int i = 0; i < lines; i++) {
+			if (!isHeader(i, name))
+				continue;
+
+			int end = positions[i * 4 + 3];
+			int tokenStart = positions[i * 4 + 2];
+			while (tokenStart <= end) {
+				int tokenEnd = indexOf(tokenStart, end, (byte) ',');
+				if (tokenEnd == -1) {
+					tokenEnd = end;
+				}
+
+				if (equalsIgnoreCase(trimStart(tokenStart, tokenEnd), trimEnd(tokenStart, tokenEnd), token))
+					return true;
+
+				tokenStart = tokenEnd + 1;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns value of the cookie with the given name from any 'Cookie' header
+	 * line or <code>null</code> if there is no such cookie. If there are more
+	 * cookies with the same name, the last one is returned.
+	 *
+	 * @param name
+	 *            name of the cookie
+	 * @return value of the cookie or <code>null</code>
+	 */
+	public String getCookie(String name) {
+		String value = null;
+
+		for (int i = 0; i < lines; i++) {
+			if (!isHeader(i, "Cookie"))
+				continue;
+
+			int end = positions[i * 4 + 3];
+			int cookieStart = positions[i * 4 + 2];
+			while (cookieStart <= end) {
+				int cookieEnd = indexOf(cookieStart, end, (byte) ';');
+				if (cookieEnd == -1) {
+					cookieEnd = end;
+				}
+
+				int equals = indexOf(cookieStart, cookieEnd, (byte) '=');
+				if (equals != -1 && equalsIgnoreCase(trimStart(cookieStart, equals), trimEnd(cookieStart, equals), name)) {
+					value = string(trimStart(equals + 1, cookieEnd), trimEnd(equals + 1, cookieEnd));
+				}
+
+				cookieStart = cookieEnd + 1;
+			}
+		}
+
+		return value;
+	}
+
+	/**
+	 * Returns position of the line feed ending the line which starts at the
+	 * given position.
+	 *
+	 * @param from
+	 *            start of the line
+	 * @param end
+	 *            end of the header
+	 * @return position of the line feed
+	 */
+	private int lineEnd(int from, int end) {
+		int index = indexOf(from, end, (byte) 10);
+		return index == -1 ? end : index;
+	}
+
+	/**
+	 * Returns end of the line without the carriage return before the given line
+	 * feed.
+	 *
+	 * @param lineStart
+	 *            start of the line
+	 * @param lineEnd
+	 *            position of the line feed
+	 * @return end of the line
+	 */
+	private int trimCr(int lineStart, int lineEnd) {
+		return lineEnd > lineStart && buffer[lineEnd - 1] == 13 ? lineEnd - 1 : lineEnd;
+	}
+
+	/**
+	 * Returns position of the first given byte between the given positions or
+	 * -1 if there is no such byte.
+	 *
+	 * @param from
+	 *            start position, inclusive
+	 * @param to
+	 *            end position, exclusive
+	 * @param b
+	 *            byte which is searched for
+	 * @return position of the byte or -1
+	 */
+	private int indexOf(int from, int to, byte b) {
+		for (int i = from; i < to; i++) {
+			if (buffer[i] == b)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns first position between the given ones which is not a whitespace.
+	 *
+	 * @param from
+	 *            start position
+	 * @param to
+	 *            end position
+	 * @return first position which is not a whitespace
+	 */
+	private int trimStart(int from, int to) {
+		while (from < to && isWhitespace(buffer[from])) {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * Returns position after the last byte between the given positions which is
+	 * not a whitespace.
+	 *
+	 * @param from
+	 *            start position
+	 * @param to
+	 *            end position
+	 * @return position after the last byte which is not a whitespace
+	 */
+	private int trimEnd(int from, int to) {
+		while (to > from && isWhitespace(buffer[to - 1])) {
+			to--;
+		}
+		return to;
+	}
+
+	/**
+	 * Returns <code>true</code> if the bytes between the given positions equal
+	 * the given ASCII string, ignoring case.
+	 *
+	 * @param from
+	 *            start position
+	 * @param to
+	 *            end position
+	 * @param s
+	 *            ASCII string
+	 * @return <code>true</code> if the bytes equal the string
+	 */
+	private boolean equalsIgnoreCase(int from, int to, String s) {
+		if (to - from != s.length())
+			return false;
+
+		for (int i = 0; i < s.length(); i++) {
+			int a = buffer[from + i];
+			int b = s.charAt(i);
+
+			if (a != b && ((a | 0x20) != (b | 0x20) || !isLetter(a)))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given byte is an ASCII letter.
+	 *
+	 * @param b
+	 *            byte
+	 * @return <code>true</code> if the byte is a letter
+	 */
+	private static boolean isLetter(int b) {
+		return (b | 0x20) >= 'a' && (b | 0x20) <= 'z';
+	}
+
+	/**
+	 * Returns <code>true</code> if the given byte is a space or a tab.
+	 *
+	 * @param b
+	 *            byte
+	 * @return <code>true</code> if the byte is a whitespace
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b == 32 || b == 9;
+	}
+
+	/**
+	 * Returns string made of the bytes between the given positions.
+	 *
+	 * @param from
+	 *            start position
+	 * @param to
+	 *            end position
+	 * @return string made of the bytes
+	 */
+	private String string(int from, int to) {
+		return new String(buffer, from, to - from, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Represents stream of the request body of known length which is read from
+	 * the buffer of the parser and then from the connection.
+	 *
+	 */
+	class BodyStream extends InputStream {
+
+		/**
+		 * Input stream of the connection.
+		 */
+		private final InputStream is;
+		/**
+		 * Number of bytes of the body not yet read.
+		 */
+		private long remaining;
+
+		/**
+		 * Initializes newly created stream.
+		 *
+		 * @param is
+		 *            input stream of the connection
+		 * @param length
+		 *            length of the body in bytes
+		 */
+		private BodyStream(InputStream is, long length) {
+			this.is = is;
+			this.remaining = length;
+		}
+
+		/**
+		 * Returns number of bytes of the body not yet read.
+		 *
+		 * @return number of the remaining bytes
+		 */
+		public long remaining() {
+			return remaining;
+		}
+
+		/**
+		 * Reads and discards the rest of the body.
+		 *
+		 * @throws IOException
+		 *             if the connection is closed before the end of the body or
+		 *             error while reading occurs
+		 */
+		public void discard() throws IOException {
+			byte[] skipped = new byte[(int) Math.min(remaining, 8192)];
+
+			while (remaining > 0) {
+				read(skipped, 0, skipped.length);
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining == 0)
+				return -1;
+			if (len == 0)
+				return 0;
+
+			int max = (int) Math.min(len, remaining);
+			int r;
+			if (start < limit) {
+				r = Math.min(max, limit - start);
+				System.arraycopy(buffer, start, b, off, r);
+				start += r;
+			} else {
+				r = is.read(b, off, max);
+				if (r == -1)
+					throw new EOFException("Connection closed inside the body.");
+			}
+
+			remaining -= r;
+			return r;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(remaining, (limit - start) + is.available());
+		}
+	}
+}
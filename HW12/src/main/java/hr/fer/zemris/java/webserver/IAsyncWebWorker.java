@@ -0,0 +1,64 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Represents worker that performs its action asynchronously. Worker returns the
+ * stage which completes once the response has been written to the context and
+ * the thread of the server is meanwhile free to serve other connections. Server
+ * finishes the response when the stage completes.
+ * <p>
+ * Worker runs its tasks with the executor given by the server, so they are
+ * subject to the limits of the server and are rejected with
+ * {@link java.util.concurrent.RejectedExecutionException} when the server is
+ * overloaded. If the stage does not complete within the timeout of the server
+ * it is completed exceptionally with
+ * {@link java.util.concurrent.TimeoutException}, the client is answered with
+ * an error and the tasks of the request are cancelled: tasks not yet started
+ * are skipped and the running ones are interrupted.
+ * <p>
+ * Worker must not write to the context after its stage completes. Worker
+ * dispatched internally, such as from a script, runs its tasks on the calling
+ * thread and is waited for synchronously.
+ *
+ * @author Filip Karacic
+ *
+ */
+public interface IAsyncWebWorker extends IWebWorker {
+	/**
+	 * Starts the action according to the request and returns the stage which
+	 * completes once the response has been written. Tasks of the action are run
+	 * with the given executor.
+	 *
+	 * @param context
+	 *            context of the web server
+	 * @param executor
+	 *            executor of the tasks of the action
+	 * @return stage which completes when the action is finished
+	 * @throws Exception
+	 *             if error starting the action occurs
+	 */
+	public CompletionStage<Void> processRequestAsync(RequestContext context, Executor executor) throws Exception;
+
+	/**
+	 * Performs the action on the calling thread and waits for it to finish.
+	 *
+	 * @param context
+	 *            context of the web server
+	 * @throws Exception
+	 *             if error processing request occurs
+	 */
+	@Override
+	public default void processRequest(RequestContext context) throws Exception {
+		try {
+			processRequestAsync(context, Runnable::run).toCompletableFuture().get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+
+			throw e;
+		}
+	}
+}
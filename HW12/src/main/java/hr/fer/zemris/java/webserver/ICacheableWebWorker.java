@@ -0,0 +1,28 @@
+package hr.fer.zemris.java.webserver;
+
+/**
+ * Represents worker whose response is determined by the request, so that it can
+ * be rendered once and served from the cache afterwards. Worker derives the key
+ * of the response from the parameters of the request and the server keeps the
+ * written body, together with its mime type and encoding, under that key.
+ * <p>
+ * Only successful responses without additional header lines are cached, so the
+ * status code, header lines and cookies set by the worker are never replayed.
+ * Response to a request dispatched internally is neither cached nor served from
+ * the cache.
+ *
+ * @author Filip Karacic
+ *
+ */
+public interface ICacheableWebWorker extends IWebWorker {
+	/**
+	 * Returns key of the response to the given request or <code>null</code> if
+	 * the response must not be cached. Requests with equal keys must get equal
+	 * responses.
+	 *
+	 * @param context
+	 *            context of the web server
+	 * @return key of the response or <code>null</code>
+	 */
+	public String getCacheKey(RequestContext context);
+}
@@ -0,0 +1,73 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+
+/**
+ * Represents store of the sessions used by the server. Implementations must be
+ * safe for use by multiple threads.
+ * <p>
+ * Store used by the server is chosen with the 'session.store' property. Other
+ * than the built in stores, fully qualified name of the class implementing this
+ * interface with the public constructor without arguments can be given.
+ *
+ * @author Filip Karacic
+ *
+ */
+public interface ISessionStore {
+	/**
+	 * Returns valid session with the given id or <code>null</code> if there is no
+	 * such session.
+	 *
+	 * @param sid
+	 *            session id
+	 * @return valid session with the given id or <code>null</code>
+	 */
+	SessionMapEntry get(String sid);
+
+	/**
+	 * Creates new session, replacing session with the same id, and returns it.
+	 *
+	 * @param sid
+	 *            session id
+	 * @param host
+	 *            host for the session
+	 * @param validUntil
+	 *            validation time in milliseconds
+	 * @return created session
+	 */
+	SessionMapEntry create(String sid, String host, long validUntil);
+
+	/**
+	 * Removes session with the given id if present.
+	 *
+	 * @param sid
+	 *            session id
+	 */
+	void remove(String sid);
+
+	/**
+	 * Returns number of sessions in this store.
+	 *
+	 * @return number of sessions in this store
+	 */
+	int size();
+
+	/**
+	 * Removes sessions which have expired until the given time. It is called by
+	 * one thread every second.
+	 *
+	 * @param now
+	 *            current time in milliseconds
+	 * @return number of removed sessions
+	 */
+	int expire(long now);
+
+	/**
+	 * Closes this store, saving the sessions if it keeps them outside of the
+	 * memory.
+	 *
+	 * @throws IOException
+	 *             if error while saving the sessions occurs
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,186 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Represents histogram of the non-negative values, such as latencies, which
+ * can be recorded by many threads at once without locking.
+ * <p>
+ * Buckets are log-linear: every power of two is split into
+ * {@value #SUB_BUCKETS} buckets of equal width, so the relative error of the
+ * reported percentiles is at most one in {@value #SUB_BUCKETS}, regardless of
+ * the magnitude of the values. Values larger than {@value #MAX_VALUE} are
+ * recorded as {@value #MAX_VALUE}.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Number of bits of the value below its highest bit which select the bucket.
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+	/**
+	 * Number of buckets per power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/**
+	 * Largest value that is recorded exactly.
+	 */
+	public static final long MAX_VALUE = (1L << 40) - 1;
+
+	/**
+	 * Number of values in each bucket.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(index(MAX_VALUE) + 1);
+	/**
+	 * Number of recorded values.
+	 */
+	private final LongAdder count = new LongAdder();
+	/**
+	 * Sum of the recorded values.
+	 */
+	private final LongAdder sum = new LongAdder();
+	/**
+	 * Largest recorded value.
+	 */
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Returns index of the bucket of the given value.
+	 *
+	 * @param value
+	 *            non-negative value
+	 * @return index of the bucket
+	 */
+	private static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+
+		return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns largest value belonging to the bucket with the given index.
+	 *
+	 * @param index
+	 *            index of the bucket
+	 * @return largest value of the bucket
+	 */
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * Records the given value. Negative values are recorded as zero.
+	 *
+	 * @param value
+	 *            value to be recorded
+	 */
+	public void record(long value) {
+		value = Math.min(Math.max(value, 0), MAX_VALUE);
+
+		buckets.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Records all of the values recorded by the given histogram.
+	 *
+	 * @param other
+	 *            histogram whose values are recorded
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < buckets.length(); i++) {
+			long value = other.buckets.get(i);
+			if (value != 0) {
+				buckets.addAndGet(i, value);
+			}
+		}
+
+		count.add(other.count.sum());
+		sum.add(other.sum.sum());
+		max.accumulate(other.max.get());
+	}
+
+	/**
+	 * Returns number of recorded values.
+	 *
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns sum of the recorded values.
+	 *
+	 * @return sum of the recorded values
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Returns largest recorded value.
+	 *
+	 * @return largest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns value below or at which the given fraction of the recorded values
+	 * is. Returned value is the upper bound of the bucket, not greater than the
+	 * largest recorded value. Values recorded during the call may or may not be
+	 * taken into account.
+	 *
+	 * @param quantile
+	 *            fraction of the values, between 0 and 1
+	 * @return value below or at which the given fraction of the values is, 0 if
+	 *         nothing has been recorded
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the given fraction is not between 0 and 1
+	 */
+	public long getValueAtQuantile(double quantile) {
+		if (!(quantile >= 0 && quantile <= 1))
+			throw new IllegalArgumentException("Quantile must be between 0 and 1. Was: " + quantile);
+
+		long[] snapshot = new long[buckets.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+
+		if (total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+
+			if (seen >= rank)
+				return Math.min(highestValue(i), getMax());
+		}
+
+		return getMax();
+	}
+}
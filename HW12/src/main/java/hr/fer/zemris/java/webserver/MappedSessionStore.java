@@ -0,0 +1,887 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Represents store of the sessions kept in the memory-mapped file, so that
+ * sessions are not kept in the heap and survive restart of the server.
+ * <p>
+ * File is a hash table with the fixed number of slots of the same size, by
+ * default {@value #DEFAULT_SLOT_SIZE} bytes. Each slot keeps session id, host,
+ * validation time and the users data of one session. Host and users data which
+ * do not fit into the slot are kept in the overflow files of the slot instead,
+ * in the directory next to the file with the '.overflow' suffix, so their size
+ * is not limited, but they are read from the disk on every access.
+ * Session is looked for in at most {@value #MAX_PROBE} successive slots
+ * starting from the slot given by the hash of its id. If none of them is free
+ * when session is created, session which expires first is evicted. Slots are
+ * locked in stripes of {@value #STRIPE_SPAN} successive slots.
+ * <p>
+ * Data of the sessions returned by this store is read from the file on every
+ * access. If the session has been evicted in the meantime, its data is empty
+ * and changes to it are ignored. Error while accessing the overflow file is
+ * thrown as {@link UncheckedIOException}.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class MappedSessionStore implements ISessionStore {
+
+	/**
+	 * Number identifying the file of the sessions.
+	 */
+	private static final int MAGIC = 0x53455353;
+	/**
+	 * Version of the file format.
+	 */
+	private static final int VERSION = 2;
+	/**
+	 * Size of the file header in bytes.
+	 */
+	private static final int HEADER_SIZE = 64;
+	/**
+	 * Default size of one slot in bytes.
+	 */
+	public static final int DEFAULT_SLOT_SIZE = 512;
+	/**
+	 * Minimal size of one slot in bytes.
+	 */
+	public static final int MIN_SLOT_SIZE = 64;
+	/**
+	 * Maximal number of slots session is looked for in.
+	 */
+	public static final int MAX_PROBE = 64;
+	/**
+	 * Number of successive slots guarded by one lock.
+	 */
+	public static final int STRIPE_SPAN = 1024;
+	/**
+	 * Maximal number of slots.
+	 */
+	private static final int MAX_CAPACITY = 1 << 21;
+
+	/**
+	 * State of the slot that has never been used.
+	 */
+	private static final byte EMPTY = 0;
+	/**
+	 * State of the slot holding a session.
+	 */
+	private static final byte USED = 1;
+	/**
+	 * State of the slot whose session has been removed.
+	 */
+	private static final byte DELETED = 2;
+
+	/**
+	 * Location of the users data in the slot.
+	 */
+	private static final byte IN_SLOT = 0;
+	/**
+	 * Location of the users data in the overflow file of the slot.
+	 */
+	private static final byte IN_FILE = 1;
+
+	/**
+	 * Offset of the state in the slot.
+	 */
+	private static final int STATE = 0;
+	/**
+	 * Offset of the location of the users data in the slot.
+	 */
+	private static final int DATA_LOCATION = 1;
+	/**
+	 * Offset of the location of the host in the slot.
+	 */
+	private static final int HOST_LOCATION = 2;
+	/**
+	 * Offset of the validation time in the slot.
+	 */
+	private static final int VALID_UNTIL = 8;
+	/**
+	 * Offset of the session id length in the slot.
+	 */
+	private static final int SID_LENGTH = 16;
+	/**
+	 * Offset of the host length in the slot.
+	 */
+	private static final int HOST_LENGTH = 18;
+	/**
+	 * Offset of the data length in the slot.
+	 */
+	private static final int DATA_LENGTH = 20;
+	/**
+	 * Offset of the session id, followed by the host and the data, in the slot.
+	 */
+	private static final int CONTENT = 24;
+
+	/**
+	 * Channel of the file.
+	 */
+	private final FileChannel channel;
+	/**
+	 * Mapped contents of the file.
+	 */
+	private final MappedByteBuffer buffer;
+	/**
+	 * Directory of the overflow files of the slots.
+	 */
+	private final Path overflow;
+	/**
+	 * Number of slots.
+	 */
+	private final int capacity;
+	/**
+	 * Size of one slot in bytes.
+	 */
+	private final int slotSize;
+	/**
+	 * Number of slots session is looked for in.
+	 */
+	private final int probe;
+	/**
+	 * Locks of the stripes of slots.
+	 */
+	private final Object[] locks;
+	/**
+	 * Number of slots holding a session.
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+	/**
+	 * Slot from which the next call to {@link #expire(long)} continues.
+	 */
+	private int sweepPosition;
+
+	/**
+	 * Initializes newly created store kept in the given file with at least the
+	 * given number of slots of the default size.
+	 *
+	 * @param file
+	 *            file of the sessions
+	 * @param capacity
+	 *            minimal number of slots
+	 *
+	 * @throws IOException
+	 *             if error while opening the file occurs
+	 * @throws IllegalArgumentException
+	 *             if the given number of slots is not positive or is too large
+	 */
+	public MappedSessionStore(Path file, int capacity) throws IOException {
+		this(file, capacity, DEFAULT_SLOT_SIZE);
+	}
+
+	/**
+	 * Initializes newly created store kept in the given file with at least the
+	 * given number of slots of the given size. Sessions already kept in the
+	 * file are preserved if the file has the same number and size of slots,
+	 * otherwise the file is cleared.
+	 *
+	 * @param file
+	 *            file of the sessions
+	 * @param capacity
+	 *            minimal number of slots
+	 * @param slotSize
+	 *            size of one slot in bytes
+	 *
+	 * @throws IOException
+	 *             if error while opening the file occurs
+	 * @throws IllegalArgumentException
+	 *             if the given number of slots is not positive or is too large,
+	 *             if the slot size is smaller than {@value #MIN_SLOT_SIZE} or if
+	 *             the file would be larger than 2 GB
+	 */
+	public MappedSessionStore(Path file, int capacity, int slotSize) throws IOException {
+		Objects.requireNonNull(file);
+		if (capacity < 1 || capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException(
+					"Capacity must be between 1 and " + MAX_CAPACITY + ". Was: " + capacity);
+		if (slotSize < MIN_SLOT_SIZE)
+			throw new IllegalArgumentException("Slot size must be at least " + MIN_SLOT_SIZE + ". Was: " + slotSize);
+
+		// power of two lets the slot be selected by masking the hash
+		int slots = Integer.highestOneBit(capacity);
+		if (slots < capacity) {
+			slots <<= 1;
+		}
+		if (HEADER_SIZE + (long) slots * slotSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("File of " + slots + " slots of " + slotSize + " bytes is too large.");
+
+		this.capacity = slots;
+		this.slotSize = slotSize;
+		this.probe = Math.min(MAX_PROBE, slots);
+		this.overflow = file.resolveSibling(file.getFileName() + ".overflow");
+
+		locks = new Object[Math.max(1, slots / STRIPE_SPAN)];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+
+		long fileSize = HEADER_SIZE + (long) slots * slotSize;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		boolean valid = channel.size() == fileSize;
+		if (!valid) {
+			channel.truncate(0);
+		}
+
+		buffer = channel.map(MapMode.READ_WRITE, 0, fileSize);
+
+		if (valid && (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != slotSize
+				|| buffer.getInt(12) != slots)) {
+			valid = false;
+			for (int i = 0; i < slots; i++) {
+				buffer.put(offset(i) + STATE, EMPTY);
+			}
+		}
+
+		if (valid) {
+			for (int i = 0; i < slots; i++) {
+				if (buffer.get(offset(i) + STATE) == USED) {
+					size.incrementAndGet();
+				}
+			}
+		} else {
+			clearOverflow();
+
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, slotSize);
+			buffer.putInt(12, slots);
+		}
+	}
+
+	/**
+	 * Deletes overflow files of all of the slots.
+	 *
+	 * @throws IOException
+	 *             if error while deleting the files occurs
+	 */
+	private void clearOverflow() throws IOException {
+		if (!Files.isDirectory(overflow))
+			return;
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(overflow)) {
+			for (Path overflowFile : files) {
+				Files.deleteIfExists(overflowFile);
+			}
+		}
+	}
+
+	/**
+	 * Returns offset of the given slot in the file.
+	 *
+	 * @param slot
+	 *            index of the slot
+	 * @return offset of the slot
+	 */
+	private int offset(int slot) {
+		return HEADER_SIZE + slot * slotSize;
+	}
+
+	/**
+	 * Returns overflow file of the given slot.
+	 *
+	 * @param slot
+	 *            index of the slot
+	 * @return overflow file of the slot
+	 */
+	private Path overflowFile(int slot) {
+		return overflow.resolve("slot-" + slot);
+	}
+
+	/**
+	 * Returns overflow file of the host of the given slot.
+	 *
+	 * @param slot
+	 *            index of the slot
+	 * @return overflow file of the host of the slot
+	 */
+	private Path hostFile(int slot) {
+		return overflow.resolve("slot-" + slot + ".host");
+	}
+
+	/**
+	 * Returns offset of the users data kept in the slot at the given offset.
+	 *
+	 * @param offset
+	 *            offset of the slot
+	 * @return offset of the users data
+	 */
+	private int dataStart(int offset) {
+		int start = offset + CONTENT + buffer.getShort(offset + SID_LENGTH);
+		if (buffer.get(offset + HOST_LOCATION) == IN_SLOT) {
+			start += buffer.getShort(offset + HOST_LENGTH);
+		}
+
+		return start;
+	}
+
+	/**
+	 * Returns lock of the stripe the given slot belongs to.
+	 *
+	 * @param slot
+	 *            index of the slot
+	 * @return lock of the slot
+	 */
+	private Object lock(int slot) {
+		return locks[slot / STRIPE_SPAN % locks.length];
+	}
+
+	/**
+	 * Returns first slot the session with the given id is looked for in.
+	 *
+	 * @param sid
+	 *            session id
+	 * @return first slot for the session
+	 */
+	private int home(byte[] sid) {
+		int hash = 1;
+		for (byte b : sid) {
+			hash = 31 * hash + b;
+		}
+
+		return (hash ^ (hash >>> 16)) & (capacity - 1);
+	}
+
+	/**
+	 * Executes the given action holding the locks of all of the slots the
+	 * session is looked for in.
+	 *
+	 * @param <T>
+	 *            type of the result
+	 * @param home
+	 *            first slot the session is looked for in
+	 * @param action
+	 *            action executed with the first slot
+	 * @return result of the action
+	 */
+	private <T> T locked(int home, IntFunction<T> action) {
+		int first = home / STRIPE_SPAN % locks.length;
+		int last = ((home + probe - 1) & (capacity - 1)) / STRIPE_SPAN % locks.length;
+
+		// locks are always taken in the same order
+		synchronized (locks[Math.min(first, last)]) {
+			synchronized (locks[Math.max(first, last)]) {
+				return action.apply(home);
+			}
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the given slot holds the session with the
+	 * given id.
+	 *
+	 * @param slot
+	 *            index of the slot
+	 * @param sid
+	 *            session id
+	 * @return <code>true</code> if the slot holds the session
+	 */
+	private boolean holds(int slot, byte[] sid) {
+		int offset = offset(slot);
+		if (buffer.get(offset + STATE) != USED || buffer.getShort(offset + SID_LENGTH) != sid.length)
+			return false;
+
+		for (int i = 0; i < sid.length; i++) {
+			if (buffer.get(offset + CONTENT + i) != sid[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns slot holding the session with the given id or -1 if there is no
+	 * such slot. Locks of the slots must be held.
+	 *
+	 * @param home
+	 *            first slot the session is looked for in
+	 * @param sid
+	 *            session id
+	 * @return slot holding the session or -1
+	 */
+	private int find(int home, byte[] sid) {
+		for (int i = 0; i < probe; i++) {
+			int slot = (home + i) & (capacity - 1);
+
+			if (buffer.get(offset(slot) + STATE) == EMPTY)
+				return -1;
+			if (holds(slot, sid))
+				return slot;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Marks the given slot as deleted and deletes its overflow files. Lock of
+	 * the slot must be held.
+	 *
+	 * @param slot
+	 *            index of the slot
+	 */
+	private void delete(int slot) {
+		int offset = offset(slot);
+
+		if (buffer.get(offset + DATA_LOCATION) == IN_FILE) {
+			buffer.put(offset + DATA_LOCATION, IN_SLOT);
+			deleteQuietly(overflowFile(slot));
+		}
+		if (buffer.get(offset + HOST_LOCATION) == IN_FILE) {
+			buffer.put(offset + HOST_LOCATION, IN_SLOT);
+			deleteQuietly(hostFile(slot));
+		}
+
+		buffer.put(offset + STATE, DELETED);
+		size.decrementAndGet();
+	}
+
+	/**
+	 * Deletes the given overflow file if it exists. File which cannot be deleted
+	 * is left, since it is overwritten once its slot is used again.
+	 *
+	 * @param overflowFile
+	 *            overflow file of the slot
+	 */
+	private static void deleteQuietly(Path overflowFile) {
+		try {
+			Files.deleteIfExists(overflowFile);
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Reads string of the given length at the given offset of the mapped
+	 * contents of the file.
+	 *
+	 * @param offset
+	 *            offset of the string
+	 * @param length
+	 *            length of the string in bytes
+	 * @return read string
+	 */
+	private String readString(int offset, int length) {
+		return readString(buffer, offset, length);
+	}
+
+	/**
+	 * Reads string of the given length at the given offset of the given buffer.
+	 *
+	 * @param source
+	 *            buffer the string is read from
+	 * @param offset
+	 *            offset of the string
+	 * @param length
+	 *            length of the string in bytes
+	 * @return read string
+	 */
+	private static String readString(ByteBuffer source, int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = source.get(offset + i);
+		}
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws UncheckedIOException
+	 *             if error while reading the overflow file of the host occurs
+	 */
+	@Override
+	public SessionMapEntry get(String sid) {
+		byte[] sidBytes = sid.getBytes(StandardCharsets.UTF_8);
+
+		return locked(home(sidBytes), home -> {
+			int slot = find(home, sidBytes);
+			if (slot == -1)
+				return null;
+
+			int offset = offset(slot);
+			if (buffer.getLong(offset + VALID_UNTIL) <= System.currentTimeMillis()) {
+				delete(slot);
+				return null;
+			}
+
+			String host;
+			if (buffer.get(offset + HOST_LOCATION) == IN_FILE) {
+				try {
+					host = new String(Files.readAllBytes(hostFile(slot)), StandardCharsets.UTF_8);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			} else {
+				host = readString(offset + CONTENT + sidBytes.length, buffer.getShort(offset + HOST_LENGTH));
+			}
+
+			return new MappedSession(sid, sidBytes, host, slot);
+		});
+	}
+
+	/**
+	 * {@inheritDoc} Host which does not fit into the slot is kept in the
+	 * overflow file.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the session id does not fit into the slot or the host is
+	 *             longer than {@value Short#MAX_VALUE} bytes
+	 * @throws UncheckedIOException
+	 *             if error while writing the overflow file of the host occurs
+	 */
+	@Override
+	public SessionMapEntry create(String sid, String host, long validUntil) {
+		byte[] sidBytes = sid.getBytes(StandardCharsets.UTF_8);
+		byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+		if (CONTENT + sidBytes.length > slotSize)
+			throw new IllegalArgumentException("Session id does not fit into the slot.");
+		if (hostBytes.length > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Host is too long.");
+
+		boolean hostFits = CONTENT + sidBytes.length + hostBytes.length <= slotSize;
+
+		long now = System.currentTimeMillis();
+
+		return locked(home(sidBytes), home -> {
+			int slot = find(home, sidBytes);
+
+			if (slot == -1) {
+				long earliest = Long.MAX_VALUE;
+				for (int i = 0; i < probe; i++) {
+					int candidate = (home + i) & (capacity - 1);
+					int offset = offset(candidate);
+
+					if (buffer.get(offset + STATE) != USED) {
+						slot = candidate;
+						break;
+					}
+
+					long validTime = buffer.getLong(offset + VALID_UNTIL);
+					if (validTime <= now) {
+						delete(candidate);
+						slot = candidate;
+						break;
+					}
+					if (validTime < earliest) {
+						earliest = validTime;
+						slot = candidate;
+					}
+				}
+
+				if (buffer.get(offset(slot) + STATE) == USED) {
+					// every slot holds a valid session, so the one which expires first is evicted
+					delete(slot);
+				}
+			} else {
+				delete(slot);
+			}
+
+			if (!hostFits) {
+				try {
+					Files.createDirectories(overflow);
+					Files.write(hostFile(slot), hostBytes);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			int offset = offset(slot);
+			buffer.putLong(offset + VALID_UNTIL, validUntil);
+			buffer.putShort(offset + SID_LENGTH, (short) sidBytes.length);
+			buffer.putShort(offset + HOST_LENGTH, (short) hostBytes.length);
+			buffer.put(offset + DATA_LOCATION, IN_SLOT);
+			buffer.put(offset + HOST_LOCATION, hostFits ? IN_SLOT : IN_FILE);
+			buffer.putInt(offset + DATA_LENGTH, 0);
+			for (int i = 0; i < sidBytes.length; i++) {
+				buffer.put(offset + CONTENT + i, sidBytes[i]);
+			}
+			for (int i = 0; hostFits && i < hostBytes.length; i++) {
+				buffer.put(offset + CONTENT + sidBytes.length + i, hostBytes[i]);
+			}
+			buffer.put(offset + STATE, USED);
+			size.incrementAndGet();
+
+			return new MappedSession(sid, sidBytes, host, slot);
+		});
+	}
+
+	@Override
+	public void remove(String sid) {
+		byte[] sidBytes = sid.getBytes(StandardCharsets.UTF_8);
+
+		locked(home(sidBytes), home -> {
+			int slot = find(home, sidBytes);
+			if (slot != -1) {
+				delete(slot);
+			}
+
+			return null;
+		});
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * {@inheritDoc} Every call checks only part of the slots, so that all of them
+	 * are checked in about a minute.
+	 */
+	@Override
+	public int expire(long now) {
+		int count = Math.min(capacity, Math.max(STRIPE_SPAN, capacity / 60));
+
+		int removed = 0;
+		for (int i = 0; i < count; i++) {
+			int slot = sweepPosition;
+			sweepPosition = (sweepPosition + 1) & (capacity - 1);
+
+			synchronized (lock(slot)) {
+				int offset = offset(slot);
+				if (buffer.get(offset + STATE) == USED && buffer.getLong(offset + VALID_UNTIL) <= now) {
+					delete(slot);
+					removed++;
+				}
+			}
+		}
+
+		return removed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+
+	/**
+	 * Represents session kept in the slot of the file.
+	 *
+	 */
+	private class MappedSession extends SessionMapEntry {
+		/**
+		 * Session id as bytes.
+		 */
+		private final byte[] sidBytes;
+		/**
+		 * Slot of the session.
+		 */
+		private final int slot;
+		/**
+		 * Map with the users data kept in the slot.
+		 */
+		private final Map<String, String> data = new SlotMap();
+
+		/**
+		 * Initializes newly created session.
+		 *
+		 * @param sid
+		 *            session id
+		 * @param sidBytes
+		 *            session id as bytes
+		 * @param host
+		 *            host for the session
+		 * @param slot
+		 *            slot of the session
+		 */
+		public MappedSession(String sid, byte[] sidBytes, String host, int slot) {
+			super(sid, host, 0, null);
+
+			this.sidBytes = sidBytes;
+			this.slot = slot;
+		}
+
+		@Override
+		public long getValidUntil() {
+			synchronized (lock(slot)) {
+				return holds(slot, sidBytes) ? buffer.getLong(offset(slot) + VALID_UNTIL) : 0;
+			}
+		}
+
+		@Override
+		public void setValidUntil(long validUntil) {
+			synchronized (lock(slot)) {
+				if (holds(slot, sidBytes)) {
+					buffer.putLong(offset(slot) + VALID_UNTIL, validUntil);
+				}
+			}
+		}
+
+		@Override
+		public Map<String, String> getMap() {
+			return data;
+		}
+
+		/**
+		 * Reads the users data of the session from the slot or from its overflow
+		 * file. Lock of the slot must be held.
+		 *
+		 * @return users data of the session
+		 *
+		 * @throws UncheckedIOException
+		 *             if error while reading the overflow file occurs
+		 */
+		private Map<String, String> read() {
+			Map<String, String> map = new LinkedHashMap<>();
+			if (!holds(slot, sidBytes))
+				return map;
+
+			int offset = offset(slot);
+			int length = buffer.getInt(offset + DATA_LENGTH);
+
+			ByteBuffer source = buffer;
+			int position = dataStart(offset);
+			if (buffer.get(offset + DATA_LOCATION) == IN_FILE) {
+				try {
+					source = ByteBuffer.wrap(Files.readAllBytes(overflowFile(slot)));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				position = 0;
+			}
+
+			int end = position + length;
+			while (position < end) {
+				int keyLength = source.getInt(position);
+				String key = readString(source, position + 4, keyLength);
+				position += 4 + keyLength;
+
+				int valueLength = source.getInt(position);
+				String value = readString(source, position + 4, valueLength);
+				position += 4 + valueLength;
+
+				map.put(key, value);
+			}
+
+			return map;
+		}
+
+		/**
+		 * Writes the given users data of the session into the slot or, if it does
+		 * not fit, into the overflow file of the slot. Lock of the slot must be
+		 * held.
+		 *
+		 * @param map
+		 *            users data of the session
+		 *
+		 * @throws UncheckedIOException
+		 *             if error while writing the overflow file occurs
+		 */
+		private void write(Map<String, String> map) {
+			int offset = offset(slot);
+			int start = dataStart(offset);
+
+			int length = 0;
+			byte[][] encoded = new byte[map.size() * 2][];
+			int i = 0;
+			for (Map.Entry<String, String> entry : map.entrySet()) {
+				encoded[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+				encoded[i + 1] = entry.getValue().getBytes(StandardCharsets.UTF_8);
+				length += 8 + encoded[i].length + encoded[i + 1].length;
+				i += 2;
+			}
+
+			boolean fits = start + length <= offset + slotSize;
+
+			ByteBuffer target = fits ? buffer : ByteBuffer.allocate(length);
+			int position = fits ? start : 0;
+			for (byte[] bytes : encoded) {
+				target.putInt(position, bytes.length);
+				for (int j = 0; j < bytes.length; j++) {
+					target.put(position + 4 + j, bytes[j]);
+				}
+				position += 4 + bytes.length;
+			}
+
+			try {
+				if (fits) {
+					Files.deleteIfExists(overflowFile(slot));
+				} else {
+					Files.createDirectories(overflow);
+					Files.write(overflowFile(slot), target.array());
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			buffer.put(offset + DATA_LOCATION, fits ? IN_SLOT : IN_FILE);
+			buffer.putInt(offset + DATA_LENGTH, length);
+		}
+
+		/**
+		 * Represents map view of the users data kept in the slot. Entries are
+		 * a snapshot of the data at the time of the call.
+		 *
+		 */
+		private class SlotMap extends AbstractMap<String, String> {
+
+			@Override
+			public String get(Object key) {
+				synchronized (lock(slot)) {
+					return read().get(key);
+				}
+			}
+
+			@Override
+			public String put(String key, String value) {
+				Objects.requireNonNull(key);
+				Objects.requireNonNull(value);
+
+				synchronized (lock(slot)) {
+					if (!holds(slot, sidBytes))
+						return null;
+
+					Map<String, String> map = read();
+					String previous = map.put(key, value);
+					write(map);
+
+					return previous;
+				}
+			}
+
+			@Override
+			public String remove(Object key) {
+				synchronized (lock(slot)) {
+					if (!holds(slot, sidBytes))
+						return null;
+
+					Map<String, String> map = read();
+					String previous = map.remove(key);
+					if (previous != null) {
+						write(map);
+					}
+
+					return previous;
+				}
+			}
+
+			@Override
+			public Set<Map.Entry<String, String>> entrySet() {
+				synchronized (lock(slot)) {
+					return Collections.unmodifiableMap(read()).entrySet();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Represents reader of the 'multipart/form-data' body which reads the parts one
+ * after another from the stream of the body. Reader keeps only a buffer of
+ * fixed size, so the content of each part is streamed and memory used does not
+ * depend on the size of the body. Content of the part which has not been read
+ * when the next part is requested is skipped.
+ *
+ * @author Filip Karacic
+ *
+ */
+class MultipartReader {
+
+	/**
+	 * Size of the buffer in bytes, unless the delimiter requires larger one.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Stream of the body.
+	 */
+	private final InputStream is;
+	/**
+	 * Delimiter which precedes every part: line end, two hyphens and the
+	 * boundary.
+	 */
+	private final byte[] delimiter;
+	/**
+	 * Maximal size of the header of one part in bytes.
+	 */
+	private final int maxPartHeaderSize;
+	/**
+	 * Buffer with the read bytes.
+	 */
+	private final byte[] buffer;
+	/**
+	 * Position of the first unread byte in the buffer.
+	 */
+	private int pos;
+	/**
+	 * Number of valid bytes in the buffer.
+	 */
+	private int limit;
+	/**
+	 * Flag that shows whether the stream of the body has ended.
+	 */
+	private boolean eof;
+	/**
+	 * Flag that shows whether the closing delimiter has been read.
+	 */
+	private boolean finished;
+	/**
+	 * Stream of the content of the current part, initially of the preamble.
+	 */
+	private PartStream current = new PartStream();
+
+	/**
+	 * Initializes newly created reader.
+	 *
+	 * @param is
+	 *            stream of the body
+	 * @param boundary
+	 *            boundary from the 'Content-Type' header line
+	 * @param maxPartHeaderSize
+	 *            maximal size of the header of one part in bytes
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the boundary is empty or longer than 70 characters
+	 */
+	public MultipartReader(InputStream is, String boundary, int maxPartHeaderSize) {
+		if (boundary.isEmpty() || boundary.length() > 70)
+			throw new IllegalArgumentException("Boundary must have from 1 to 70 characters. Was: " + boundary);
+
+		this.is = is;
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		this.maxPartHeaderSize = maxPartHeaderSize;
+		this.buffer = new byte[Math.max(BUFFER_SIZE, 2 * delimiter.length)];
+
+		// first delimiter is not preceded by the line end
+		buffer[0] = '\r';
+		buffer[1] = '\n';
+		limit = 2;
+	}
+
+	/**
+	 * Returns the next part or <code>null</code> if there are no more parts.
+	 * Unread content of the previous part is skipped.
+	 *
+	 * @return the next part or <code>null</code>
+	 *
+	 * @throws IOException
+	 *             if the body is malformed or error while reading occurs
+	 */
+	public FormPart next() throws IOException {
+		if (finished)
+			return null;
+
+		current.skipRest();
+		pos += delimiter.length;
+
+		int a = readByte();
+		int b = readByte();
+		if (a == '-' && b == '-') {
+			finished = true;
+			return null;
+		}
+
+		// transport padding may follow the delimiter
+		while (a == ' ' || a == '\t') {
+			a = b;
+			b = readByte();
+		}
+		if (a != '\r' || b != '\n')
+			throw new IOException("Malformed multipart body: delimiter is not followed by the line end.");
+
+		String name = null;
+		String fileName = null;
+		String contentType = null;
+
+		int headerSize = 0;
+		String line;
+		while (!(line = readLine()).isEmpty()) {
+			headerSize += line.length() + 2;
+			if (headerSize > maxPartHeaderSize)
+				throw new IOException("Header of the part is too large.");
+
+			int colon = line.indexOf(':');
+			if (colon == -1)
+				continue;
+
+			String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+			String value = line.substring(colon + 1).trim();
+			if (header.equals("content-disposition")) {
+				name = parameter(value, "name");
+				fileName = parameter(value, "filename");
+			} else if (header.equals("content-type")) {
+				contentType = value;
+			}
+		}
+
+		if (name == null)
+			throw new IOException("Part has no name.");
+
+		current = new PartStream();
+		return new FormPart(name, fileName, contentType, current);
+	}
+
+	/**
+	 * Returns value of the parameter with the given name of the given header
+	 * value, such as <code>form-data; name="field"</code>, or <code>null</code>
+	 * if there is no such parameter. Quotes around the value are removed.
+	 *
+	 * @param value
+	 *            value of the header line
+	 * @param name
+	 *            name of the parameter
+	 * @return value of the parameter or <code>null</code>
+	 */
+	static String parameter(String value, String name) {
+		int i = value.indexOf(';');
+
+		while (i != -1 && i < value.length()) {
+			int nameStart = i + 1;
+			int equals = value.indexOf('=', nameStart);
+			if (equals == -1)
+				return null;
+
+			String parameterName = value.substring(nameStart, equals).trim();
+			int valueStart = equals + 1;
+			while (valueStart < value.length() && value.charAt(valueStart) == ' ') {
+				valueStart++;
+			}
+
+			String parameterValue;
+			if (valueStart < value.length() && value.charAt(valueStart) == '"') {
+				StringBuilder sb = new StringBuilder();
+				int j = valueStart + 1;
+				for (; j < value.length() && value.charAt(j) != '"'; j++) {
+					char c = value.charAt(j);
+					if (c == '\\' && j + 1 < value.length()) {
+						c = value.charAt(++j);
+					}
+					sb.append(c);
+				}
+				parameterValue = sb.toString();
+				i = value.indexOf(';', j);
+			} else {
+				i = value.indexOf(';', valueStart);
+				parameterValue = value.substring(valueStart, i == -1 ? value.length() : i).trim();
+			}
+
+			if (parameterName.equalsIgnoreCase(name))
+				return parameterValue;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Reads line of the part header ended with CRLF and returns it without the
+	 * line end.
+	 *
+	 * @return read line
+	 *
+	 * @throws IOException
+	 *             if the line is too long, the body ends or error while reading
+	 *             occurs
+	 */
+	private String readLine() throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		int previous = -1;
+		while (true) {
+			int b = readByte();
+			if (previous == '\r' && b == '\n')
+				break;
+
+			if (previous != -1) {
+				line.write(previous);
+			}
+			previous = b;
+
+			if (line.size() > maxPartHeaderSize)
+				throw new IOException("Header of the part is too large.");
+		}
+
+		return new String(line.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads one byte of the body.
+	 *
+	 * @return read byte
+	 *
+	 * @throws IOException
+	 *             if the body ends or error while reading occurs
+	 */
+	private int readByte() throws IOException {
+		if (pos == limit) {
+			fill();
+			if (pos == limit)
+				throw new EOFException("Multipart body ended before the closing delimiter.");
+		}
+
+		return buffer[pos++] & 0xFF;
+	}
+
+	/**
+	 * Moves unread bytes to the beginning of the buffer and reads more bytes
+	 * after them.
+	 *
+	 * @throws IOException
+	 *             if error while reading occurs
+	 */
+	private void fill() throws IOException {
+		if (eof)
+			return;
+
+		if (pos > 0) {
+			System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+
+		int r = is.read(buffer, limit, buffer.length - limit);
+		if (r == -1) {
+			eof = true;
+		} else {
+			limit += r;
+		}
+	}
+
+	/**
+	 * Returns position of the delimiter among the unread bytes or -1 if the
+	 * delimiter is not there.
+	 *
+	 * @return position of the delimiter or -1
+	 */
+	private int indexOfDelimiter() {
+		int last = limit - delimiter.length;
+
+		outer: for (int i = pos; i <= last; i++) {
+			if (buffer[i] != '\r')
+				continue;
+
+			for (int j = 1; j < delimiter.length; j++) {
+				if (buffer[i + j] != delimiter[j])
+					continue outer;
+			}
+
+			return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Represents stream of the content of one part, which ends with the
+	 * delimiter.
+	 *
+	 */
+	private class PartStream extends InputStream {
+
+		/**
+		 * Flag that shows whether the delimiter has been reached.
+		 */
+		private boolean ended;
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (ended || current != this)
+				return -1;
+			if (len == 0)
+				return 0;
+
+			while (true) {
+				int index = indexOfDelimiter();
+				int available;
+
+				if (index != -1) {
+					available = index - pos;
+					if (available == 0) {
+						ended = true;
+						return -1;
+					}
+				} else {
+					// bytes which may be the beginning of the delimiter are kept
+					available = limit - pos - (delimiter.length - 1);
+				}
+
+				if (available > 0) {
+					int r = Math.min(len, available);
+					System.arraycopy(buffer, pos, b, off, r);
+					pos += r;
+					return r;
+				}
+
+				if (eof)
+					throw new EOFException("Multipart body ended before the closing delimiter.");
+				fill();
+			}
+		}
+
+		/**
+		 * Reads and discards the rest of the content.
+		 *
+		 * @throws IOException
+		 *             if the body ends or error while reading occurs
+		 */
+		private void skipRest() throws IOException {
+			while (!ended) {
+				int index = indexOfDelimiter();
+				if (index != -1) {
+					pos = index;
+					ended = true;
+					return;
+				}
+
+				pos = Math.max(pos, limit - (delimiter.length - 1));
+				if (eof)
+					throw new EOFException("Multipart body ended before the closing delimiter.");
+				fill();
+			}
+		}
+	}
+}
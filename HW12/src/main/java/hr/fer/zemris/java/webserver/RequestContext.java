@@ -1,9 +1,19 @@
 package hr.fer.zemris.java.webserver;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -11,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.zip.Deflater;
 
 /**
  * Object of the class {@code RequestContext} represents context of the user's
@@ -22,11 +33,31 @@ import java.util.Set;
 public class RequestContext {
 
 	/**
-	 * Output stream for this context.
+	 * Stream to which the response is written.
+	 */
+	private OutputStream rawStream;
+	/**
+	 * Output stream for this context. Joins header and body into as few writes to
+	 * the raw stream as possible.
 	 */
 	private OutputStream outputStream;
 	/**
-	 * Charset for this context.
+	 * Channel of the raw stream to which files are transferred directly or
+	 * <code>null</code> if there is no such channel.
+	 */
+	private WritableByteChannel channel;
+	/**
+	 * Buffer of the body not yet written or <code>null</code> if every write goes
+	 * straight to the output stream.
+	 */
+	private byte[] buffer;
+	/**
+	 * Number of bytes in the buffer.
+	 */
+	private int bufferCount;
+	/**
+	 * Charset of the current encoding or <code>null</code> if it has not been
+	 * looked up since the encoding was set.
 	 */
 	private Charset charset;
 
@@ -86,21 +117,133 @@ public class RequestContext {
 	 * Output cookies for this request.
 	 */
 	private List<RCCookie> outputCookies;
+	/**
+	 * Additional lines of the header for this request.
+	 */
+	private List<String> headers = new ArrayList<>();
 	/**
 	 * Header generation indicator.
 	 */
 	private boolean headerGenerated;
+	/**
+	 * Indicator whether the server has taken over the response, so that the
+	 * header can not be generated any more.
+	 */
+	private boolean aborted;
+	/**
+	 * Copy of the body written so far, which is kept so that the response can be
+	 * cached, or <code>null</code> if the body is not kept.
+	 */
+	private ByteArrayOutputStream capture;
+	/**
+	 * Maximal size in bytes of the kept copy of the body.
+	 */
+	private int captureLimit;
 
 	/**
 	 * Dispatcher for this request.
 	 */
 	private IDispatcher dispatcher;
 
+	/**
+	 * Reader of the 'multipart/form-data' body or <code>null</code> if the
+	 * request has no such body.
+	 */
+	private MultipartReader multipart;
+
+	/**
+	 * Maximal size in bytes of the part kept in memory by
+	 * {@link #getParts()}.
+	 */
+	private int partMemoryThreshold;
+
+	/**
+	 * Parts stored by {@link #getParts()} or <code>null</code> if they have not
+	 * been stored.
+	 */
+	private List<FormPart> parts;
+
+	/**
+	 * Indicator whether parts are read with {@link #nextPart()}.
+	 */
+	private boolean partsStreamed;
+
 	/**
 	 * Length of the content for this request.
 	 */
 	private Long contentLength;
 
+	/**
+	 * Indicator whether the connection stays open after this response or
+	 * <code>null</code> if the connection is not managed by the server.
+	 */
+	private Boolean keepAlive;
+
+	/**
+	 * Indicator whether the client accepts chunked transfer encoding.
+	 */
+	private boolean chunkedAllowed;
+
+	/**
+	 * Indicator whether the body is sent in chunks.
+	 */
+	private boolean chunked;
+
+	/**
+	 * Indicator whether the response has no body because of its status code.
+	 */
+	private boolean noBody;
+
+	/**
+	 * Indicator whether bodies of the textual types can be compressed.
+	 */
+	private boolean compression;
+
+	/**
+	 * Coding accepted by the client or <code>null</code> if the client does not
+	 * accept compressed bodies.
+	 */
+	private ContentCoding acceptedCoding;
+
+	/**
+	 * Minimal size in bytes of the buffered body which is compressed.
+	 */
+	private int compressionMinSize;
+
+	/**
+	 * Indicator whether the choice of the coding depends on the request, so that
+	 * the response varies with the 'Accept-Encoding' header line.
+	 */
+	private boolean vary;
+
+	/**
+	 * Coding with which the body is compressed or <code>null</code> if it is not
+	 * compressed.
+	 */
+	private ContentCoding appliedCoding;
+
+	/**
+	 * Stream compressing the body which is sent in parts or <code>null</code> if
+	 * it is not compressed.
+	 */
+	private OutputStream encoder;
+
+	/**
+	 * Last chunk of the chunked body.
+	 */
+	private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	/**
+	 * Line ending used in header and chunks.
+	 */
+	private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	/**
+	 * Space in bytes reserved for the header and chunk framing in the output
+	 * stream.
+	 */
+	private static final int HEADER_RESERVE = 1024;
+
 	/**
 	 * Constructor for this request.
 	 * 
@@ -139,7 +282,8 @@ public class RequestContext {
 	public RequestContext(OutputStream outputStream, Map<String, String> parameters,
 			Map<String, String> persistentParameters, List<RCCookie> outputCookies,
 			Map<String, String> temporaryParameters, IDispatcher dispatcher) {
-		this.outputStream = Objects.requireNonNull(outputStream);
+		this.rawStream = Objects.requireNonNull(outputStream);
+		this.outputStream = new BufferedOutputStream(rawStream, HEADER_RESERVE);
 
 		this.parameters = parameters == null ? new HashMap<>() : new HashMap<>(parameters);
 
@@ -174,7 +318,10 @@ public class RequestContext {
 	 * @return parameter value mapped within the given name
 	 */
 	public String getParameter(String name) {
-		return parameters.get(Objects.requireNonNull(name));
+		Objects.requireNonNull(name);
+		readFields();
+
+		return parameters.get(name);
 	}
 
 	/**
@@ -183,9 +330,139 @@ public class RequestContext {
 	 * @return names of the all parameters for this context
 	 */
 	public Set<String> getParameterNames() {
+		readFields();
+
 		return Collections.unmodifiableSet(parameters.keySet());
 	}
 
+	/**
+	 * Returns the next part of the 'multipart/form-data' body or
+	 * <code>null</code> if there are no more parts or the request has no such
+	 * body. Content of the returned part is streamed from the connection and
+	 * must be read before the next part is requested, otherwise it is skipped.
+	 * Memory used does not depend on the size of the body. Form fields read
+	 * this way are not added to the parameters.
+	 * 
+	 * @return the next part or <code>null</code>
+	 * 
+	 * @throws IOException
+	 *             if the body is malformed or error while reading occurs
+	 * @throws IllegalStateException
+	 *             if the parts have already been read with {@link #getParts()}
+	 *             or with the parameters
+	 */
+	public FormPart nextPart() throws IOException {
+		if (parts != null)
+			throw new IllegalStateException("Parts have already been stored.");
+		if (multipart == null)
+			return null;
+
+		partsStreamed = true;
+		return multipart.next();
+	}
+
+	/**
+	 * Returns all of the parts of the 'multipart/form-data' body, which is empty
+	 * list if the request has no such body. Parts are read the first time this
+	 * method or any method returning parameters is called. Content of each part
+	 * is kept in memory if it is not larger than the configured threshold and
+	 * is otherwise written to a temporary file, which is deleted once the
+	 * request is served. Form fields kept in memory are added to the
+	 * parameters.
+	 * 
+	 * @return unmodifiable list of the parts
+	 * 
+	 * @throws IOException
+	 *             if the body is malformed or error while reading or writing
+	 *             occurs
+	 * @throws IllegalStateException
+	 *             if the parts have been read with {@link #nextPart()}
+	 */
+	public List<FormPart> getParts() throws IOException {
+		if (parts != null)
+			return Collections.unmodifiableList(parts);
+		if (partsStreamed)
+			throw new IllegalStateException("Parts have already been streamed.");
+
+		parts = new ArrayList<>();
+		if (multipart == null)
+			return Collections.unmodifiableList(parts);
+
+		FormPart part;
+		while ((part = multipart.next()) != null) {
+			FormPart stored = store(part);
+			parts.add(stored);
+
+			if (!stored.isFile() && stored.isInMemory()) {
+				parameters.put(stored.getName(), stored.getString(StandardCharsets.UTF_8));
+			}
+		}
+
+		return Collections.unmodifiableList(parts);
+	}
+
+	/**
+	 * Reads parts of the 'multipart/form-data' body, so that its fields are
+	 * among the parameters, unless the parts are streamed.
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the body is malformed or error while reading occurs
+	 */
+	private void readFields() {
+		if (multipart == null || parts != null || partsStreamed)
+			return;
+
+		try {
+			getParts();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Stores content of the given streamed part in memory or, if it is larger
+	 * than the threshold, in a temporary file.
+	 * 
+	 * @param part
+	 *            streamed part
+	 * @return part with the stored content
+	 * 
+	 * @throws IOException
+	 *             if error while reading or writing occurs
+	 */
+	private FormPart store(FormPart part) throws IOException {
+		InputStream is = part.getInputStream();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+
+		int r;
+		while ((r = is.read(b)) != -1) {
+			bos.write(b, 0, r);
+
+			if (bos.size() > partMemoryThreshold) {
+				Path file = Files.createTempFile("upload", ".part");
+				// part is added to the list only now, so the file is deleted even if copying fails
+				parts.add(new FormPart(part, null, file, -1));
+
+				long size = bos.size();
+				try (OutputStream os = Files.newOutputStream(file)) {
+					bos.writeTo(os);
+					bos = null;
+
+					while ((r = is.read(b)) != -1) {
+						os.write(b, 0, r);
+						size += r;
+					}
+				}
+
+				parts.remove(parts.size() - 1);
+				return new FormPart(part, null, file, size);
+			}
+		}
+
+		return new FormPart(part, bos.toByteArray(), null, bos.size());
+	}
+
 	/**
 	 * Returns persistent parameter value mapped within the given name or
 	 * <code>null</code> if there is no value mapped within this name.
@@ -278,11 +555,28 @@ public class RequestContext {
 	}
 
 	/**
-	 * Charset for this context.
+	 * Returns name of the encoding of the text written to this context.
+	 * 
+	 * @return name of the encoding
+	 */
+	public String getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Charset for this context. Charset is looked up once for each encoding that
+	 * is set.
 	 * 
 	 * @return charset for this context
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the encoding is not supported
 	 */
 	public Charset getCharset() {
+		if (charset == null) {
+			charset = Charset.forName(encoding);
+		}
+
 		return charset;
 	}
 
@@ -299,16 +593,7 @@ public class RequestContext {
 	 *             if error while writing occurs
 	 */
 	public RequestContext write(byte[] data) throws IOException {
-		if (!headerGenerated) {
-			generateHeader();
-			headerGenerated = true;
-		}
-
-		outputStream.write(data);
-
-		outputStream.flush();
-
-		return this;
+		return write(data, 0, data.length);
 	}
 
 	/**
@@ -328,13 +613,40 @@ public class RequestContext {
 	 *             if error while writing occurs
 	 */
 	public RequestContext write(byte[] data, int offset, int len) throws IOException {
+		if (capture != null) {
+			if (capture.size() + len <= captureLimit) {
+				capture.write(data, offset, len);
+			} else {
+				capture = null;
+			}
+		}
+
+		if (buffer != null) {
+			if (len <= buffer.length - bufferCount) {
+				System.arraycopy(data, offset, buffer, bufferCount, len);
+				bufferCount += len;
+				return this;
+			}
+
+			flushBuffer();
+
+			if (len <= buffer.length) {
+				System.arraycopy(data, offset, buffer, 0, len);
+				bufferCount = len;
+				return this;
+			}
+		}
+
 		if (!headerGenerated) {
 			generateHeader();
 			headerGenerated = true;
 		}
 
-		outputStream.write(data, offset, len);
-		outputStream.flush();
+		writeBody(data, offset, len);
+
+		if (buffer == null) {
+			flushEncoder();
+		}
 
 		return this;
 	}
@@ -352,17 +664,281 @@ public class RequestContext {
 	 *             if error while writing occurs
 	 */
 	public RequestContext write(String text) throws IOException {
+		byte[] data = text.getBytes(getCharset());
+
+		return write(data, 0, data.length);
+	}
+
+	/**
+	 * Writes the given number of bytes of the file starting from the given
+	 * position. Generates header if it has not been generated. If the context has
+	 * a channel, bytes are transferred from the file straight to it without being
+	 * copied through the buffers of this context.
+	 * 
+	 * @param file
+	 *            file to be written
+	 * @param position
+	 *            position in the file from which bytes are written
+	 * @param count
+	 *            number of bytes to be written
+	 * 
+	 * @return {@code RequestContext} object representing context
+	 * 
+	 * @throws IOException
+	 *             if error while reading or writing occurs or if the file ends
+	 *             before the given number of bytes is written
+	 */
+	public RequestContext write(FileChannel file, long position, long count) throws IOException {
+		Objects.requireNonNull(file);
+		capture = null;
+
+		if (buffer != null) {
+			flushBuffer();
+		} else if (!headerGenerated) {
+			generateHeader();
+			headerGenerated = true;
+		}
+
+		// empty chunk would mark the end of the body
+		if (count == 0 || noBody)
+			return this;
+
+		if (encoder != null) {
+			// compressed bytes of the file must be copied through the encoder
+			ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(count, 8192));
+			while (count > 0) {
+				bytes.clear();
+				bytes.limit((int) Math.min(count, bytes.capacity()));
+
+				int r = file.read(bytes, position);
+				if (r <= 0)
+					throw new EOFException("File ended before all of the bytes were written.");
+
+				writeBody(bytes.array(), 0, r);
+				position += r;
+				count -= r;
+			}
+
+			if (buffer == null) {
+				flushEncoder();
+			}
+
+			return this;
+		}
+
+		if (chunked) {
+			outputStream.write(Long.toHexString(count).getBytes(StandardCharsets.ISO_8859_1));
+			outputStream.write(CRLF);
+		}
+
+		if (channel != null) {
+			// header and everything before the file must reach the channel first
+			outputStream.flush();
+
+			while (count > 0) {
+				long transferred = file.transferTo(position, count, channel);
+				if (transferred <= 0)
+					throw new EOFException("File ended before all of the bytes were written.");
+
+				position += transferred;
+				count -= transferred;
+			}
+		} else {
+			ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(count, 8192));
+			while (count > 0) {
+				bytes.clear();
+				bytes.limit((int) Math.min(count, bytes.capacity()));
+
+				int r = file.read(bytes, position);
+				if (r <= 0)
+					throw new EOFException("File ended before all of the bytes were written.");
+
+				outputStream.write(bytes.array(), 0, r);
+				position += r;
+				count -= r;
+			}
+		}
+
+		if (chunked) {
+			outputStream.write(CRLF);
+		}
+
+		if (buffer == null) {
+			outputStream.flush();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Writes the buffered body to the output stream, generating header if it has
+	 * not been generated. Body whose length is not known is then sent in chunks.
+	 * 
+	 * @throws IOException
+	 *             if error while writing occurs
+	 */
+	private void flushBuffer() throws IOException {
+		if (!headerGenerated) {
+			generateHeader();
+			headerGenerated = true;
+		}
+
+		writeBody(buffer, 0, bufferCount);
+		bufferCount = 0;
+	}
+
+	/**
+	 * Writes everything buffered so far to the client.
+	 * 
+	 * @throws IOException
+	 *             if error while writing occurs
+	 */
+	public void flush() throws IOException {
+		if (buffer != null) {
+			flushBuffer();
+		}
+
+		flushEncoder();
+	}
+
+	/**
+	 * Writes bytes compressed so far and everything before them to the client.
+	 * 
+	 * @throws IOException
+	 *             if error while writing occurs
+	 */
+	private void flushEncoder() throws IOException {
+		if (encoder != null) {
+			encoder.flush();
+		}
+
+		outputStream.flush();
+	}
+
+	/**
+	 * Writes the given bytes of the body to the output stream, compressing them
+	 * if the body is compressed.
+	 * 
+	 * @param data
+	 *            bytes to be written
+	 * @param offset
+	 *            starting position from which bytes are read
+	 * @param len
+	 *            length to be written
+	 * 
+	 * @throws IOException
+	 *             if error while writing occurs
+	 */
+	private void writeBody(byte[] data, int offset, int len) throws IOException {
+		if (noBody)
+			return;
+
+		if (encoder != null) {
+			encoder.write(data, offset, len);
+		} else {
+			writeFramed(data, offset, len);
+		}
+	}
+
+	/**
+	 * Writes the given bytes to the output stream, framing them as a chunk if the
+	 * body is sent in chunks.
+	 * 
+	 * @param data
+	 *            bytes to be written
+	 * @param offset
+	 *            starting position from which bytes are read
+	 * @param len
+	 *            length to be written
+	 * 
+	 * @throws IOException
+	 *             if error while writing occurs
+	 */
+	private void writeFramed(byte[] data, int offset, int len) throws IOException {
+		if (!chunked) {
+			outputStream.write(data, offset, len);
+			return;
+		}
+
+		// empty chunk would mark the end of the body
+		if (len == 0)
+			return;
+
+		outputStream.write(Integer.toHexString(len).getBytes(StandardCharsets.ISO_8859_1));
+		outputStream.write(CRLF);
+		outputStream.write(data, offset, len);
+		outputStream.write(CRLF);
+	}
+
+	/**
+	 * Completes the response so that the connection can be reused. If the whole
+	 * body fits in the buffer, header announces its length, otherwise the rest of
+	 * the buffered body is sent and chunked body is terminated.
+	 * 
+	 * @throws IOException
+	 *             if error while writing occurs
+	 */
+	void finish() throws IOException {
 		if (!headerGenerated) {
+			if (contentLength == null) {
+				encodeBuffer();
+				contentLength = (long) bufferCount;
+			}
+
 			generateHeader();
 			headerGenerated = true;
 		}
 
-		byte[] data = text.getBytes(Charset.forName(encoding));
+		if (bufferCount > 0) {
+			writeBody(buffer, 0, bufferCount);
+			bufferCount = 0;
+		}
+
+		if (encoder != null) {
+			// finishes the compressed data, framing stream itself is not closed
+			encoder.close();
+			encoder = null;
+		}
+
+		if (chunked) {
+			outputStream.write(LAST_CHUNK);
+		}
 
-		outputStream.write(data);
 		outputStream.flush();
+	}
 
-		return this;
+	/**
+	 * Returns <code>true</code> if the body of this response is compressed when
+	 * the client accepts it. Bodies whose length has been set are sent as they
+	 * are.
+	 * 
+	 * @return <code>true</code> if the body is compressed when accepted
+	 */
+	private boolean isCompressible() {
+		return compression && contentLength == null && statusCode != 204 && statusCode != 304
+				&& ContentCoding.isCompressible(mimeType);
+	}
+
+	/**
+	 * Replaces the body collected in the buffer with its compressed bytes if the
+	 * client accepts them, the body is large enough and compressing makes it
+	 * smaller.
+	 */
+	private void encodeBuffer() {
+		if (!isCompressible())
+			return;
+
+		vary = true;
+		if (acceptedCoding == null || buffer == null || bufferCount < compressionMinSize)
+			return;
+
+		byte[] encoded = acceptedCoding.encode(buffer, 0, bufferCount, Deflater.DEFAULT_COMPRESSION);
+		if (encoded.length >= bufferCount)
+			return;
+
+		appliedCoding = acceptedCoding;
+		buffer = encoded;
+		bufferCount = encoded.length;
 	}
 
 	/**
@@ -372,17 +948,64 @@ public class RequestContext {
 	 *             if error while writing header occurs
 	 */
 	private void generateHeader() throws IOException {
+		synchronized (this) {
+			if (aborted)
+				throw new IOException("Response has been aborted.");
+
+			headerGenerated = true;
+		}
+
 		List<String> header = new ArrayList<>();
 
+		// length of the body sent in parts is not known, so it is compressed if accepted
+		if (!vary && isCompressible()) {
+			vary = true;
+			appliedCoding = acceptedCoding;
+		}
+
 		header.add("HTTP/1.1 " + statusCode + " " + statusText + "\r\n");
 
-		charset = Charset.forName(encoding);
+		// unsupported encoding fails before anything is written
+		getCharset();
 
-		String contentType = mimeType.startsWith("text/") ? mimeType + "; " + "charset=" + encoding : mimeType;
-		header.add("Content-Type: " + contentType + "\r\n");
+		// responses 'No Content' and 'Not Modified' never have a body
+		noBody = statusCode == 204 || statusCode == 304;
 
-		if (contentLength != null) {
+		// type is not announced if there is no body it could describe
+		boolean emptyRange = statusCode == 416 && contentLength != null && contentLength.longValue() == 0;
+		if (!noBody && !emptyRange) {
+			String contentType = mimeType.startsWith("text/") ? mimeType + "; " + "charset=" + encoding : mimeType;
+			header.add("Content-Type: " + contentType + "\r\n");
+		}
+
+		if (noBody) {
+			// nothing about the body is announced
+		} else if (contentLength != null) {
 			header.add("Content-Length: " + contentLength.longValue() + "\r\n");
+		} else if (keepAlive != null && keepAlive) {
+			if (chunkedAllowed) {
+				chunked = true;
+				header.add("Transfer-Encoding: chunked\r\n");
+			} else {
+				// without length the end of the body is marked by closing the connection
+				keepAlive = false;
+			}
+		}
+
+		if (keepAlive != null) {
+			header.add("Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n");
+		}
+
+		if (appliedCoding != null) {
+			header.add("Content-Encoding: " + appliedCoding.getName() + "\r\n");
+		}
+
+		if (vary) {
+			header.add("Vary: Accept-Encoding\r\n");
+		}
+
+		for (String line : headers) {
+			header.add(line);
 		}
 
 		if (!outputCookies.isEmpty()) {
@@ -392,11 +1015,17 @@ public class RequestContext {
 
 		header.add("\r\n");
 
+		StringBuilder builder = new StringBuilder();
 		for (String line : header) {
-			outputStream.write(line.getBytes(StandardCharsets.ISO_8859_1));
+			builder.append(line);
 		}
 
-		outputStream.flush();
+		// header is flushed together with the first part of the body
+		outputStream.write(builder.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+		if (appliedCoding != null && contentLength == null) {
+			encoder = appliedCoding.wrap(new FramingStream(), Deflater.DEFAULT_COMPRESSION);
+		}
 	}
 
 	/**
@@ -439,6 +1068,7 @@ public class RequestContext {
 			throw new IllegalStateException("Header is already generated. Cannot change encoding.");
 
 		this.encoding = encoding;
+		this.charset = null;
 	}
 
 	/**
@@ -506,6 +1136,27 @@ public class RequestContext {
 		outputCookies.add(Objects.requireNonNull(cookie));
 	}
 
+	/**
+	 * Adds header line with the given name and value to the header of this
+	 * context.
+	 * 
+	 * @param name
+	 *            name of the header line
+	 * @param value
+	 *            value of the header line
+	 * 
+	 * @throws IllegalStateException
+	 *             if header has been generated
+	 * @throws NullPointerException
+	 *             if the given name or value is <code>null</code>
+	 */
+	public void addHeader(String name, String value) {
+		if (headerGenerated)
+			throw new IllegalStateException("Header is already generated. Cannot add header line.");
+
+		headers.add(Objects.requireNonNull(name) + ": " + Objects.requireNonNull(value) + "\r\n");
+	}
+
 	/**
 	 * Removes the given cookie from the list of cookies for this context.
 	 * 
@@ -538,6 +1189,206 @@ public class RequestContext {
 		this.contentLength = contentLength;
 	}
 
+	/**
+	 * Sets size of the buffer in which the body is collected before it is sent.
+	 * If the whole body fits in the buffer, its length is announced in the header.
+	 * Size zero means that everything is written to the client immediately.
+	 * 
+	 * @param bufferSize
+	 *            size of the buffer in bytes
+	 * 
+	 * @throws IllegalStateException
+	 *             if header has been generated or something has been written
+	 * @throws IllegalArgumentException
+	 *             if the given size is negative
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (headerGenerated || bufferCount > 0)
+			throw new IllegalStateException("Body is already written. Cannot change buffer size.");
+
+		if (bufferSize < 0)
+			throw new IllegalArgumentException("Buffer size cannot be negative. Was: " + bufferSize);
+
+		buffer = bufferSize == 0 ? null : new byte[bufferSize];
+		outputStream = new BufferedOutputStream(rawStream, bufferSize + HEADER_RESERVE);
+	}
+
+	/**
+	 * Sets how the connection is handled after this response. If the connection
+	 * should stay open, body of unknown length is sent in chunks or, if the client
+	 * does not accept chunks, the connection is closed after all.
+	 * 
+	 * @param keepAlive
+	 *            <code>true</code> if the connection should stay open
+	 * @param chunkedAllowed
+	 *            <code>true</code> if the client accepts chunked transfer encoding
+	 * 
+	 * @throws IllegalStateException
+	 *             if header has been generated
+	 */
+	void setConnection(boolean keepAlive, boolean chunkedAllowed) {
+		if (headerGenerated)
+			throw new IllegalStateException("Header is already generated. Cannot change connection.");
+
+		this.keepAlive = keepAlive;
+		this.chunkedAllowed = chunkedAllowed;
+	}
+
+	/**
+	 * Enables compression of the bodies of the textual types. Body whose length
+	 * has not been set is compressed with the given coding if the whole body is
+	 * at least of the given size or if it is sent in parts.
+	 * 
+	 * @param acceptedCoding
+	 *            coding accepted by the client or <code>null</code> if the client
+	 *            does not accept compressed bodies
+	 * @param minSize
+	 *            minimal size in bytes of the body which is compressed
+	 * 
+	 * @throws IllegalStateException
+	 *             if header has been generated
+	 */
+	void setCompression(ContentCoding acceptedCoding, int minSize) {
+		if (headerGenerated)
+			throw new IllegalStateException("Header is already generated. Cannot change compression.");
+
+		this.compression = true;
+		this.acceptedCoding = acceptedCoding;
+		this.compressionMinSize = minSize;
+	}
+
+	/**
+	 * Sets reader of the 'multipart/form-data' body of the request, whose parts
+	 * are read with {@link #nextPart()} or {@link #getParts()}.
+	 * 
+	 * @param multipart
+	 *            reader of the body
+	 * @param partMemoryThreshold
+	 *            maximal size in bytes of the part kept in memory by
+	 *            {@link #getParts()}
+	 */
+	void setMultipart(MultipartReader multipart, int partMemoryThreshold) {
+		this.multipart = multipart;
+		this.partMemoryThreshold = partMemoryThreshold;
+	}
+
+	/**
+	 * Deletes temporary files of the parts stored by {@link #getParts()}.
+	 */
+	void deleteParts() {
+		if (parts == null)
+			return;
+
+		for (FormPart part : parts) {
+			part.delete();
+		}
+	}
+
+	/**
+	 * Sets channel of the stream this context writes to. Files written with
+	 * {@link #write(FileChannel, long, long)} are then transferred to the channel
+	 * directly.
+	 * 
+	 * @param channel
+	 *            channel of the stream or <code>null</code> if there is no such
+	 *            channel
+	 */
+	void setChannel(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Starts keeping a copy of the body written from now on, so that the
+	 * response can be cached. Copy is dropped if the body grows larger than the
+	 * given size.
+	 * 
+	 * @param limit
+	 *            maximal size in bytes of the copy
+	 */
+	void startCapture(int limit) {
+		capture = new ByteArrayOutputStream();
+		captureLimit = limit;
+	}
+
+	/**
+	 * Stores the copy of the body in the given cache under the given key and
+	 * stops keeping it. Only successful responses without additional header
+	 * lines are stored.
+	 * 
+	 * @param cache
+	 *            cache of the responses
+	 * @param key
+	 *            key of the response
+	 */
+	void storeCapture(ResponseCache cache, String key) {
+		ByteArrayOutputStream captured = capture;
+		capture = null;
+
+		if (captured != null && statusCode == DEFAULT_STATUS_CODE && headers.isEmpty()) {
+			cache.put(key, mimeType, encoding, captured.toByteArray());
+		}
+	}
+
+	/**
+	 * Prevents the header from being generated from now on, so that the
+	 * server can answer instead of the asynchronous worker which has not
+	 * finished in time. Writes which would generate the header fail.
+	 * 
+	 * @return <code>true</code> if no part of the response has been written, so
+	 *         the server can answer
+	 */
+	synchronized boolean abort() {
+		aborted = true;
+
+		return !headerGenerated;
+	}
+
+	/**
+	 * Returns <code>true</code> if the connection stays open after this response.
+	 * 
+	 * @return <code>true</code> if the connection stays open after this response
+	 */
+	boolean isKeepAlive() {
+		return keepAlive != null && keepAlive;
+	}
+
+	/**
+	 * Returns <code>true</code> if header has been generated.
+	 * 
+	 * @return <code>true</code> if header has been generated
+	 */
+	boolean isHeaderGenerated() {
+		return headerGenerated;
+	}
+
+	/**
+	 * Represents stream to which the encoder writes the compressed body. Bytes
+	 * are framed as chunks if the body is sent in chunks. Closing the stream does
+	 * not close the output stream.
+	 *
+	 */
+	private class FramingStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			writeFramed(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			outputStream.flush();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
 	/**
 	 * Represents cookie for this request context.
 	 *
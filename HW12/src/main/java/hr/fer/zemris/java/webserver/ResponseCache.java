@@ -0,0 +1,231 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents cache of the responses rendered by the
+ * {@link ICacheableWebWorker}s. Bodies of the responses are kept in memory
+ * together with their mime type and encoding, so the worker does not render the
+ * same response again. When the total size of the cached bodies exceeds the
+ * capacity, least recently used responses are removed.
+ *
+ * @author Filip Karacic
+ *
+ */
+class ResponseCache {
+
+	/**
+	 * Cached responses mapped by key, in order of access.
+	 */
+	private Map<String, CachedResponse> responses = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * Maximal total size in bytes of the cached bodies.
+	 */
+	private long capacity;
+	/**
+	 * Maximal size in bytes of one cached body.
+	 */
+	private int maxBodySize;
+	/**
+	 * Total size in bytes of the cached bodies.
+	 */
+	private long size;
+	/**
+	 * Number of requests served from the cache.
+	 */
+	private AtomicLong hits = new AtomicLong();
+	/**
+	 * Number of requests for which response had to be rendered.
+	 */
+	private AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Initializes newly created cache.
+	 *
+	 * @param capacity
+	 *            maximal total size in bytes of the cached bodies
+	 * @param maxBodySize
+	 *            maximal size in bytes of one cached body
+	 *
+	 * @throws IllegalArgumentException
+	 *             if any of the given sizes is negative
+	 */
+	public ResponseCache(long capacity, int maxBodySize) {
+		if (capacity < 0 || maxBodySize < 0)
+			throw new IllegalArgumentException("Cache sizes cannot be negative.");
+
+		this.capacity = capacity;
+		this.maxBodySize = (int) Math.min(maxBodySize, capacity);
+	}
+
+	/**
+	 * Returns response with the given key or <code>null</code> if it is not
+	 * cached.
+	 *
+	 * @param key
+	 *            key of the response
+	 * @return cached response or <code>null</code>
+	 *
+	 * @throws NullPointerException
+	 *             if the given key is <code>null</code>
+	 */
+	public CachedResponse get(String key) {
+		Objects.requireNonNull(key);
+
+		CachedResponse response;
+		synchronized (responses) {
+			response = responses.get(key);
+		}
+
+		if (response == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+
+		return response;
+	}
+
+	/**
+	 * Caches the given response under the given key, removing least recently
+	 * used responses if the capacity is exceeded. Body larger than the maximal
+	 * size is not cached.
+	 *
+	 * @param key
+	 *            key of the response
+	 * @param mimeType
+	 *            mime type of the response
+	 * @param encoding
+	 *            encoding of the response
+	 * @param body
+	 *            body of the response, which must not be modified afterwards
+	 *
+	 * @throws NullPointerException
+	 *             if any of the arguments is <code>null</code>
+	 */
+	public void put(String key, String mimeType, String encoding, byte[] body) {
+		Objects.requireNonNull(key);
+		if (body.length > maxBodySize)
+			return;
+
+		CachedResponse response = new CachedResponse(mimeType, encoding, body);
+
+		synchronized (responses) {
+			CachedResponse previous = responses.put(key, response);
+			if (previous != null) {
+				size -= previous.body.length;
+			}
+			size += body.length;
+
+			Iterator<CachedResponse> iterator = responses.values().iterator();
+			while (size > capacity && iterator.hasNext()) {
+				size -= iterator.next().body.length;
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns maximal size in bytes of one cached body.
+	 *
+	 * @return maximal size of one cached body
+	 */
+	public int getMaxBodySize() {
+		return maxBodySize;
+	}
+
+	/**
+	 * Returns number of requests served from the cache.
+	 *
+	 * @return number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns number of requests for which response had to be rendered.
+	 *
+	 * @return number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns number of responses in the cache.
+	 *
+	 * @return number of responses in the cache
+	 */
+	public int size() {
+		synchronized (responses) {
+			return responses.size();
+		}
+	}
+
+	/**
+	 * Returns total size in bytes of the bodies in the cache.
+	 *
+	 * @return total size in bytes of the bodies in the cache
+	 */
+	public long getBytes() {
+		synchronized (responses) {
+			return size;
+		}
+	}
+
+	/**
+	 * Represents rendered response of the worker.
+	 *
+	 */
+	static class CachedResponse {
+		/**
+		 * Mime type of the response.
+		 */
+		private final String mimeType;
+		/**
+		 * Encoding of the response.
+		 */
+		private final String encoding;
+		/**
+		 * Body of the response.
+		 */
+		private final byte[] body;
+
+		/**
+		 * Initializes newly created response.
+		 *
+		 * @param mimeType
+		 *            mime type of the response
+		 * @param encoding
+		 *            encoding of the response
+		 * @param body
+		 *            body of the response
+		 */
+		private CachedResponse(String mimeType, String encoding, byte[] body) {
+			this.mimeType = Objects.requireNonNull(mimeType);
+			this.encoding = Objects.requireNonNull(encoding);
+			this.body = body;
+		}
+
+		/**
+		 * Writes this response to the given context.
+		 *
+		 * @param context
+		 *            context of the request
+		 *
+		 * @throws IOException
+		 *             if error while writing occurs
+		 */
+		public void writeTo(RequestContext context) throws IOException {
+			context.setMimeType(mimeType);
+			context.setEncoding(encoding);
+			context.write(body);
+		}
+	}
+}
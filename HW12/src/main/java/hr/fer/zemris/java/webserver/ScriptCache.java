@@ -0,0 +1,247 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hr.fer.zemris.java.custom.scripting.exec.IExecutableScript;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptCompiler;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptCompilerException;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Represents cache of the parsed smart scripts. Script is parsed again only if
+ * its file has been changed since it was parsed. When the cache is full, least
+ * recently used script is removed.
+ * <p>
+ * Parsed script is interpreted by the {@link SmartScriptEngine}. If compiling
+ * is enabled, it is meanwhile compiled into a class by the
+ * {@link SmartScriptCompiler} in the background, so the request which parsed
+ * it does not wait for the compiler, and compiled class is executed from then
+ * on. Script which can not be compiled stays interpreted.
+ * <p>
+ * Parsed trees and compiled scripts are unmodifiable, so one script is shared
+ * by all of the requests executing it.
+ *
+ * @author Filip Karacic
+ *
+ */
+class ScriptCache {
+
+	/**
+	 * Thread compiling the scripts of all of the caches.
+	 */
+	private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "script-compiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Parsed scripts mapped by path, in order of access.
+	 */
+	private Map<Path, CachedScript> scripts;
+	/**
+	 * Number of requests for which parsed script was found in the cache.
+	 */
+	private AtomicLong hits = new AtomicLong();
+	/**
+	 * Number of requests for which script had to be parsed.
+	 */
+	private AtomicLong misses = new AtomicLong();
+	/**
+	 * Number of scripts which could not be compiled.
+	 */
+	private AtomicLong compileFailures = new AtomicLong();
+	/**
+	 * Indicator whether the scripts are compiled.
+	 */
+	private boolean compile;
+
+	/**
+	 * Initializes newly created cache holding at most the given number of
+	 * scripts.
+	 *
+	 * @param capacity
+	 *            maximal number of scripts in the cache
+	 * @param compile
+	 *            <code>true</code> if the scripts are compiled
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the given capacity is not positive
+	 */
+	public ScriptCache(int capacity, boolean compile) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive. Was: " + capacity);
+
+		this.compile = compile;
+
+		scripts = new LinkedHashMap<Path, CachedScript>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Path, CachedScript> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns script at the given path ready to be executed. Script is read and
+	 * parsed if it is not in the cache or if its file has been changed.
+	 *
+	 * @param path
+	 *            path of the script
+	 * @return script ready to be executed
+	 *
+	 * @throws IOException
+	 *             if error while reading the script occurs
+	 * @throws NullPointerException
+	 *             if the given path is <code>null</code>
+	 */
+	public IExecutableScript get(Path path) throws IOException {
+		Objects.requireNonNull(path);
+
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		FileTime modified = attributes.lastModifiedTime();
+		long size = attributes.size();
+
+		CachedScript cached;
+		synchronized (scripts) {
+			cached = scripts.get(path);
+		}
+
+		if (cached != null && cached.modified.equals(modified) && cached.size == size) {
+			hits.incrementAndGet();
+			return cached.script;
+		}
+
+		misses.incrementAndGet();
+
+		// parsing is done outside of the lock so that other scripts are not blocked
+		DocumentNode document;
+		try (Reader reader = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+			document = SmartScriptParser.fromReader(reader).getDocumentNode();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		IExecutableScript script = context -> new SmartScriptEngine(document, context).execute();
+		CachedScript parsed = new CachedScript(script, modified, size);
+
+		synchronized (scripts) {
+			scripts.put(path, parsed);
+		}
+
+		if (compile) {
+			COMPILER.execute(() -> compile(parsed, document));
+		}
+
+		return script;
+	}
+
+	/**
+	 * Compiles the given parsed tree and replaces the interpreted script of the
+	 * given cached script with the compiled one.
+	 *
+	 * @param cached
+	 *            cached script
+	 * @param document
+	 *            parsed tree of the script
+	 */
+	private void compile(CachedScript cached, DocumentNode document) {
+		try {
+			cached.script = SmartScriptCompiler.compile(document);
+		} catch (SmartScriptCompilerException e) {
+			compileFailures.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns number of requests for which parsed script was found in the cache.
+	 *
+	 * @return number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns number of requests for which script had to be parsed.
+	 *
+	 * @return number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns number of scripts which could not be compiled and are
+	 * interpreted.
+	 *
+	 * @return number of scripts which could not be compiled
+	 */
+	public long getCompileFailures() {
+		return compileFailures.get();
+	}
+
+	/**
+	 * Returns number of scripts in the cache.
+	 *
+	 * @return number of scripts in the cache
+	 */
+	public int size() {
+		synchronized (scripts) {
+			return scripts.size();
+		}
+	}
+
+	/**
+	 * Represents script together with the attributes of its file at the time of
+	 * parsing.
+	 *
+	 */
+	private static class CachedScript {
+		/**
+		 * Script ready to be executed, interpreted until it is compiled.
+		 */
+		private volatile IExecutableScript script;
+		/**
+		 * Time of the last modification of the file.
+		 */
+		private final FileTime modified;
+		/**
+		 * Size of the file in bytes.
+		 */
+		private final long size;
+
+		/**
+		 * Initializes newly created cached script.
+		 *
+		 * @param script
+		 *            script ready to be executed
+		 * @param modified
+		 *            time of the last modification of the file
+		 * @param size
+		 *            size of the file in bytes
+		 */
+		public CachedScript(IExecutableScript script, FileTime modified, long size) {
+			this.script = script;
+			this.modified = modified;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,382 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Represents metrics of the server. Requests are counted and their latencies
+ * are recorded per route, together with the number of written bytes, open
+ * connections and requests in progress. Other values, such as the length of the
+ * queue of the thread pool, are read from the registered suppliers when the
+ * metrics are written.
+ * <p>
+ * All of the methods can be called by many threads at once. Recording does not
+ * take any lock.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class ServerMetrics {
+
+	/**
+	 * Represents kind of the resource that served the request.
+	 *
+	 */
+	public enum Route {
+		/**
+		 * Request served by the worker.
+		 */
+		WORKER,
+		/**
+		 * Request served by the smart script.
+		 */
+		SCRIPT,
+		/**
+		 * Request for the static file.
+		 */
+		STATIC,
+		/**
+		 * Request answered with the error.
+		 */
+		ERROR
+	}
+
+	/**
+	 * Represents reason for which the connection was rejected without being
+	 * served.
+	 *
+	 */
+	public enum Rejection {
+		/**
+		 * All of the worker threads were busy and their queue was full.
+		 */
+		OVERLOAD,
+		/**
+		 * Client already had the maximal number of connections open.
+		 */
+		CLIENT_LIMIT
+	}
+
+	/**
+	 * Prefix of the names of the metrics.
+	 */
+	private static final String PREFIX = "smarthttp_";
+
+	/**
+	 * Quantiles of the latency which are written.
+	 */
+	private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+	/**
+	 * Number of requests per route.
+	 */
+	private final LongAdder[] requests = new LongAdder[Route.values().length];
+	/**
+	 * Latencies of the requests in microseconds per route.
+	 */
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Route.values().length];
+	/**
+	 * Number of bytes written to the clients.
+	 */
+	private final LongAdder bytesWritten = new LongAdder();
+	/**
+	 * Number of opened connections.
+	 */
+	private final LongAdder connectionsOpened = new LongAdder();
+	/**
+	 * Number of closed connections.
+	 */
+	private final LongAdder connectionsClosed = new LongAdder();
+	/**
+	 * Number of requests in progress.
+	 */
+	private final LongAdder inFlight = new LongAdder();
+	/**
+	 * Number of rejected connections per reason.
+	 */
+	private final LongAdder[] rejected = new LongAdder[Rejection.values().length];
+	/**
+	 * Values read when the metrics are written.
+	 */
+	private final List<Supplied> supplied = new ArrayList<>();
+
+	/**
+	 * Initializes newly created metrics.
+	 */
+	public ServerMetrics() {
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = new LongAdder();
+			latencies[i] = new LatencyHistogram();
+		}
+		for (int i = 0; i < rejected.length; i++) {
+			rejected[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Marks the beginning of the request.
+	 */
+	public void requestStarted() {
+		inFlight.increment();
+	}
+
+	/**
+	 * Marks the end of the request and records its latency.
+	 *
+	 * @param route
+	 *            route of the request
+	 * @param nanos
+	 *            latency of the request in nanoseconds
+	 */
+	public void requestFinished(Route route, long nanos) {
+		inFlight.decrement();
+		requests[route.ordinal()].increment();
+		latencies[route.ordinal()].record(nanos / 1000);
+	}
+
+	/**
+	 * Records bytes written to the client.
+	 *
+	 * @param bytes
+	 *            number of written bytes
+	 */
+	public void bytesWritten(long bytes) {
+		bytesWritten.add(bytes);
+	}
+
+	/**
+	 * Records opening of the connection.
+	 */
+	public void connectionOpened() {
+		connectionsOpened.increment();
+	}
+
+	/**
+	 * Records closing of the connection.
+	 */
+	public void connectionClosed() {
+		connectionsClosed.increment();
+	}
+
+	/**
+	 * Records connection rejected without being served. Rejected connection is
+	 * also closed, which is recorded separately.
+	 *
+	 * @param reason
+	 *            reason for the rejection
+	 */
+	public void connectionRejected(Rejection reason) {
+		rejected[reason.ordinal()].increment();
+	}
+
+	/**
+	 * Returns number of connections rejected for the given reason.
+	 *
+	 * @param reason
+	 *            reason for the rejection
+	 * @return number of rejected connections
+	 */
+	public long getRejected(Rejection reason) {
+		return rejected[reason.ordinal()].sum();
+	}
+
+	/**
+	 * Returns number of requests served by the given route.
+	 *
+	 * @param route
+	 *            route of the requests
+	 * @return number of requests
+	 */
+	public long getRequests(Route route) {
+		return requests[route.ordinal()].sum();
+	}
+
+	/**
+	 * Returns histogram of the latencies in microseconds of the given route.
+	 *
+	 * @param route
+	 *            route of the requests
+	 * @return histogram of the latencies
+	 */
+	public LatencyHistogram getLatencies(Route route) {
+		return latencies[route.ordinal()];
+	}
+
+	/**
+	 * Returns number of open connections.
+	 *
+	 * @return number of open connections
+	 */
+	public long getActiveConnections() {
+		return connectionsOpened.sum() - connectionsClosed.sum();
+	}
+
+	/**
+	 * Adds value whose current amount is given by the supplier when the metrics
+	 * are written. Counter only grows, while gauge can also decrease.
+	 *
+	 * @param name
+	 *            name of the value, without the prefix
+	 * @param help
+	 *            description of the value
+	 * @param counter
+	 *            <code>true</code> if the value is a counter
+	 * @param supplier
+	 *            supplier of the current amount
+	 *
+	 * @throws NullPointerException
+	 *             if any of the arguments is <code>null</code>
+	 */
+	public void register(String name, String help, boolean counter, LongSupplier supplier) {
+		Supplied value = new Supplied(Objects.requireNonNull(name), Objects.requireNonNull(help), counter,
+				Objects.requireNonNull(supplier));
+
+		synchronized (supplied) {
+			supplied.add(value);
+		}
+	}
+
+	/**
+	 * Writes the metrics in the Prometheus text format.
+	 *
+	 * @return metrics in the Prometheus text format
+	 */
+	public String toText() {
+		StringBuilder sb = new StringBuilder();
+
+		header(sb, "requests_total", "Number of served requests.", "counter");
+		for (Route route : Route.values()) {
+			sb.append(PREFIX).append("requests_total{route=\"").append(label(route)).append("\"} ")
+					.append(getRequests(route)).append('\n');
+		}
+
+		header(sb, "request_duration_microseconds", "Latency of the requests in microseconds.", "summary");
+		for (Route route : Route.values()) {
+			LatencyHistogram histogram = getLatencies(route);
+			String name = PREFIX + "request_duration_microseconds";
+
+			for (double quantile : QUANTILES) {
+				sb.append(name).append("{route=\"").append(label(route)).append("\",quantile=\"").append(quantile)
+						.append("\"} ").append(histogram.getValueAtQuantile(quantile)).append('\n');
+			}
+			sb.append(name).append("_sum{route=\"").append(label(route)).append("\"} ").append(histogram.getSum())
+					.append('\n');
+			sb.append(name).append("_count{route=\"").append(label(route)).append("\"} ")
+					.append(histogram.getCount()).append('\n');
+		}
+
+		header(sb, "connections_rejected_total", "Number of connections rejected without being served.", "counter");
+		for (Rejection reason : Rejection.values()) {
+			sb.append(PREFIX).append("connections_rejected_total{reason=\"")
+					.append(reason.name().toLowerCase(Locale.ROOT)).append("\"} ").append(getRejected(reason))
+					.append('\n');
+		}
+
+		value(sb, "bytes_written_total", "Number of bytes written to the clients.", "counter", bytesWritten.sum());
+		value(sb, "connections_active", "Number of open connections.", "gauge", getActiveConnections());
+		value(sb, "requests_in_flight", "Number of requests in progress.", "gauge", inFlight.sum());
+
+		List<Supplied> values;
+		synchronized (supplied) {
+			values = new ArrayList<>(supplied);
+		}
+		for (Supplied value : values) {
+			value(sb, value.name, value.help, value.counter ? "counter" : "gauge", value.supplier.getAsLong());
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Appends description and type of the metric with the given name.
+	 *
+	 * @param sb
+	 *            builder of the text
+	 * @param name
+	 *            name of the metric, without the prefix
+	 * @param help
+	 *            description of the metric
+	 * @param type
+	 *            type of the metric
+	 */
+	private static void header(StringBuilder sb, String name, String help, String type) {
+		sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+	}
+
+	/**
+	 * Appends metric with the single value.
+	 *
+	 * @param sb
+	 *            builder of the text
+	 * @param name
+	 *            name of the metric, without the prefix
+	 * @param help
+	 *            description of the metric
+	 * @param type
+	 *            type of the metric
+	 * @param value
+	 *            value of the metric
+	 */
+	private static void value(StringBuilder sb, String name, String help, String type, long value) {
+		header(sb, name, help, type);
+		sb.append(PREFIX).append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Returns label of the given route.
+	 *
+	 * @param route
+	 *            route
+	 * @return label of the route
+	 */
+	private static String label(Route route) {
+		return route.name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Represents value read from the supplier when the metrics are written.
+	 *
+	 */
+	private static class Supplied {
+		/**
+		 * Name of the value.
+		 */
+		private final String name;
+		/**
+		 * Description of the value.
+		 */
+		private final String help;
+		/**
+		 * Indicator whether the value is a counter.
+		 */
+		private final boolean counter;
+		/**
+		 * Supplier of the current amount.
+		 */
+		private final LongSupplier supplier;
+
+		/**
+		 * Initializes newly created value.
+		 *
+		 * @param name
+		 *            name of the value
+		 * @param help
+		 *            description of the value
+		 * @param counter
+		 *            indicator whether the value is a counter
+		 * @param supplier
+		 *            supplier of the current amount
+		 */
+		public Supplied(String name, String help, boolean counter, LongSupplier supplier) {
+			this.name = name;
+			this.help = help;
+			this.counter = counter;
+			this.supplier = supplier;
+		}
+	}
+}
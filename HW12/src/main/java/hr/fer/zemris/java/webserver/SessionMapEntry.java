@@ -0,0 +1,121 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents one session entry containing session id, host, validation time and
+ * data important for the session. Validation time can be extended by any
+ * thread without locking.
+ * <p>
+ * Stores keeping the sessions outside of the memory extend this class and
+ * override methods accessing the validation time and the data.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class SessionMapEntry {
+	/**
+	 * Session ID.
+	 */
+	private final String sid;
+	/**
+	 * Host for this session.
+	 */
+	private final String host;
+	/**
+	 * Validation time in milliseconds.
+	 */
+	private volatile long validUntil;
+	/**
+	 * Map with the users data for this session.
+	 */
+	private final Map<String, String> map;
+
+	/**
+	 * Initializes newly created session.
+	 *
+	 * @param sid
+	 *            session id
+	 * @param host
+	 *            host for this session
+	 * @param validUntil
+	 *            validation time
+	 *
+	 * @throws NullPointerException
+	 *             if the given session id or host is <code>null</code>
+	 */
+	public SessionMapEntry(String sid, String host, long validUntil) {
+		this(sid, host, validUntil, new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * Initializes newly created session with the given map of the users data.
+	 *
+	 * @param sid
+	 *            session id
+	 * @param host
+	 *            host for this session
+	 * @param validUntil
+	 *            validation time
+	 * @param map
+	 *            map with the users data, <code>null</code> if the subclass
+	 *            provides it
+	 *
+	 * @throws NullPointerException
+	 *             if the given session id or host is <code>null</code>
+	 */
+	protected SessionMapEntry(String sid, String host, long validUntil, Map<String, String> map) {
+		this.sid = Objects.requireNonNull(sid);
+		this.host = Objects.requireNonNull(host);
+		this.validUntil = validUntil;
+		this.map = map;
+	}
+
+	/**
+	 * Returns session id.
+	 *
+	 * @return session id
+	 */
+	public String getSid() {
+		return sid;
+	}
+
+	/**
+	 * Returns host for this session.
+	 *
+	 * @return host for this session
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * Returns validation time in milliseconds.
+	 *
+	 * @return validation time in milliseconds
+	 */
+	public long getValidUntil() {
+		return validUntil;
+	}
+
+	/**
+	 * Sets validation time to the given value.
+	 *
+	 * @param validUntil
+	 *            validation time in milliseconds
+	 */
+	public void setValidUntil(long validUntil) {
+		this.validUntil = validUntil;
+	}
+
+	/**
+	 * Returns map with the users data for this session.
+	 *
+	 * @return map with the users data for this session
+	 */
+	public Map<String, String> getMap() {
+		return map;
+	}
+}
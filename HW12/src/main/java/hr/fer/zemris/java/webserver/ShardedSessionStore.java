@@ -0,0 +1,212 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Represents store of the sessions split into shards, each of them a concurrent
+ * map, so that workers accessing different sessions do not contend.
+ * <p>
+ * Expired sessions are removed with a hashed timer wheel. Every session is
+ * placed into the slot of the wheel for its validation time. When the wheel
+ * reaches the slot, expired sessions in it are removed and the others are
+ * placed again according to their current validation time. Extending the
+ * validation time is therefore only a write to the session, without moving it
+ * in the wheel or taking any lock.
+ * <p>
+ * Sessions are kept in the memory only, so they are lost when the server is
+ * stopped.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class ShardedSessionStore implements ISessionStore {
+
+	/**
+	 * Duration of one tick of the wheel in milliseconds.
+	 */
+	private static final long TICK = 1000;
+	/**
+	 * Number of slots of the wheel.
+	 */
+	private static final int WHEEL_SIZE = 512;
+
+	/**
+	 * Shards of the sessions mapped by session id.
+	 */
+	private final ConcurrentHashMap<String, SessionMapEntry>[] shards;
+	/**
+	 * Slots of the wheel with the sessions expiring in them.
+	 */
+	private final Queue<SessionMapEntry>[] wheel;
+	/**
+	 * Last tick whose slot has been processed.
+	 */
+	private long lastTick;
+
+	/**
+	 * Initializes newly created store with four shards per available processor.
+	 */
+	public ShardedSessionStore() {
+		this(4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Initializes newly created store with at least the given number of shards.
+	 *
+	 * @param shardCount
+	 *            minimal number of shards
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the given number of shards is not positive
+	 */
+	public ShardedSessionStore(int shardCount) {
+		if (shardCount < 1)
+			throw new IllegalArgumentException("Number of shards must be positive. Was: " + shardCount);
+
+		// power of two lets the shard be selected by masking the hash
+		int size = Integer.highestOneBit(shardCount);
+		if (size < shardCount) {
+			size <<= 1;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ConcurrentHashMap<String, SessionMapEntry>[] shards = new ConcurrentHashMap[size];
+		for (int i = 0; i < size; i++) {
+			shards[i] = new ConcurrentHashMap<>();
+		}
+		this.shards = shards;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Queue<SessionMapEntry>[] wheel = new Queue[WHEEL_SIZE];
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			wheel[i] = new ConcurrentLinkedQueue<>();
+		}
+		this.wheel = wheel;
+
+		lastTick = System.currentTimeMillis() / TICK;
+	}
+
+	/**
+	 * Returns shard of the session with the given id.
+	 *
+	 * @param sid
+	 *            session id
+	 * @return shard of the session
+	 */
+	private ConcurrentHashMap<String, SessionMapEntry> shard(String sid) {
+		int hash = sid.hashCode();
+
+		return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+	}
+
+	/**
+	 * {@inheritDoc} Session whose validation time has passed is removed.
+	 *
+	 * @throws NullPointerException
+	 *             if the given session id is <code>null</code>
+	 */
+	@Override
+	public SessionMapEntry get(String sid) {
+		ConcurrentHashMap<String, SessionMapEntry> shard = shard(Objects.requireNonNull(sid));
+		SessionMapEntry entry = shard.get(sid);
+
+		if (entry != null && entry.getValidUntil() <= System.currentTimeMillis()) {
+			shard.remove(sid, entry);
+			return null;
+		}
+
+		return entry;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws NullPointerException
+	 *             if the given session id or host is <code>null</code>
+	 */
+	@Override
+	public SessionMapEntry create(String sid, String host, long validUntil) {
+		SessionMapEntry entry = new SessionMapEntry(sid, host, validUntil);
+
+		shard(sid).put(sid, entry);
+		schedule(entry, 0);
+
+		return entry;
+	}
+
+	@Override
+	public void remove(String sid) {
+		shard(Objects.requireNonNull(sid)).remove(sid);
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (ConcurrentHashMap<String, SessionMapEntry> shard : shards) {
+			size += shard.size();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Places the given session into the slot of the wheel for its validation
+	 * time, but not before the given tick.
+	 *
+	 * @param entry
+	 *            session to be placed
+	 * @param minTick
+	 *            first tick whose slot the session can be placed into
+	 */
+	private void schedule(SessionMapEntry entry, long minTick) {
+		long tick = Math.max(entry.getValidUntil() / TICK, minTick);
+
+		wheel[(int) (tick % WHEEL_SIZE)].add(entry);
+	}
+
+	/**
+	 * {@inheritDoc} Slots of the wheel up to the given time are processed.
+	 */
+	@Override
+	public int expire(long now) {
+		long tick = now / TICK;
+		// after a long pause every slot is processed only once
+		long first = Math.max(lastTick + 1, tick - WHEEL_SIZE + 1);
+
+		int removed = 0;
+		List<SessionMapEntry> valid = new ArrayList<>();
+		for (long t = first; t <= tick; t++) {
+			Queue<SessionMapEntry> slot = wheel[(int) (t % WHEEL_SIZE)];
+
+			SessionMapEntry entry;
+			while ((entry = slot.poll()) != null) {
+				if (entry.getValidUntil() > now) {
+					valid.add(entry);
+				} else if (shard(entry.getSid()).remove(entry.getSid(), entry)) {
+					removed++;
+				}
+			}
+		}
+
+		// sessions are placed again only after the slots are drained
+		for (SessionMapEntry entry : valid) {
+			if (shard(entry.getSid()).get(entry.getSid()) == entry) {
+				schedule(entry, tick + 1);
+			}
+		}
+
+		lastTick = Math.max(lastTick, tick);
+
+		return removed;
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+}
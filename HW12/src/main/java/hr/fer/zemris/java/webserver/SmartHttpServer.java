@@ -1,42 +1,84 @@
 package hr.fer.zemris.java.webserver;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
-
-import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
-import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+import hr.fer.zemris.java.webserver.HttpRequestParser.BodyStream;
+import hr.fer.zemris.java.webserver.HttpRequestParser.Status;
 import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import hr.fer.zemris.java.webserver.ServerMetrics.Rejection;
+import hr.fer.zemris.java.webserver.ServerMetrics.Route;
+import hr.fer.zemris.java.webserver.ResponseCache.CachedResponse;
+import hr.fer.zemris.java.webserver.StaticFileCache.CachedFile;
+import hr.fer.zemris.java.webserver.workers.MetricsWorker;
 
 /**
  * Represents HTTP server. Allowed version are 'HTTP/1.0' and 'HTTP/1.1' and
- * allowed method is 'GET'. Server provides work with workers, scripts, HTML
- * text...
+ * allowed methods are 'GET' and 'POST'. Server provides work with workers,
+ * scripts, HTML text...
  * <p>
  * Program requires one argument from command line: configuration file name.
  * Server is powered until user enters 'exit' when server is shut down and all
- * of the sessions and data are lost.
+ * of the sessions and data are lost, unless they are kept in the mapped file.
  * 
  * @author Filip Karacic
  *
@@ -47,10 +89,6 @@ public class SmartHttpServer {
 	 * Address of the server.
 	 */
 	private String address;
-	/**
-	 * Server's domain name.
-	 */
-	private String domainName;
 	/**
 	 * Port on which requests are accepted.
 	 */
@@ -63,6 +101,92 @@ public class SmartHttpServer {
 	 * Session timeout.
 	 */
 	private int sessionTimeout;
+	/**
+	 * Kind of the executor running the client workers: 'fixed' or 'virtual'.
+	 */
+	private String executor;
+	/**
+	 * Maximal number of connections served at once by the virtual threads.
+	 */
+	private int maxConcurrentRequests;
+	/**
+	 * Maximal number of connections waiting to be served.
+	 */
+	private int queueSize;
+	/**
+	 * Indicator whether rejected connections are answered with the status code
+	 * before they are closed.
+	 */
+	private boolean rejectionResponse;
+	/**
+	 * Time in seconds after which the rejected client should try again.
+	 */
+	private int retryAfter;
+	/**
+	 * Limit of the connections open at once per client address.
+	 */
+	private ConnectionLimiter connectionLimiter;
+	/**
+	 * Number of connections admitted to the virtual threads which have not been
+	 * served yet.
+	 */
+	private AtomicInteger admitted = new AtomicInteger();
+	/**
+	 * Limiter of the connections served at once or <code>null</code> if the
+	 * number of threads is limited by the executor itself.
+	 */
+	private Semaphore requestLimiter;
+	/**
+	 * Time in seconds an idle persistent connection is kept open.
+	 */
+	private int keepAliveTimeout;
+	/**
+	 * Time in seconds requests in progress have to finish when the server is
+	 * stopped.
+	 */
+	private int drainTimeout;
+	/**
+	 * Time in seconds an asynchronous worker has to finish the response.
+	 */
+	private int asyncTimeout;
+	/**
+	 * Maximal number of requests served over one persistent connection.
+	 */
+	private int maxKeepAliveRequests;
+	/**
+	 * Size in bytes of the buffer in which response body is collected.
+	 */
+	private int responseBufferSize;
+	/**
+	 * Maximal size of the request header in bytes.
+	 */
+	private int maxHeaderSize;
+	/**
+	 * Maximal size of the request body in bytes.
+	 */
+	private long maxBodySize;
+	/**
+	 * Maximal size in bytes of the 'application/x-www-form-urlencoded' body,
+	 * which is read into memory, and of the unread body which is skipped to keep
+	 * the connection open.
+	 */
+	private int maxFormSize;
+	/**
+	 * Maximal size in bytes of the 'multipart/form-data' part kept in memory.
+	 */
+	private int partMemoryThreshold;
+	/**
+	 * Indicator whether bodies of the textual types are compressed.
+	 */
+	private boolean compression;
+	/**
+	 * Indicator whether the scripts are compiled into classes.
+	 */
+	private boolean compileScripts;
+	/**
+	 * Minimal size in bytes of the body which is compressed.
+	 */
+	private int compressionMinSize;
 	/**
 	 * Map of mime types.
 	 */
@@ -70,41 +194,88 @@ public class SmartHttpServer {
 	/**
 	 * Server thread.
 	 */
-	private ServerThread serverThread = new ServerThread();
+	private Thread serverThread;
 	/**
 	 * Executor service that accepts work.
 	 */
 	private ExecutorService threadPool;
 	/**
-	 * Root path of the files.
+	 * Server power indicator.
+	 */
+	private volatile boolean stopServerThread;
+	/**
+	 * Site served for the hosts which are not configured.
 	 */
-	private Path documentRoot;
+	private VirtualHost defaultHost;
 	/**
-	 * Server power indicator.
+	 * Configured sites mapped by the host names in lower case.
+	 */
+	private Map<String, VirtualHost> virtualHosts = new HashMap<>();
+	/**
+	 * All of the sites, the default one first.
+	 */
+	private List<VirtualHost> hosts = new ArrayList<>();
+	/**
+	 * Sites of the virtual hosts mapped by their aliases.
+	 */
+	private Map<String, VirtualHost> hostAliases = new HashMap<>();
+	/**
+	 * Workers requested with the '/ext/' paths mapped by the class name.
 	 */
-	private boolean stopServerThread;
+	private Map<String, IWebWorker> extWorkers = new ConcurrentHashMap<>();
 	/**
-	 * Map of the workers.
+	 * Class names requested with the '/ext/' paths which are not workers.
 	 */
-	private Map<String, IWebWorker> workersMap;
+	private Set<String> unknownExtWorkers = ConcurrentHashMap.newKeySet();
 	/**
 	 * Sessions for this server.
 	 */
-	private Map<String, SessionMapEntry> sessions = new HashMap<String, SmartHttpServer.SessionMapEntry>();
+	private ISessionStore sessions;
 	/**
 	 * Random number generator used for session ID generation.
 	 */
 	private Random sessionRandom = new Random();
 
 	/**
-	 * Thread that removes expired sessions every five minutes.
+	 * Metrics of this server.
+	 */
+	private ServerMetrics metrics = new ServerMetrics();
+
+	/**
+	 * Thread that removes expired sessions.
 	 */
 	private CacheThread cacheThread = new CacheThread();
 
+	/**
+	 * Workers currently running.
+	 */
+	private Set<ClientWorker> activeWorkers = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Interval in milliseconds between two checks of the draining server for
+	 * idle connections.
+	 */
+	private final static int DRAIN_CHECK_INTERVAL = 100;
+
 	/**
 	 * Length of the session ID.
 	 */
 	private final static int SID_LENGTH = 20;
+	/**
+	 * Maximal length of the 'Host' header line, domain name of at most 253
+	 * characters followed by the port.
+	 */
+	private final static int MAX_HOST_LENGTH = 259;
+
+	/**
+	 * Package of the workers requested with the '/ext/' paths.
+	 */
+	private final static String EXT_WORKERS_PACKAGE = "hr.fer.zemris.java.webserver.workers.";
+
+	/**
+	 * Maximal number of remembered class names which are not workers.
+	 */
+	private final static int MAX_UNKNOWN_EXT_WORKERS = 1024;
 
 	/**
 	 * Initializes newly created {@code SmartHttpServer} object representing http
@@ -138,31 +309,261 @@ public class SmartHttpServer {
 		property.load(Files.newInputStream(path));
 
 		address = property.getProperty("server.address");
-		domainName = property.getProperty("server.domainName");
 		port = Integer.parseInt(property.getProperty("server.port"));
 		workerThreads = Integer.parseInt(property.getProperty("server.workerThreads"));
 		sessionTimeout = Integer.parseInt(property.getProperty("session.timeout"));
-		documentRoot = Paths.get(property.getProperty("server.documentRoot"));
+		executor = property.getProperty("server.executor", "fixed").trim();
+		if (!executor.equals("fixed") && !executor.equals("virtual"))
+			throw new IllegalArgumentException("Unknown executor: " + executor);
+		maxConcurrentRequests = Integer.parseInt(property.getProperty("server.maxConcurrentRequests", "10000"));
+		queueSize = Integer.parseInt(property.getProperty("server.queueSize", "1000"));
+		String rejectionPolicy = property.getProperty("server.rejectionPolicy", "unavailable").trim();
+		if (!rejectionPolicy.equals("unavailable") && !rejectionPolicy.equals("close"))
+			throw new IllegalArgumentException("Unknown rejection policy: " + rejectionPolicy);
+		rejectionResponse = rejectionPolicy.equals("unavailable");
+		retryAfter = Integer.parseInt(property.getProperty("server.retryAfter", "5"));
+		connectionLimiter = new ConnectionLimiter(
+				Integer.parseInt(property.getProperty("server.maxConnectionsPerClient", "256")));
+		keepAliveTimeout = Integer.parseInt(property.getProperty("server.keepAliveTimeout", "5"));
+		drainTimeout = Integer.parseInt(property.getProperty("server.drainTimeout", "30"));
+		asyncTimeout = Integer.parseInt(property.getProperty("server.asyncTimeout", "30"));
+		maxKeepAliveRequests = Integer.parseInt(property.getProperty("server.maxKeepAliveRequests", "100"));
+		responseBufferSize = Integer.parseInt(property.getProperty("server.responseBufferSize", "8192"));
+		maxHeaderSize = Integer.parseInt(property.getProperty("server.maxHeaderSize", "8192"));
+		maxBodySize = Long.parseLong(property.getProperty("server.maxBodySize", "10485760"));
+		maxFormSize = Integer.parseInt(property.getProperty("server.maxFormSize", "65536"));
+		partMemoryThreshold = Integer.parseInt(property.getProperty("server.partMemoryThreshold", "16384"));
+		compression = Boolean.parseBoolean(property.getProperty("server.compression", "true").trim());
+		compressionMinSize = Integer.parseInt(property.getProperty("server.compressionMinSize", "1024"));
+		compileScripts = Boolean.parseBoolean(property.getProperty("server.compileScripts", "true").trim());
+
+		String frontEnd = property.getProperty("server.frontEnd", "blocking").trim();
+		if (frontEnd.equals("nio")) {
+			serverThread = new NioServerThread();
+		} else if (frontEnd.equals("blocking")) {
+			serverThread = new ServerThread();
+		} else {
+			throw new IllegalArgumentException("Unknown front end: " + frontEnd);
+		}
 
 		initializeMimeTypes(property);
-		initializeWorkers(property);
+		initializeHosts(property);
+		initializeSessions(property);
+		initializeMetrics(property);
 
 	}
 
 	/**
-	 * Initializes workers from the given property.
+	 * Initializes the default site and the sites of the virtual hosts listed in
+	 * the 'server.hosts' property. Every virtual host is given with its alias and
+	 * configured with the properties starting with 'host.&lt;alias&gt;.': 'names'
+	 * of the host, 'documentRoot' and optionally 'workers', 'cookieDomain' and
+	 * sizes of the caches, which are otherwise the same as for the default site.
+	 * 
+	 * @param property
+	 *            property from configuration file
+	 * 
+	 * @throws IOException
+	 *             if error while reading occurs.
+	 * @throws IllegalArgumentException
+	 *             if the virtual host is not configured properly
+	 */
+	private void initializeHosts(Properties property) throws IOException {
+		Map<String, IWebWorker> defaultWorkers = loadWorkers(property.getProperty("server.workers"));
+		defaultHost = createHost(property, "server.", property.getProperty("server.domainName"),
+				property.getProperty("server.documentRoot"), defaultWorkers);
+		hosts.add(defaultHost);
+
+		for (String alias : property.getProperty("server.hosts", "").split(",")) {
+			alias = alias.trim();
+			if (alias.isEmpty())
+				continue;
+
+			String prefix = "host." + alias + ".";
+			String names = property.getProperty(prefix + "names");
+			String documentRoot = property.getProperty(prefix + "documentRoot");
+			if (names == null || names.trim().isEmpty() || documentRoot == null)
+				throw new IllegalArgumentException("Host " + alias + " must have names and document root.");
+
+			// every site has its own map, so a worker can be added to one site only
+			String workersFile = property.getProperty(prefix + "workers");
+			Map<String, IWebWorker> workers = workersFile == null ? new HashMap<>(defaultWorkers)
+					: loadWorkers(workersFile);
+
+			String[] hostNames = names.split(",");
+			VirtualHost host = createHost(property, prefix, hostNames[0].trim(), documentRoot, workers);
+			hosts.add(host);
+			hostAliases.put(alias, host);
+
+			for (String name : hostNames) {
+				if (virtualHosts.put(name.trim().toLowerCase(Locale.ROOT), host) != null)
+					throw new IllegalArgumentException("Host name " + name.trim() + " is used more than once.");
+			}
+		}
+	}
+
+	/**
+	 * Creates site configured with the properties starting with the given
+	 * prefix. Sizes of the caches not given with the prefix are read from the
+	 * properties of the server.
+	 * 
+	 * @param property
+	 *            property from configuration file
+	 * @param prefix
+	 *            prefix of the properties of the site
+	 * @param domainName
+	 *            name of the host used if the request has no 'Host' header line
+	 * @param documentRoot
+	 *            root path of the files
+	 * @param workers
+	 *            workers of the site
+	 * @return created site
+	 */
+	private VirtualHost createHost(Properties property, String prefix, String domainName, String documentRoot,
+			Map<String, IWebWorker> workers) {
+		ScriptCache scriptCache = new ScriptCache(
+				Integer.parseInt(hostProperty(property, prefix, "scriptCacheSize", "100")), compileScripts);
+		StaticFileCache staticFileCache = new StaticFileCache(
+				Long.parseLong(hostProperty(property, prefix, "staticCacheSize", "4194304")),
+				Long.parseLong(hostProperty(property, prefix, "staticCacheMaxFileSize", "65536")),
+				Long.parseLong(hostProperty(property, prefix, "staticCacheRevalidate", "1000")),
+				file -> compression && ContentCoding.isCompressible(getMimeType(file.getFileName().toString())));
+		ResponseCache responseCache = new ResponseCache(
+				Long.parseLong(hostProperty(property, prefix, "responseCacheSize", "1048576")),
+				Integer.parseInt(hostProperty(property, prefix, "responseCacheMaxBodySize", "262144")));
+
+		return new VirtualHost(domainName, Paths.get(documentRoot), property.getProperty(prefix + "cookieDomain"),
+				workers, scriptCache, staticFileCache, responseCache);
+	}
+
+	/**
+	 * Returns value of the property of the site with the given prefix or, if the
+	 * site does not have it, value of the property of the server.
 	 * 
 	 * @param property
 	 *            property from configuration file
+	 * @param prefix
+	 *            prefix of the properties of the site
+	 * @param key
+	 *            key of the property without the prefix
+	 * @param defaultValue
+	 *            value used if neither the site nor the server has the property
+	 * @return value of the property
+	 */
+	private static String hostProperty(Properties property, String prefix, String key, String defaultValue) {
+		return property.getProperty(prefix + key, property.getProperty("server." + key, defaultValue));
+	}
+
+	/**
+	 * Loads workers from the file with the given path.
+	 * 
+	 * @param path
+	 *            path of the file mapping urls to workers
+	 * @return workers mapped by path
 	 * 
 	 * @throws IOException
 	 *             if error while reading occurs.
 	 */
-	private void initializeWorkers(Properties property) throws IOException {
+	private Map<String, IWebWorker> loadWorkers(String path) throws IOException {
 		Properties propertie3 = new Properties();
-		propertie3.load(Files.newInputStream(Paths.get(property.getProperty("server.workers"))));
+		propertie3.load(Files.newInputStream(Paths.get(path)));
+
+		return createWorkers(propertie3);
+	}
+
+	/**
+	 * Initializes session store from the given property.
+	 * 
+	 * @param property
+	 *            property from configuration file
+	 * 
+	 * @throws IOException
+	 *             if error while opening the store occurs.
+	 */
+	private void initializeSessions(Properties property) throws IOException {
+		String store = property.getProperty("session.store", "heap").trim();
+
+		if (store.equals("heap")) {
+			sessions = new ShardedSessionStore();
+		} else if (store.equals("mapped")) {
+			sessions = new MappedSessionStore(Paths.get(property.getProperty("session.file", "sessions.db")),
+					Integer.parseInt(property.getProperty("session.capacity", "65536")),
+					Integer.parseInt(property.getProperty("session.slotSize",
+							Integer.toString(MappedSessionStore.DEFAULT_SLOT_SIZE))));
+		} else {
+			try {
+				Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(store);
+				sessions = (ISessionStore) referenceToClass.getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Registers values of the server read when the metrics are written and the
+	 * worker writing the metrics at the path from the given property. Metrics
+	 * describe the whole server, so the worker is registered only on the site
+	 * given with the 'server.metricsHost' property, 'default' for the default
+	 * site or the alias of the virtual host. If the property is not given,
+	 * metrics are not served.
+	 * 
+	 * @param property
+	 *            property from configuration file
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the site is not configured or already has a worker at the
+	 *             path
+	 */
+	private void initializeMetrics(Properties property) {
+		String alias = property.getProperty("server.metricsHost", "").trim();
+
+		if (!alias.isEmpty()) {
+			VirtualHost host = alias.equals("default") ? defaultHost : hostAliases.get(alias);
+			if (host == null)
+				throw new IllegalArgumentException("Unknown host of the metrics: " + alias);
+
+			String path = property.getProperty("server.metricsPath", "/metrics").trim();
+			Map<String, IWebWorker> workers = host.getWorkers();
+			if (workers.containsKey(path))
+				throw new IllegalArgumentException("Cannot have two exact same path.");
+
+			workers.put(path, new MetricsWorker(metrics));
+		}
+
+		metrics.register("queue_depth", "Number of connections waiting for a worker thread.", false,
+				() -> queueDepth());
+		metrics.register("sessions", "Number of sessions.", false, () -> sessions.size());
+		metrics.register("script_cache_hits_total", "Number of scripts served from the cache.", true,
+				() -> sum(host -> host.getScriptCache().getHits()));
+		metrics.register("script_cache_misses_total", "Number of scripts parsed.", true,
+				() -> sum(host -> host.getScriptCache().getMisses()));
+		metrics.register("script_compile_failures_total", "Number of scripts which could not be compiled.", true,
+				() -> sum(host -> host.getScriptCache().getCompileFailures()));
+		metrics.register("static_cache_hits_total", "Number of static files served from the cache.", true,
+				() -> sum(host -> host.getStaticFileCache().getHits()));
+		metrics.register("static_cache_misses_total", "Number of static files read from disk.", true,
+				() -> sum(host -> host.getStaticFileCache().getMisses()));
+		metrics.register("response_cache_hits_total", "Number of worker responses served from the cache.", true,
+				() -> sum(host -> host.getResponseCache().getHits()));
+		metrics.register("response_cache_misses_total", "Number of cacheable worker responses rendered.", true,
+				() -> sum(host -> host.getResponseCache().getMisses()));
+	}
+
+	/**
+	 * Returns sum of the given values of all of the sites.
+	 * 
+	 * @param value
+	 *            value of the site
+	 * @return sum of the values of all of the sites
+	 */
+	private long sum(ToLongFunction<VirtualHost> value) {
+		long sum = 0;
+		for (VirtualHost host : hosts) {
+			sum += value.applyAsLong(host);
+		}
 
-		createWorkers(propertie3);
+		return sum;
 	}
 
 	/**
@@ -185,17 +586,32 @@ public class SmartHttpServer {
 
 	}
 
+	/**
+	 * Returns type of the file with the given name according to its extension.
+	 * 
+	 * @param fileName
+	 *            name of the file
+	 * @return type of the file
+	 */
+	private String getMimeType(String fileName) {
+		String mimeType = mimeTypes.get(fileName.substring(fileName.lastIndexOf('.') + 1));
+
+		return mimeType == null ? "application/octet-stream" : mimeType;
+	}
+
 	/**
 	 * Initializes workers from the given property.
 	 * 
 	 * @param property
 	 *            property from configuration file
 	 * 
+	 * @return workers mapped by path
+	 * 
 	 * @throws IOException
 	 *             if error while reading occurs.
 	 */
-	private void createWorkers(Properties property) throws IOException {
-		workersMap = new HashMap<>();
+	private Map<String, IWebWorker> createWorkers(Properties property) throws IOException {
+		Map<String, IWebWorker> workersMap = new HashMap<>();
 
 		for (String name : property.stringPropertyNames()) {
 			String fqcn = property.getProperty(name);
@@ -214,6 +630,42 @@ public class SmartHttpServer {
 
 		}
 
+		return workersMap;
+	}
+
+	/**
+	 * Returns worker with the given class name from the workers package, creating
+	 * it on the first request. Returns <code>null</code> if there is no such
+	 * worker. Workers are stateless, so one instance serves all of the requests.
+	 * 
+	 * @param className
+	 *            simple name of the worker class
+	 * @return worker with the given class name or <code>null</code>
+	 */
+	private IWebWorker getExtWorker(String className) {
+		IWebWorker worker = extWorkers.get(className);
+		if (worker != null || unknownExtWorkers.contains(className))
+			return worker;
+
+		try {
+			Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(EXT_WORKERS_PACKAGE + className);
+			if (!IWebWorker.class.isAssignableFrom(referenceToClass))
+				throw new ClassCastException(referenceToClass + " is not a worker.");
+
+			worker = (IWebWorker) referenceToClass.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+			// set is cleared instead of growing with every unknown name requested
+			if (unknownExtWorkers.size() >= MAX_UNKNOWN_EXT_WORKERS) {
+				unknownExtWorkers.clear();
+			}
+			unknownExtWorkers.add(className);
+
+			return null;
+		}
+
+		IWebWorker previous = extWorkers.putIfAbsent(className, worker);
+
+		return previous == null ? worker : previous;
 	}
 
 	/**
@@ -226,67 +678,46 @@ public class SmartHttpServer {
 	}
 
 	/**
-	 * Represents one session entry containing session id, host, validation time and
-	 * data important for the session.
-	 *
+	 * Returns metrics of this server.
+	 * 
+	 * @return metrics of this server
 	 */
-	private static class SessionMapEntry {
-		/**
-		 * Session ID.
-		 */
-		private String sid;
-		/**
-		 * Host for this session.
-		 */
-		private String host;
-		/**
-		 * Validation time in milliseconds.
-		 */
-		private long validUntil;
-		/**
-		 * Map with the users data for this session.
-		 */
-		private Map<String, String> map;
-
-		/**
-		 * Initializes newly created session.
-		 * 
-		 * @param sid
-		 *            session id
-		 * @param host
-		 *            host for this session
-		 * @param validUntil
-		 *            validation time
-		 */
-		public SessionMapEntry(String sid, String host, long validUntil) {
-			setSid(sid);
-			this.host = host;
-			this.validUntil = validUntil;
-
-			map = new ConcurrentHashMap<>();
-		}
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
 
-		/**
-		 * Sets session id to the given value.
-		 * 
-		 * @param sid
-		 *            value to be set
-		 */
-		public void setSid(String sid) {
-			this.sid = sid;
-		}
+	/**
+	 * Returns statistics of this server as lines of text.
+	 * 
+	 * @return statistics of this server
+	 */
+	public String getStatistics() {
+		return "Hosts: " + hosts.size() + " sites\n" + "Rejected connections: "
+				+ metrics.getRejected(Rejection.OVERLOAD) + " overloaded, " + metrics.getRejected(Rejection.CLIENT_LIMIT)
+				+ " over client limit\n" + "Script cache: " + sum(host -> host.getScriptCache().getHits()) + " hits, "
+				+ sum(host -> host.getScriptCache().getMisses()) + " misses, "
+				+ sum(host -> host.getScriptCache().size()) + " scripts cached, "
+				+ sum(host -> host.getScriptCache().getCompileFailures()) + " not compiled\n" + "Static file cache: "
+				+ sum(host -> host.getStaticFileCache().getHits()) + " hits, "
+				+ sum(host -> host.getStaticFileCache().getMisses()) + " misses, "
+				+ sum(host -> host.getStaticFileCache().size()) + " files ("
+				+ sum(host -> host.getStaticFileCache().getBytes()) + " bytes) cached\n" + "Response cache: "
+				+ sum(host -> host.getResponseCache().getHits()) + " hits, "
+				+ sum(host -> host.getResponseCache().getMisses()) + " misses, "
+				+ sum(host -> host.getResponseCache().size()) + " responses ("
+				+ sum(host -> host.getResponseCache().getBytes()) + " bytes) cached\n" + "Sessions: " + sessions.size() + " active\n"
+				+ "Ext workers: " + extWorkers.size() + " loaded, " + unknownExtWorkers.size() + " unknown";
 	}
 
 	/**
 	 * Starts server thread if not alive and creates a thread pool with the given
-	 * number of threads.
+	 * number of threads. If virtual threads are configured, every connection is
+	 * served by its own virtual thread instead and the number of connections
+	 * served at once is limited. In both cases only the given number of
+	 * connections can wait to be served, others are rejected.
 	 */
-	protected synchronized void start() {
-		if (!serverThread.isAlive()) {
-			serverThread.start();
-		}
-
-		threadPool = Executors.newFixedThreadPool(workerThreads, new ThreadFactory() {
+	public synchronized void start() {
+		ThreadFactory daemonFactory = new ThreadFactory() {
 
 			@Override
 			public Thread newThread(Runnable arg0) {
@@ -295,85 +726,826 @@ public class SmartHttpServer {
 
 				return thread;
 			}
-		});
+		};
+
+		if (executor.equals("virtual")) {
+			threadPool = newVirtualThreadExecutor(daemonFactory);
+			requestLimiter = new Semaphore(maxConcurrentRequests);
+		} else {
+			BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize)
+					: new SynchronousQueue<>();
+
+			// rejected worker is answered on the accepting thread, without waiting
+			threadPool = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS, queue,
+					daemonFactory, (task, executor) -> {
+						if (!(task instanceof ClientWorker))
+							throw new RejectedExecutionException("Server is overloaded.");
+
+						((ClientWorker) task).reject(Rejection.OVERLOAD);
+					});
+		}
+
+		if (!serverThread.isAlive()) {
+			serverThread.start();
+		}
 	}
 
 	/**
-	 * Stops the server thread and shuts down the thread pool.
+	 * Returns executor starting new virtual thread for every task. Virtual threads
+	 * are available since Java 21, so on older platforms new daemon thread from
+	 * the given factory is started for every task instead.
+	 * 
+	 * @param fallbackFactory
+	 *            factory of the threads used if virtual threads are not available
+	 * @return executor starting new thread for every task
 	 */
-	protected synchronized void stop() {
-		stopServerThread = true;
-
-		threadPool.shutdown();
+	private static ExecutorService newVirtualThreadExecutor(ThreadFactory fallbackFactory) {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(fallbackFactory);
+		}
 	}
 
 	/**
-	 * Represents server thread that accepts requests and submit it to thread pool
-	 * for execution.
-	 *
+	 * Submits the given client worker to the thread pool. If the number of
+	 * connections served at once is limited, worker waits for its turn on its
+	 * own thread. Worker which cannot be queued is rejected.
+	 * 
+	 * @param worker
+	 *            worker to be submitted
 	 */
-	protected class ServerThread extends Thread {
-		/**
-		 * Ensures that call to accept() for this ServerSocket will block for only this
-		 * amount of time.
-		 */
-		private final static int TIMEOUT = 3 * 1000;
-
-		@Override
-		public void run() {
+	private void execute(ClientWorker worker) {
+		try {
+			executeTask(worker);
+		} catch (RejectedExecutionException e) {
+			worker.reject(Rejection.OVERLOAD);
+		}
+	}
 
-			try {
-				ServerSocket serverSocket = new ServerSocket();
-				serverSocket.bind(new InetSocketAddress(port));
-				serverSocket.setSoTimeout(TIMEOUT);
-				while (true) {
-					if (stopServerThread)
-						break;
+	/**
+	 * Submits the given task to the thread pool, such as the client worker or
+	 * the task of the asynchronous worker. Tasks share the queue and the limit
+	 * of the tasks run at once with the client workers. Client worker rejected
+	 * by the fixed thread pool is answered right away.
+	 * 
+	 * @param task
+	 *            task to be submitted
+	 * @throws RejectedExecutionException
+	 *             if the task cannot be queued
+	 */
+	private void executeTask(Runnable task) {
+		Semaphore limiter = requestLimiter;
+		if (limiter == null) {
+			threadPool.execute(task);
+			return;
+		}
 
-					try {
-						Socket client = serverSocket.accept();
-						ClientWorker cw = new ClientWorker(client);
-						threadPool.submit(cw);
-					} catch (IOException e) {
-					}
-				}
+		if (admitted.incrementAndGet() > maxConcurrentRequests + queueSize) {
+			admitted.decrementAndGet();
+			throw new RejectedExecutionException("Server is overloaded.");
+		}
 
+		try {
+			threadPool.execute(() -> {
+				limiter.acquireUninterruptibly();
 				try {
-					serverSocket.close();
-				} catch (IOException e) {
+					task.run();
+				} finally {
+					limiter.release();
+					admitted.decrementAndGet();
 				}
-			} catch (IOException e) {
-				 throw new IllegalStateException(e);
-			}
+			});
+		} catch (RejectedExecutionException e) {
+			admitted.decrementAndGet();
+			throw e;
 		}
 	}
 
 	/**
-	 * Represents cache thread that removes expired sessions every five minutes.
-	 *
+	 * Runs the given completion of the asynchronous request on the thread pool,
+	 * outside of the queue and the limit of the tasks. Completion cannot be
+	 * dropped, since it releases the connection, so it is run on the calling
+	 * thread if the pool no longer accepts tasks.
+	 * 
+	 * @param completion
+	 *            completion of the asynchronous request
 	 */
-	protected class CacheThread extends Thread {
-		/**
-		 * Interval between two cache removal in milliseconds.
-		 */
-		static final int interval = 300 * 1000;
-
-		/**
-		 * Initializes newly created thread.
-		 */
-		public CacheThread() {
-			setDaemon(true);
+	private void executeCompletion(Runnable completion) {
+		try {
+			threadPool.execute(completion);
+		} catch (RejectedExecutionException e) {
+			completion.run();
 		}
+	}
 
-		@Override
-		public void run() {
+	/**
+	 * Counts new connection of the client with the given address. If the client
+	 * has too many connections open, connection is rejected instead.
+	 * 
+	 * @param worker
+	 *            worker of the new connection
+	 * @return <code>true</code> if the connection is counted
+	 */
+	private boolean admit(ClientWorker worker) {
+		metrics.connectionOpened();
 
-			while (true) {
-				if (stopServerThread)
-					break;
+		if (connectionLimiter.tryAcquire(worker.address))
+			return true;
 
-				try {
-					Thread.sleep(interval);
+		worker.reject(Rejection.CLIENT_LIMIT);
+		return false;
+	}
+
+	/**
+	 * Records closing of the connection of the client with the given address.
+	 * 
+	 * @param address
+	 *            address of the client
+	 */
+	private void connectionClosed(InetAddress address) {
+		metrics.connectionClosed();
+		connectionLimiter.release(address);
+	}
+
+	/**
+	 * Returns number of connections waiting to be served.
+	 * 
+	 * @return number of connections waiting to be served
+	 */
+	private int queueDepth() {
+		if (threadPool instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) threadPool).getQueue().size();
+
+		Semaphore limiter = requestLimiter;
+
+		return limiter == null ? 0 : limiter.getQueueLength();
+	}
+
+	/**
+	 * Stops the server gracefully. Server stops accepting connections at once
+	 * and idle persistent connections are closed, while requests in progress
+	 * and connections already accepted are served with the final response
+	 * within the drain timeout. Connections still open after the timeout are
+	 * closed. Sessions are saved once no request is served any more.
+	 * 
+	 * @throws UncheckedIOException
+	 *             if the sessions could not be saved
+	 */
+	public synchronized void stop() {
+		if (stopServerThread)
+			return;
+		stopServerThread = true;
+
+		if (serverThread instanceof NioServerThread) {
+			((NioServerThread) serverThread).stopAccepting();
+		} else {
+			((ServerThread) serverThread).stopAccepting();
+		}
+		cacheThread.interrupt();
+
+		if (threadPool != null) {
+			drain();
+		}
+
+		try {
+			serverThread.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		try {
+			sessions.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Sessions could not be saved.", e);
+		}
+	}
+
+	/**
+	 * Waits for the workers, including the asynchronous ones, to finish,
+	 * closing idle connections meanwhile. If they do not finish within the
+	 * drain timeout, their connections are closed.
+	 */
+	private void drain() {
+		threadPool.shutdown();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeout);
+
+		try {
+			while (!(threadPool.awaitTermination(DRAIN_CHECK_INTERVAL, TimeUnit.MILLISECONDS)
+					&& activeWorkers.isEmpty())) {
+				if (threadPool.isTerminated()) {
+					// asynchronous requests are completed outside of the pool
+					Thread.sleep(DRAIN_CHECK_INTERVAL);
+				}
+
+				// connection may become idle after its last response
+				for (ClientWorker worker : activeWorkers) {
+					worker.closeIfIdle();
+				}
+
+				if (System.nanoTime() - deadline >= 0) {
+					closeAll();
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			closeAll();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Closes connections of all of the workers, including the ones which have
+	 * not started, interrupts the running workers and cancels the asynchronous
+	 * ones.
+	 */
+	private void closeAll() {
+		for (Runnable task : threadPool.shutdownNow()) {
+			if (task instanceof ClientWorker) {
+				((ClientWorker) task).close();
+			}
+		}
+
+		for (ClientWorker worker : activeWorkers) {
+			worker.close();
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the client already has the current version of
+	 * the file according to the given 'If-None-Match' or, if it is not present,
+	 * 'If-Modified-Since' header line.
+	 * 
+	 * @param ifNoneMatch
+	 *            value of the 'If-None-Match' header line, can be
+	 *            <code>null</code>
+	 * @param ifModifiedSince
+	 *            value of the 'If-Modified-Since' header line, can be
+	 *            <code>null</code>
+	 * @param eTag
+	 *            value of the 'ETag' header line for the sent version of the
+	 *            file
+	 * @param modified
+	 *            time of the last modification of the file in milliseconds
+	 * @return <code>true</code> if the client has the current version of the file
+	 */
+	static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String eTag, long modified) {
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+
+				if (tag.equals("*") || tag.equals(eTag))
+					return true;
+			}
+
+			return false;
+		}
+
+		Long since = parseDate(ifModifiedSince);
+
+		return since != null && modified / 1000 <= since / 1000;
+	}
+
+	/**
+	 * Returns <code>true</code> if the 'Range' header line should be applied to
+	 * the file. Range is applied only if the 'If-Range' header line is not
+	 * present or it matches the current version of the file.
+	 * 
+	 * @param ifRange
+	 *            value of the 'If-Range' header line, can be <code>null</code>
+	 * @param eTag
+	 *            value of the 'ETag' header line of the file as it is
+	 * @param modified
+	 *            time of the last modification of the file in milliseconds
+	 * @return <code>true</code> if the 'Range' header line should be applied
+	 */
+	static boolean isRangeValid(String ifRange, String eTag, long modified) {
+		if (ifRange == null)
+			return true;
+
+		if (ifRange.startsWith("\""))
+			return ifRange.equals(eTag);
+
+		Long date = parseDate(ifRange);
+
+		return date != null && modified / 1000 == date / 1000;
+	}
+
+	/**
+	 * Parses the given date from the header and returns it in milliseconds or
+	 * <code>null</code> if it is not valid.
+	 * 
+	 * @param date
+	 *            date from the header, can be <code>null</code>
+	 * @return date in milliseconds or <code>null</code> if it is not valid
+	 */
+	private static Long parseDate(String date) {
+		if (date == null)
+			return null;
+
+		try {
+			return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parses the given value of the 'Range' header line and returns positions
+	 * of the first and the last requested byte of the file with the given
+	 * length. If the range cannot be satisfied, first position is not less than
+	 * the length. Returns <code>null</code> if the whole file should be sent
+	 * because there is no range, it is not valid or multiple ranges are
+	 * requested.
+	 * 
+	 * @param range
+	 *            value of the 'Range' header line, can be <code>null</code>
+	 * @param length
+	 *            length of the file
+	 * @return positions of the first and the last requested byte or
+	 *         <code>null</code> if the whole file should be sent
+	 */
+	static long[] parseRange(String range, long length) {
+		if (range == null || !range.startsWith("bytes=") || range.contains(","))
+			return null;
+
+		String spec = range.substring(6).trim();
+		int dash = spec.indexOf('-');
+		if (dash == -1)
+			return null;
+
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+
+			if (first.isEmpty()) {
+				// suffix range requests the last bytes of the file
+				long suffix = Long.parseLong(last);
+				if (suffix <= 0 || length == 0)
+					return new long[] { length, length };
+
+				return new long[] { Math.max(0, length - suffix), length - 1 };
+			}
+
+			long start = Long.parseLong(first);
+			long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+			if (start < 0 || end < start)
+				return null;
+
+			return new long[] { start, Math.min(end, length - 1) };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Represents server thread that accepts requests and submit it to thread pool
+	 * for execution.
+	 *
+	 */
+	protected class ServerThread extends Thread {
+		/**
+		 * Ensures that call to accept() for this ServerSocket will block for only this
+		 * amount of time.
+		 */
+		private final static int TIMEOUT = 3 * 1000;
+
+		/**
+		 * Socket on which connections are accepted or <code>null</code> if it has
+		 * not been opened.
+		 */
+		private volatile ServerSocket serverSocket;
+
+		/**
+		 * Stops accepting connections without waiting for the timeout of the
+		 * current accept().
+		 */
+		public void stopAccepting() {
+			ServerSocket serverSocket = this.serverSocket;
+			if (serverSocket == null)
+				return;
+
+			try {
+				serverSocket.close();
+			} catch (IOException e) {
+			}
+		}
+
+		@Override
+		public void run() {
+
+			try {
+				// sockets accepted over the channel have channels files can be transferred to
+				ServerSocket serverSocket = ServerSocketChannel.open().socket();
+				this.serverSocket = serverSocket;
+				if (stopServerThread) {
+					serverSocket.close();
+					return;
+				}
+				serverSocket.bind(new InetSocketAddress(port));
+				serverSocket.setSoTimeout(TIMEOUT);
+				while (true) {
+					if (stopServerThread)
+						break;
+
+					try {
+						Socket client = serverSocket.accept();
+						ClientWorker cw = new ClientWorker(client);
+						if (admit(cw)) {
+							execute(cw);
+						}
+					} catch (IOException e) {
+					}
+				}
+
+				try {
+					serverSocket.close();
+				} catch (IOException e) {
+				}
+			} catch (IOException e) {
+				 throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Represents server thread that multiplexes all of the client connections over
+	 * one {@link Selector}. Request headers are read without blocking and only
+	 * connections with a complete header are submitted to the thread pool, so
+	 * slow or idle clients do not occupy worker threads.
+	 *
+	 */
+	protected class NioServerThread extends Thread {
+		/**
+		 * Maximal time in milliseconds that one call to select() blocks for.
+		 */
+		private final static int TIMEOUT = 3 * 1000;
+		/**
+		 * Time in milliseconds a client has for sending the complete header.
+		 */
+		private final static int HEADER_TIMEOUT = 30 * 1000;
+		/**
+		 * Size of the buffer for reading from the channels in bytes.
+		 */
+		private final static int READ_BUFFER_SIZE = 8 * 1024;
+
+		/**
+		 * Buffer shared by all of the connections for reading from the channels.
+		 */
+		private ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		/**
+		 * Selector of this thread.
+		 */
+		private volatile Selector selector;
+		/**
+		 * Persistent connections returned by the workers, waiting for registration.
+		 */
+		private Queue<PendingRequest> resumed = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * Stops accepting connections without waiting for the timeout of the
+		 * current select().
+		 */
+		public void stopAccepting() {
+			Selector selector = this.selector;
+			if (selector != null) {
+				selector.wakeup();
+			}
+		}
+
+		/**
+		 * Returns idle persistent connection to this thread which waits for the next
+		 * request on it.
+		 * 
+		 * @param channel
+		 *            channel of the connection
+		 * @param served
+		 *            number of requests served over the connection
+		 */
+		public void resume(SocketChannel channel, int served) {
+			resumed.add(new PendingRequest(channel, keepAliveTimeout * 1000L, served));
+
+			Selector selector = this.selector;
+			if (selector != null) {
+				selector.wakeup();
+			}
+		}
+
+		@Override
+		public void run() {
+
+			try (Selector selector = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+				this.selector = selector;
+				serverChannel.bind(new InetSocketAddress(port));
+				serverChannel.configureBlocking(false);
+				serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+				List<SelectionKey> completed = new ArrayList<>();
+				while (true) {
+					if (stopServerThread)
+						break;
+
+					selector.select(TIMEOUT);
+					registerResumed(selector);
+
+					Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+					while (iterator.hasNext()) {
+						SelectionKey key = iterator.next();
+						iterator.remove();
+
+						if (!key.isValid())
+							continue;
+
+						if (key.isAcceptable()) {
+							accept(serverChannel, selector);
+						} else if (key.isReadable() && read(key)) {
+							completed.add(key);
+						}
+					}
+
+					dispatch(selector, completed);
+					closeExpired(selector);
+				}
+
+				for (SelectionKey key : selector.keys()) {
+					closeQuietly(key.channel());
+				}
+				for (PendingRequest request : resumed) {
+					closeQuietly(request.channel);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Accepts pending connection and registers it for reading.
+		 * 
+		 * @param serverChannel
+		 *            channel on which connections are accepted
+		 * @param selector
+		 *            selector of this thread
+		 */
+		private void accept(ServerSocketChannel serverChannel, Selector selector) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				if (channel == null)
+					return;
+
+				channel.configureBlocking(false);
+				if (!admit(new ClientWorker(channel, new byte[0], 0)))
+					return;
+
+				channel.register(selector, SelectionKey.OP_READ, new PendingRequest(channel, HEADER_TIMEOUT, 0));
+			} catch (IOException e) {
+			}
+		}
+
+		/**
+		 * Registers persistent connections returned by the workers for reading.
+		 * 
+		 * @param selector
+		 *            selector of this thread
+		 */
+		private void registerResumed(Selector selector) {
+			PendingRequest request;
+			while ((request = resumed.poll()) != null) {
+				try {
+					request.channel.configureBlocking(false);
+					request.channel.register(selector, SelectionKey.OP_READ, request);
+				} catch (IOException e) {
+					closeQuietly(request.channel);
+				}
+			}
+		}
+
+		/**
+		 * Reads available bytes of the connection for the given key. Returns
+		 * <code>true</code> if the complete header has been read.
+		 * 
+		 * @param key
+		 *            key of the connection
+		 * @return <code>true</code> if the complete header has been read
+		 */
+		private boolean read(SelectionKey key) {
+			SocketChannel channel = (SocketChannel) key.channel();
+			PendingRequest request = (PendingRequest) key.attachment();
+
+			try {
+				readBuffer.clear();
+				int r = channel.read(readBuffer);
+
+				if (r == -1) {
+					key.cancel();
+					closeQuietly(channel);
+					return false;
+				}
+
+				if (request.size() == 0) {
+					// client of the idle connection started sending the next request
+					request.deadline = System.currentTimeMillis() + HEADER_TIMEOUT;
+				}
+
+				readBuffer.flip();
+				// too large header is rejected by the worker
+				return request.append(readBuffer) || request.size() > maxHeaderSize;
+			} catch (IOException e) {
+				key.cancel();
+				closeQuietly(channel);
+			}
+
+			return false;
+		}
+
+		/**
+		 * Deregisters connections with complete headers from the selector and
+		 * submits them to the thread pool.
+		 * 
+		 * @param selector
+		 *            selector of this thread
+		 * @param completed
+		 *            keys of the connections with complete headers
+		 * 
+		 * @throws IOException
+		 *             if error while deregistering occurs
+		 */
+		private void dispatch(Selector selector, List<SelectionKey> completed) throws IOException {
+			if (completed.isEmpty())
+				return;
+
+			for (SelectionKey key : completed) {
+				key.cancel();
+			}
+			// cancelled keys are deregistered only on the next selection operation
+			selector.selectNow();
+
+			for (SelectionKey key : completed) {
+				SocketChannel channel = (SocketChannel) key.channel();
+				PendingRequest request = (PendingRequest) key.attachment();
+
+				try {
+					channel.configureBlocking(true);
+					execute(new ClientWorker(channel, request.toByteArray(), request.served));
+				} catch (IOException e) {
+					closeQuietly(channel);
+				}
+			}
+
+			completed.clear();
+		}
+
+		/**
+		 * Closes connections which did not send the complete header in time and
+		 * idle persistent connections whose timeout has expired.
+		 * 
+		 * @param selector
+		 *            selector of this thread
+		 */
+		private void closeExpired(Selector selector) {
+			long now = System.currentTimeMillis();
+
+			for (SelectionKey key : selector.keys()) {
+				Object attachment = key.attachment();
+				if (!(attachment instanceof PendingRequest))
+					continue;
+
+				if (now > ((PendingRequest) attachment).deadline) {
+					key.cancel();
+					closeQuietly(key.channel());
+				}
+			}
+		}
+
+		/**
+		 * Closes the given channel ignoring errors.
+		 * 
+		 * @param channel
+		 *            channel to be closed
+		 */
+		private void closeQuietly(Channel channel) {
+			InetAddress address = channel instanceof SocketChannel ? ((SocketChannel) channel).socket().getInetAddress()
+					: null;
+
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+
+			if (channel instanceof SocketChannel) {
+				connectionClosed(address);
+			}
+		}
+	}
+
+	/**
+	 * Represents bytes of the request header received so far on one connection.
+	 * End of the header is recognized with the same state machine the
+	 * {@link ClientWorker} uses.
+	 *
+	 */
+	private static class PendingRequest extends ByteArrayOutputStream {
+		/**
+		 * Channel of the connection.
+		 */
+		private final SocketChannel channel;
+		/**
+		 * Time in milliseconds until which the header must be received.
+		 */
+		private long deadline;
+		/**
+		 * Number of requests already served over the connection.
+		 */
+		private final int served;
+		/**
+		 * Current state of the header end recognition.
+		 */
+		private int state;
+
+		/**
+		 * Initializes newly created pending request.
+		 * 
+		 * @param channel
+		 *            channel of the connection
+		 * @param timeout
+		 *            time in milliseconds the client has for sending the request
+		 * @param served
+		 *            number of requests already served over the connection
+		 */
+		public PendingRequest(SocketChannel channel, long timeout, int served) {
+			super(256);
+
+			this.channel = channel;
+			this.deadline = System.currentTimeMillis() + timeout;
+			this.served = served;
+		}
+
+		/**
+		 * Appends remaining bytes of the given buffer. Returns <code>true</code> if
+		 * the end of the header has been reached.
+		 * 
+		 * @param buffer
+		 *            buffer with received bytes
+		 * @return <code>true</code> if the end of the header has been reached
+		 */
+		public boolean append(ByteBuffer buffer) {
+			boolean end = false;
+
+			while (buffer.hasRemaining()) {
+				int b = buffer.get();
+				write(b);
+
+				if (end)
+					continue;
+
+				switch (state) {
+				case 0: if (b == 13) { state = 1;} else if (b == 10) { state = 4; }
+						break;
+				case 1: if (b == 10) {state = 2;} else { state = 0; }
+						break;
+				case 2: if (b == 13) {state = 3;} else {state = 0;}
+						break;
+				case 3: if (b == 10) { end = true; } else {state = 0;}
+						break;
+				case 4: if (b == 10) { end = true;} else { state = 0;}
+						break;
+				}
+			}
+
+			return end;
+		}
+	}
+
+	/**
+	 * Represents cache thread that advances the timer wheel of the session store
+	 * every second, removing sessions which have expired.
+	 *
+	 */
+	protected class CacheThread extends Thread {
+		/**
+		 * Interval between two cache removal in milliseconds.
+		 */
+		static final int interval = 1000;
+
+		/**
+		 * Initializes newly created thread.
+		 */
+		public CacheThread() {
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+
+			while (true) {
+				if (stopServerThread)
+					break;
+
+				try {
+					Thread.sleep(interval);
 					removeOldSessions();
 				} catch (InterruptedException e) {
 					continue;
@@ -385,7 +1557,7 @@ public class SmartHttpServer {
 		 * Removes expired sessions.
 		 */
 		private void removeOldSessions() {
-			sessions.entrySet().removeIf(entry -> entry.getValue().validUntil <= System.currentTimeMillis());
+			sessions.expire(System.currentTimeMillis());
 		}
 	}
 
@@ -398,10 +1570,59 @@ public class SmartHttpServer {
 		 * Client socket.
 		 */
 		private Socket csocket;
+		/**
+		 * Address of the client.
+		 */
+		private InetAddress address;
+		/**
+		 * Channel of the client socket if the connection is handled by the
+		 * {@link NioServerThread}, <code>null</code> otherwise.
+		 */
+		private SocketChannel channel;
+		/**
+		 * Bytes of the request already read from the socket.
+		 */
+		private byte[] preread;
+		/**
+		 * Number of requests served over the connection.
+		 */
+		private int served;
+		/**
+		 * Indicator whether the connection stays open after the current request.
+		 */
+		private boolean keepAlive;
+		/**
+		 * Indicator whether the worker waits for the next request and has not
+		 * received any of it.
+		 */
+		private volatile boolean idle;
+		/**
+		 * Completion of the asynchronous worker serving the current request or
+		 * <code>null</code> if the request is not served asynchronously.
+		 */
+		private volatile CompletableFuture<Void> pending;
+		/**
+		 * Tasks of the asynchronous worker serving the current request or
+		 * <code>null</code> if the request is not served asynchronously.
+		 */
+		private volatile AsyncTasks tasks;
 		/**
 		 * Input stream.
 		 */
-		private PushbackInputStream istream;
+		private InputStream istream;
+		/**
+		 * Parser of the request headers of the connection.
+		 */
+		private HttpRequestParser parser;
+		/**
+		 * Body of the current request or <code>null</code> if it has no body.
+		 */
+		private BodyStream body;
+		/**
+		 * Reader of the 'multipart/form-data' body of the current request or
+		 * <code>null</code> if it has no such body.
+		 */
+		private MultipartReader multipart;
 		/**
 		 * Output stream.
 		 */
@@ -415,17 +1636,21 @@ public class SmartHttpServer {
 		 */
 		private String method;
 		/**
-		 * Host of the request.
+		 * Host of the request, used as the domain of the session cookie.
 		 */
 		private String host;
+		/**
+		 * Site requested by the request.
+		 */
+		private VirtualHost virtualHost;
 		/**
 		 * Parameters of the request.
 		 */
-		private Map<String, String> params = new HashMap<String, String>();
+		private Map<String, String> params;
 		/**
 		 * Temporary parameters of the request.
 		 */
-		private Map<String, String> tempParams = new HashMap<String, String>();
+		private Map<String, String> tempParams;
 		/**
 		 * Persistent parameters of the request.
 		 */
@@ -433,7 +1658,7 @@ public class SmartHttpServer {
 		/**
 		 * Output cookies for this request.
 		 */
-		private List<RCCookie> outputCookies = new ArrayList<RequestContext.RCCookie>();
+		private List<RCCookie> outputCookies;
 		/**
 		 * Session id.
 		 */
@@ -442,6 +1667,21 @@ public class SmartHttpServer {
 		 * Context of the web server.
 		 */
 		private RequestContext context;
+		/**
+		 * Indicator whether the error response has been sent for the current
+		 * request.
+		 */
+		private boolean errorSent;
+		/**
+		 * Route of the current request or <code>null</code> if it has not been
+		 * routed yet.
+		 */
+		private Route route;
+		/**
+		 * Time in nanoseconds when the header of the current request has been
+		 * read or 0 if it has not been read.
+		 */
+		private long requestStart;
 
 		/**
 		 * Initializes newly created client worker.
@@ -454,29 +1694,30 @@ public class SmartHttpServer {
 		 */
 		public ClientWorker(Socket csocket) {
 			this.csocket = Objects.requireNonNull(csocket);
+			this.address = csocket.getInetAddress();
+			this.preread = new byte[0];
 		}
 
 		/**
-		 * Parse parameters from the given request.
+		 * Initializes newly created client worker for the connection handled by the
+		 * {@link NioServerThread} whose first bytes have already been read.
 		 * 
-		 * @param parameters
-		 *            line of parameters
-		 */
-		private void parseParameters(String parameters) {
-			String[] splitParameters = parameters.split("&");
-
-			for (int i = 0; i < splitParameters.length; i++) {
-				if (!splitParameters[i].contains("=")) {
-					params.put(splitParameters[i], null);
-				} else if (splitParameters[i].matches("[^=]+=")) {
-					params.put(splitParameters[i].replace("=", ""), "");
-				} else if (splitParameters[i].matches("[^=]+=[^=]+")) {
-					String[] keyAndValue = splitParameters[i].split("=");
-					params.put(keyAndValue[0], keyAndValue[1]);
-				}
-
-			}
-
+		 * @param channel
+		 *            channel of the client socket
+		 * @param preread
+		 *            bytes already read from the socket
+		 * @param served
+		 *            number of requests already served over the connection
+		 * 
+		 * @throws NullPointerException
+		 *             if the given channel or bytes are <code>null</code>
+		 */
+		public ClientWorker(SocketChannel channel, byte[] preread, int served) {
+			this.channel = Objects.requireNonNull(channel);
+			this.csocket = channel.socket();
+			this.address = csocket.getInetAddress();
+			this.preread = Objects.requireNonNull(preread);
+			this.served = served;
 		}
 
 		/**
@@ -490,249 +1731,681 @@ public class SmartHttpServer {
 		 *            status text
 		 */
 		private void sendError(OutputStream cos, int statusCode, String statusText) {
+			if (context != null && context.isHeaderGenerated()) {
+				// part of the response has been sent, so connection must be closed
+				keepAlive = false;
+				return;
+			}
+
+			errorSent = true;
+			keepAlive = keepAlive && !stopServerThread;
+			String version = this.version == null ? "HTTP/1.1" : this.version;
+			String connection = keepAlive ? "keep-alive" : "close";
+
 			try {
 				cos.write((version + " " + statusCode + " " + statusText + "\r\n" + "Server: simple java server\r\n"
 						+ "Content-Type: text/plain;charset=UTF-8\r\n" + "Content-Length: 0\r\n"
-						+ "Connection: close\r\n" + "\r\n").getBytes(StandardCharsets.US_ASCII));
+						+ "Connection: " + connection + "\r\n" + "\r\n").getBytes(StandardCharsets.US_ASCII));
 
 				cos.flush();
 			} catch (IOException e) {
+				keepAlive = false;
+			}
+
+		}
+
+		@Override
+		public void run() {
+			boolean resumed = false;
+			activeWorkers.add(this);
+
+			try {
+				boolean serving = true;
+				if (parser == null) {
+					istream = csocket.getInputStream();
+					parser = new HttpRequestParser(maxHeaderSize, preread);
+					ostream = new CountingOutputStream(csocket.getOutputStream());
+				} else {
+					// connection continues after the asynchronous request
+					serving = awaitNextRequest();
+					resumed = !serving;
+				}
+
+				// draining server closes the connection after the request in progress
+				while (serving && serveRequest() && !stopServerThread) {
+					serving = awaitNextRequest();
+					resumed = !serving;
+				}
+			} catch (IOException e) {
+			} finally {
+				if (pending == null) {
+					activeWorkers.remove(this);
+
+					if (!resumed) {
+						closeConnection();
+					}
+				}
+			}
+
+			CompletableFuture<Void> pending = this.pending;
+			if (pending != null) {
+				// request is finished on the thread pool once the stage completes
+				pending.orTimeout(asyncTimeout, TimeUnit.SECONDS).whenCompleteAsync(
+						(result, error) -> completeAsync(error), SmartHttpServer.this::executeCompletion);
+			}
+		}
+
+		/**
+		 * Prepares the connection for the next request. Pipelined request is served
+		 * right away, otherwise connection of the {@link NioServerThread} is
+		 * returned to the selector to wait for it.
+		 * 
+		 * @return <code>true</code> if this worker serves the next request,
+		 *         <code>false</code> if the connection has been returned to the
+		 *         selector
+		 * 
+		 * @throws IOException
+		 *             if error while checking the connection occurs
+		 */
+		private boolean awaitNextRequest() throws IOException {
+			if (channel != null && parser.buffered() == 0 && istream.available() == 0) {
+				((NioServerThread) serverThread).resume(channel, served);
+				return false;
+			}
+
+			csocket.setSoTimeout(keepAliveTimeout * 1000);
+			return true;
+		}
+
+		/**
+		 * Finishes the request served asynchronously once its stage completes and
+		 * submits the connection for the next request or closes it. If the stage
+		 * completed exceptionally, tasks of the worker are cancelled.
+		 * 
+		 * @param error
+		 *            error with which the stage completed or <code>null</code> if
+		 *            it completed normally
+		 */
+		private void completeAsync(Throwable error) {
+			boolean keepOpen = false;
+
+			try {
+				keepOpen = finishAsync(error);
+			} finally {
+				if (error != null) {
+					tasks.cancel();
+				}
+
+				tasks = null;
+				pending = null;
+				finishRequest();
+			}
+
+			if (keepOpen && !stopServerThread) {
+				execute(this);
+				return;
+			}
+
+			activeWorkers.remove(this);
+			closeConnection();
+		}
+
+		/**
+		 * Finishes the response of the asynchronous worker. If the stage completed
+		 * exceptionally, the worker may still be using the request, so the
+		 * connection is closed after the error is sent, if no part of the response
+		 * has been written.
+		 * 
+		 * @param error
+		 *            error with which the stage completed or <code>null</code> if
+		 *            it completed normally
+		 * @return <code>true</code> if the connection stays open for the next
+		 *         request
+		 */
+		private boolean finishAsync(Throwable error) {
+			if (error == null) {
+				try {
+					if (!errorSent) {
+						context.finish();
+					}
+				} catch (IOException e) {
+					return false;
+				}
+
+				return keepAlive && (errorSent || context.isKeepAlive()) && skipBody();
+			}
+
+			keepAlive = false;
+			if (context.abort()) {
+				Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+						: error;
+
+				if (cause instanceof TimeoutException || cause instanceof CancellationException
+						|| cause instanceof RejectedExecutionException) {
+					sendError(ostream, 503, "Service Unavailable");
+				} else {
+					sendError(ostream, 500, "Internal Server Error");
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * Closes the socket of the connection and releases it.
+		 */
+		private void closeConnection() {
+			try {
+				csocket.close();
+			} catch (IOException e) {
+			}
+
+			connectionClosed(address);
+		}
+
+		/**
+		 * Closes the connection if the worker waits for the next request and has
+		 * not received any of it.
+		 */
+		public void closeIfIdle() {
+			if (idle) {
+				close();
+			}
+		}
+
+		/**
+		 * Closes the connection, so that the worker blocked on it is woken up, and
+		 * cancels the asynchronous worker.
+		 */
+		public void close() {
+			CompletableFuture<Void> pending = this.pending;
+			if (pending != null) {
+				pending.cancel(true);
+			}
+
+			try {
+				csocket.close();
+			} catch (IOException e) {
+			}
+		}
+
+		/**
+		 * Rejects the connection without serving it. Depending on the rejection
+		 * policy, client is told to try again later before the connection is
+		 * closed. Short response fits in the send buffer of the connection which
+		 * has not been served, so the rejecting thread does not wait for the
+		 * client.
+		 * 
+		 * @param reason
+		 *            reason for the rejection
+		 */
+		public void reject(Rejection reason) {
+			metrics.connectionRejected(reason);
+
+			try {
+				if (rejectionResponse) {
+					String status = reason == Rejection.OVERLOAD ? "503 Service Unavailable" : "429 Too Many Requests";
+					byte[] response = ("HTTP/1.1 " + status + "\r\n" + "Server: simple java server\r\n"
+							+ "Retry-After: " + retryAfter + "\r\n" + "Content-Length: 0\r\n"
+							+ "Connection: close\r\n" + "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+					SocketChannel channel = csocket.getChannel();
+					if (channel == null || channel.isBlocking()) {
+						// unread request would make closing reset the connection before the response is read
+						InputStream is = csocket.getInputStream();
+						is.skip(is.available());
+						csocket.getOutputStream().write(response);
+					} else {
+						channel.read(ByteBuffer.allocate(maxHeaderSize));
+						channel.write(ByteBuffer.wrap(response));
+					}
+				}
+			} catch (IOException e) {
+			} finally {
+				try {
+					csocket.close();
+				} catch (IOException e) {
+				}
+
+				activeWorkers.remove(this);
+
+				// connection over the client limit has not been counted for the client
+				if (reason == Rejection.CLIENT_LIMIT) {
+					metrics.connectionClosed();
+				} else {
+					connectionClosed(address);
+				}
+			}
+		}
+
+		/**
+		 * Reads and processes one request from the connection. Returns
+		 * <code>true</code> if the connection stays open for the next request.
+		 * 
+		 * @return <code>true</code> if the connection stays open for the next
+		 *         request
+		 */
+		private boolean serveRequest() {
+			reset();
+
+			try {
+				if (!validateHeader())
+					return false;
+
+				served++;
+				keepAlive = keepAliveRequested() && served < maxKeepAliveRequests && !stopServerThread;
+
+				if (!initializeBody())
+					return false;
+
+				initializeHost();
+
+				checkSession();
+
+				String path = parser.getPath();
+				parser.parseParameters(params);
+
+				try {
+					if (!readForm())
+						return keepAlive && skipBody();
+
+					internalDispatchRequest(path, true);
+
+					// response is finished once the asynchronous worker completes
+					if (pending != null)
+						return false;
+
+					if (!errorSent) {
+						getContext().finish();
+					}
+				} catch (Exception e) {
+					return false;
+				}
+
+				return keepAlive && (errorSent || context.isKeepAlive()) && skipBody();
+			} finally {
+				if (pending == null) {
+					finishRequest();
+				}
+			}
+		}
+
+		/**
+		 * Releases resources of the current request and records it in the
+		 * metrics.
+		 */
+		private void finishRequest() {
+			if (context != null) {
+				context.deleteParts();
+			}
+
+			if (requestStart != 0) {
+				Route route = errorSent || this.route == null ? Route.ERROR : this.route;
+				metrics.requestFinished(route, System.nanoTime() - requestStart);
+			}
+		}
+
+		/**
+		 * Sets route of the current request if it has not been routed yet.
+		 * Requests dispatched internally keep the route of the original request.
+		 * 
+		 * @param route
+		 *            route of the request
+		 */
+		private void route(Route route) {
+			if (this.route == null) {
+				this.route = route;
 			}
+		}
+
+		/**
+		 * Clears the state of the previous request served over the connection.
+		 */
+		private void reset() {
+			version = null;
+			method = null;
+			host = null;
+			virtualHost = null;
+			body = null;
+			multipart = null;
+			params = new HashMap<String, String>();
+			tempParams = new HashMap<String, String>();
+			permPrams = null;
+			outputCookies = new ArrayList<RequestContext.RCCookie>();
+			SID = null;
+			context = null;
+			route = null;
+			requestStart = 0;
+			errorSent = false;
+			keepAlive = false;
+		}
+
+		/**
+		 * Returns <code>true</code> if the client wants the connection to stay open
+		 * after the request. HTTP/1.1 connections are persistent unless closing is
+		 * requested and HTTP/1.0 connections only if persistence is requested.
+		 * 
+		 * @return <code>true</code> if the client wants the connection to stay open
+		 */
+		private boolean keepAliveRequested() {
+			if (parser.hasToken("Connection", "close"))
+				return false;
+			if (parser.hasToken("Connection", "keep-alive"))
+				return true;
 
+			return version.equals("HTTP/1.1");
 		}
 
 		/**
-		 * Reads request and returns header as a list of lines.
-		 * 
-		 * @param is
-		 *            input stream
-		 * 
-		 * @return header as a list of lines
-		 * @throws IOException
+		 * Returns context of the current request, creating it if needed.
 		 * 
-		 *             if error reading occurs
-		 */
-		private List<String> readRequest(InputStream is) throws IOException {
-
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
-			int state = 0;
-			l: while (true) {
-				int b = is.read();
-				if (b == -1)
-					return null;
-				if (b != 13) {
-					bos.write(b);
+		 * @return context of the current request
+		 */
+		private RequestContext getContext() {
+			if (context == null) {
+				// server may have started draining since the header was read
+				keepAlive = keepAlive && !stopServerThread;
+				context = new RequestContext(ostream, params, permPrams, outputCookies, tempParams, this);
+				context.setConnection(keepAlive, version.equals("HTTP/1.1"));
+				context.setBufferSize(responseBufferSize);
+				if (compression) {
+					context.setCompression(ContentCoding.negotiate(getHeader("Accept-Encoding")), compressionMinSize);
 				}
-
-				switch (state) {
-				case 0: if (b == 13) { state = 1;} else if (b == 10) { state = 4; }
-						break;
-				case 1: if (b == 10) {state = 2;} else { state = 0; }
-						break;
-				case 2: if (b == 13) {state = 3;} else {state = 0;}
-						break;
-				case 3: if (b == 10) { break l; } else {state = 0;}
-						break;
-				case 4: if (b == 10) { break l;} else { state = 0;}
-						break;
+				context.setChannel(csocket.getChannel());
+				if (multipart != null) {
+					context.setMultipart(multipart, partMemoryThreshold);
 				}
 			}
 
-			String header = new String(bos.toByteArray(), StandardCharsets.US_ASCII);
-			return extractHeaders(header);
+			return context;
 		}
 
 		/**
-		 * Extracts headers from the given {@code String}.
+		 * Returns value of the first line of the current request header with the
+		 * given name or <code>null</code> if there is no such line.
 		 * 
-		 * @param requestHeader
-		 *            header
-		 * 
-		 * @return list representing lines of the header
+		 * @param name
+		 *            name of the header line
+		 * @return value of the header line with the given name
 		 */
-		private List<String> extractHeaders(String requestHeader) {
-			List<String> headers = new ArrayList<String>();
+		private String getHeader(String name) {
+			return parser.getHeader(name);
+		}
 
-			String currentLine = null;
-			for (String s : requestHeader.split("\n")) {
-				if (s.isEmpty())
-					break;
-				char c = s.charAt(0);
+		/**
+		 * Initializes site and host from the header. Site is found by the 'Host'
+		 * line without the port and if there is no such site the default one is
+		 * used. Host is set to the cookie domain of the site if it has one,
+		 * otherwise to the requested host or, if there is no 'Host' line, to the
+		 * domain name of the site.
+		 */
+		private void initializeHost() {
+			String host = parser.getHeader("Host");
 
-				if (c == 9 || c == 32) {
-					currentLine += s;
-				} else {
-					if (currentLine != null) {
-						headers.add(currentLine);
-					}
-					currentLine = s;
+			if (host != null) {
+				int colon = host.lastIndexOf(':');
+				if (colon > 0 && colon > host.lastIndexOf(']') && isPort(host, colon + 1)) {
+					host = host.substring(0, colon);
 				}
 			}
 
-			if (!currentLine.isEmpty()) {
-				headers.add(currentLine);
-			}
+			VirtualHost virtualHost = host == null ? null : virtualHosts.get(host.toLowerCase(Locale.ROOT));
+			this.virtualHost = virtualHost == null ? defaultHost : virtualHost;
 
-			return headers;
+			if (this.virtualHost.getCookieDomain() != null) {
+				this.host = this.virtualHost.getCookieDomain();
+			} else {
+				this.host = host == null || host.isEmpty() ? this.virtualHost.getDomainName() : host;
+			}
 		}
 
-		@Override
-		public void run() {
+		/**
+		 * Returns <code>true</code> if the given host has only digits from the
+		 * given position to its end and there is at least one of them.
+		 * 
+		 * @param host
+		 *            value of the 'Host' header line
+		 * @param start
+		 *            position of the first digit of the port
+		 * @return <code>true</code> if the host ends with the port
+		 */
+		private boolean isPort(String host, int start) {
+			if (start == host.length())
+				return false;
 
+			for (int i = start; i < host.length(); i++) {
+				if (!Character.isDigit(host.charAt(i)))
+					return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Reads and validates header of the next request. Request whose 'Host'
+		 * line is longer than any host name is not valid.
+		 * 
+		 * @return <code>true</code> if the valid header has been read
+		 */
+		private boolean validateHeader() {
+			Status status;
 			try {
-				istream = new PushbackInputStream(csocket.getInputStream());
-				ostream = csocket.getOutputStream();
+				idle = parser.buffered() == 0;
+				status = parser.parse(istream);
 			} catch (IOException e) {
+				return false;
+			} finally {
+				idle = false;
 			}
 
-			List<String> headers = validateHeader();
+			// connection closed or timed out between requests
+			if (status == Status.CLOSED) {
+				return false;
+			}
 
-			if (headers == null)
-				return;
+			requestStart = System.nanoTime();
+			metrics.requestStarted();
+
+			if (status == Status.TOO_LARGE) {
+				sendError(ostream, 431, "Request Header Fields Too Large");
+				return false;
+			}
 
-			initializeHost(headers);
+			if (status == Status.MALFORMED) {
+				sendError(ostream, 400, "Bad request");
+				return false;
+			}
 
-			checkSession(headers);
+			if (parser.isMethod("GET")) {
+				method = "GET";
+			} else if (parser.isMethod("POST")) {
+				method = "POST";
+			} else {
+				sendError(ostream, 405, "Method Not Allowed");
+				return false;
+			}
 
-			String path = extractPathAndParameters(headers);
+			if (parser.isVersion("HTTP/1.1")) {
+				version = "HTTP/1.1";
+			} else if (parser.isVersion("HTTP/1.0")) {
+				version = "HTTP/1.0";
+			} else {
+				sendError(ostream, 505, "HTTP Version Not Supported");
+				return false;
+			}
 
-			try {
-				internalDispatchRequest(path, true);
-			} catch (Exception e1) {
-			} finally {
-				try {
-					csocket.close();
-				} catch (IOException e) {
-				}
+			String host = parser.getHeader("Host");
+			if (host != null && host.length() > MAX_HOST_LENGTH) {
+				sendError(ostream, 400, "Bad request");
+				return false;
 			}
+
+			return true;
 		}
 
 		/**
-		 * Extracts path and parameters from the first line.
+		 * Prepares body of the request given with the 'Content-Length' header
+		 * line. Body whose length is not given is not accepted, since it could
+		 * not be told apart from the next request, and neither is body larger
+		 * than the maximal size. If the client waits for the permission to send
+		 * the body, it is given.
 		 * 
-		 * @param headers
-		 *            list of header line
-		 * 
-		 * @return extracted path
+		 * @return <code>true</code> if the request can be served
 		 */
-		private String extractPathAndParameters(List<String> headers) {
-			String[] firstLine = headers.get(0).split(" ");
-			String requestedPath = firstLine[1];
-			String path;
+		private boolean initializeBody() {
+			String contentLength = parser.getHeader("Content-Length");
+
+			if (parser.getHeader("Transfer-Encoding") != null
+					|| (contentLength == null && method.equals("POST"))) {
+				keepAlive = false;
+				sendError(ostream, 411, "Length Required");
+				return false;
+			}
+			if (contentLength == null)
+				return true;
+
+			long length;
+			try {
+				length = Long.parseLong(contentLength);
+			} catch (NumberFormatException e) {
+				length = -1;
+			}
+			if (length < 0) {
+				keepAlive = false;
+				sendError(ostream, 400, "Bad request");
+				return false;
+			}
 
-			if (requestedPath.contains("?")) {
-				String[] pathAndParameters = requestedPath.split("\\?");
+			if (length > maxBodySize) {
+				keepAlive = false;
+				sendError(ostream, 413, "Payload Too Large");
+				return false;
+			}
 
-				path = pathAndParameters[0];
-				
-				if(pathAndParameters.length == 1) return path;
-				
-				String parameters = pathAndParameters[1];
+			body = parser.body(istream, length);
 
-				parseParameters(parameters);
-			} else {
-				path = requestedPath;
+			if (length > parser.buffered() && version.equals("HTTP/1.1") && parser.hasToken("Expect", "100-continue")) {
+				try {
+					ostream.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+					ostream.flush();
+				} catch (IOException e) {
+					keepAlive = false;
+					return false;
+				}
 			}
 
-			return path;
+			return true;
 		}
 
 		/**
-		 * Initializes host from the given header. If there is no 'Host' line, host is
-		 * set to domain name.
+		 * Reads parameters from the body of the 'POST' request. Parameters of the
+		 * 'application/x-www-form-urlencoded' body are read right away and
+		 * override the parameters of the query, while parts of the
+		 * 'multipart/form-data' body are read through the context.
+		 * 
+		 * @return <code>true</code> if the request can be dispatched
 		 * 
-		 * @param headers
-		 *            list representing lines of header
+		 * @throws IOException
+		 *             if error while reading occurs
 		 */
-		private void initializeHost(List<String> headers) {
-			for (String header : headers) {
-				if (header.startsWith("Host:")) {
-					String[] separated = header.split(" ");
-					String host = separated[1];
+		private boolean readForm() throws IOException {
+			if (body == null || !method.equals("POST"))
+				return true;
 
-					if (separated[1].matches(".+:\\d+")) {
-						host = separated[1].substring(0, separated[1].indexOf(":"));
-					}
+			String contentType = getHeader("Content-Type");
+			if (contentType == null)
+				return true;
 
-					this.host = host;
+			int semicolon = contentType.indexOf(';');
+			String type = (semicolon == -1 ? contentType : contentType.substring(0, semicolon)).trim()
+					.toLowerCase(Locale.ROOT);
+
+			if (type.equals("application/x-www-form-urlencoded")) {
+				if (body.remaining() > maxFormSize) {
+					keepAlive = false;
+					sendError(ostream, 413, "Payload Too Large");
+					return false;
 				}
-			}
 
-			if (host == null) {
-				host = domainName;
+				byte[] form = new byte[(int) body.remaining()];
+				for (int offset = 0; offset < form.length;) {
+					offset += body.read(form, offset, form.length - offset);
+				}
+
+				if (!parseForm(new String(form, StandardCharsets.ISO_8859_1))) {
+					sendError(ostream, 400, "Bad request");
+					return false;
+				}
+			} else if (type.equals("multipart/form-data")) {
+				String boundary = MultipartReader.parameter(contentType, "boundary");
+				if (boundary == null || boundary.isEmpty() || boundary.length() > 70) {
+					sendError(ostream, 400, "Bad request");
+					return false;
+				}
+
+				multipart = new MultipartReader(body, boundary, maxHeaderSize);
 			}
 
+			return true;
 		}
 
 		/**
-		 * Validates and initializes header and returns it as a list of {@code String}
+		 * Puts parameters of the given 'application/x-www-form-urlencoded' body
+		 * into the parameters of the request.
 		 * 
-		 * @return header as list of {@code String} or <code>null</code> if invalid
-		 *         header.
+		 * @param form
+		 *            body of the request
+		 * @return <code>true</code> if the body is valid
 		 */
-		private List<String> validateHeader() {
-			List<String> headers = null;
+		private boolean parseForm(String form) {
 			try {
-				headers = readRequest(istream);
-			} catch (IOException e) {
-				return null;
-			}
-
-			if (headers == null) {
-				sendError(ostream, 400, "Bad request");
-				return null;
-			}
-
-			String[] firstLine = headers.isEmpty() ? null : headers.get(0).split(" ");
-			if (firstLine == null || firstLine.length != 3) {
-				sendError(ostream, 400, "Bad request");
-				return null;
-			}
-
-			method = firstLine[0].toUpperCase();
-			if (!method.equals("GET")) {
-				sendError(ostream, 405, "Method Not Allowed");
-				return null;
-			}
+				for (String parameter : form.split("&")) {
+					if (parameter.isEmpty())
+						continue;
 
-			String version = firstLine[2].toUpperCase();
-			if (!version.equals("HTTP/1.1") && !version.equals("HTTP/1.0")) {
-				sendError(ostream, 505, "HTTP Version Not Supported");
-				return null;
+					int equals = parameter.indexOf('=');
+					if (equals == -1) {
+						params.put(URLDecoder.decode(parameter, "UTF-8"), null);
+					} else if (equals > 0) {
+						params.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+								URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+					}
+				}
+			} catch (IllegalArgumentException | UnsupportedEncodingException e) {
+				return false;
 			}
 
-			this.version = version;
-
-			return headers;
+			return true;
 		}
 
 		/**
-		 * Searches for 'Cookie' line in the given header lines and according to it
-		 * creates new session or updates the old one.
+		 * Skips the unread rest of the request body, so that the next request can
+		 * be read from the connection. Only small rest is skipped, otherwise
+		 * connection is closed.
 		 * 
-		 * @param headers
-		 *            list of header lines
+		 * @return <code>true</code> if the connection can stay open
 		 */
-		private void checkSession(List<String> headers) {
-			String sidCandidate = null;
-			for (String line : headers) {
-				if (!line.startsWith("Cookie:"))
-					continue;
-
-				String cookieList = line.substring(line.indexOf(" ") + 1);
-
-				String[] cookies = cookieList.split(";");
+		private boolean skipBody() {
+			if (body == null || body.remaining() == 0)
+				return true;
+			if (body.remaining() > maxFormSize)
+				return false;
 
-				for (String cookie : cookies) {
-					String[] nameAndValues = cookie.split("=");
-					if (nameAndValues[0].equals("sid")) {
-						sidCandidate = nameAndValues[1];
-					}
-				}
+			try {
+				body.discard();
+			} catch (IOException e) {
+				return false;
 			}
 
-			checkSidCandidate(sidCandidate);
+			return true;
+		}
 
+		/**
+		 * Searches for 'sid' cookie in the header and according to it creates new
+		 * session or updates the old one.
+		 */
+		private void checkSession() {
+			checkSidCandidate(parser.getCookie("sid"));
 		}
 
 		/**
@@ -743,29 +2416,15 @@ public class SmartHttpServer {
 		 *            candidate for the session id
 		 */
 		private void checkSidCandidate(String sidCandidate) {
-			if (sidCandidate == null) {
+			// expired sessions are never returned by the store
+			SessionMapEntry entry = sidCandidate == null ? null : sessions.get(sidCandidate);
+
+			if (entry == null || !entry.getHost().equals(host)) {
 				newEntry();
 			} else {
-
-				SessionMapEntry entry = sessions.get(sidCandidate);
-				if (entry == null) {
-					newEntry();
-				} else {
-
-					if (!entry.host.equals(host)) {
-						newEntry();
-					} else {
-						if (entry.validUntil <= System.currentTimeMillis()) {
-							sessions.remove(sidCandidate);
-							newEntry();
-						} else {
-							entry.sid = sidCandidate;
-							SID = entry.sid;
-							permPrams = entry.map;
-							entry.validUntil = (System.currentTimeMillis() + sessionTimeout * 1000);
-						}
-					}
-				}
+				SID = entry.getSid();
+				permPrams = entry.getMap();
+				entry.setValidUntil(System.currentTimeMillis() + sessionTimeout * 1000L);
 			}
 
 		}
@@ -776,11 +2435,8 @@ public class SmartHttpServer {
 		public void newEntry() {
 			SID = generateSid();
 
-			SessionMapEntry entry = new SessionMapEntry(SID, host, System.currentTimeMillis() + sessionTimeout * 1000);
-			permPrams = new ConcurrentHashMap<>();
-			entry.map = permPrams;
-
-			sessions.put(SID, entry);
+			SessionMapEntry entry = sessions.create(SID, host, System.currentTimeMillis() + sessionTimeout * 1000L);
+			permPrams = entry.getMap();
 
 			outputCookies.add(new RCCookie("sid", SID, null, host, "/"));
 		}
@@ -821,32 +2477,39 @@ public class SmartHttpServer {
 			}
 
 			if (urlPath.matches("/ext/[A-Za-z]+")) {
-				extWorker(urlPath);
+				extWorker(urlPath, directCall);
 				return;
 			}
 
-			if (checkWorker(urlPath))
+			if (checkWorker(urlPath, directCall))
 				return;
 
-			Path filePath = documentRoot.resolve(urlPath.substring(1)).toAbsolutePath();
+			Path documentRoot = virtualHost.getDocumentRoot();
+			Path filePath = documentRoot.resolve(urlPath.substring(1)).toAbsolutePath().normalize();
 
 			if (!filePath.startsWith(documentRoot)) {
 				sendError(ostream, 403, "Forbidden");
 				return;
 			}
 
-			if (!Files.isRegularFile(filePath) || !Files.isReadable(filePath)) {
-				sendError(ostream, 404, "File Not Found");
-				return;
-			}
-
 			if (urlPath.endsWith(".smscr")) {
+				if (!Files.isRegularFile(filePath) || !Files.isReadable(filePath)) {
+					sendError(ostream, 404, "File Not Found");
+					return;
+				}
+
 				script(filePath);
 
 				return;
 			}
 
-			writeOther(urlPath, filePath);
+			CachedFile file = virtualHost.getStaticFileCache().get(filePath);
+			if (file == null) {
+				sendError(ostream, 404, "File Not Found");
+				return;
+			}
+
+			writeOther(urlPath, file);
 
 		}
 
@@ -860,11 +2523,10 @@ public class SmartHttpServer {
 		 *             if error while reading or writing occurs
 		 */
 		private void script(Path filePath) throws IOException {
-			String documentBody = new String(Files.readAllBytes(filePath), StandardCharsets.UTF_8);
+			route(Route.SCRIPT);
 
 			try {
-				new SmartScriptEngine(new SmartScriptParser(documentBody).getDocumentNode(),
-						new RequestContext(ostream, params, permPrams, outputCookies, tempParams, this)).execute();
+				virtualHost.getScriptCache().get(filePath).execute(getContext());
 			} catch (Exception e) {
 				sendError(ostream, 404, "Bad request");
 			}
@@ -876,24 +2538,22 @@ public class SmartHttpServer {
 		 * 
 		 * @param urlPath
 		 *            path of the url
+		 * @param directCall
+		 *            indicator of the direct call
 		 * 
 		 * @throws Exception
 		 *             if error while reading or writing occurs
 		 */
-		private void extWorker(String urlPath) throws Exception {
-			String fqcn = "hr.fer.zemris.java.webserver.workers.";
+		private void extWorker(String urlPath, boolean directCall) throws Exception {
 			String className = urlPath.substring(5);
-			fqcn += className;
 
-			Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(fqcn);
-			Object newObject = referenceToClass.getDeclaredConstructor().newInstance();
-			IWebWorker iww = (IWebWorker) newObject;
-
-			if (context == null) {
-				context = new RequestContext(ostream, params, permPrams, outputCookies);
+			IWebWorker iww = getExtWorker(className);
+			if (iww == null) {
+				sendError(ostream, 404, "Worker Not Found");
+				return;
 			}
 
-			iww.processRequest(context);
+			process(iww, directCall);
 			return;
 
 		}
@@ -904,20 +2564,18 @@ public class SmartHttpServer {
 		 * 
 		 * @param urlPath
 		 *            path of the url
+		 * @param directCall
+		 *            indicator of the direct call
 		 * @return <code>true</code> if worker is requested in the given request
 		 * 
 		 * @throws Exception
 		 *             if error while reading or writing occurs
 		 */
-		private boolean checkWorker(String urlPath) throws Exception {
-			IWebWorker worker = workersMap.get(urlPath);
+		private boolean checkWorker(String urlPath, boolean directCall) throws Exception {
+			IWebWorker worker = virtualHost.getWorkers().get(urlPath);
 
 			if (worker != null) {
-				if (context == null) {
-					context = new RequestContext(ostream, params, permPrams, outputCookies, tempParams, this);
-				}
-
-				worker.processRequest(context);
+				process(worker, directCall);
 				return true;
 			}
 
@@ -925,58 +2583,298 @@ public class SmartHttpServer {
 		}
 
 		/**
-		 * Writes file that does not require worker and is not script.
+		 * Processes request with the given worker. Asynchronous worker requested
+		 * directly by the client is only started with the tasks run on the thread
+		 * pool and the thread is released until it completes, while the one
+		 * dispatched internally is waited for.
+		 * Response of the cacheable worker requested directly is served from the
+		 * cache of the site if it is there and stored in it otherwise.
+		 * 
+		 * @param worker
+		 *            worker processing the request
+		 * @param directCall
+		 *            indicator of the direct call
+		 * 
+		 * @throws Exception
+		 *             if error while processing the request occurs
+		 */
+		private void process(IWebWorker worker, boolean directCall) throws Exception {
+			route(Route.WORKER);
+
+			String cacheKey = directCall ? cacheKey(worker) : null;
+			ResponseCache cache = virtualHost.getResponseCache();
+			if (cacheKey != null) {
+				CachedResponse response = cache.get(cacheKey);
+				if (response != null) {
+					response.writeTo(getContext());
+					return;
+				}
+
+				getContext().startCapture(cache.getMaxBodySize());
+			}
+
+			if (directCall && worker instanceof IAsyncWebWorker) {
+				tasks = new AsyncTasks();
+
+				CompletableFuture<Void> stage;
+				try {
+					CompletionStage<Void> started = ((IAsyncWebWorker) worker).processRequestAsync(getContext(),
+							tasks);
+					stage = started.toCompletableFuture();
+				} catch (RejectedExecutionException e) {
+					stage = CompletableFuture.failedFuture(e);
+				}
+
+				pending = cacheKey == null ? stage : stage.thenRun(() -> storeResponse(cache, cacheKey));
+			} else {
+				worker.processRequest(getContext());
+
+				if (cacheKey != null) {
+					storeResponse(cache, cacheKey);
+				}
+			}
+		}
+
+		/**
+		 * Returns key of the response of the given worker to the current request
+		 * or <code>null</code> if the response is not cached.
+		 * 
+		 * @param worker
+		 *            worker processing the request
+		 * @return key of the response or <code>null</code>
+		 */
+		private String cacheKey(IWebWorker worker) {
+			if (!(worker instanceof ICacheableWebWorker))
+				return null;
+
+			String key = ((ICacheableWebWorker) worker).getCacheKey(getContext());
+			return key == null ? null : worker.getClass().getName() + "?" + key;
+		}
+
+		/**
+		 * Stores the response written by the worker in the given cache unless an
+		 * error has been sent instead.
+		 * 
+		 * @param cache
+		 *            cache of the responses
+		 * @param key
+		 *            key of the response
+		 */
+		private void storeResponse(ResponseCache cache, String key) {
+			if (!errorSent) {
+				context.storeCapture(cache, key);
+			}
+		}
+
+		/**
+		 * Writes file that does not require worker and is not script. Cached file
+		 * is written from memory and other files are transferred to the client
+		 * without being copied through the context. If the file is requested
+		 * directly and the client already has its current version, only 'Not
+		 * Modified' response is sent. Otherwise only the part of it given with the
+		 * 'Range' header line may be sent.
 		 * 
 		 * @param urlPath
 		 *            path of the url
-		 * @param filePath
-		 *            file path
+		 * @param file
+		 *            file to be written
 		 * 
 		 * @throws IOException
 		 *             if error while reading or writing occurs
 		 */
-		private void writeOther(String urlPath, Path filePath) throws IOException {
-			String extension = urlPath.substring(urlPath.indexOf(".") + 1);
+		private void writeOther(String urlPath, CachedFile file) throws IOException {
+			String mimeType = getMimeType(urlPath.substring(urlPath.lastIndexOf('/') + 1));
 
-			String mimeType = mimeTypes.get(extension);
+			route(Route.STATIC);
 
-			if (mimeType == null) {
-				mimeType = "application/octet-stream";
-			}
+			long length = file.getLength();
+			long position = 0;
+			long count = length;
+			byte[] body = file.getBody();
 
 			if (context == null) {
-				long length = filePath.toFile().length();
-				context = new RequestContext(ostream, params, permPrams, outputCookies);
-				context.setContentLength(length);
-			}
+				RequestContext context = getContext();
+
+				// ranges are served from the file as it is
+				ContentCoding coding = file.isCompressible() && getHeader("Range") == null
+						? ContentCoding.negotiate(getHeader("Accept-Encoding"))
+						: null;
+				byte[] encoded = coding == null ? null : file.getEncodedBody(coding);
+				String eTag = encoded == null ? file.getETag() : file.getETag(coding);
+
+				context.addHeader("ETag", eTag);
+				context.addHeader("Last-Modified", file.getLastModified());
+				if (file.isCompressible()) {
+					context.addHeader("Vary", "Accept-Encoding");
+				}
 
-			context.setMimeType(mimeType);
+				if (isNotModified(getHeader("If-None-Match"), getHeader("If-Modified-Since"), eTag,
+						file.getModified())) {
+					context.setStatusCode(304);
+					context.setStatusText("Not Modified");
+					return;
+				}
 
-			try (InputStream fis = Files.newInputStream(filePath)) {
-				byte[] buff = new byte[1024];
-				while (true) {
-					int r = fis.read(buff);
+				context.addHeader("Accept-Ranges", "bytes");
+
+				long[] range = isRangeValid(getHeader("If-Range"), file.getETag(), file.getModified())
+						? parseRange(getHeader("Range"), length)
+						: null;
+				if (range != null && range[0] >= length) {
+					context.setStatusCode(416);
+					context.setStatusText("Range Not Satisfiable");
+					context.addHeader("Content-Range", "bytes */" + length);
+					context.setContentLength(0L);
+					return;
+				}
 
-					if (r < 1)
-						break;
+				if (range != null) {
+					position = range[0];
+					count = range[1] - range[0] + 1;
 
-					context.write(buff, 0, r);
+					context.setStatusCode(206);
+					context.setStatusText("Partial Content");
+					context.addHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
 				}
+
+				if (encoded != null) {
+					context.addHeader("Content-Encoding", coding.getName());
+					body = encoded;
+					count = encoded.length;
+				}
+
+				context.setContentLength(count);
+			}
+
+			context.setMimeType(mimeType);
+
+			if (body != null) {
+				context.write(body, (int) position, (int) count);
+				return;
 			}
 
+			try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+				context.write(channel, position, count);
+			}
+
+			// transferred bytes bypass the output stream
+			metrics.bytesWritten(count);
+
 		}
 
 		@Override
 		public void dispatchRequest(String urlPath) throws Exception {
-			if (context == null) {
-				context = new RequestContext(ostream, params, permPrams, outputCookies);
-			}
+			getContext();
 
 			internalDispatchRequest(urlPath, false);
 
 		}
 	}
 
+	/**
+	 * Represents executor of the tasks of one asynchronous request. Tasks are
+	 * run on the thread pool of the server. Once the request is cancelled, tasks
+	 * not yet started are skipped, the running ones are interrupted and new
+	 * ones are rejected.
+	 *
+	 */
+	private class AsyncTasks implements Executor {
+		/**
+		 * Threads running the tasks.
+		 */
+		private Set<Thread> running = new HashSet<>();
+		/**
+		 * Indicator whether the request has been cancelled.
+		 */
+		private boolean cancelled;
+
+		@Override
+		public void execute(Runnable command) {
+			Objects.requireNonNull(command);
+
+			synchronized (this) {
+				if (cancelled)
+					throw new RejectedExecutionException("Request has been cancelled.");
+			}
+
+			executeTask(() -> {
+				if (!begin())
+					return;
+
+				try {
+					command.run();
+				} finally {
+					end();
+				}
+			});
+		}
+
+		/**
+		 * Records the current thread as running the task unless the request has
+		 * been cancelled.
+		 * 
+		 * @return <code>true</code> if the task should be run
+		 */
+		private synchronized boolean begin() {
+			if (cancelled)
+				return false;
+
+			running.add(Thread.currentThread());
+			return true;
+		}
+
+		/**
+		 * Records the end of the task on the current thread and clears the
+		 * interrupt it may have received, so that the thread is returned to the
+		 * pool without it.
+		 */
+		private synchronized void end() {
+			running.remove(Thread.currentThread());
+			Thread.interrupted();
+		}
+
+		/**
+		 * Cancels the request, interrupting the running tasks.
+		 */
+		public synchronized void cancel() {
+			cancelled = true;
+
+			for (Thread thread : running) {
+				thread.interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Represents output stream which counts bytes written to the client in the
+	 * metrics of the server.
+	 *
+	 */
+	private class CountingOutputStream extends FilterOutputStream {
+
+		/**
+		 * Initializes newly created stream.
+		 * 
+		 * @param out
+		 *            stream of the client socket
+		 */
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			metrics.bytesWritten(1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			metrics.bytesWritten(len);
+		}
+	}
+
 	/**
 	 * Method called when program starts. Expects one line argument: configuration
 	 * file name.
@@ -994,6 +2892,7 @@ public class SmartHttpServer {
 		server.start();
 
 		System.out.println("Server is started. Enter 'exit' if you want to shut down server.");
+		System.out.println("Enter 'stats' if you want to see server statistics.");
 		System.out.println("Any other entered sequence will be disregarded.");
 
 		try (Scanner scanner = new Scanner(System.in)) {
@@ -1022,12 +2921,21 @@ public class SmartHttpServer {
 					break;
 				}
 
-				System.out.println("Only 'exit' command allowed.");
+				if (line.equalsIgnoreCase("stats")) {
+					System.out.println(server.getStatistics());
+					continue;
+				}
+
+				System.out.println("Only 'exit' and 'stats' commands allowed.");
 			}
 		}
 
 		System.out.println("Exiting server...");
-		server.stop();
+		try {
+			server.stop();
+		} catch (UncheckedIOException e) {
+			System.out.println(e.getMessage() + " " + e.getCause().getMessage());
+		}
 	}
 
 }
@@ -0,0 +1,439 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+
+/**
+ * Represents cache of the small static files. Contents of the cached files are
+ * kept in memory together with their precomputed 'ETag' and 'Last-Modified'
+ * header values. Cached file is checked on disk only if it has not been checked
+ * for the given time, so frequently requested files are served without disk
+ * access. When the total size of the cached files exceeds the capacity, least
+ * recently used files are removed.
+ * <p>
+ * Files of the types worth compressing are also kept compressed with every
+ * {@link ContentCoding}, so their compressed bodies are not computed again for
+ * every request. Compressed bodies count towards the size of the cache.
+ *
+ * @author Filip Karacic
+ *
+ */
+class StaticFileCache {
+
+	/**
+	 * Format of the dates in the header.
+	 */
+	static final DateTimeFormatter HTTP_DATE = DateTimeFormatter
+			.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+	/**
+	 * Cached files mapped by path, in order of access.
+	 */
+	private Map<Path, CachedFile> files = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * Maximal total size in bytes of the cached files.
+	 */
+	private long capacity;
+	/**
+	 * Maximal size in bytes of one cached file.
+	 */
+	private long maxFileSize;
+	/**
+	 * Time in milliseconds cached file is served before it is checked on disk
+	 * again.
+	 */
+	private long revalidateInterval;
+	/**
+	 * Total size in bytes of the cached files.
+	 */
+	private long size;
+	/**
+	 * Test whether the file at the given path is worth compressing.
+	 */
+	private Predicate<Path> compressible;
+	/**
+	 * Number of requests for which file was served from the cache.
+	 */
+	private AtomicLong hits = new AtomicLong();
+	/**
+	 * Number of requests for which file had to be read from disk.
+	 */
+	private AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Initializes newly created cache.
+	 *
+	 * @param capacity
+	 *            maximal total size in bytes of the cached files
+	 * @param maxFileSize
+	 *            maximal size in bytes of one cached file
+	 * @param revalidateInterval
+	 *            time in milliseconds cached file is served before it is checked
+	 *            on disk again
+	 * @param compressible
+	 *            test whether the file at the given path is worth compressing
+	 *
+	 * @throws IllegalArgumentException
+	 *             if any of the given values is negative
+	 * @throws NullPointerException
+	 *             if the given test is <code>null</code>
+	 */
+	public StaticFileCache(long capacity, long maxFileSize, long revalidateInterval, Predicate<Path> compressible) {
+		if (capacity < 0 || maxFileSize < 0 || revalidateInterval < 0)
+			throw new IllegalArgumentException("Cache sizes and revalidation interval cannot be negative.");
+
+		this.capacity = capacity;
+		this.maxFileSize = Math.min(maxFileSize, capacity);
+		this.revalidateInterval = revalidateInterval;
+		this.compressible = Objects.requireNonNull(compressible);
+	}
+
+	/**
+	 * Returns file at the given path or <code>null</code> if there is no readable
+	 * regular file at it. Contents of the returned file are available only if the
+	 * file is small enough to be cached.
+	 *
+	 * @param path
+	 *            path of the file
+	 * @return file at the given path or <code>null</code> if there is no readable
+	 *         regular file at it
+	 *
+	 * @throws IOException
+	 *             if error while reading the file occurs
+	 * @throws NullPointerException
+	 *             if the given path is <code>null</code>
+	 */
+	public CachedFile get(Path path) throws IOException {
+		Objects.requireNonNull(path);
+
+		long now = System.currentTimeMillis();
+
+		CachedFile cached;
+		synchronized (files) {
+			cached = files.get(path);
+		}
+
+		if (cached != null && now - cached.checked < revalidateInterval) {
+			hits.incrementAndGet();
+			return cached;
+		}
+
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException e) {
+			remove(path);
+			return null;
+		}
+
+		if (!attributes.isRegularFile() || !Files.isReadable(path)) {
+			remove(path);
+			return null;
+		}
+
+		long modified = attributes.lastModifiedTime().toMillis();
+		long length = attributes.size();
+
+		if (cached != null && cached.modified == modified && cached.length == length) {
+			cached.checked = now;
+			hits.incrementAndGet();
+			return cached;
+		}
+
+		misses.incrementAndGet();
+
+		if (length > maxFileSize) {
+			remove(path);
+			return new CachedFile(path, modified, length, null, null, now);
+		}
+
+		// file is read and compressed outside of the lock so that other files are not blocked
+		byte[] body = Files.readAllBytes(path);
+		byte[][] encodedBodies = compressible.test(path) ? encode(body) : null;
+		CachedFile file = new CachedFile(path, modified, body.length, body, encodedBodies, now);
+
+		synchronized (files) {
+			CachedFile previous = files.put(path, file);
+			if (previous != null) {
+				size -= previous.weight;
+			}
+			size += file.weight;
+
+			Iterator<CachedFile> iterator = files.values().iterator();
+			while (size > capacity && iterator.hasNext()) {
+				size -= iterator.next().weight;
+				iterator.remove();
+			}
+		}
+
+		return file;
+	}
+
+	/**
+	 * Compresses the given body with every coding. Body compressed with the
+	 * coding is <code>null</code> if compressing does not make it smaller.
+	 *
+	 * @param body
+	 *            body of the file
+	 * @return compressed bodies by the ordinals of the codings
+	 */
+	private static byte[][] encode(byte[] body) {
+		ContentCoding[] codings = ContentCoding.values();
+		byte[][] encodedBodies = new byte[codings.length][];
+
+		for (ContentCoding coding : codings) {
+			// file is compressed once, so the best compression is worth its time
+			byte[] encoded = coding.encode(body, 0, body.length, Deflater.BEST_COMPRESSION);
+
+			if (encoded.length < body.length) {
+				encodedBodies[coding.ordinal()] = encoded;
+			}
+		}
+
+		return encodedBodies;
+	}
+
+	/**
+	 * Removes file at the given path from the cache if present.
+	 *
+	 * @param path
+	 *            path of the file
+	 */
+	private void remove(Path path) {
+		synchronized (files) {
+			CachedFile previous = files.remove(path);
+			if (previous != null) {
+				size -= previous.weight;
+			}
+		}
+	}
+
+	/**
+	 * Returns number of requests for which file was served from the cache.
+	 *
+	 * @return number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns number of requests for which file had to be read from disk.
+	 *
+	 * @return number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns number of files in the cache.
+	 *
+	 * @return number of files in the cache
+	 */
+	public int size() {
+		synchronized (files) {
+			return files.size();
+		}
+	}
+
+	/**
+	 * Returns total size in bytes of the files in the cache, together with their
+	 * compressed bodies.
+	 *
+	 * @return total size in bytes of the files in the cache
+	 */
+	public long getBytes() {
+		synchronized (files) {
+			return size;
+		}
+	}
+
+	/**
+	 * Represents static file together with the values of its 'ETag' and
+	 * 'Last-Modified' header lines.
+	 *
+	 */
+	static class CachedFile {
+		/**
+		 * Path of the file.
+		 */
+		private final Path path;
+		/**
+		 * Time of the last modification of the file in milliseconds.
+		 */
+		private final long modified;
+		/**
+		 * Size of the file in bytes.
+		 */
+		private final long length;
+		/**
+		 * Contents of the file or <code>null</code> if the file is not cached.
+		 */
+		private final byte[] body;
+		/**
+		 * Compressed contents of the file by the ordinals of the codings or
+		 * <code>null</code> if the file is not compressed.
+		 */
+		private final byte[][] encodedBodies;
+		/**
+		 * Number of bytes the file takes in the cache.
+		 */
+		private final long weight;
+		/**
+		 * Value of the 'ETag' header line.
+		 */
+		private final String eTag;
+		/**
+		 * Value of the 'Last-Modified' header line.
+		 */
+		private final String lastModified;
+		/**
+		 * Time in milliseconds when the file was last checked on disk.
+		 */
+		private volatile long checked;
+
+		/**
+		 * Initializes newly created file.
+		 *
+		 * @param path
+		 *            path of the file
+		 * @param modified
+		 *            time of the last modification of the file in milliseconds
+		 * @param length
+		 *            size of the file in bytes
+		 * @param body
+		 *            contents of the file or <code>null</code> if the file is not
+		 *            cached
+		 * @param encodedBodies
+		 *            compressed contents of the file by the ordinals of the codings
+		 *            or <code>null</code> if the file is not compressed
+		 * @param checked
+		 *            time in milliseconds when the file was checked on disk
+		 */
+		private CachedFile(Path path, long modified, long length, byte[] body, byte[][] encodedBodies,
+				long checked) {
+			this.path = path;
+			this.modified = modified;
+			this.length = length;
+			this.body = body;
+			this.encodedBodies = encodedBodies;
+			this.checked = checked;
+
+			long weight = length;
+			if (encodedBodies != null) {
+				for (byte[] encoded : encodedBodies) {
+					weight += encoded == null ? 0 : encoded.length;
+				}
+			}
+			this.weight = weight;
+
+			eTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(modified) + "\"";
+			lastModified = HTTP_DATE.format(Instant.ofEpochMilli(modified));
+		}
+
+		/**
+		 * Returns path of the file.
+		 *
+		 * @return path of the file
+		 */
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * Returns time of the last modification of the file in milliseconds.
+		 *
+		 * @return time of the last modification of the file
+		 */
+		public long getModified() {
+			return modified;
+		}
+
+		/**
+		 * Returns size of the file in bytes.
+		 *
+		 * @return size of the file in bytes
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns contents of the file or <code>null</code> if the file is too
+		 * large to be cached. Returned array must not be modified.
+		 *
+		 * @return contents of the file or <code>null</code> if the file is not
+		 *         cached
+		 */
+		public byte[] getBody() {
+			return body;
+		}
+
+		/**
+		 * Returns <code>true</code> if the file is kept compressed, so that its
+		 * response varies with the 'Accept-Encoding' header line.
+		 *
+		 * @return <code>true</code> if the file is kept compressed
+		 */
+		public boolean isCompressible() {
+			return encodedBodies != null;
+		}
+
+		/**
+		 * Returns contents of the file compressed with the given coding or
+		 * <code>null</code> if they are not kept. Returned array must not be
+		 * modified.
+		 *
+		 * @param coding
+		 *            coding of the contents
+		 * @return compressed contents of the file or <code>null</code>
+		 */
+		public byte[] getEncodedBody(ContentCoding coding) {
+			return encodedBodies == null ? null : encodedBodies[coding.ordinal()];
+		}
+
+		/**
+		 * Returns value of the 'ETag' header line for the file.
+		 *
+		 * @return value of the 'ETag' header line
+		 */
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * Returns value of the 'ETag' header line for the file compressed with the
+		 * given coding. It differs from the value for the file itself.
+		 *
+		 * @param coding
+		 *            coding of the contents
+		 * @return value of the 'ETag' header line for the compressed file
+		 */
+		public String getETag(ContentCoding coding) {
+			return eTag.substring(0, eTag.length() - 1) + "-" + coding.getName() + "\"";
+		}
+
+		/**
+		 * Returns value of the 'Last-Modified' header line for the file.
+		 *
+		 * @return value of the 'Last-Modified' header line
+		 */
+		public String getLastModified() {
+			return lastModified;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package hr.fer.zemris.java.webserver;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Represents one of the sites served by the server. Every site has its own
+ * document root, workers, caches of the scripts, static files and rendered
+ * responses and domain of the session cookie. Site is chosen by the 'Host' header line of the request.
+ *
+ * @author Filip Karacic
+ *
+ */
+class VirtualHost {
+
+	/**
+	 * Name of the host used if the request has no 'Host' header line.
+	 */
+	private final String domainName;
+	/**
+	 * Root path of the files.
+	 */
+	private final Path documentRoot;
+	/**
+	 * Domain of the session cookie or <code>null</code> if the requested host is
+	 * used.
+	 */
+	private final String cookieDomain;
+	/**
+	 * Workers mapped by path.
+	 */
+	private final Map<String, IWebWorker> workers;
+	/**
+	 * Cache of the parsed scripts.
+	 */
+	private final ScriptCache scriptCache;
+	/**
+	 * Cache of the small static files.
+	 */
+	private final StaticFileCache staticFileCache;
+	/**
+	 * Cache of the responses rendered by the workers.
+	 */
+	private final ResponseCache responseCache;
+
+	/**
+	 * Initializes newly created host.
+	 *
+	 * @param domainName
+	 *            name of the host used if the request has no 'Host' header line
+	 * @param documentRoot
+	 *            root path of the files
+	 * @param cookieDomain
+	 *            domain of the session cookie or <code>null</code> if the
+	 *            requested host is used
+	 * @param workers
+	 *            workers mapped by path
+	 * @param scriptCache
+	 *            cache of the parsed scripts
+	 * @param staticFileCache
+	 *            cache of the small static files
+	 * @param responseCache
+	 *            cache of the responses rendered by the workers
+	 *
+	 * @throws NullPointerException
+	 *             if any of the arguments other than the cookie domain is
+	 *             <code>null</code>
+	 */
+	public VirtualHost(String domainName, Path documentRoot, String cookieDomain, Map<String, IWebWorker> workers,
+			ScriptCache scriptCache, StaticFileCache staticFileCache, ResponseCache responseCache) {
+		this.domainName = Objects.requireNonNull(domainName);
+		this.documentRoot = documentRoot.toAbsolutePath().normalize();
+		this.cookieDomain = cookieDomain;
+		this.workers = Objects.requireNonNull(workers);
+		this.scriptCache = Objects.requireNonNull(scriptCache);
+		this.staticFileCache = Objects.requireNonNull(staticFileCache);
+		this.responseCache = Objects.requireNonNull(responseCache);
+	}
+
+	/**
+	 * Returns name of the host used if the request has no 'Host' header line.
+	 *
+	 * @return name of the host
+	 */
+	public String getDomainName() {
+		return domainName;
+	}
+
+	/**
+	 * Returns root path of the files.
+	 *
+	 * @return root path of the files
+	 */
+	public Path getDocumentRoot() {
+		return documentRoot;
+	}
+
+	/**
+	 * Returns domain of the session cookie or <code>null</code> if the requested
+	 * host is used.
+	 *
+	 * @return domain of the session cookie or <code>null</code>
+	 */
+	public String getCookieDomain() {
+		return cookieDomain;
+	}
+
+	/**
+	 * Returns workers mapped by path.
+	 *
+	 * @return workers mapped by path
+	 */
+	public Map<String, IWebWorker> getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Returns cache of the parsed scripts.
+	 *
+	 * @return cache of the parsed scripts
+	 */
+	public ScriptCache getScriptCache() {
+		return scriptCache;
+	}
+
+	/**
+	 * Returns cache of the small static files.
+	 *
+	 * @return cache of the small static files
+	 */
+	public StaticFileCache getStaticFileCache() {
+		return staticFileCache;
+	}
+
+	/**
+	 * Returns cache of the responses rendered by the workers.
+	 *
+	 * @return cache of the responses rendered by the workers
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+}
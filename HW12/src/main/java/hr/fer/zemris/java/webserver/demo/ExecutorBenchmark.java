@@ -0,0 +1,204 @@
+package hr.fer.zemris.java.webserver.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hr.fer.zemris.java.webserver.LatencyHistogram;
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+
+/**
+ * Program compares executors of the {@link SmartHttpServer} under many slow
+ * clients. For each executor the server is started on a free port and the
+ * given number of slow clients connects, sending their headers one byte at a
+ * time for about five seconds. Meanwhile fast clients send requests for the
+ * given path and latencies of their requests are printed.
+ * <p>
+ * Program expects path of the server configuration file and optionally number
+ * of slow clients, number of fast requests and path requested by the fast
+ * clients.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class ExecutorBenchmark {
+
+	/**
+	 * Executors compared by the benchmark.
+	 */
+	private static final String[] EXECUTORS = { "fixed", "virtual" };
+	/**
+	 * Number of threads sending fast requests.
+	 */
+	private static final int FAST_CLIENTS = 8;
+	/**
+	 * Time in milliseconds between two bytes sent by the slow client.
+	 */
+	private static final int SLOW_DELAY = 200;
+	/**
+	 * Number of bytes of the path sent by the slow client one at a time.
+	 */
+	private static final int SLOW_BYTES = 25;
+
+	/**
+	 * Method called when program starts.
+	 *
+	 * @param args
+	 *            command line arguments
+	 *
+	 * @throws Exception
+	 *             if error while running the benchmark occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Expected configuration file name.");
+			return;
+		}
+
+		int slowClients = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int fastRequests = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		String path = args.length > 3 ? args[3] : "/index.html";
+
+		Properties properties = new Properties();
+		try (InputStream is = Files.newInputStream(Paths.get(args[0]))) {
+			properties.load(is);
+		}
+
+		for (String executor : EXECUTORS) {
+			run(properties, executor, slowClients, fastRequests, path);
+		}
+	}
+
+	/**
+	 * Runs the benchmark for the given executor and prints the results.
+	 *
+	 * @param properties
+	 *            server configuration
+	 * @param executor
+	 *            executor of the server
+	 * @param slowClients
+	 *            number of slow clients
+	 * @param fastRequests
+	 *            number of fast requests
+	 * @param path
+	 *            path requested by the fast clients
+	 *
+	 * @throws Exception
+	 *             if error while running the benchmark occurs
+	 */
+	private static void run(Properties properties, String executor, int slowClients, int fastRequests, String path)
+			throws Exception {
+		int port = freePort();
+
+		Properties configuration = new Properties();
+		configuration.putAll(properties);
+		configuration.setProperty("server.port", Integer.toString(port));
+		configuration.setProperty("server.executor", executor);
+		configuration.setProperty("server.frontEnd", "blocking");
+
+		Path configFile = Files.createTempFile("server", ".properties");
+		try (OutputStream os = Files.newOutputStream(configFile)) {
+			configuration.store(os, null);
+		}
+
+		SmartHttpServer server = new SmartHttpServer(configFile.toString());
+		server.start();
+		Thread.sleep(500);
+
+		List<Socket> slow = new ArrayList<>();
+		ExecutorService slowSenders = Executors.newSingleThreadExecutor();
+		for (int i = 0; i < slowClients; i++) {
+			Socket socket = new Socket("127.0.0.1", port);
+			socket.getOutputStream().write("GET ".getBytes(StandardCharsets.US_ASCII));
+			slow.add(socket);
+		}
+		// every slow client sends one more byte of the path in each round
+		slowSenders.submit(() -> {
+			try {
+				for (int i = 0; i < SLOW_BYTES; i++) {
+					for (Socket socket : slow) {
+						socket.getOutputStream().write('a');
+					}
+					Thread.sleep(SLOW_DELAY);
+				}
+
+				for (Socket socket : slow) {
+					socket.getOutputStream().write(" HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+				}
+			} catch (IOException | InterruptedException e) {
+			}
+		});
+
+		LatencyHistogram latencies = new LatencyHistogram();
+		AtomicInteger failed = new AtomicInteger();
+		AtomicInteger remaining = new AtomicInteger(fastRequests);
+		byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: 127.0.0.1\r\nConnection: close\r\n\r\n")
+				.getBytes(StandardCharsets.US_ASCII);
+
+		ExecutorService fast = Executors.newFixedThreadPool(FAST_CLIENTS);
+		long start = System.nanoTime();
+		for (int i = 0; i < FAST_CLIENTS; i++) {
+			fast.submit(() -> {
+				while (remaining.getAndDecrement() > 0) {
+					long requestStart = System.nanoTime();
+					try (Socket socket = new Socket("127.0.0.1", port)) {
+						socket.setSoTimeout(60 * 1000);
+						socket.getOutputStream().write(request);
+
+						byte[] buffer = new byte[8192];
+						InputStream is = socket.getInputStream();
+						while (is.read(buffer) != -1)
+							;
+
+						latencies.record((System.nanoTime() - requestStart) / 1000);
+					} catch (IOException e) {
+						failed.incrementAndGet();
+					}
+				}
+			});
+		}
+		fast.shutdown();
+		fast.awaitTermination(1, TimeUnit.HOURS);
+		long elapsed = System.nanoTime() - start;
+
+		slowSenders.shutdownNow();
+		for (Socket socket : slow) {
+			socket.close();
+		}
+		server.stop();
+		Files.deleteIfExists(configFile);
+
+		System.out.printf("%-8s slow=%d requests=%d failed=%d time=%.2fs throughput=%.0f req/s%n", executor,
+				slowClients, latencies.getCount(), failed.get(), elapsed / 1e9, latencies.getCount() / (elapsed / 1e9));
+		System.out.printf("%-8s latency us: p50=%d p99=%d p999=%d max=%d%n", executor,
+				latencies.getValueAtQuantile(0.5), latencies.getValueAtQuantile(0.99),
+				latencies.getValueAtQuantile(0.999), latencies.getMax());
+	}
+
+	/**
+	 * Returns number of the port which is currently free.
+	 *
+	 * @return number of the free port
+	 *
+	 * @throws IOException
+	 *             if error while opening the socket occurs
+	 */
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
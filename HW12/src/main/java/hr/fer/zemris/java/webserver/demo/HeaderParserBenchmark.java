@@ -0,0 +1,323 @@
+package hr.fer.zemris.java.webserver.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hr.fer.zemris.java.webserver.HttpRequestParser;
+import hr.fer.zemris.java.webserver.HttpRequestParser.Status;
+
+/**
+ * Program compares the {@link HttpRequestParser} with the previous way of
+ * reading the request header, which read one byte at a time and split the
+ * header into strings. Both ways read the same pipelined requests from memory
+ * and extract the path, parameters, host and session cookie of each request.
+ * Time and, if the virtual machine can measure it, allocated memory per request
+ * are printed.
+ * <p>
+ * Headers are read from memory, so the cost of reading from the socket one
+ * byte at a time is not included in the results of the previous way.
+ * <p>
+ * Program optionally expects number of measured rounds.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class HeaderParserBenchmark {
+
+	/**
+	 * Header of the request used in the benchmark.
+	 */
+	private static final byte[] REQUEST = ("GET /calc?a=3&b=4 HTTP/1.1\r\n" + "Host: www.localhost.com:5721\r\n"
+			+ "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:60.0) Gecko/20100101 Firefox/60.0\r\n"
+			+ "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+			+ "Accept-Language: en-US,en;q=0.5\r\n" + "Accept-Encoding: gzip, deflate\r\n"
+			+ "Cookie: theme=dark; sid=ABCDEFGHIJKLMNOPQRST\r\n" + "Connection: keep-alive\r\n" + "\r\n")
+					.getBytes(StandardCharsets.US_ASCII);
+	/**
+	 * Number of requests read in one round.
+	 */
+	private static final int REQUESTS = 10_000;
+	/**
+	 * Number of rounds run before the measurement.
+	 */
+	private static final int WARMUP_ROUNDS = 20;
+
+	/**
+	 * Represents one way of reading the requests.
+	 *
+	 */
+	private interface Reader {
+		/**
+		 * Reads all of the requests from the given stream and returns number of
+		 * the found sessions.
+		 *
+		 * @param is
+		 *            stream with the requests
+		 * @return number of the found sessions
+		 *
+		 * @throws IOException
+		 *             if error while reading occurs
+		 */
+		int read(InputStream is) throws IOException;
+	}
+
+	/**
+	 * Method called when program starts.
+	 *
+	 * @param args
+	 *            command line arguments
+	 *
+	 * @throws IOException
+	 *             if error while reading the requests occurs
+	 */
+	public static void main(String[] args) throws IOException {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+		byte[] requests = new byte[REQUEST.length * REQUESTS];
+		for (int i = 0; i < REQUESTS; i++) {
+			System.arraycopy(REQUEST, 0, requests, i * REQUEST.length, REQUEST.length);
+		}
+
+		measure("previous", requests, rounds, HeaderParserBenchmark::readPrevious);
+		measure("parser", requests, rounds, HeaderParserBenchmark::readParser);
+	}
+
+	/**
+	 * Measures the given way of reading the requests and prints the results.
+	 *
+	 * @param name
+	 *            name of the way
+	 * @param requests
+	 *            bytes of the requests
+	 * @param rounds
+	 *            number of measured rounds
+	 * @param reader
+	 *            way of reading the requests
+	 *
+	 * @throws IOException
+	 *             if error while reading occurs
+	 */
+	private static void measure(String name, byte[] requests, int rounds, Reader reader) throws IOException {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			check(reader.read(new ByteArrayInputStream(requests)));
+		}
+
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			check(reader.read(new ByteArrayInputStream(requests)));
+		}
+		long elapsed = System.nanoTime() - start;
+		allocated = allocatedBytes() - allocated;
+
+		long total = (long) rounds * REQUESTS;
+		System.out.printf("%-8s %8.1f ns/request", name, elapsed / (double) total);
+		if (allocated >= 0) {
+			System.out.printf(" %8.1f bytes/request", allocated / (double) total);
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Checks that session was found in every request.
+	 *
+	 * @param sessions
+	 *            number of the found sessions
+	 */
+	private static void check(int sessions) {
+		if (sessions != REQUESTS)
+			throw new IllegalStateException("Expected " + REQUESTS + " sessions, found " + sessions + ".");
+	}
+
+	/**
+	 * Returns number of bytes allocated by the current thread or -1 if it can
+	 * not be measured.
+	 *
+	 * @return number of allocated bytes or -1
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Reads the requests with the {@link HttpRequestParser}.
+	 *
+	 * @param is
+	 *            stream with the requests
+	 * @return number of the found sessions
+	 *
+	 * @throws IOException
+	 *             if error while reading occurs
+	 */
+	private static int readParser(InputStream is) throws IOException {
+		HttpRequestParser parser = new HttpRequestParser(8192, new byte[0]);
+		Map<String, String> params = new HashMap<>();
+		int sessions = 0;
+
+		while (parser.parse(is) == Status.COMPLETE) {
+			params.clear();
+
+			String path = parser.getPath();
+			parser.parseParameters(params);
+			String host = parser.getHeader("Host");
+			String sid = parser.getCookie("sid");
+
+			if (path != null && host != null && sid != null) {
+				sessions++;
+			}
+		}
+
+		return sessions;
+	}
+
+	/**
+	 * Reads the requests the way the server read them before the
+	 * {@link HttpRequestParser}.
+	 *
+	 * @param is
+	 *            stream with the requests
+	 * @return number of the found sessions
+	 *
+	 * @throws IOException
+	 *             if error while reading occurs
+	 */
+	private static int readPrevious(InputStream is) throws IOException {
+		PushbackInputStream istream = new PushbackInputStream(is, 1);
+		Map<String, String> params = new HashMap<>();
+		int sessions = 0;
+
+		List<String> headers;
+		while ((headers = readRequest(istream)) != null) {
+			params.clear();
+
+			String path = extractPathAndParameters(headers, params);
+			String host = null;
+			String sid = null;
+			for (String line : headers) {
+				if (line.startsWith("Host:")) {
+					host = line.split(" ")[1];
+				}
+				if (line.startsWith("Cookie:")) {
+					for (String cookie : line.substring(line.indexOf(" ") + 1).split(";")) {
+						String[] nameAndValue = cookie.trim().split("=");
+						if (nameAndValue[0].equals("sid")) {
+							sid = nameAndValue[1];
+						}
+					}
+				}
+			}
+
+			if (path != null && host != null && sid != null) {
+				sessions++;
+			}
+		}
+
+		return sessions;
+	}
+
+	/**
+	 * Reads request one byte at a time and returns header as a list of lines.
+	 *
+	 * @param is
+	 *            input stream
+	 * @return header as a list of lines or <code>null</code> if the stream has
+	 *         ended
+	 *
+	 * @throws IOException
+	 *             if error reading occurs
+	 */
+	private static List<String> readRequest(InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		int state = 0;
+		l: while (true) {
+			int b = is.read();
+			if (b == -1)
+				return null;
+			if (b != 13) {
+				bos.write(b);
+			}
+
+			switch (state) {
+			case 0: if (b == 13) { state = 1;} else if (b == 10) { state = 4; }
+					break;
+			case 1: if (b == 10) {state = 2;} else { state = 0; }
+					break;
+			case 2: if (b == 13) {state = 3;} else {state = 0;}
+					break;
+			case 3: if (b == 10) { break l; } else {state = 0;}
+					break;
+			case 4: if (b == 10) { break l;} else { state = 0;}
+					break;
+			}
+		}
+
+		List<String> headers = new ArrayList<String>();
+		String currentLine = null;
+		for (String s : new String(bos.toByteArray(), StandardCharsets.US_ASCII).split("\n")) {
+			if (s.isEmpty())
+				break;
+			char c = s.charAt(0);
+
+			if (c == 9 || c == 32) {
+				currentLine += s;
+			} else {
+				if (currentLine != null) {
+					headers.add(currentLine);
+				}
+				currentLine = s;
+			}
+		}
+
+		if (currentLine != null && !currentLine.isEmpty()) {
+			headers.add(currentLine);
+		}
+
+		return headers;
+	}
+
+	/**
+	 * Extracts path and parameters from the first line.
+	 *
+	 * @param headers
+	 *            list of header lines
+	 * @param params
+	 *            map into which parameters are put
+	 * @return extracted path
+	 */
+	private static String extractPathAndParameters(List<String> headers, Map<String, String> params) {
+		String requestedPath = headers.get(0).split(" ")[1];
+
+		if (!requestedPath.contains("?"))
+			return requestedPath;
+
+		String[] pathAndParameters = requestedPath.split("\\?");
+		if (pathAndParameters.length == 1)
+			return pathAndParameters[0];
+
+		for (String parameter : pathAndParameters[1].split("&")) {
+			if (!parameter.contains("=")) {
+				params.put(parameter, null);
+			} else if (parameter.matches("[^=]+=")) {
+				params.put(parameter.replace("=", ""), "");
+			} else if (parameter.matches("[^=]+=[^=]+")) {
+				String[] keyAndValue = parameter.split("=");
+				params.put(keyAndValue[0], keyAndValue[1]);
+			}
+		}
+
+		return pathAndParameters[0];
+	}
+}
@@ -0,0 +1,341 @@
+package hr.fer.zemris.java.webserver.load;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Represents client connection which sends requests to the server and reads
+ * whole responses. If keep-alive is used, connection is reused for the next
+ * request until the server closes it, otherwise new connection is opened for
+ * every request. Bodies of the responses are read and discarded, whether their
+ * length is given, they are chunked or they end with the connection. Cookies
+ * set by the server are sent with the following requests, so the connection
+ * keeps its session like a browser does.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class LoadConnection implements Closeable {
+
+	/**
+	 * Timeout of reading the response in milliseconds.
+	 */
+	private static final int READ_TIMEOUT = 30 * 1000;
+
+	/**
+	 * Address of the server.
+	 */
+	private final String address;
+	/**
+	 * Port of the server.
+	 */
+	private final int port;
+	/**
+	 * Flag that shows whether the connection is kept open between requests.
+	 */
+	private final boolean keepAlive;
+	/**
+	 * Buffer into which bodies are read.
+	 */
+	private final byte[] buffer = new byte[8192];
+	/**
+	 * Buffer of the current line of the response header.
+	 */
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+	/**
+	 * Values of the cookies set by the server mapped by their names.
+	 */
+	private final Map<String, String> cookies = new LinkedHashMap<>();
+
+	/**
+	 * Current socket or <code>null</code> if it is not open.
+	 */
+	private Socket socket;
+	/**
+	 * Input stream of the current socket.
+	 */
+	private InputStream is;
+	/**
+	 * Output stream of the current socket.
+	 */
+	private OutputStream os;
+	/**
+	 * Number of the connections opened so far.
+	 */
+	private int opened;
+
+	/**
+	 * Initializes newly created connection. Socket is opened with the first
+	 * request.
+	 *
+	 * @param address
+	 *            address of the server
+	 * @param port
+	 *            port of the server
+	 * @param keepAlive
+	 *            <code>true</code> if the connection is kept open between
+	 *            requests
+	 */
+	public LoadConnection(String address, int port, boolean keepAlive) {
+		this.address = address;
+		this.port = port;
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * Sends GET request for the given path and reads the whole response.
+	 * Request sent on the connection kept open from the previous request is
+	 * sent once more on the new connection if the server has closed the old
+	 * one in the meantime.
+	 *
+	 * @param path
+	 *            requested path
+	 * @return status code of the response
+	 *
+	 * @throws IOException
+	 *             if error while writing or reading occurs
+	 */
+	public int request(String path) throws IOException {
+		StringBuilder sb = new StringBuilder(128);
+		sb.append("GET ").append(path).append(" HTTP/1.1\r\nHost: ").append(address).append("\r\n");
+		if (!keepAlive) {
+			sb.append("Connection: close\r\n");
+		}
+		if (!cookies.isEmpty()) {
+			sb.append("Cookie: ");
+			cookies.forEach((name, value) -> sb.append(name).append('=').append(value).append("; "));
+			sb.setLength(sb.length() - 2);
+			sb.append("\r\n");
+		}
+		byte[] request = sb.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+
+		boolean reused = socket != null;
+		if (!reused) {
+			open();
+		}
+
+		try {
+			return exchange(request);
+		} catch (IOException e) {
+			close();
+			if (!reused)
+				throw e;
+		}
+
+		open();
+		try {
+			return exchange(request);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns number of the connections opened so far.
+	 *
+	 * @return number of the opened connections
+	 */
+	public int getOpened() {
+		return opened;
+	}
+
+	/**
+	 * Opens new socket.
+	 *
+	 * @throws IOException
+	 *             if error while connecting occurs
+	 */
+	private void open() throws IOException {
+		socket = new Socket(address, port);
+		socket.setTcpNoDelay(true);
+		socket.setSoTimeout(READ_TIMEOUT);
+		is = new BufferedInputStream(socket.getInputStream(), buffer.length);
+		os = socket.getOutputStream();
+		opened++;
+	}
+
+	/**
+	 * Writes the given request and reads the response. Socket is closed if the
+	 * response is the last one on it.
+	 *
+	 * @param request
+	 *            bytes of the request
+	 * @return status code of the response
+	 *
+	 * @throws IOException
+	 *             if error while writing or reading occurs
+	 */
+	private int exchange(byte[] request) throws IOException {
+		os.write(request);
+		os.flush();
+
+		String statusLine = readLine();
+		String[] parts = statusLine.split(" ");
+		if (parts.length < 2 || !parts[0].startsWith("HTTP/"))
+			throw new IOException("Invalid status line: " + statusLine);
+
+		int status;
+		try {
+			status = Integer.parseInt(parts[1]);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid status line: " + statusLine);
+		}
+
+		long length = -1;
+		boolean chunked = false;
+		boolean close = !keepAlive || parts[0].equals("HTTP/1.0");
+
+		String header;
+		while (!(header = readLine()).isEmpty()) {
+			int colon = header.indexOf(':');
+			if (colon == -1)
+				continue;
+
+			String name = header.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+			String value = header.substring(colon + 1).trim();
+
+			if (name.equals("set-cookie")) {
+				setCookie(value);
+				continue;
+			}
+
+			value = value.toLowerCase(Locale.ROOT);
+			if (name.equals("content-length")) {
+				length = Long.parseLong(value);
+			} else if (name.equals("transfer-encoding")) {
+				chunked = value.contains("chunked");
+			} else if (name.equals("connection")) {
+				close = value.contains("close");
+			}
+		}
+
+		if (chunked) {
+			readChunks();
+		} else if (length >= 0) {
+			skip(length);
+		} else {
+			// body ends with the connection
+			while (is.read(buffer) != -1)
+				;
+			close = true;
+		}
+
+		if (close) {
+			close();
+		}
+
+		return status;
+	}
+
+	/**
+	 * Remembers cookie from the given value of the 'Set-Cookie' header line.
+	 *
+	 * @param value
+	 *            value of the 'Set-Cookie' header line
+	 */
+	private void setCookie(String value) {
+		int semicolon = value.indexOf(';');
+		String pair = semicolon == -1 ? value : value.substring(0, semicolon);
+		int equals = pair.indexOf('=');
+
+		if (equals > 0) {
+			cookies.put(pair.substring(0, equals).trim(), pair.substring(equals + 1).trim());
+		}
+	}
+
+	/**
+	 * Reads and discards chunked body and its trailer.
+	 *
+	 * @throws IOException
+	 *             if error while reading occurs
+	 */
+	private void readChunks() throws IOException {
+		while (true) {
+			String size = readLine();
+			int semicolon = size.indexOf(';');
+			long length;
+			try {
+				length = Long.parseLong((semicolon == -1 ? size : size.substring(0, semicolon)).trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid chunk size: " + size);
+			}
+
+			if (length == 0)
+				break;
+
+			skip(length);
+			readLine();
+		}
+
+		while (!readLine().isEmpty())
+			;
+	}
+
+	/**
+	 * Reads and discards the given number of bytes.
+	 *
+	 * @param length
+	 *            number of bytes
+	 *
+	 * @throws IOException
+	 *             if the stream ends or error while reading occurs
+	 */
+	private void skip(long length) throws IOException {
+		while (length > 0) {
+			int read = is.read(buffer, 0, (int) Math.min(buffer.length, length));
+			if (read == -1)
+				throw new EOFException("Response ended before its body.");
+
+			length -= read;
+		}
+	}
+
+	/**
+	 * Reads line ended with CRLF or LF and returns it without the line end.
+	 *
+	 * @return read line
+	 *
+	 * @throws IOException
+	 *             if the stream ends or error while reading occurs
+	 */
+	private String readLine() throws IOException {
+		line.reset();
+
+		int b;
+		while ((b = is.read()) != '\n') {
+			if (b == -1)
+				throw new EOFException("Connection closed by the server.");
+			if (b != '\r') {
+				line.write(b);
+			}
+		}
+
+		return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public void close() {
+		if (socket == null)
+			return;
+
+		try {
+			socket.close();
+		} catch (IOException e) {
+		}
+
+		socket = null;
+		is = null;
+		os = null;
+	}
+}
@@ -0,0 +1,322 @@
+package hr.fer.zemris.java.webserver.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import hr.fer.zemris.java.webserver.LatencyHistogram;
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+
+/**
+ * Program measures throughput and latencies of the {@link SmartHttpServer}.
+ * Server is started on a free loopback port with the given configuration
+ * file, but it serves the fixtures next to that file: the 'webroot' directory
+ * and the 'mime.properties' and 'workers.properties' files from the directory
+ * of the configuration file. Given number of connections then requests paths
+ * chosen from the mix for the given number of seconds.
+ * <p>
+ * If the rate is positive, load is open-loop: requests are scheduled at the
+ * given total rate regardless of the responses and latency of each request is
+ * measured from its scheduled time, so the time it waited for the connection
+ * to become free is included. If the rate is zero, every connection sends its
+ * next request as soon as it reads the previous response. Requests of the
+ * first {@value #WARMUP_SECONDS} seconds are not measured.
+ * <p>
+ * Program expects path of the server configuration file and optionally the
+ * rate in requests per second, duration in seconds, number of connections,
+ * whether the connections are kept alive and the mix of requests, given as
+ * described in {@link RequestMix}.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class LoadGenerator {
+
+	/**
+	 * Mix requesting static files, scripts, '/ext/' workers and mapped workers.
+	 */
+	private static final String DEFAULT_MIX = "4:/index.html,2:/sample.txt,2:/scripts/osnovni.smscr,"
+			+ "1:/ext/EchoParams?a=1&b=2,1:/hello,1:/cw";
+	/**
+	 * Number of seconds at the beginning which are not measured.
+	 */
+	private static final int WARMUP_SECONDS = 2;
+	/**
+	 * Address on which the server listens.
+	 */
+	private static final String ADDRESS = "127.0.0.1";
+
+	/**
+	 * Method called when program starts.
+	 *
+	 * @param args
+	 *            command line arguments
+	 *
+	 * @throws Exception
+	 *             if error while running the benchmark occurs
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Expected configuration file name.");
+			return;
+		}
+
+		double rate = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int connections = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+		boolean keepAlive = args.length > 4 ? Boolean.parseBoolean(args[4]) : true;
+		RequestMix mix = new RequestMix(args.length > 5 ? args[5] : DEFAULT_MIX);
+
+		if (rate < 0 || seconds <= 0 || connections <= 0) {
+			System.out.println("Rate must not be negative, duration and number of connections must be positive.");
+			return;
+		}
+
+		Path configFile = Paths.get(args[0]).toAbsolutePath();
+		int port = freePort();
+		Path serverConfig = serverConfig(configFile, port);
+
+		SmartHttpServer server = new SmartHttpServer(serverConfig.toString());
+		server.start();
+		Thread.sleep(500);
+
+		try {
+			run(port, rate, seconds, connections, keepAlive, mix);
+		} finally {
+			server.stop();
+			Files.deleteIfExists(serverConfig);
+		}
+
+		System.out.println();
+		System.out.println(server.getStatistics());
+	}
+
+	/**
+	 * Sends the requests and prints the results.
+	 *
+	 * @param port
+	 *            port of the server
+	 * @param rate
+	 *            total number of requests per second or zero if the connections
+	 *            send requests as fast as they can
+	 * @param seconds
+	 *            duration in seconds
+	 * @param connections
+	 *            number of connections
+	 * @param keepAlive
+	 *            <code>true</code> if the connections are kept open between
+	 *            requests
+	 * @param mix
+	 *            mix of the requests
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the connections
+	 */
+	private static void run(int port, double rate, int seconds, int connections, boolean keepAlive, RequestMix mix)
+			throws InterruptedException {
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		long measured = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+		long end = measured + TimeUnit.SECONDS.toNanos(seconds);
+		AtomicLong opened = new AtomicLong();
+
+		ExecutorService pool = Executors.newFixedThreadPool(connections);
+		for (int i = 0; i < connections; i++) {
+			int index = i;
+			pool.submit(() -> {
+				try (LoadConnection connection = new LoadConnection(ADDRESS, port, keepAlive)) {
+					drive(connection, index, connections, rate, start, measured, end, mix);
+					opened.addAndGet(connection.getOpened());
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(seconds + WARMUP_SECONDS + 60, TimeUnit.SECONDS);
+
+		// requests scheduled before the end may finish after it if the server
+		// can not keep up with the rate
+		double elapsed = (System.nanoTime() - measured) / 1e9;
+		print(mix, elapsed, rate, connections, keepAlive, opened.get());
+	}
+
+	/**
+	 * Sends requests on the given connection until the end. In the open-loop
+	 * mode connection with the given index sends every request whose ordinal
+	 * number gives that index when divided by the number of connections.
+	 *
+	 * @param connection
+	 *            connection sending the requests
+	 * @param index
+	 *            index of the connection
+	 * @param connections
+	 *            number of connections
+	 * @param rate
+	 *            total number of requests per second or zero
+	 * @param start
+	 *            time of the first request
+	 * @param measured
+	 *            time from which the requests are measured
+	 * @param end
+	 *            time after which no request is sent
+	 * @param mix
+	 *            mix of the requests
+	 */
+	private static void drive(LoadConnection connection, int index, int connections, double rate, long start,
+			long measured, long end, RequestMix mix) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		double interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+
+		for (long slot = index;; slot += connections) {
+			long scheduled = rate > 0 ? start + (long) (slot * interval) : Math.max(start, System.nanoTime());
+			if (scheduled >= end)
+				return;
+
+			long now;
+			while ((now = System.nanoTime()) < scheduled) {
+				LockSupport.parkNanos(scheduled - now);
+			}
+
+			RequestMix.Entry entry = mix.next(random);
+			boolean success;
+			try {
+				int status = connection.request(entry.getPath());
+				success = status < 400;
+			} catch (IOException e) {
+				success = false;
+			}
+
+			if (scheduled < measured)
+				continue;
+
+			if (success) {
+				entry.getLatencies().record((System.nanoTime() - scheduled) / 1000);
+			} else {
+				entry.error();
+			}
+		}
+	}
+
+	/**
+	 * Prints throughput and latencies of every entry of the mix and of all of
+	 * them together.
+	 *
+	 * @param mix
+	 *            mix of the requests
+	 * @param seconds
+	 *            time in seconds from the beginning of the measurement until
+	 *            the last response
+	 * @param rate
+	 *            total number of requests per second or zero
+	 * @param connections
+	 *            number of connections
+	 * @param keepAlive
+	 *            <code>true</code> if the connections were kept open
+	 * @param opened
+	 *            number of opened connections
+	 */
+	private static void print(RequestMix mix, double seconds, double rate, int connections, boolean keepAlive,
+			long opened) {
+		System.out.printf("%s load, %d connections (%s), %.2f seconds, %d connections opened%n",
+				rate > 0 ? String.format("open-loop %.0f req/s", rate) : "closed-loop", connections,
+				keepAlive ? "keep-alive" : "close", seconds, opened);
+		System.out.printf("%-32s %9s %7s %9s %9s %9s %9s %9s %9s%n", "path", "requests", "errors", "req/s",
+				"p50 us", "p90 us", "p99 us", "p999 us", "max us");
+
+		LatencyHistogram total = new LatencyHistogram();
+		long errors = 0;
+		List<String> lines = new ArrayList<>();
+		for (RequestMix.Entry entry : mix.getEntries()) {
+			LatencyHistogram latencies = entry.getLatencies();
+			lines.add(line(entry.getPath(), latencies, entry.getErrors(), seconds));
+
+			total.add(latencies);
+			errors += entry.getErrors();
+		}
+		lines.add(line("total", total, errors, seconds));
+
+		lines.forEach(System.out::println);
+	}
+
+	/**
+	 * Returns line of the results.
+	 *
+	 * @param name
+	 *            name of the line
+	 * @param latencies
+	 *            latencies of the successful requests
+	 * @param errors
+	 *            number of the failed requests
+	 * @param seconds
+	 *            measured time in seconds
+	 * @return line of the results
+	 */
+	private static String line(String name, LatencyHistogram latencies, long errors, double seconds) {
+		return String.format("%-32s %9d %7d %9.0f %9d %9d %9d %9d %9d", name, latencies.getCount(), errors,
+				latencies.getCount() / seconds, latencies.getValueAtQuantile(0.5),
+				latencies.getValueAtQuantile(0.9), latencies.getValueAtQuantile(0.99),
+				latencies.getValueAtQuantile(0.999), latencies.getMax());
+	}
+
+	/**
+	 * Writes configuration of the server to a temporary file. Configuration is
+	 * read from the given file, with the given port and paths of the fixtures
+	 * next to the file.
+	 *
+	 * @param configFile
+	 *            path of the configuration file
+	 * @param port
+	 *            port of the server
+	 * @return path of the temporary file
+	 *
+	 * @throws IOException
+	 *             if error while reading or writing occurs
+	 */
+	private static Path serverConfig(Path configFile, int port) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream is = Files.newInputStream(configFile)) {
+			properties.load(is);
+		}
+
+		Path directory = configFile.getParent();
+		properties.setProperty("server.address", ADDRESS);
+		properties.setProperty("server.port", Integer.toString(port));
+		properties.setProperty("server.documentRoot", directory.resolveSibling("webroot").toString());
+		properties.setProperty("server.mimeConfig", directory.resolve("mime.properties").toString());
+		properties.setProperty("server.workers", directory.resolve("workers.properties").toString());
+		// every connection of the generator comes from the same address
+		properties.setProperty("server.maxConnectionsPerClient", "0");
+
+		Path file = Files.createTempFile("server", ".properties");
+		try (OutputStream os = Files.newOutputStream(file)) {
+			properties.store(os, null);
+		}
+
+		return file;
+	}
+
+	/**
+	 * Returns number of the port which is currently free.
+	 *
+	 * @return number of the free port
+	 *
+	 * @throws IOException
+	 *             if error while opening the socket occurs
+	 */
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package hr.fer.zemris.java.webserver.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.java.webserver.LatencyHistogram;
+
+/**
+ * Represents weighted mix of the requested paths. Mix is given as a comma
+ * separated list of entries 'weight:path', for example
+ * <code>4:/index.html,1:/cw</code>, where the path of each entry is requested
+ * with the probability proportional to its weight. Every entry keeps the
+ * results of its requests.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class RequestMix {
+
+	/**
+	 * Entries of the mix.
+	 */
+	private final List<Entry> entries = new ArrayList<>();
+	/**
+	 * Sum of the weights of the entries.
+	 */
+	private final int totalWeight;
+
+	/**
+	 * Initializes newly created mix from the given description.
+	 *
+	 * @param description
+	 *            comma separated list of entries 'weight:path'
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the description is not valid
+	 */
+	public RequestMix(String description) {
+		int total = 0;
+
+		for (String element : description.split(",")) {
+			element = element.trim();
+			if (element.isEmpty())
+				continue;
+
+			int colon = element.indexOf(':');
+			if (colon == -1)
+				throw new IllegalArgumentException("Expected 'weight:path', was: " + element + ".");
+
+			int weight;
+			try {
+				weight = Integer.parseInt(element.substring(0, colon).trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid weight: " + element + ".");
+			}
+
+			String path = element.substring(colon + 1).trim();
+			if (weight <= 0 || !path.startsWith("/"))
+				throw new IllegalArgumentException("Invalid entry of the mix: " + element + ".");
+
+			total += weight;
+			entries.add(new Entry(path, total));
+		}
+
+		if (entries.isEmpty())
+			throw new IllegalArgumentException("Mix must have at least one entry.");
+
+		totalWeight = total;
+	}
+
+	/**
+	 * Returns entry chosen at random according to the weights.
+	 *
+	 * @param random
+	 *            generator of the random numbers
+	 * @return chosen entry
+	 */
+	public Entry next(Random random) {
+		int value = random.nextInt(totalWeight);
+
+		for (Entry entry : entries) {
+			if (value < entry.bound)
+				return entry;
+		}
+
+		throw new IllegalStateException("Weights are not consistent.");
+	}
+
+	/**
+	 * Returns entries of the mix.
+	 *
+	 * @return unmodifiable list of the entries
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Represents one path of the mix with the results of its requests.
+	 *
+	 */
+	public static class Entry {
+
+		/**
+		 * Requested path.
+		 */
+		private final String path;
+		/**
+		 * Sum of the weights of this and the previous entries.
+		 */
+		private final int bound;
+		/**
+		 * Latencies of the successful requests in microseconds.
+		 */
+		private final LatencyHistogram latencies = new LatencyHistogram();
+		/**
+		 * Number of the failed requests.
+		 */
+		private final LongAdder errors = new LongAdder();
+
+		/**
+		 * Initializes newly created entry.
+		 *
+		 * @param path
+		 *            requested path
+		 * @param bound
+		 *            sum of the weights of this and the previous entries
+		 */
+		private Entry(String path, int bound) {
+			this.path = path;
+			this.bound = bound;
+		}
+
+		/**
+		 * Returns requested path.
+		 *
+		 * @return requested path
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Returns latencies of the successful requests in microseconds.
+		 *
+		 * @return latencies of the successful requests
+		 */
+		public LatencyHistogram getLatencies() {
+			return latencies;
+		}
+
+		/**
+		 * Returns number of the failed requests.
+		 *
+		 * @return number of the failed requests
+		 */
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		/**
+		 * Counts failed request.
+		 */
+		public void error() {
+			errors.increment();
+		}
+	}
+}
@@ -6,20 +6,28 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 import javax.imageio.ImageIO;
 
-import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.IAsyncWebWorker;
+import hr.fer.zemris.java.webserver.ICacheableWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Represents worker that draws image with dimensions 200x200 that has white
- * background and blue circle in it.
+ * background and blue circle in it. Image is drawn asynchronously with the
+ * executor of the server, so the thread serving the connection is not held
+ * while drawing. Image never changes, so it is drawn and encoded only once
+ * and then served from the cache.
  * 
  * @author Filip Karacic
  *
  */
-public class CircleWorker implements IWebWorker {
+public class CircleWorker implements IAsyncWebWorker, ICacheableWebWorker {
 	
 	/**
 	 * Width of the image.
@@ -31,9 +39,27 @@ public class CircleWorker implements IWebWorker {
 	private final static int HEIGHT = 200;
 
 	@Override
-	public void processRequest(RequestContext context) {
-		context.setMimeType("image/jpg");
+	public String getCacheKey(RequestContext context) {
+		return "";
+	}
+
+	@Override
+	public CompletionStage<Void> processRequestAsync(RequestContext context, Executor executor) {
+		context.setMimeType("image/png");
 
+		return CompletableFuture.runAsync(() -> draw(context), executor);
+	}
+
+	/**
+	 * Draws the image and writes it to the given context.
+	 * 
+	 * @param context
+	 *            context of the web server
+	 * 
+	 * @throws UncheckedIOException
+	 *             if error while writing occurs
+	 */
+	private static void draw(RequestContext context) {
 		BufferedImage bim = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
 		Graphics2D g2d = bim.createGraphics();
 		Rectangle r = new Rectangle(0, 0, WIDTH, HEIGHT);
@@ -52,7 +78,7 @@ public class CircleWorker implements IWebWorker {
 			ImageIO.write(bim, "png", bos);
 			context.write(bos.toByteArray());
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException(e);
 		}
 	}
 }
\ No newline at end of file
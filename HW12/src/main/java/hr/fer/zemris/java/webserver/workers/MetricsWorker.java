@@ -0,0 +1,44 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.ServerMetrics;
+
+/**
+ * Represents worker that writes metrics of the server in the Prometheus text
+ * format. It is registered by the server itself at the path given with the
+ * 'server.metricsPath' property, on the site given with the
+ * 'server.metricsHost' property only.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class MetricsWorker implements IWebWorker {
+
+	/**
+	 * Metrics of the server.
+	 */
+	private ServerMetrics metrics;
+
+	/**
+	 * Initializes newly created worker writing the given metrics.
+	 *
+	 * @param metrics
+	 *            metrics of the server
+	 *
+	 * @throws NullPointerException
+	 *             if the given metrics are <code>null</code>
+	 */
+	public MetricsWorker(ServerMetrics metrics) {
+		this.metrics = Objects.requireNonNull(metrics);
+	}
+
+	@Override
+	public void processRequest(RequestContext context) throws IOException {
+		context.setMimeType("text/plain");
+		context.write(metrics.toText());
+	}
+}
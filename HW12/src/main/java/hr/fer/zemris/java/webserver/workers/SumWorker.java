@@ -1,17 +1,24 @@
 package hr.fer.zemris.java.webserver.workers;
 
-import hr.fer.zemris.java.webserver.IWebWorker;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+import hr.fer.zemris.java.webserver.IAsyncWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Represents worker that produces sum of the two variables 'a' and 'b'. If any
  * of those variables is not set or is wrongly set(e.g. not number but string)
  * default values are set. Default value for variable 'a' is 1 and for 'b' is 2.
+ * Result is rendered by the script asynchronously, with the executor of the
+ * server.
  * 
  * @author Filip Karacic
  *
  */
-public class SumWorker implements IWebWorker {
+public class SumWorker implements IAsyncWebWorker {
 	
 	/**
 	 * Integer number with the value one.
@@ -23,7 +30,7 @@ public class SumWorker implements IWebWorker {
 	private static final Integer TWO = Integer.valueOf(2);
 
 	@Override
-	public void processRequest(RequestContext context) {
+	public CompletionStage<Void> processRequestAsync(RequestContext context, Executor executor) {
 		Integer a = null;
 		Integer b = null;
 
@@ -50,9 +57,12 @@ public class SumWorker implements IWebWorker {
 
 		context.setMimeType("text/html");
 
-		try {
-			context.getDispatcher().dispatchRequest("/private/calc.smscr");
-		} catch (Exception e) {
-			throw new IllegalStateException(e);		}
+		return CompletableFuture.runAsync(() -> {
+			try {
+				context.getDispatcher().dispatchRequest("/private/calc.smscr");
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import hr.fer.zemris.java.webserver.FormPart;
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents worker that reads parts of the 'multipart/form-data' request one
+ * at a time as they arrive and outputs back to the user name, file name and
+ * size of each part formatted as an HTML table. Content of the parts is not
+ * kept, so uploads of any size are counted with the same memory. If the
+ * request has no parts, form for uploading files is shown.
+ *
+ * @author Filip Karacic
+ *
+ */
+public class UploadWorker implements IWebWorker {
+
+	@Override
+	public void processRequest(RequestContext context) throws IOException {
+		context.setMimeType("text/html");
+
+		FormPart part = context.nextPart();
+		if (part == null) {
+			context.write("<html>\r\n" + "<head>\r\n" + "<title>Upload</title>\r\n" + "</head>\r\n" + "<body>\r\n"
+					+ "<form method=\"post\" enctype=\"multipart/form-data\">\r\n"
+					+ "<input type=\"text\" name=\"description\">\r\n" + "<input type=\"file\" name=\"file\" multiple>\r\n"
+					+ "<input type=\"submit\" value=\"Upload\">\r\n" + "</form>\r\n" + "</body>\r\n" + "</html>");
+			return;
+		}
+
+		context.write("<html>\r\n" + "<head>\r\n" + "<title>Uploaded parts</title>\r\n" + "</head>\r\n" + "<body>\r\n"
+				+ "<h1>Uploaded parts</h1>\r\n" + "<table border=1>\r\n"
+				+ "<tr><th>Name</th><th>File</th><th>Bytes</th></tr>\r\n");
+
+		byte[] buffer = new byte[8192];
+		for (; part != null; part = context.nextPart()) {
+			long size = 0;
+			InputStream is = part.getInputStream();
+
+			int r;
+			while ((r = is.read(buffer)) != -1) {
+				size += r;
+			}
+
+			String fileName = part.getFileName() == null ? "" : escape(part.getFileName());
+			context.write("<tr><td>" + escape(part.getName()) + "</td><td>" + fileName + "</td><td>" + size
+					+ "</td></tr>\r\n");
+		}
+
+		context.write("</table>\r\n" + "</body>\r\n" + "</html>");
+	}
+
+	/**
+	 * Returns the given text with the HTML special characters escaped.
+	 *
+	 * @param text
+	 *            text to be escaped
+	 * @return escaped text
+	 */
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
@@ -0,0 +1,65 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Input stream which returns at most the given number of bytes per read, so
+ * that the data is received the way it may arrive over a connection.
+ *
+ * @author Filip Karacic
+ *
+ */
+class ChunkedInputStream extends InputStream {
+
+	/**
+	 * Stream of the data.
+	 */
+	private final ByteArrayInputStream data;
+	/**
+	 * Maximal number of bytes returned per read.
+	 */
+	private final int chunk;
+
+	/**
+	 * Initializes newly created stream of the given data.
+	 *
+	 * @param data
+	 *            data of the stream
+	 * @param chunk
+	 *            maximal number of bytes returned per read
+	 */
+	public ChunkedInputStream(byte[] data, int chunk) {
+		this.data = new ByteArrayInputStream(data);
+		this.chunk = chunk;
+	}
+
+	/**
+	 * Initializes newly created stream of the given text encoded as ASCII.
+	 *
+	 * @param text
+	 *            text of the stream
+	 * @param chunk
+	 *            maximal number of bytes returned per read
+	 */
+	public ChunkedInputStream(String text, int chunk) {
+		this(text.getBytes(StandardCharsets.ISO_8859_1), chunk);
+	}
+
+	@Override
+	public int read() throws IOException {
+		return data.read();
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		return data.read(b, off, Math.min(len, chunk));
+	}
+
+	@Override
+	public int available() {
+		return 0;
+	}
+}
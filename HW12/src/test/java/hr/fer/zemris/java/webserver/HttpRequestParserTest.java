@@ -0,0 +1,295 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.HttpRequestParser.BodyStream;
+import hr.fer.zemris.java.webserver.HttpRequestParser.Status;
+
+public class HttpRequestParserTest {
+
+	private static HttpRequestParser parser(int maxHeaderSize) {
+		return new HttpRequestParser(maxHeaderSize, new byte[0]);
+	}
+
+	private static String readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] b = new byte[7];
+		int r;
+		while ((r = is.read(b, 0, b.length)) != -1) {
+			bos.write(b, 0, r);
+		}
+
+		return new String(bos.toByteArray(), StandardCharsets.US_ASCII);
+	}
+
+	private static String header(int size) {
+		String start = "GET / HTTP/1.1\r\nX: ";
+		StringBuilder sb = new StringBuilder(start);
+		while (sb.length() < size - 4) {
+			sb.append('a');
+		}
+
+		return sb.append("\r\n\r\n").toString();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonPositiveHeaderSize() {
+		parser(0);
+	}
+
+	@Test
+	public void testRequestLineAndHeaders() throws IOException {
+		HttpRequestParser parser = parser(1024);
+		InputStream is = new ChunkedInputStream(
+				"get /a/b.html HTTP/1.1\r\nHost:  localhost:5721 \r\nAccept: */*\r\nX-Empty\r\n\r\n", 1);
+
+		assertEquals(Status.COMPLETE, parser.parse(is));
+		assertTrue(parser.isMethod("GET"));
+		assertTrue(parser.isVersion("HTTP/1.1"));
+		assertFalse(parser.isVersion("HTTP/1.0"));
+		assertEquals("/a/b.html", parser.getPath());
+		assertEquals(3, parser.getHeaderCount());
+		assertEquals("localhost:5721", parser.getHeader("host"));
+		assertEquals("*/*", parser.getHeader("ACCEPT"));
+		assertEquals("", parser.getHeader("X-Empty"));
+		assertNull(parser.getHeader("Cookie"));
+		assertEquals(0, parser.buffered());
+	}
+
+	@Test
+	public void testBareLineFeeds() throws IOException {
+		HttpRequestParser parser = parser(1024);
+
+		assertEquals(Status.COMPLETE, parser.parse(new ChunkedInputStream("GET /x HTTP/1.0\nHost: a\nB: c\n\n", 3)));
+		assertEquals("/x", parser.getPath());
+		assertEquals("a", parser.getHeader("Host"));
+		assertEquals("c", parser.getHeader("B"));
+	}
+
+	@Test
+	public void testFoldedLine() throws IOException {
+		HttpRequestParser parser = parser(1024);
+		InputStream is = new ChunkedInputStream("GET / HTTP/1.1\r\nX-Long: one\r\n two\r\n\tthree\r\nY: z\r\n\r\n", 2);
+
+		assertEquals(Status.COMPLETE, parser.parse(is));
+		assertEquals(2, parser.getHeaderCount());
+		assertEquals("one", parser.getHeader("X-Long").substring(0, 3));
+		assertEquals("one two three", parser.getHeader("X-Long").replaceAll("\\s+", " "));
+		assertEquals("z", parser.getHeader("Y"));
+	}
+
+	@Test
+	public void testMalformedRequestLine() throws IOException {
+		assertEquals(Status.MALFORMED, parser(1024).parse(new ChunkedInputStream("GET /\r\n\r\n", 100)));
+		assertEquals(Status.MALFORMED, parser(1024).parse(new ChunkedInputStream("GET  / HTTP/1.1\r\n\r\n", 100)));
+		assertEquals(Status.MALFORMED, parser(1024).parse(new ChunkedInputStream("GET / HTTP/1.1 x\r\n\r\n", 100)));
+		assertEquals(Status.MALFORMED, parser(1024).parse(new ChunkedInputStream(" / HTTP/1.1\r\n\r\n", 100)));
+	}
+
+	@Test
+	public void testClosedBeforeHeader() throws IOException {
+		assertEquals(Status.CLOSED, parser(1024).parse(new ChunkedInputStream("", 1)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testClosedInsideHeader() throws IOException {
+		parser(1024).parse(new ChunkedInputStream("GET / HTTP/1.1\r\nHost: a\r\n", 1));
+	}
+
+	@Test
+	public void testHeaderOfMaximalSize() throws IOException {
+		String header = header(64);
+		assertEquals(64, header.length());
+
+		assertEquals(Status.COMPLETE, parser(64).parse(new ChunkedInputStream(header, 1)));
+		assertEquals(Status.COMPLETE, parser(64).parse(new ChunkedInputStream(header, 1000)));
+	}
+
+	@Test
+	public void testHeaderOverMaximalSize() throws IOException {
+		String header = header(65);
+		assertEquals(65, header.length());
+
+		assertEquals(Status.TOO_LARGE, parser(64).parse(new ChunkedInputStream(header, 1)));
+		assertEquals(Status.TOO_LARGE, parser(64).parse(new ChunkedInputStream(header, 1000)));
+		assertEquals(Status.TOO_LARGE, parser(64).parse(new ChunkedInputStream(header + header, 1000)));
+	}
+
+	@Test
+	public void testPipelinedRequestsAcrossCompaction() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			sb.append("GET /r").append(i).append(" HTTP/1.1\r\nHost: h").append(i).append("\r\n\r\n");
+		}
+
+		// buffer holds two headers of the maximal size, so it is compacted many times
+		for (int chunk : new int[] { 1, 5, 37, 1000 }) {
+			HttpRequestParser parser = parser(48);
+			InputStream is = new ChunkedInputStream(sb.toString(), chunk);
+
+			for (int i = 0; i < 20; i++) {
+				assertEquals(Status.COMPLETE, parser.parse(is));
+				assertEquals("/r" + i, parser.getPath());
+				assertEquals("h" + i, parser.getHeader("Host"));
+			}
+			assertEquals(0, parser.buffered());
+			assertEquals(Status.CLOSED, parser.parse(is));
+		}
+	}
+
+	@Test
+	public void testPrereadBytes() throws IOException {
+		byte[] preread = "GET /first HTTP/1.1\r\n\r\nGET /sec".getBytes(StandardCharsets.US_ASCII);
+		HttpRequestParser parser = new HttpRequestParser(64, preread);
+		InputStream is = new ChunkedInputStream("ond HTTP/1.1\r\n\r\n", 4);
+
+		assertEquals(Status.COMPLETE, parser.parse(is));
+		assertEquals("/first", parser.getPath());
+		assertEquals(8, parser.buffered());
+		assertEquals(Status.COMPLETE, parser.parse(is));
+		assertEquals("/second", parser.getPath());
+	}
+
+	@Test
+	public void testBodyReadFromBufferThenStream() throws IOException {
+		String request = "POST /form HTTP/1.1\r\nContent-Length: 26\r\n\r\n" + "abcdefghijklmnopqrstuvwxyz"
+				+ "GET /next HTTP/1.1\r\n\r\n";
+
+		for (int chunk : new int[] { 1, 3, 50, 1000 }) {
+			HttpRequestParser parser = parser(1024);
+			InputStream is = new ChunkedInputStream(request, chunk);
+
+			assertEquals(Status.COMPLETE, parser.parse(is));
+			BodyStream body = parser.body(is, 26);
+			assertEquals("abcdefghijklmnopqrstuvwxyz", readAll(body));
+			assertEquals(0, body.remaining());
+			assertEquals(-1, body.read());
+
+			assertEquals(Status.COMPLETE, parser.parse(is));
+			assertEquals("/next", parser.getPath());
+		}
+	}
+
+	@Test
+	public void testBodyDiscarded() throws IOException {
+		String request = "POST / HTTP/1.1\r\n\r\n" + "0123456789" + "GET /after HTTP/1.1\r\n\r\n";
+		HttpRequestParser parser = parser(1024);
+		InputStream is = new ChunkedInputStream(request, 4);
+
+		assertEquals(Status.COMPLETE, parser.parse(is));
+		BodyStream body = parser.body(is, 10);
+		assertEquals('0', body.read());
+		body.discard();
+		assertEquals(0, body.remaining());
+
+		assertEquals(Status.COMPLETE, parser.parse(is));
+		assertEquals("/after", parser.getPath());
+	}
+
+	@Test(expected = EOFException.class)
+	public void testBodyShorterThanLength() throws IOException {
+		HttpRequestParser parser = parser(1024);
+		InputStream is = new ChunkedInputStream("POST / HTTP/1.1\r\n\r\nabc", 2);
+
+		assertEquals(Status.COMPLETE, parser.parse(is));
+		readAll(parser.body(is, 10));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeBodyLength() throws IOException {
+		HttpRequestParser parser = parser(1024);
+		InputStream is = new ChunkedInputStream("POST / HTTP/1.1\r\n\r\n", 2);
+
+		parser.parse(is);
+		parser.body(is, -1);
+	}
+
+	@Test
+	public void testParameters() throws IOException {
+		HttpRequestParser parser = parser(1024);
+		parser.parse(new ChunkedInputStream("GET /p?a=1&flag&=x&c=1=2&&d=&e=5 HTTP/1.1\r\n\r\n", 1000));
+
+		Map<String, String> params = new HashMap<>();
+		parser.parseParameters(params);
+
+		assertEquals("/p", parser.getPath());
+		assertEquals(4, params.size());
+		assertEquals("1", params.get("a"));
+		assertTrue(params.containsKey("flag"));
+		assertNull(params.get("flag"));
+		assertEquals("", params.get("d"));
+		assertEquals("5", params.get("e"));
+	}
+
+	@Test
+	public void testEmptyQuery() throws IOException {
+		HttpRequestParser parser = parser(1024);
+		parser.parse(new ChunkedInputStream("GET /p? HTTP/1.1\r\n\r\n", 1000));
+
+		Map<String, String> params = new HashMap<>();
+		parser.parseParameters(params);
+
+		assertEquals("/p", parser.getPath());
+		assertTrue(params.isEmpty());
+	}
+
+	@Test
+	public void testCookies() throws IOException {
+		HttpRequestParser parser = parser(1024);
+		parser.parse(new ChunkedInputStream(
+				"GET / HTTP/1.1\r\nCookie: a=1; SID = first ;flag; b=\r\nCookie: sid=second\r\n\r\n", 1000));
+
+		assertEquals("1", parser.getCookie("a"));
+		assertEquals("second", parser.getCookie("sid"));
+		assertEquals("", parser.getCookie("b"));
+		assertNull(parser.getCookie("flag"));
+		assertNull(parser.getCookie("missing"));
+	}
+
+	@Test
+	public void testCookieWithoutCookieLine() throws IOException {
+		HttpRequestParser parser = parser(1024);
+		parser.parse(new ChunkedInputStream("GET / HTTP/1.1\r\nX-Cookie: sid=x\r\n\r\n", 1000));
+
+		assertNull(parser.getCookie("sid"));
+	}
+
+	@Test
+	public void testTokens() throws IOException {
+		HttpRequestParser parser = parser(1024);
+		parser.parse(new ChunkedInputStream(
+				"GET / HTTP/1.1\r\nConnection: keep-alive , Upgrade\r\nAccept-Encoding: gzip\r\nAccept-Encoding: br\r\n\r\n",
+				1000));
+
+		assertTrue(parser.hasToken("connection", "upgrade"));
+		assertTrue(parser.hasToken("Connection", "Keep-Alive"));
+		assertFalse(parser.hasToken("Connection", "close"));
+		assertTrue(parser.hasToken("Accept-Encoding", "br"));
+		assertFalse(parser.hasToken("Accept-Encoding", "deflate"));
+	}
+
+	@Test
+	public void testManyHeaderLines() throws IOException {
+		StringBuilder sb = new StringBuilder("GET / HTTP/1.1\r\n");
+		for (int i = 0; i < 40; i++) {
+			sb.append("H").append(i).append(": v").append(i).append("\r\n");
+		}
+		sb.append("\r\n");
+
+		HttpRequestParser parser = parser(4096);
+		assertEquals(Status.COMPLETE, parser.parse(new ChunkedInputStream(sb.toString(), 13)));
+		assertEquals(40, parser.getHeaderCount());
+		assertTrue(parser.isHeader(39, "h39"));
+		assertEquals("v39", parser.getHeaderValue(39));
+	}
+}
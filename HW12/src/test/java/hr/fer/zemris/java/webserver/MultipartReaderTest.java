@@ -0,0 +1,355 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MultipartReaderTest {
+
+	private static final String BOUNDARY = "----xyz";
+
+	private static final int[] CHUNKS = { 1, 2, 3, 7, 64, 100000 };
+
+	private static MultipartReader reader(String body, int chunk) {
+		return new MultipartReader(new ChunkedInputStream(body, chunk), BOUNDARY, 1024);
+	}
+
+	private static String part(String name, String content) {
+		return "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + content
+				+ "\r\n";
+	}
+
+	private static String end() {
+		return "--" + BOUNDARY + "--\r\n";
+	}
+
+	private static String read(FormPart part) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		InputStream is = part.getInputStream();
+		byte[] b = new byte[5];
+		int r;
+		while ((r = is.read(b, 0, b.length)) != -1) {
+			bos.write(b, 0, r);
+		}
+
+		return new String(bos.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	private static String repeat(String s, int size) {
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < size) {
+			sb.append(s);
+		}
+
+		return sb.substring(0, size);
+	}
+
+	private static Set<Path> uploads() throws IOException {
+		Set<Path> files = new HashSet<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(Paths.get(System.getProperty("java.io.tmpdir")),
+				"upload*.part")) {
+			for (Path p : ds) {
+				files.add(p);
+			}
+		}
+
+		return files;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyBoundary() {
+		new MultipartReader(new ChunkedInputStream("", 1), "", 1024);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLongBoundary() {
+		new MultipartReader(new ChunkedInputStream("", 1), repeat("b", 71), 1024);
+	}
+
+	@Test
+	public void testParts() throws IOException {
+		String body = part("a", "first") + "--" + BOUNDARY
+				+ "\r\nContent-Disposition: form-data; name=\"f\"; filename=\"x.txt\"\r\n"
+				+ "content-type:  text/plain \r\n\r\nline1\r\nline2\r\n" + part("empty", "") + end();
+
+		for (int chunk : CHUNKS) {
+			MultipartReader reader = reader(body, chunk);
+
+			FormPart a = reader.next();
+			assertEquals("a", a.getName());
+			assertFalse(a.isFile());
+			assertNull(a.getContentType());
+			assertEquals(-1, a.getSize());
+			assertEquals("first", read(a));
+
+			FormPart f = reader.next();
+			assertEquals("f", f.getName());
+			assertTrue(f.isFile());
+			assertEquals("x.txt", f.getFileName());
+			assertEquals("text/plain", f.getContentType());
+			assertEquals("line1\r\nline2", read(f));
+
+			FormPart empty = reader.next();
+			assertEquals("empty", empty.getName());
+			assertEquals("", read(empty));
+
+			assertNull(reader.next());
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void testNoParts() throws IOException {
+		assertNull(reader(end(), 1).next());
+	}
+
+	@Test
+	public void testPreambleAndEpilogue() throws IOException {
+		String body = "This is the preamble.\r\n--" + BOUNDARY.substring(1) + "\r\n" + part("a", "1") + end()
+				+ "This is the epilogue.";
+
+		for (int chunk : CHUNKS) {
+			MultipartReader reader = reader(body, chunk);
+
+			FormPart a = reader.next();
+			assertEquals("a", a.getName());
+			assertEquals("1", read(a));
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void testTransportPadding() throws IOException {
+		String body = "--" + BOUNDARY + " \t \r\nContent-Disposition: form-data; name=a\r\n\r\nv\r\n--" + BOUNDARY
+				+ "\t\r\nContent-Disposition: form-data; name=b\r\n\r\nw\r\n" + end();
+
+		for (int chunk : CHUNKS) {
+			MultipartReader reader = reader(body, chunk);
+
+			assertEquals("v", read(reader.next()));
+			FormPart b = reader.next();
+			assertEquals("b", b.getName());
+			assertEquals("w", read(b));
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void testDelimiterPrefixInContent() throws IOException {
+		// content contains every proper prefix of the delimiter
+		StringBuilder content = new StringBuilder();
+		String delimiter = "\r\n--" + BOUNDARY;
+		for (int i = 1; i < delimiter.length(); i++) {
+			content.append(delimiter, 0, i).append('x');
+		}
+		content.append("\r\n--").append(BOUNDARY, 0, BOUNDARY.length() - 1);
+
+		String body = part("a", content.toString()) + end();
+		for (int chunk : CHUNKS) {
+			assertEquals(content.toString(), read(reader(body, chunk).next()));
+		}
+	}
+
+	@Test
+	public void testDelimiterAcrossBufferRefills() throws IOException {
+		// contents are larger than the buffer and end at different offsets of it
+		String first = repeat("abc\r\n-\r", 8192 * 2 + 5);
+		String second = repeat("\r\n-", 8189);
+		String body = part("a", first) + part("b", second) + end();
+
+		for (int chunk : new int[] { 1, 3, 4093, 8191, 100000 }) {
+			MultipartReader reader = reader(body, chunk);
+
+			assertEquals(first, read(reader.next()));
+			assertEquals(second, read(reader.next()));
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void testSkipRest() throws IOException {
+		String big = repeat("0123456789", 30000);
+		String body = part("skipped", big) + part("partial", big) + part("last", "end") + end();
+
+		for (int chunk : new int[] { 1, 7, 5000, 100000 }) {
+			MultipartReader reader = reader(body, chunk);
+
+			FormPart skipped = reader.next();
+			FormPart partial = reader.next();
+			assertEquals(-1, skipped.getInputStream().read());
+
+			InputStream is = partial.getInputStream();
+			assertEquals('0', is.read());
+			assertEquals('1', is.read());
+
+			FormPart last = reader.next();
+			assertEquals(-1, is.read());
+			assertEquals("last", last.getName());
+			assertEquals("end", read(last));
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void testHeaderOfMaximalSize() throws IOException {
+		// two header lines with their line ends have 60 bytes
+		String header = "Content-Disposition: form-data; name=\"f\"\r\nX-Pad: 123456789\r\n";
+		assertEquals(60, header.length());
+
+		String body = "--" + BOUNDARY + "\r\n" + header + "\r\nv\r\n" + end();
+		for (int chunk : CHUNKS) {
+			MultipartReader reader = new MultipartReader(new ChunkedInputStream(body, chunk), BOUNDARY, 60);
+			assertEquals("v", read(reader.next()));
+		}
+	}
+
+	@Test
+	public void testHeaderOverMaximalSize() throws IOException {
+		String body = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"f\"\r\nX-Pad: 1234567890\r\n\r\nv\r\n"
+				+ end();
+
+		for (int chunk : CHUNKS) {
+			MultipartReader reader = new MultipartReader(new ChunkedInputStream(body, chunk), BOUNDARY, 60);
+			try {
+				reader.next();
+				fail();
+			} catch (IOException e) {
+				assertFalse(e instanceof EOFException);
+			}
+		}
+	}
+
+	@Test
+	public void testHeaderLineWithoutEnd() throws IOException {
+		String body = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"f\"" + repeat("x", 5000);
+
+		try {
+			new MultipartReader(new ChunkedInputStream(body, 3), BOUNDARY, 100).next();
+			fail();
+		} catch (IOException e) {
+			assertFalse(e instanceof EOFException);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testPartWithoutName() throws IOException {
+		reader("--" + BOUNDARY + "\r\nContent-Type: text/plain\r\n\r\nv\r\n" + end(), 1).next();
+	}
+
+	@Test(expected = IOException.class)
+	public void testDelimiterWithoutLineEnd() throws IOException {
+		reader("--" + BOUNDARY + "x\r\n" + end(), 1).next();
+	}
+
+	@Test(expected = EOFException.class)
+	public void testBodyWithoutClosingDelimiter() throws IOException {
+		MultipartReader reader = reader(part("a", "value"), 2);
+
+		reader.next();
+		reader.next();
+	}
+
+	@Test(expected = EOFException.class)
+	public void testContentWithoutClosingDelimiter() throws IOException {
+		read(reader("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=a\r\n\r\nvalue", 2).next());
+	}
+
+	@Test
+	public void testParameter() {
+		String value = "form-data; filename=\"a;b \\\"c\\\".txt\"; NAME = field ; x=\"\"";
+
+		assertEquals("a;b \"c\".txt", MultipartReader.parameter(value, "filename"));
+		assertEquals("field", MultipartReader.parameter(value, "name"));
+		assertEquals("", MultipartReader.parameter(value, "x"));
+		assertNull(MultipartReader.parameter(value, "missing"));
+		assertNull(MultipartReader.parameter("form-data", "name"));
+		assertNull(MultipartReader.parameter("form-data; name", "name"));
+	}
+
+	@Test
+	public void testStoredParts() throws IOException {
+		String big = repeat("0123456789", 1000);
+		String body = part("field", "short") + "--" + BOUNDARY
+				+ "\r\nContent-Disposition: form-data; name=\"up\"; filename=\"big.bin\"\r\n\r\n" + big + "\r\n"
+				+ part("large", big) + end();
+
+		Set<Path> before = uploads();
+		RequestContext rc = new RequestContext(new ByteArrayOutputStream(), null, null, null);
+		rc.setMultipart(reader(body, 13), 16);
+
+		List<FormPart> parts = rc.getParts();
+		assertEquals(3, parts.size());
+
+		FormPart field = parts.get(0);
+		assertTrue(field.isInMemory());
+		assertEquals(5, field.getSize());
+		assertEquals("short", rc.getParameter("field"));
+
+		FormPart up = parts.get(1);
+		assertFalse(up.isInMemory());
+		assertEquals(big.length(), up.getSize());
+		assertEquals(big, read(up));
+		assertEquals(big, read(up));
+
+		FormPart large = parts.get(2);
+		assertFalse(large.isInMemory());
+		assertEquals(big, large.getString(StandardCharsets.ISO_8859_1));
+		assertNull(rc.getParameter("large"));
+
+		Set<Path> created = uploads();
+		created.removeAll(before);
+		assertEquals(2, created.size());
+
+		rc.deleteParts();
+		for (Path p : created) {
+			assertFalse(Files.exists(p));
+		}
+	}
+
+	@Test
+	public void testSpillFailureDeletesFile() throws IOException {
+		// body ends inside the content of the part which is being written to the file
+		String body = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"up\"\r\n\r\n"
+				+ repeat("x", 1000);
+
+		Set<Path> before = uploads();
+		RequestContext rc = new RequestContext(new ByteArrayOutputStream(), null, null, null);
+		rc.setMultipart(reader(body, 64), 16);
+
+		try {
+			rc.getParts();
+			fail();
+		} catch (EOFException e) {
+		}
+
+		List<Path> created = new ArrayList<>(uploads());
+		created.removeAll(before);
+		assertEquals(1, created.size());
+
+		rc.deleteParts();
+		assertFalse(Files.exists(created.get(0)));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStoredAfterStreamed() throws IOException {
+		RequestContext rc = new RequestContext(new ByteArrayOutputStream(), null, null, null);
+		rc.setMultipart(reader(part("a", "1") + end(), 1), 16);
+
+		rc.nextPart();
+		rc.getParts();
+	}
+}
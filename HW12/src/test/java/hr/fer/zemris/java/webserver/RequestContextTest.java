@@ -0,0 +1,99 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class RequestContextTest {
+
+	private static String header(ByteArrayOutputStream os) {
+		String response = new String(os.toByteArray(), StandardCharsets.ISO_8859_1);
+
+		return response.substring(0, response.indexOf("\r\n\r\n") + 2);
+	}
+
+	@Test
+	public void testContentType() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext rc = new RequestContext(os, null, null, null);
+
+		rc.write("body");
+		rc.finish();
+
+		assertTrue(header(os).contains("Content-Type: text/html; charset=UTF-8\r\n"));
+	}
+
+	@Test
+	public void testEmptyBodyContentType() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext rc = new RequestContext(os, null, null, null);
+		rc.setMimeType("text/plain");
+
+		rc.finish();
+
+		String header = header(os);
+		assertTrue(header.contains("Content-Type: text/plain; charset=UTF-8\r\n"));
+		assertTrue(header.contains("Content-Length: 0\r\n"));
+	}
+
+	@Test
+	public void testNotModifiedWithoutContentType() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext rc = new RequestContext(os, null, null, null);
+		rc.setStatusCode(304);
+		rc.setStatusText("Not Modified");
+
+		rc.finish();
+
+		String header = header(os);
+		assertTrue(header.startsWith("HTTP/1.1 304 Not Modified\r\n"));
+		assertFalse(header.contains("Content-Type"));
+		assertFalse(header.contains("Content-Length"));
+	}
+
+	@Test
+	public void testNoContentWithoutContentType() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext rc = new RequestContext(os, null, null, null);
+		rc.setStatusCode(204);
+		rc.setStatusText("No Content");
+
+		rc.finish();
+
+		assertFalse(header(os).contains("Content-Type"));
+	}
+
+	@Test
+	public void testEmptyRangeNotSatisfiableWithoutContentType() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext rc = new RequestContext(os, null, null, null);
+		rc.setStatusCode(416);
+		rc.setStatusText("Range Not Satisfiable");
+		rc.addHeader("Content-Range", "bytes */20");
+		rc.setContentLength(0L);
+
+		rc.finish();
+
+		String header = header(os);
+		assertFalse(header.contains("Content-Type"));
+		assertTrue(header.contains("Content-Length: 0\r\n"));
+		assertTrue(header.contains("Content-Range: bytes */20\r\n"));
+	}
+
+	@Test
+	public void testRangeNotSatisfiableWithBodyContentType() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		RequestContext rc = new RequestContext(os, null, null, null);
+		rc.setStatusCode(416);
+		rc.setStatusText("Range Not Satisfiable");
+
+		rc.write("Range is not satisfiable.");
+		rc.finish();
+
+		assertTrue(header(os).contains("Content-Type: text/html; charset=UTF-8\r\n"));
+	}
+}
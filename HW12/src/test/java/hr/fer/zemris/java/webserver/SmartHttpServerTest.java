@@ -0,0 +1,103 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SmartHttpServerTest {
+
+	private static final String ETAG = "\"5f-1a2b\"";
+
+	// Sun, 06 Nov 1994 08:49:37 GMT
+	private static final long MODIFIED = 784111777000L;
+
+	private static final String DATE = "Sun, 06 Nov 1994 08:49:37 GMT";
+
+	private static final String LATER = "Sun, 06 Nov 1994 08:49:38 GMT";
+
+	private static final String EARLIER = "Sun, 06 Nov 1994 08:49:36 GMT";
+
+	@Test
+	public void testNoRange() {
+		assertNull(SmartHttpServer.parseRange(null, 100));
+	}
+
+	@Test
+	public void testClosedRange() {
+		assertArrayEquals(new long[] { 0, 0 }, SmartHttpServer.parseRange("bytes=0-0", 100));
+		assertArrayEquals(new long[] { 10, 19 }, SmartHttpServer.parseRange("bytes=10-19", 100));
+		assertArrayEquals(new long[] { 10, 19 }, SmartHttpServer.parseRange("bytes= 10 - 19 ", 100));
+		assertArrayEquals(new long[] { 99, 99 }, SmartHttpServer.parseRange("bytes=99-99", 100));
+	}
+
+	@Test
+	public void testRangeEndClamped() {
+		assertArrayEquals(new long[] { 50, 99 }, SmartHttpServer.parseRange("bytes=50-1000", 100));
+		assertArrayEquals(new long[] { 50, 99 }, SmartHttpServer.parseRange("bytes=50-", 100));
+		assertArrayEquals(new long[] { 0, 99 }, SmartHttpServer.parseRange("bytes=0-", 100));
+	}
+
+	@Test
+	public void testSuffixRange() {
+		assertArrayEquals(new long[] { 90, 99 }, SmartHttpServer.parseRange("bytes=-10", 100));
+		assertArrayEquals(new long[] { 0, 99 }, SmartHttpServer.parseRange("bytes=-100", 100));
+		assertArrayEquals(new long[] { 0, 99 }, SmartHttpServer.parseRange("bytes=-500", 100));
+		assertArrayEquals(new long[] { 99, 99 }, SmartHttpServer.parseRange("bytes=-1", 100));
+	}
+
+	@Test
+	public void testUnsatisfiableRange() {
+		// first position not less than the length results in 416
+		assertTrue(SmartHttpServer.parseRange("bytes=100-", 100)[0] >= 100);
+		assertTrue(SmartHttpServer.parseRange("bytes=100-200", 100)[0] >= 100);
+		assertTrue(SmartHttpServer.parseRange("bytes=-0", 100)[0] >= 100);
+		assertTrue(SmartHttpServer.parseRange("bytes=0-", 0)[0] >= 0);
+		assertTrue(SmartHttpServer.parseRange("bytes=-5", 0)[0] >= 0);
+	}
+
+	@Test
+	public void testIgnoredRange() {
+		assertNull(SmartHttpServer.parseRange("items=0-10", 100));
+		assertNull(SmartHttpServer.parseRange("bytes=0-10,20-30", 100));
+		assertNull(SmartHttpServer.parseRange("bytes=10", 100));
+		assertNull(SmartHttpServer.parseRange("bytes=20-10", 100));
+		assertNull(SmartHttpServer.parseRange("bytes=a-10", 100));
+		assertNull(SmartHttpServer.parseRange("bytes=-", 100));
+		assertNull(SmartHttpServer.parseRange("bytes=-1-2", 100));
+	}
+
+	@Test
+	public void testIfNoneMatch() {
+		assertTrue(SmartHttpServer.isNotModified(ETAG, null, ETAG, MODIFIED));
+		assertTrue(SmartHttpServer.isNotModified("\"other\", " + ETAG, null, ETAG, MODIFIED));
+		assertTrue(SmartHttpServer.isNotModified("W/" + ETAG, null, ETAG, MODIFIED));
+		assertTrue(SmartHttpServer.isNotModified("*", null, ETAG, MODIFIED));
+		assertFalse(SmartHttpServer.isNotModified("\"other\"", null, ETAG, MODIFIED));
+	}
+
+	@Test
+	public void testIfNoneMatchOverridesIfModifiedSince() {
+		assertFalse(SmartHttpServer.isNotModified("\"other\"", LATER, ETAG, MODIFIED));
+	}
+
+	@Test
+	public void testIfModifiedSince() {
+		assertTrue(SmartHttpServer.isNotModified(null, DATE, ETAG, MODIFIED));
+		assertTrue(SmartHttpServer.isNotModified(null, DATE, ETAG, MODIFIED + 999));
+		assertTrue(SmartHttpServer.isNotModified(null, LATER, ETAG, MODIFIED));
+		assertFalse(SmartHttpServer.isNotModified(null, EARLIER, ETAG, MODIFIED));
+		assertFalse(SmartHttpServer.isNotModified(null, "yesterday", ETAG, MODIFIED));
+		assertFalse(SmartHttpServer.isNotModified(null, null, ETAG, MODIFIED));
+	}
+
+	@Test
+	public void testIfRange() {
+		assertTrue(SmartHttpServer.isRangeValid(null, ETAG, MODIFIED));
+		assertTrue(SmartHttpServer.isRangeValid(ETAG, ETAG, MODIFIED));
+		assertFalse(SmartHttpServer.isRangeValid("\"other\"", ETAG, MODIFIED));
+		assertTrue(SmartHttpServer.isRangeValid(DATE, ETAG, MODIFIED + 500));
+		assertFalse(SmartHttpServer.isRangeValid(LATER, ETAG, MODIFIED));
+		assertFalse(SmartHttpServer.isRangeValid(EARLIER, ETAG, MODIFIED));
+		assertFalse(SmartHttpServer.isRangeValid("not a date", ETAG, MODIFIED));
+	}
+}